@@ -0,0 +1,418 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xwiki.component.embed.EmbeddableComponentManager;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffConfiguration;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffManager;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffMarker;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffMarkerFilter;
+import org.xwiki.diff.Patch;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.XDOM;
+
+/**
+ * Measures the throughput, the latency distribution (use the {@code p0.99} percentile reported by the sample time mode)
+ * and, when run with {@code -prof gc}, the memory allocated per operation of each phase of the XDOM diff: flattening,
+ * diffing, marking, filtering and rebuilding. Each phase is also measured on its own, on precomputed input: see
+ * {@link #mark}, {@link #filterChain} and {@link #rebuild}. Run with {@code mvn -Pbenchmark test-compile exec:exec}.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms4g", "-Xmx4g"})
+public class BlockDiffBenchmark
+{
+    /**
+     * The documents to compare and the components to test, shared by all the benchmarks.
+     */
+    @State(Scope.Benchmark)
+    public static class Documents
+    {
+        @Param({"1000", "10000", "100000", "1000000"})
+        int blockCount;
+
+        @Param({"SINGLE_WORD", "PARAGRAPH_INSERTION", "SECTION_MOVE", "FULL_REWRITE"})
+        XDOMGenerator.Edit edit;
+
+        XDOM left;
+
+        XDOM right;
+
+        EmbeddableComponentManager componentManager;
+
+        BlockDiffManager diffManager;
+
+        BlockDiffMarker diffMarker;
+
+        BlockDiffMarkerFilter formatWrapperFilter;
+
+        List<BlockDiffMarkerFilter> filters;
+
+        BlockListConverter blockListConverter = new BlockListConverter();
+
+        BlockDiffConfiguration parallelConfiguration = new BlockDiffConfiguration();
+
+        /**
+         * Generates the documents and looks up the components.
+         * 
+         * @throws Exception if the components cannot be looked up
+         */
+        @Setup(Level.Trial)
+        public void setUp() throws Exception
+        {
+            XDOMGenerator generator = new XDOMGenerator(this.blockCount);
+            this.left = generator.generate(this.blockCount);
+            this.right = generator.edit(this.left, this.edit);
+
+            this.componentManager = new EmbeddableComponentManager();
+            this.componentManager.initialize(getClass().getClassLoader());
+            this.diffManager = this.componentManager.getInstance(BlockDiffManager.class);
+            this.diffMarker = this.componentManager.getInstance(BlockDiffMarker.class);
+            this.formatWrapperFilter = this.componentManager.getInstance(BlockDiffMarkerFilter.class, "formatWrapper");
+            this.filters = this.componentManager.getInstanceList(BlockDiffMarkerFilter.class);
+            this.parallelConfiguration.setForkJoinPool(ForkJoinPool.commonPool());
+        }
+
+        /**
+         * Releases the components.
+         */
+        @TearDown(Level.Trial)
+        public void tearDown()
+        {
+            this.componentManager.dispose();
+        }
+    }
+
+    /**
+     * Fresh copies of the compared documents, because some of the tested operations modify their input.
+     */
+    @State(Scope.Thread)
+    public static class Copies
+    {
+        Block left;
+
+        Block right;
+
+        /**
+         * Copies the compared documents before each call.
+         * 
+         * @param documents the compared documents
+         */
+        @Setup(Level.Invocation)
+        public void setUp(Documents documents)
+        {
+            this.left = documents.left.clone();
+            this.right = documents.right.clone();
+        }
+    }
+
+    /**
+     * The list representation of the left document, used to measure the rebuilding phase.
+     */
+    @State(Scope.Thread)
+    public static class Lists
+    {
+        List<Block> left;
+
+        /**
+         * Flattens the left document.
+         * 
+         * @param documents the compared documents
+         */
+        @Setup(Level.Trial)
+        public void setUp(Documents documents)
+        {
+            this.left = documents.blockListConverter.toList(documents.left.clone());
+        }
+    }
+
+    /**
+     * The changes between the compared documents, used to measure the apply and restore operations.
+     */
+    @State(Scope.Thread)
+    public static class Patches
+    {
+        Patch<Block> patch;
+
+        /**
+         * Computes the changes between the compared documents.
+         * 
+         * @param documents the compared documents
+         * @throws Exception if computing the changes fails
+         */
+        @Setup(Level.Trial)
+        public void setUp(Documents documents) throws Exception
+        {
+            this.patch = documents.diffManager.diff(documents.left.clone(), documents.right.clone());
+        }
+    }
+
+    /**
+     * A fresh list representation of the left document, used to measure the marking phase on its own.
+     */
+    @State(Scope.Thread)
+    public static class MarkInput
+    {
+        List<Block> left;
+
+        List<Block> markedBlocks;
+
+        /**
+         * Flattens a copy of the left document before each call because the marking modifies its blocks.
+         * 
+         * @param documents the compared documents
+         */
+        @Setup(Level.Invocation)
+        public void setUp(Documents documents)
+        {
+            this.left = documents.blockListConverter.toList(documents.left.clone());
+            this.markedBlocks = new ArrayList<>();
+        }
+    }
+
+    /**
+     * A tree with diff markers on which no filter was run yet, used to measure the whole filter chain.
+     */
+    @State(Scope.Thread)
+    public static class UnfilteredTree
+    {
+        Block diffTree;
+
+        List<Block> markedBlocks;
+
+        /**
+         * Marks the changes on a copy of the left document before each call because the filters modify it.
+         * 
+         * @param documents the compared documents
+         * @param patches the changes to mark
+         * @throws Exception if the diff tree cannot be rebuilt
+         */
+        @Setup(Level.Invocation)
+        public void setUp(Documents documents, Patches patches) throws Exception
+        {
+            this.markedBlocks = new ArrayList<>();
+            List<Block> markedList = ((DefaultBlockDiffMarker) documents.diffMarker).markPatch(
+                documents.blockListConverter.toList(documents.left.clone()), patches.patch, this.markedBlocks);
+            this.diffTree = documents.blockListConverter.fromList(markedList);
+        }
+    }
+
+    /**
+     * A tree with diff markers, used to measure the filtering phase.
+     */
+    @State(Scope.Thread)
+    public static class MarkedTree
+    {
+        Block marked;
+
+        Block diffTree;
+
+        /**
+         * Marks the changes between the compared documents once.
+         * 
+         * @param documents the compared documents
+         * @throws Exception if computing the changes fails
+         */
+        @Setup(Level.Trial)
+        public void setUpTrial(Documents documents) throws Exception
+        {
+            this.marked = documents.left.clone();
+            documents.diffMarker.markDiff(this.marked, documents.right.clone());
+        }
+
+        /**
+         * Copies the marked tree before each call because filters modify it.
+         */
+        @Setup(Level.Invocation)
+        public void setUpInvocation()
+        {
+            this.diffTree = this.marked.clone();
+        }
+    }
+
+    /**
+     * Flattening phase: serialize a tree as a list of blocks.
+     * 
+     * @param documents the components to test
+     * @param copies the input documents
+     * @return the list of blocks
+     */
+    @Benchmark
+    public List<Block> flatten(Documents documents, Copies copies)
+    {
+        return documents.blockListConverter.toList(copies.left);
+    }
+
+    /**
+     * Diffing phase: flattens both trees and computes the patch.
+     * 
+     * @param documents the components to test
+     * @param copies the input documents
+     * @return the patch
+     * @throws Exception if computing the changes fails
+     */
+    @Benchmark
+    public Patch<Block> diff(Documents documents, Copies copies) throws Exception
+    {
+        return documents.diffManager.diff(copies.left, copies.right);
+    }
+
+    /**
+     * Same as {@link #diff(Documents, Copies)} but compares the modified sections in parallel on the common pool.
+     * 
+     * @param documents the components to test
+     * @param copies the input documents
+     * @return the patch
+     * @throws Exception if computing the changes fails
+     */
+    @Benchmark
+    public Patch<Block> parallelDiff(Documents documents, Copies copies) throws Exception
+    {
+        return documents.diffManager.diff(copies.left, copies.right, documents.parallelConfiguration);
+    }
+
+    /**
+     * Applies a patch on the left document.
+     * 
+     * @param documents the components to test
+     * @param copies the input documents
+     * @param patches the patch to apply
+     * @return the right document
+     * @throws Exception if applying the patch fails
+     */
+    @Benchmark
+    public Block apply(Documents documents, Copies copies, Patches patches) throws Exception
+    {
+        return documents.diffManager.apply(copies.left, patches.patch);
+    }
+
+    /**
+     * Restores a patch on the right document.
+     * 
+     * @param documents the components to test
+     * @param copies the input documents
+     * @param patches the patch to restore
+     * @return the left document
+     * @throws Exception if restoring the patch fails
+     */
+    @Benchmark
+    public Block restore(Documents documents, Copies copies, Patches patches) throws Exception
+    {
+        return documents.diffManager.restore(copies.right, patches.patch);
+    }
+
+    /**
+     * Marking phase: flattens both trees, computes the patch, marks the changes, filters and rebuilds the diff tree.
+     * Subtract the {@link #diff} score to get the cost of marking, filtering and rebuilding.
+     * 
+     * @param documents the components to test
+     * @param copies the input documents
+     * @return whether there are changes
+     * @throws Exception if marking the changes fails
+     */
+    @Benchmark
+    public boolean markDiff(Documents documents, Copies copies) throws Exception
+    {
+        return documents.diffMarker.markDiff(copies.left, copies.right);
+    }
+
+    /**
+     * Marking phase on its own: marks a precomputed patch on the list representation of the left document and rebuilds
+     * the diff tree, without running the filters.
+     * 
+     * @param documents the components to test
+     * @param input the list of blocks to mark
+     * @param patches the changes to mark
+     * @return the marked tree
+     * @throws Exception if the diff tree cannot be rebuilt
+     */
+    @Benchmark
+    public Block mark(Documents documents, MarkInput input, Patches patches) throws Exception
+    {
+        List<Block> markedList =
+            ((DefaultBlockDiffMarker) documents.diffMarker).markPatch(input.left, patches.patch, input.markedBlocks);
+        return documents.blockListConverter.fromList(markedList);
+    }
+
+    /**
+     * Filtering phase: runs all the registered filters over a diff tree, as the marker does.
+     * 
+     * @param documents the components to test
+     * @param unfilteredTree the diff tree to filter
+     * @return the filtered diff tree
+     */
+    @Benchmark
+    public Block filterChain(Documents documents, UnfilteredTree unfilteredTree)
+    {
+        DefaultBlockDiffMarker.amend(unfilteredTree.diffTree, unfilteredTree.markedBlocks, documents.filters);
+        return unfilteredTree.diffTree;
+    }
+
+    /**
+     * Filtering phase: runs the format wrapper filter over a diff tree.
+     * 
+     * @param documents the components to test
+     * @param markedTree the diff tree to filter
+     * @return the filtered diff tree
+     */
+    @Benchmark
+    public Block filter(Documents documents, MarkedTree markedTree)
+    {
+        documents.formatWrapperFilter.filter(markedTree.diffTree);
+        return markedTree.diffTree;
+    }
+
+    /**
+     * Rebuilding phase: rebuilds a tree from its list representation.
+     * 
+     * @param documents the components to test
+     * @param lists the list of blocks to convert
+     * @return the rebuilt tree
+     * @throws Exception if the tree cannot be rebuilt
+     */
+    @Benchmark
+    public Block rebuild(Documents documents, Lists lists) throws Exception
+    {
+        return documents.blockListConverter.fromList(lists.left);
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.HeaderBlock;
+import org.xwiki.rendering.block.ParagraphBlock;
+import org.xwiki.rendering.block.SectionBlock;
+import org.xwiki.rendering.block.SpaceBlock;
+import org.xwiki.rendering.block.WordBlock;
+import org.xwiki.rendering.block.XDOM;
+import org.xwiki.rendering.listener.HeaderLevel;
+
+/**
+ * Generates XDOM trees of a given size, and modified versions of them, to be used as benchmark input.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+public class XDOMGenerator
+{
+    /**
+     * The type of change to apply on a generated XDOM.
+     */
+    public enum Edit
+    {
+        /**
+         * Replace one word in the middle of the document.
+         */
+        SINGLE_WORD,
+
+        /**
+         * Insert a new paragraph in the middle of the document.
+         */
+        PARAGRAPH_INSERTION,
+
+        /**
+         * Move the first section at the end of the document.
+         */
+        SECTION_MOVE,
+
+        /**
+         * Generate a completely different content.
+         */
+        FULL_REWRITE
+    }
+
+    private static final String[] VOCABULARY = {"lorem", "ipsum", "dolor", "sit", "amet", "consectetur", "adipiscing",
+        "elit", "sed", "do", "eiusmod", "tempor", "incididunt", "ut", "labore", "et", "dolore", "magna", "aliqua"};
+
+    private static final int WORDS_PER_PARAGRAPH = 20;
+
+    private static final int WORDS_PER_HEADER = 3;
+
+    private static final int PARAGRAPHS_PER_SECTION = 10;
+
+    private final Random random;
+
+    /**
+     * Creates a new generator.
+     * 
+     * @param seed the seed used to pick the words, so that the generated content is reproducible
+     */
+    public XDOMGenerator(long seed)
+    {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Generates an XDOM made of sections, each section having a header and a couple of paragraphs.
+     * 
+     * @param blockCount the (approximate) number of blocks the generated XDOM should have
+     * @return the generated XDOM
+     */
+    public XDOM generate(int blockCount)
+    {
+        List<Block> sections = new ArrayList<>();
+        int count = 1;
+        while (count < blockCount) {
+            SectionBlock section = generateSection();
+            sections.add(section);
+            count += countBlocks(section);
+        }
+        return new XDOM(sections);
+    }
+
+    /**
+     * Generates a modified version of the given XDOM.
+     * 
+     * @param xdom the XDOM to modify
+     * @param edit the type of change to apply
+     * @return the modified XDOM; the given XDOM is left untouched
+     */
+    public XDOM edit(XDOM xdom, Edit edit)
+    {
+        if (edit == Edit.FULL_REWRITE) {
+            return generate(countBlocks(xdom));
+        }
+
+        XDOM copy = xdom.clone();
+        List<Block> sections = copy.getChildren();
+        Block middleSection = sections.get(sections.size() / 2);
+        Block middleParagraph = middleSection.getChildren().get(middleSection.getChildren().size() / 2);
+        switch (edit) {
+            case SINGLE_WORD:
+                Block word = middleParagraph.getChildren().get(WORDS_PER_PARAGRAPH / 2 * 2);
+                middleParagraph.replaceChild(new WordBlock("changed"), word);
+                break;
+            case PARAGRAPH_INSERTION:
+                middleSection.insertChildAfter(generateParagraph(WORDS_PER_PARAGRAPH), middleParagraph);
+                break;
+            case SECTION_MOVE:
+                Block firstSection = sections.get(0);
+                copy.removeBlock(firstSection);
+                copy.addChild(firstSection);
+                break;
+            default:
+                break;
+        }
+        return copy;
+    }
+
+    /**
+     * @param root the root of a block tree
+     * @return the number of blocks in the given tree, including the root
+     */
+    public static int countBlocks(Block root)
+    {
+        int count = 1;
+        for (Block child : root.getChildren()) {
+            count += countBlocks(child);
+        }
+        return count;
+    }
+
+    private SectionBlock generateSection()
+    {
+        List<Block> children = new ArrayList<>();
+        children.add(new HeaderBlock(generateWords(WORDS_PER_HEADER), HeaderLevel.LEVEL1));
+        for (int i = 0; i < PARAGRAPHS_PER_SECTION; i++) {
+            children.add(generateParagraph(WORDS_PER_PARAGRAPH));
+        }
+        return new SectionBlock(children);
+    }
+
+    private ParagraphBlock generateParagraph(int wordCount)
+    {
+        return new ParagraphBlock(generateWords(wordCount));
+    }
+
+    private List<Block> generateWords(int wordCount)
+    {
+        List<Block> words = new ArrayList<>(2 * wordCount);
+        for (int i = 0; i < wordCount; i++) {
+            if (i > 0) {
+                words.add(new SpaceBlock());
+            }
+            words.add(new WordBlock(VOCABULARY[this.random.nextInt(VOCABULARY.length)]));
+        }
+        return words;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.block.diff;
+
+import java.io.Serializable;
+
+import org.xwiki.stability.Unstable;
+
+/**
+ * Roughly how much two {@link org.xwiki.rendering.block.Block} trees differ, see
+ * {@link BlockDiffManager#getChangeStatistics(org.xwiki.rendering.block.Block, org.xwiki.rendering.block.Block)}. The
+ * numbers of deleted and inserted blocks are upper bounds: they count the blocks of the subtrees that differ, without
+ * aligning their descendants.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+@Unstable
+public class BlockChangeStatistics implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    private final int previousBlockCount;
+
+    private final int nextBlockCount;
+
+    private final int deletedBlockCount;
+
+    private final int insertedBlockCount;
+
+    /**
+     * Creates new statistics.
+     * 
+     * @param previousBlockCount the number of blocks before the modification
+     * @param nextBlockCount the number of blocks after the modification
+     * @param deletedBlockCount the number of deleted blocks
+     * @param insertedBlockCount the number of inserted blocks
+     */
+    public BlockChangeStatistics(int previousBlockCount, int nextBlockCount, int deletedBlockCount,
+        int insertedBlockCount)
+    {
+        this.previousBlockCount = previousBlockCount;
+        this.nextBlockCount = nextBlockCount;
+        this.deletedBlockCount = deletedBlockCount;
+        this.insertedBlockCount = insertedBlockCount;
+    }
+
+    /**
+     * @return {@code true} if the compared trees differ, {@code false} otherwise
+     */
+    public boolean hasChanges()
+    {
+        return this.deletedBlockCount > 0 || this.insertedBlockCount > 0;
+    }
+
+    /**
+     * @return the number of blocks before the modification
+     */
+    public int getPreviousBlockCount()
+    {
+        return this.previousBlockCount;
+    }
+
+    /**
+     * @return the number of blocks after the modification
+     */
+    public int getNextBlockCount()
+    {
+        return this.nextBlockCount;
+    }
+
+    /**
+     * @return the number of deleted blocks (an upper bound)
+     */
+    public int getDeletedBlockCount()
+    {
+        return this.deletedBlockCount;
+    }
+
+    /**
+     * @return the number of inserted blocks (an upper bound)
+     */
+    public int getInsertedBlockCount()
+    {
+        return this.insertedBlockCount;
+    }
+
+    /**
+     * @return the share of the blocks that changed, between {@code 0} (no changes) and {@code 1} (everything changed)
+     */
+    public double getChangeRatio()
+    {
+        int total = this.previousBlockCount + this.nextBlockCount;
+        return total > 0 ? (double) (this.deletedBlockCount + this.insertedBlockCount) / total : 0;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("Deleted [%s] of [%s] blocks, inserted [%s] of [%s] blocks", this.deletedBlockCount,
+            this.previousBlockCount, this.insertedBlockCount, this.nextBlockCount);
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.block.diff;
+
+import org.xwiki.stability.Unstable;
+
+/**
+ * The algorithms that can be used to compare the list representations of two {@link org.xwiki.rendering.block.Block}
+ * trees.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+@Unstable
+public enum BlockDiffAlgorithm
+{
+    /**
+     * The Myers algorithm, which produces the shortest edit script. Its cost grows with the square of the number of
+     * differences, so it is best suited for small changes. Large ranges are compared using the linear space variant of
+     * the algorithm, so the memory stays proportional to the size of the compared content.
+     */
+    MYERS,
+
+    /**
+     * The histogram algorithm, which matches first the blocks that occur the least. It is faster than Myers on large
+     * changes and the result is usually closer to what the user did (e.g. when content is moved around).
+     */
+    HISTOGRAM,
+
+    /**
+     * The patience algorithm, which matches first the blocks that occur only once in both trees.
+     */
+    PATIENCE
+}
@@ -0,0 +1,82 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.block.diff;
+
+import java.util.concurrent.Executor;
+
+import org.xwiki.stability.Unstable;
+
+/**
+ * Configures how a batch of comparisons is executed. The inherited settings apply to each comparison.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+@Unstable
+public class BlockDiffBatchConfiguration extends BlockDiffConfiguration
+{
+    private Executor executor;
+
+    private int maximumPendingComparisons;
+
+    /**
+     * @return the executor used to run the comparisons, {@code null} if a pool with one thread per available
+     *         processor is created for the batch
+     */
+    public Executor getExecutor()
+    {
+        return this.executor;
+    }
+
+    /**
+     * Sets the executor used to run the comparisons, e.g. a bounded thread pool shared by the application or an
+     * executor that starts a virtual thread per task on the JVMs that support them. The executor is not shut down at
+     * the end of the batch.
+     * 
+     * @param executor the executor to use, {@code null} to create a pool with one thread per available processor for
+     *            the duration of the batch
+     */
+    public void setExecutor(Executor executor)
+    {
+        this.executor = executor;
+    }
+
+    /**
+     * @return the maximum number of pairs that are being compared, or whose result has not been consumed yet, at any
+     *         given time, {@code 0} for twice the number of available processors
+     */
+    public int getMaximumPendingComparisons()
+    {
+        return this.maximumPendingComparisons;
+    }
+
+    /**
+     * Limits the number of pairs that are being compared, or whose result has not been consumed yet, at any given
+     * time. The next pairs are read from the input only when results are consumed, which bounds the memory used by
+     * the batch independently of its size and of the number of threads of the executor.
+     * 
+     * @param maximumPendingComparisons the maximum number of pending comparisons, {@code 0} for twice the number of
+     *            available processors
+     */
+    public void setMaximumPendingComparisons(int maximumPendingComparisons)
+    {
+        this.maximumPendingComparisons = maximumPendingComparisons;
+    }
+}
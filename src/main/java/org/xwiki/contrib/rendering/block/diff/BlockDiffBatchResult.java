@@ -0,0 +1,93 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.block.diff;
+
+import org.xwiki.stability.Unstable;
+
+/**
+ * The result of comparing a {@link BlockDiffPair} as part of a batch. A failed comparison doesn't stop the batch;
+ * its error is returned instead of the result.
+ *
+ * @param <K> the type of key that identifies the compared pair
+ * @param <R> the type of result
+ * @version $Id$
+ * @since 1.0
+ */
+@Unstable
+public class BlockDiffBatchResult<K, R>
+{
+    private final BlockDiffPair<K> pair;
+
+    private final R result;
+
+    private final Exception error;
+
+    /**
+     * Creates a new result.
+     * 
+     * @param pair the compared pair
+     * @param result the result of the comparison, {@code null} if the comparison failed
+     * @param error the reason why the comparison failed, {@code null} if it succeeded
+     */
+    public BlockDiffBatchResult(BlockDiffPair<K> pair, R result, Exception error)
+    {
+        this.pair = pair;
+        this.result = result;
+        this.error = error;
+    }
+
+    /**
+     * @return the compared pair
+     */
+    public BlockDiffPair<K> getPair()
+    {
+        return this.pair;
+    }
+
+    /**
+     * @return the result of the comparison, {@code null} if the comparison failed
+     */
+    public R getResult()
+    {
+        return this.result;
+    }
+
+    /**
+     * @return the reason why the comparison failed, {@code null} if it succeeded
+     */
+    public Exception getError()
+    {
+        return this.error;
+    }
+
+    /**
+     * @return {@code true} if the comparison failed, {@code false} otherwise
+     */
+    public boolean isFailed()
+    {
+        return this.error != null;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s: %s", this.pair, isFailed() ? this.error : this.result);
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.block.diff;
+
+import org.xwiki.stability.Unstable;
+
+/**
+ * Implemented by the {@link BlockDiffManager} and {@link BlockDiffMarker} components that cache their results.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+@Unstable
+public interface BlockDiffCache
+{
+    /**
+     * @return the current cache statistics
+     */
+    BlockDiffCacheStatistics getStatistics();
+
+    /**
+     * Sets the maximum (estimated) size of the cached results, in bytes. Least recently used results are evicted when
+     * the cache exceeds this size.
+     * 
+     * @param maximumWeight the maximum size of the cached results, in bytes
+     */
+    void setMaximumWeight(long maximumWeight);
+
+    /**
+     * Removes all the cached results.
+     */
+    void clear();
+}
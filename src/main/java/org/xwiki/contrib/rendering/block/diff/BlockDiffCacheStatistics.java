@@ -0,0 +1,129 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.block.diff;
+
+import org.xwiki.stability.Unstable;
+
+/**
+ * A snapshot of the statistics of a {@link BlockDiffCache}.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+@Unstable
+public class BlockDiffCacheStatistics
+{
+    private final long hitCount;
+
+    private final long missCount;
+
+    private final long evictionCount;
+
+    private final int size;
+
+    private final long weight;
+
+    private final long maximumWeight;
+
+    /**
+     * Creates a new snapshot.
+     * 
+     * @param hitCount the number of lookups that found a cached result
+     * @param missCount the number of lookups that didn't find a cached result
+     * @param evictionCount the number of results evicted from the cache
+     * @param size the number of cached results
+     * @param weight the estimated size of the cached results, in bytes
+     * @param maximumWeight the maximum size of the cached results, in bytes
+     */
+    public BlockDiffCacheStatistics(long hitCount, long missCount, long evictionCount, int size, long weight,
+        long maximumWeight)
+    {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.size = size;
+        this.weight = weight;
+        this.maximumWeight = maximumWeight;
+    }
+
+    /**
+     * @return the number of lookups that found a cached result
+     */
+    public long getHitCount()
+    {
+        return this.hitCount;
+    }
+
+    /**
+     * @return the number of lookups that didn't find a cached result
+     */
+    public long getMissCount()
+    {
+        return this.missCount;
+    }
+
+    /**
+     * @return the ratio of lookups that found a cached result, between 0 and 1
+     */
+    public double getHitRate()
+    {
+        long requestCount = this.hitCount + this.missCount;
+        return requestCount == 0 ? 0 : (double) this.hitCount / requestCount;
+    }
+
+    /**
+     * @return the number of results evicted from the cache
+     */
+    public long getEvictionCount()
+    {
+        return this.evictionCount;
+    }
+
+    /**
+     * @return the number of cached results
+     */
+    public int getSize()
+    {
+        return this.size;
+    }
+
+    /**
+     * @return the estimated size of the cached results, in bytes
+     */
+    public long getWeight()
+    {
+        return this.weight;
+    }
+
+    /**
+     * @return the maximum size of the cached results, in bytes
+     */
+    public long getMaximumWeight()
+    {
+        return this.maximumWeight;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("hits=%d, misses=%d, evictions=%d, size=%d, weight=%d/%d", this.hitCount,
+            this.missCount, this.evictionCount, this.size, this.weight, this.maximumWeight);
+    }
+}
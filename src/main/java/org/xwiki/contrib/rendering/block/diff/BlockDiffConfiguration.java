@@ -0,0 +1,185 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.block.diff;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.xwiki.stability.Unstable;
+
+/**
+ * Configures how the changes between two {@link org.xwiki.rendering.block.Block} trees are computed.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+@Unstable
+public class BlockDiffConfiguration
+{
+    private BlockDiffAlgorithm algorithm;
+
+    private ForkJoinPool forkJoinPool;
+
+    private long maximumComparisons;
+
+    private long timeout;
+
+    private BlockDiffMacroMode macroMode;
+
+    private Object previousKey;
+
+    private Object nextKey;
+
+    /**
+     * @return the algorithm used to compare the blocks, {@code null} if the algorithm should be chosen automatically
+     *         based on the size of the compared content
+     */
+    public BlockDiffAlgorithm getAlgorithm()
+    {
+        return this.algorithm;
+    }
+
+    /**
+     * Sets the algorithm used to compare the blocks.
+     * 
+     * @param algorithm the algorithm to use, {@code null} to choose automatically based on the size of the compared
+     *            content
+     */
+    public void setAlgorithm(BlockDiffAlgorithm algorithm)
+    {
+        this.algorithm = algorithm;
+    }
+
+    /**
+     * @return the pool used to compare the modified parts (e.g. sections) of the content in parallel, {@code null} if
+     *         the content is compared in the current thread
+     */
+    public ForkJoinPool getForkJoinPool()
+    {
+        return this.forkJoinPool;
+    }
+
+    /**
+     * Sets the pool used to compare the modified parts (e.g. sections) of the content in parallel. The result is the
+     * same as when the content is compared in the current thread.
+     * 
+     * @param forkJoinPool the pool to use, {@code null} to compare the content in the current thread
+     */
+    public void setForkJoinPool(ForkJoinPool forkJoinPool)
+    {
+        this.forkJoinPool = forkJoinPool;
+    }
+
+    /**
+     * @return the maximum number of block comparisons, {@code 0} for no limit
+     */
+    public long getMaximumComparisons()
+    {
+        return this.maximumComparisons;
+    }
+
+    /**
+     * Limits the number of block comparisons. When the limit is reached, the remaining changes are computed coarsely:
+     * the modified subtrees (e.g. sections or paragraphs) are replaced entirely instead of being compared block by
+     * block. The result is still valid but it is marked as degraded: see {@link BlockPatch#isDegraded()} and, for the
+     * diff trees, the {@code data-xdom-diff-degraded} parameter of the root block.
+     * 
+     * @param maximumComparisons the maximum number of block comparisons, {@code 0} for no limit
+     */
+    public void setMaximumComparisons(long maximumComparisons)
+    {
+        this.maximumComparisons = maximumComparisons;
+    }
+
+    /**
+     * @return the maximum duration of the comparison in milliseconds, {@code 0} for no limit
+     */
+    public long getTimeout()
+    {
+        return this.timeout;
+    }
+
+    /**
+     * Limits the duration of the comparison. The timeout starts when the diff operation is called, so it includes the
+     * conversion of the compared trees. When the timeout expires, the remaining changes are computed coarsely, see
+     * {@link #setMaximumComparisons(long)}. The coarse comparison is linear in the size of the remaining content, so
+     * the actual duration can exceed the timeout by this amount.
+     * 
+     * @param timeout the maximum duration of the comparison in milliseconds, {@code 0} for no limit
+     */
+    public void setTimeout(long timeout)
+    {
+        this.timeout = timeout;
+    }
+
+    /**
+     * @return how the macros are compared, {@code null} to compare the content they generate like any other content
+     */
+    public BlockDiffMacroMode getMacroMode()
+    {
+        return this.macroMode;
+    }
+
+    /**
+     * Sets how the macros are compared. Comparing the macros by their source (see {@link BlockDiffMacroMode#SOURCE})
+     * avoids comparing the content they generate (e.g. a table of contents or an included page), which can be much
+     * larger than the content that was actually edited.
+     * 
+     * @param macroMode how the macros are compared, {@code null} to compare the content they generate like any other
+     *            content
+     */
+    public void setMacroMode(BlockDiffMacroMode macroMode)
+    {
+        this.macroMode = macroMode;
+    }
+
+    /**
+     * @return the key that identifies the content of the left (previous) side of the comparison, {@code null} if the
+     *         content is not identified
+     */
+    public Object getPreviousKey()
+    {
+        return this.previousKey;
+    }
+
+    /**
+     * @return the key that identifies the content of the right (next) side of the comparison, {@code null} if the
+     *         content is not identified
+     */
+    public Object getNextKey()
+    {
+        return this.nextKey;
+    }
+
+    /**
+     * Identifies the content of the compared blocks, e.g. with the reference and the version of the document they
+     * were parsed from. The {@code cached} implementations use these keys to look up their results instead of hashing
+     * the compared trees, which costs a pass over both trees. The keys must implement {@code equals} and
+     * {@code hashCode} and two blocks with the same key must have the same content, otherwise the cached result of
+     * another comparison is returned.
+     * 
+     * @param previousKey identifies the content of the left (previous) side, {@code null} to hash the content
+     * @param nextKey identifies the content of the right (next) side, {@code null} to hash the content
+     */
+    public void setKeys(Object previousKey, Object nextKey)
+    {
+        this.previousKey = previousKey;
+        this.nextKey = nextKey;
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.block.diff;
+
+import org.xwiki.stability.Unstable;
+
+/**
+ * How the macros are compared when the compared {@link org.xwiki.rendering.block.Block} trees are the result of
+ * rendering transformations, i.e. when they contain {@link org.xwiki.rendering.block.MacroMarkerBlock}s that wrap the
+ * content generated by the macros.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+@Unstable
+public enum BlockDiffMacroMode
+{
+    /**
+     * The content generated by the macros is compared like any other content. This is the default mode.
+     */
+    OUTPUT,
+
+    /**
+     * The macro markers are compared by their source only (macro identifier, parameters and content) and the content
+     * they wrap is not compared. When the source of a macro is the same on both sides, the generated content is either
+     * unchanged (if it's identical) or replaced as a whole. When the source differs, the macro marker is replaced with
+     * the content it wraps.
+     */
+    SOURCE,
+
+    /**
+     * Like {@link #SOURCE}, but the content generated by the macros whose source changed is then compared block by
+     * block, in a second pass.
+     */
+    SOURCE_THEN_CHANGED_OUTPUT
+}
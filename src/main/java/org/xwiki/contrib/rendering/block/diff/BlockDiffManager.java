@@ -19,11 +19,17 @@
  */
 package org.xwiki.contrib.rendering.block.diff;
 
+import java.util.List;
+import java.util.stream.Stream;
+
 import org.xwiki.component.annotation.Role;
+import org.xwiki.diff.Delta;
 import org.xwiki.diff.DiffException;
+import org.xwiki.diff.MergeException;
 import org.xwiki.diff.Patch;
 import org.xwiki.diff.PatchException;
 import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.Block.Axes;
 import org.xwiki.stability.Unstable;
 
 /**
@@ -43,6 +49,7 @@ public interface BlockDiffManager
      * <li>block data (custom fields, specific to each block type)</li>
      * <li>child blocks, see {@link Block#getChildren()}.</li>
      * </ul>
+     * The given blocks are not modified, so they can be shared (e.g. cached) and compared concurrently.
      * 
      * @param previous the block before the modification
      * @param next the block after the modification
@@ -52,7 +59,85 @@ public interface BlockDiffManager
     Patch<Block> diff(Block previous, Block next) throws DiffException;
 
     /**
-     * Applies the given patch to the specified block.
+     * Computes the changes between two blocks using the given configuration. See {@link #diff(Block, Block)}.
+     * 
+     * @param previous the block before the modification
+     * @param next the block after the modification
+     * @param configuration how to compute the changes, {@code null} to use the default configuration
+     * @return a patch that can transform previous into next
+     * @throws DiffException if computing the changes fails
+     */
+    default Patch<Block> diff(Block previous, Block next, BlockDiffConfiguration configuration) throws DiffException
+    {
+        return diff(previous, next);
+    }
+
+    /**
+     * Checks if two blocks differ, in the sense of {@link #diff(Block, Block)}, without computing the changes.
+     * Implementations should compare the blocks in a single pass that stops at the first difference, which is much
+     * faster than computing a patch. The given blocks are not modified.
+     * 
+     * @param previous the block before the modification
+     * @param next the block after the modification
+     * @return {@code true} if the given blocks differ, {@code false} otherwise
+     * @throws DiffException if comparing the blocks fails
+     */
+    default boolean hasChanges(Block previous, Block next) throws DiffException
+    {
+        return !diff(previous, next).isEmpty();
+    }
+
+    /**
+     * Computes roughly how much two blocks differ, without computing the changes. Implementations should skip the
+     * identical subtrees and count the blocks of the subtrees that differ instead of aligning their descendants, so the
+     * counts of deleted and inserted blocks are upper bounds. The given blocks are not modified.
+     * 
+     * @param previous the block before the modification
+     * @param next the block after the modification
+     * @return statistics about the changes between the given blocks
+     * @throws DiffException if comparing the blocks fails
+     */
+    default BlockChangeStatistics getChangeStatistics(Block previous, Block next) throws DiffException
+    {
+        int deleted = 0;
+        int inserted = 0;
+        for (Delta<Block> delta : diff(previous, next)) {
+            deleted += delta.getPrevious().getElements().stream().filter(block -> !(block instanceof EndBlock)).count();
+            inserted += delta.getNext().getElements().stream().filter(block -> !(block instanceof EndBlock)).count();
+        }
+        return new BlockChangeStatistics(
+            previous == null ? 0 : previous.getBlocks(block -> true, Axes.DESCENDANT_OR_SELF).size(),
+            next == null ? 0 : next.getBlocks(block -> true, Axes.DESCENDANT_OR_SELF).size(), deleted, inserted);
+    }
+
+    /**
+     * Computes the changes between each pair of blocks, see {@link #diff(Block, Block, BlockDiffConfiguration)}. The
+     * pairs are read from the given stream as the results are consumed and the results are returned in the order in
+     * which the comparisons complete. Implementations can compare multiple pairs in parallel, using the executor and
+     * the limit of pending comparisons of the configuration. A failed comparison doesn't stop the batch: its result
+     * holds the error instead.
+     * 
+     * @param <K> the type of key that identifies the compared pairs
+     * @param pairs the pairs to compare, where the left side is the block before the modification
+     * @param configuration how to execute the batch and compute the changes, {@code null} to use the default
+     *            configuration
+     * @return the patch of each pair; the returned stream should be closed if it is not consumed entirely, in order to
+     *         cancel the pending comparisons
+     */
+    default <K> Stream<BlockDiffBatchResult<K, Patch<Block>>> diffAll(Stream<BlockDiffPair<K>> pairs,
+        BlockDiffBatchConfiguration configuration)
+    {
+        return pairs.map(pair -> {
+            try {
+                return new BlockDiffBatchResult<>(pair, diff(pair.getLeft(), pair.getRight(), configuration), null);
+            } catch (Exception e) {
+                return new BlockDiffBatchResult<>(pair, null, e);
+            }
+        });
+    }
+
+    /**
+     * Applies the given patch to the specified block. The given block is not modified.
      * 
      * @param previous the block before the modification
      * @param patch the changes to apply
@@ -62,7 +147,7 @@ public interface BlockDiffManager
     Block apply(Block previous, Patch<Block> patch) throws PatchException;
 
     /**
-     * Restores the given patch on the specified block.
+     * Restores the given patch on the specified block. The given block is not modified.
      * 
      * @param next the block after the modification
      * @param patch the changes to restore
@@ -70,4 +155,40 @@ public interface BlockDiffManager
      * @throws PatchException if it fails to restore the patch
      */
     Block restore(Block next, Patch<Block> patch) throws PatchException;
+
+    /**
+     * Composes a sequence of patches (e.g. the patches between consecutive revisions of a document) into a single
+     * patch, without computing the intermediate blocks. The cost depends on the size of the changes and not on the
+     * size of the patched blocks.
+     * 
+     * @param patches the patches to compose, where each patch applies to the output of the previous patch
+     * @return a patch that is equivalent to applying the given patches in order
+     * @throws PatchException if the given patches don't follow each other
+     */
+    Patch<Block> compose(List<Patch<Block>> patches) throws PatchException;
+
+    /**
+     * Inverts a patch, without computing the patched blocks.
+     * 
+     * @param patch a patch that transforms a block A into a block B
+     * @return a patch that transforms the block B into the block A
+     * @throws PatchException if the patch doesn't have the content of the deleted blocks (see
+     *             {@link BlockPatchCodec#encode(Patch, boolean)})
+     */
+    Patch<Block> invert(Patch<Block> patch) throws PatchException;
+
+    /**
+     * Merges two versions of a block that have been modified separately, starting from the same block (three-way
+     * merge). The changes are computed and merged on the list representation of the blocks, so the parts of the tree
+     * that were modified in only one version are merged without conflicts, even inside the same paragraph. When both
+     * versions modify the same range of blocks in different ways, the previous version is kept and a conflict is
+     * reported. The given blocks are not modified.
+     * 
+     * @param common the common ancestor of the merged versions
+     * @param previous the previous (e.g. current) version
+     * @param next the next (e.g. new) version
+     * @return the merged block and the conflicts
+     * @throws MergeException if computing the changes fails
+     */
+    BlockMergeResult merge(Block common, Block previous, Block next) throws MergeException;
 }
@@ -19,9 +19,12 @@
  */
 package org.xwiki.contrib.rendering.block.diff;
 
+import java.util.stream.Stream;
+
 import org.xwiki.component.annotation.Role;
 import org.xwiki.diff.DiffException;
 import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.listener.Listener;
 import org.xwiki.stability.Unstable;
 
 /**
@@ -51,4 +54,128 @@ public interface BlockDiffMarker
      * @throws DiffException if we fail to compute the difference
      */
     boolean markDiff(Block left, Block right) throws DiffException;
+
+    /**
+     * Same as {@link #markDiff(Block, Block)} but computes the differences using the given configuration.
+     * 
+     * @param left the left side of the comparison
+     * @param right the right side of the comparison
+     * @param configuration how to compute the differences, {@code null} to use the default configuration
+     * @return {@code true} if there is at least one difference between left and right side that has been marked,
+     *         {@code false} otherwise
+     * @throws DiffException if we fail to compute the difference
+     */
+    default boolean markDiff(Block left, Block right, BlockDiffConfiguration configuration) throws DiffException
+    {
+        return markDiff(left, right);
+    }
+
+    /**
+     * Computes the differences between two {@link Block}s of content and returns a new tree (the diff tree) where the
+     * changes are marked. Unlike {@link #markDiff(Block, Block)}, the given blocks are not modified, so they can be
+     * shared (e.g. cached) and compared concurrently.
+     * 
+     * @param left the left side of the comparison
+     * @param right the right side of the comparison
+     * @return the diff tree, or the left side itself if there are no differences to mark
+     * @throws DiffException if we fail to compute the difference
+     */
+    Block getDiffTree(Block left, Block right) throws DiffException;
+
+    /**
+     * Same as {@link #getDiffTree(Block, Block)} but computes the differences using the given configuration.
+     * 
+     * @param left the left side of the comparison
+     * @param right the right side of the comparison
+     * @param configuration how to compute the differences, {@code null} to use the default configuration
+     * @return the diff tree, or the left side itself if there are no differences to mark
+     * @throws DiffException if we fail to compute the difference
+     */
+    default Block getDiffTree(Block left, Block right, BlockDiffConfiguration configuration) throws DiffException
+    {
+        return getDiffTree(left, right);
+    }
+
+    /**
+     * Computes the differences between two {@link Block}s of content and sends the rendering events of the diff tree
+     * (see {@link #getDiffTree(Block, Block)}) to the given listener (e.g. a renderer). Implementations can generate
+     * the events directly from the compared blocks, without building the diff tree, in which case only the changes
+     * that can be rendered with event parameters are marked. The given blocks are not modified.
+     * 
+     * @param left the left side of the comparison
+     * @param right the right side of the comparison
+     * @param listener the listener that receives the rendering events of the diff tree
+     * @param configuration how to compute the differences, {@code null} to use the default configuration
+     * @throws DiffException if we fail to compute the difference
+     */
+    default void streamDiff(Block left, Block right, Listener listener, BlockDiffConfiguration configuration)
+        throws DiffException
+    {
+        getDiffTree(left, right, configuration).traverse(listener);
+    }
+
+    /**
+     * Marks the differences of each pair of blocks, see {@link #markDiff(Block, Block, BlockDiffConfiguration)}. The
+     * pairs are read from the given stream as the results are consumed and the results are returned in the order in
+     * which the comparisons complete. Implementations can compare multiple pairs in parallel, using the executor and
+     * the limit of pending comparisons of the configuration. A failed comparison doesn't stop the batch: its result
+     * holds the error instead.
+     * 
+     * @param <K> the type of key that identifies the compared pairs
+     * @param pairs the pairs to compare; the left side of each pair is modified
+     * @param configuration how to execute the batch and compute the differences, {@code null} to use the default
+     *            configuration
+     * @return whether differences have been marked, for each pair; the returned stream should be closed if it is not
+     *         consumed entirely, in order to cancel the pending comparisons
+     */
+    default <K> Stream<BlockDiffBatchResult<K, Boolean>> markDiffAll(Stream<BlockDiffPair<K>> pairs,
+        BlockDiffBatchConfiguration configuration)
+    {
+        return pairs.map(pair -> {
+            try {
+                return new BlockDiffBatchResult<>(pair, markDiff(pair.getLeft(), pair.getRight(), configuration),
+                    null);
+            } catch (Exception e) {
+                return new BlockDiffBatchResult<>(pair, null, e);
+            }
+        });
+    }
+
+    /**
+     * Computes the diff tree of each pair of blocks, see {@link #getDiffTree(Block, Block, BlockDiffConfiguration)}.
+     * The pairs are compared as described in {@link #markDiffAll(Stream, BlockDiffBatchConfiguration)}, but the given
+     * blocks are not modified.
+     * 
+     * @param <K> the type of key that identifies the compared pairs
+     * @param pairs the pairs to compare
+     * @param configuration how to execute the batch and compute the differences, {@code null} to use the default
+     *            configuration
+     * @return the diff tree of each pair; the returned stream should be closed if it is not consumed entirely, in
+     *         order to cancel the pending comparisons
+     */
+    default <K> Stream<BlockDiffBatchResult<K, Block>> getDiffTreeAll(Stream<BlockDiffPair<K>> pairs,
+        BlockDiffBatchConfiguration configuration)
+    {
+        return pairs.map(pair -> {
+            try {
+                return new BlockDiffBatchResult<>(pair, getDiffTree(pair.getLeft(), pair.getRight(), configuration),
+                    null);
+            } catch (Exception e) {
+                return new BlockDiffBatchResult<>(pair, null, e);
+            }
+        });
+    }
+
+    /**
+     * Starts a comparison where the right side is modified incrementally (e.g. by a real-time editor), see
+     * {@link BlockDiffSession}. The given blocks are not modified.
+     * 
+     * @param left the left side of the comparison
+     * @param right the initial right side of the comparison
+     * @param configuration how to compute the differences, {@code null} to use the default configuration
+     * @return the new session
+     * @throws DiffException if we fail to compute the initial difference
+     */
+    BlockDiffSession createSession(Block left, Block right, BlockDiffConfiguration configuration)
+        throws DiffException;
 }
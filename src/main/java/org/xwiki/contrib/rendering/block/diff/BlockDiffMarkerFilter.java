@@ -19,6 +19,9 @@
  */
 package org.xwiki.contrib.rendering.block.diff;
 
+import java.util.Collections;
+import java.util.Set;
+
 import org.xwiki.component.annotation.Role;
 import org.xwiki.rendering.block.Block;
 import org.xwiki.stability.Unstable;
@@ -27,6 +30,10 @@ import org.xwiki.stability.Unstable;
  * Used to filter an XDOM with diff markers (deleted and inserted blocks) so that it can be properly rendered. This is
  * needed because {@link BlockDiffMarker} is using block parameters to mark deleted and inserted blocks but this is not
  * enough to be able to render the XDOM diff because block parameters are not always rendered.
+ * <p>
+ * Filters that declare the types of blocks they handle (see {@link #getBlockTypes()}) are called only for the marked
+ * blocks of these types, in a single pass over the marked blocks shared by all filters. The other filters are called
+ * with the entire diff tree.
  * 
  * @version $Id$
  * @since 1.0
@@ -41,4 +48,26 @@ public interface BlockDiffMarkerFilter
      * @param block the block (with diff markers) that needs to be filtered
      */
     void filter(Block block);
+
+    /**
+     * @return the types of marked blocks handled by this filter; if empty, the filter is called with the entire diff
+     *         tree (see {@link #filter(Block)}), otherwise only with the marked blocks of the returned types (see
+     *         {@link #filterMarkedBlock(Block)})
+     */
+    default Set<Class<? extends Block>> getBlockTypes()
+    {
+        return Collections.emptySet();
+    }
+
+    /**
+     * Modify the given marked block (and its parent if needed) so that its diff marker can be properly rendered. This
+     * method is called, in document order, for each block that has been marked as deleted or inserted and whose type
+     * is one of the types declared by {@link #getBlockTypes()}.
+     * 
+     * @param markedBlock a block that has been marked as deleted or inserted
+     */
+    default void filterMarkedBlock(Block markedBlock)
+    {
+        filter(markedBlock);
+    }
 }
@@ -0,0 +1,206 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.block.diff;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.xwiki.stability.Unstable;
+
+/**
+ * The measurements of a diff operation, passed to the {@link BlockDiffMetricsListener}s once the operation is done.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+@Unstable
+public class BlockDiffMetrics
+{
+    private final String operation;
+
+    private final Map<BlockDiffPhase, Long> durations = new EnumMap<>(BlockDiffPhase.class);
+
+    private int previousSize;
+
+    private int nextSize;
+
+    private int deltaCount;
+
+    private int markedBlockCount;
+
+    private long estimatedAllocation;
+
+    private boolean degraded;
+
+    /**
+     * Creates new metrics.
+     * 
+     * @param operation the measured operation (e.g. {@code diff} or {@code getDiffTree})
+     */
+    public BlockDiffMetrics(String operation)
+    {
+        this.operation = operation;
+    }
+
+    /**
+     * @return the measured operation (e.g. {@code diff} or {@code getDiffTree})
+     */
+    public String getOperation()
+    {
+        return this.operation;
+    }
+
+    /**
+     * @param phase a phase of the operation
+     * @return the time spent in the specified phase, in nanoseconds
+     */
+    public long getDuration(BlockDiffPhase phase)
+    {
+        return this.durations.getOrDefault(phase, 0L);
+    }
+
+    /**
+     * Adds time to a phase.
+     * 
+     * @param phase a phase of the operation
+     * @param duration the time to add, in nanoseconds
+     */
+    public void addDuration(BlockDiffPhase phase, long duration)
+    {
+        this.durations.merge(phase, duration, Long::sum);
+    }
+
+    /**
+     * @return the time spent in all the phases, in nanoseconds
+     */
+    public long getTotalDuration()
+    {
+        long total = 0;
+        for (long duration : this.durations.values()) {
+            total += duration;
+        }
+        return total;
+    }
+
+    /**
+     * @return the size of the list representation of the previous (left) block, i.e. twice its number of blocks
+     */
+    public int getPreviousSize()
+    {
+        return this.previousSize;
+    }
+
+    /**
+     * @param previousSize the size of the list representation of the previous (left) block
+     */
+    public void setPreviousSize(int previousSize)
+    {
+        this.previousSize = previousSize;
+    }
+
+    /**
+     * @return the size of the list representation of the next (right) block, i.e. twice its number of blocks
+     */
+    public int getNextSize()
+    {
+        return this.nextSize;
+    }
+
+    /**
+     * @param nextSize the size of the list representation of the next (right) block
+     */
+    public void setNextSize(int nextSize)
+    {
+        this.nextSize = nextSize;
+    }
+
+    /**
+     * @return the number of deltas of the computed patch
+     */
+    public int getDeltaCount()
+    {
+        return this.deltaCount;
+    }
+
+    /**
+     * @param deltaCount the number of deltas of the computed patch
+     */
+    public void setDeltaCount(int deltaCount)
+    {
+        this.deltaCount = deltaCount;
+    }
+
+    /**
+     * @return the number of blocks marked as deleted or inserted
+     */
+    public int getMarkedBlockCount()
+    {
+        return this.markedBlockCount;
+    }
+
+    /**
+     * @param markedBlockCount the number of blocks marked as deleted or inserted
+     */
+    public void setMarkedBlockCount(int markedBlockCount)
+    {
+        this.markedBlockCount = markedBlockCount;
+    }
+
+    /**
+     * @return a rough estimate of the memory allocated by the operation, in bytes
+     */
+    public long getEstimatedAllocation()
+    {
+        return this.estimatedAllocation;
+    }
+
+    /**
+     * @param estimatedAllocation a rough estimate of the memory allocated by the operation, in bytes
+     */
+    public void addEstimatedAllocation(long estimatedAllocation)
+    {
+        this.estimatedAllocation += estimatedAllocation;
+    }
+
+    /**
+     * @return {@code true} if the diff budget was exhausted (see {@link BlockPatch#isDegraded()}), {@code false}
+     *         otherwise
+     */
+    public boolean isDegraded()
+    {
+        return this.degraded;
+    }
+
+    /**
+     * @param degraded whether the diff budget was exhausted
+     */
+    public void setDegraded(boolean degraded)
+    {
+        this.degraded = degraded;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s: %s ns %s, sizes %s / %s, %s deltas, %s marked blocks, ~%s bytes%s", this.operation,
+            getTotalDuration(), this.durations, this.previousSize, this.nextSize, this.deltaCount,
+            this.markedBlockCount, this.estimatedAllocation, this.degraded ? ", degraded" : "");
+    }
+}
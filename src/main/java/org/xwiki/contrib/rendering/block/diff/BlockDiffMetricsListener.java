@@ -0,0 +1,53 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.block.diff;
+
+import org.xwiki.component.annotation.Role;
+import org.xwiki.stability.Unstable;
+
+/**
+ * Receives the measurements of the diff operations performed by the default {@link BlockDiffManager} and
+ * {@link BlockDiffMarker}. The operations are measured only if at least one listener is registered and enabled, so
+ * there's no overhead by default. Listeners are called synchronously, at the end of each operation, so they should
+ * be fast and thread safe.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+@Role
+@Unstable
+public interface BlockDiffMetricsListener
+{
+    /**
+     * Called at the end of a diff operation.
+     * 
+     * @param metrics the measurements of the operation
+     */
+    void onDiff(BlockDiffMetrics metrics);
+
+    /**
+     * @return {@code true} if this listener should receive the measurements, {@code false} if it's registered but
+     *         turned off (the operations are not measured when all the listeners are turned off)
+     */
+    default boolean isEnabled()
+    {
+        return true;
+    }
+}
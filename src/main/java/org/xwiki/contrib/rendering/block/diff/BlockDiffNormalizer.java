@@ -0,0 +1,51 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.block.diff;
+
+import org.xwiki.component.annotation.Role;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.stability.Unstable;
+
+/**
+ * Canonicalizes the blocks before they are compared by the {@link BlockDiffMarker}s, so that the changes without any
+ * visual difference (e.g. a generated identifier) are ignored. The blocks are compared without their child blocks, so
+ * a normalizer only has to handle the block itself: its parameters and its data. All the registered normalizers are
+ * applied, in turn, to each compared block. The normalized block is used only to compare (and fingerprint) the block,
+ * it doesn't end up in the diff tree.
+ * <p>
+ * Note that {@link BlockDiffManager} doesn't normalize the blocks, because its patches must transform exactly the
+ * previous block into the next block.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+@Role
+@Unstable
+public interface BlockDiffNormalizer
+{
+    /**
+     * Normalizes a block before it is compared.
+     * 
+     * @param block the block to normalize; its child blocks are compared separately so they must be ignored
+     * @return the given block if there's nothing to normalize, otherwise a block of the same type, without child
+     *         blocks, to compare instead; the given block must not be modified
+     */
+    Block normalize(Block block);
+}
@@ -0,0 +1,86 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.block.diff;
+
+import org.xwiki.rendering.block.Block;
+import org.xwiki.stability.Unstable;
+
+/**
+ * Two blocks to compare as part of a batch (see {@link BlockDiffManager#diffAll(java.util.stream.Stream,
+ * BlockDiffBatchConfiguration)}), identified by a key (e.g. the reference of the document) so that the results, which
+ * are returned in the order in which they complete, can be matched with the compared blocks.
+ *
+ * @param <K> the type of key
+ * @version $Id$
+ * @since 1.0
+ */
+@Unstable
+public class BlockDiffPair<K>
+{
+    private final K key;
+
+    private final Block left;
+
+    private final Block right;
+
+    /**
+     * Creates a new pair.
+     * 
+     * @param key identifies the pair
+     * @param left the left side of the comparison (e.g. the previous version)
+     * @param right the right side of the comparison (e.g. the next version)
+     */
+    public BlockDiffPair(K key, Block left, Block right)
+    {
+        this.key = key;
+        this.left = left;
+        this.right = right;
+    }
+
+    /**
+     * @return the key that identifies the pair
+     */
+    public K getKey()
+    {
+        return this.key;
+    }
+
+    /**
+     * @return the left side of the comparison (e.g. the previous version)
+     */
+    public Block getLeft()
+    {
+        return this.left;
+    }
+
+    /**
+     * @return the right side of the comparison (e.g. the next version)
+     */
+    public Block getRight()
+    {
+        return this.right;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.valueOf(this.key);
+    }
+}
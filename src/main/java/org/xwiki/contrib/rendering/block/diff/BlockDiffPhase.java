@@ -0,0 +1,62 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.block.diff;
+
+import org.xwiki.stability.Unstable;
+
+/**
+ * The phases of a diff operation, measured separately (see {@link BlockDiffMetrics}).
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+@Unstable
+public enum BlockDiffPhase
+{
+    /**
+     * Converting the compared trees into their list representation.
+     */
+    FLATTEN,
+
+    /**
+     * Fingerprinting and comparing the list representations, and building the patch.
+     */
+    DIFF,
+
+    /**
+     * Merging the changes with the left side and marking the deleted and inserted blocks.
+     */
+    MARK,
+
+    /**
+     * Merging the changes made on both sides with their common ancestor (see {@link BlockDiffManager#merge}).
+     */
+    MERGE,
+
+    /**
+     * Rebuilding the diff tree from its list representation.
+     */
+    REBUILD,
+
+    /**
+     * Running the {@link BlockDiffMarkerFilter}s on the diff tree.
+     */
+    FILTER
+}
@@ -0,0 +1,68 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.block.diff;
+
+import org.xwiki.diff.DiffException;
+import org.xwiki.diff.Patch;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.stability.Unstable;
+
+/**
+ * Keeps the differences between two {@link Block}s of content up to date while the right side is modified, e.g. to
+ * show the changes made in a real-time editor. The left side is flattened and fingerprinted once, and each change of
+ * the right side is compared only with the corresponding range of the left side. See
+ * {@link BlockDiffMarker#createSession(Block, Block, BlockDiffConfiguration)}.
+ * <p>
+ * A session is not thread safe.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+@Unstable
+public interface BlockDiffSession
+{
+    /**
+     * Replaces a subtree of the right side and updates the differences.
+     * 
+     * @param path the position of the replaced block, as the indexes of the child blocks that lead to it starting
+     *            from the root of the right side; an empty path replaces the whole right side
+     * @param block the new block; it is copied, so it can be modified afterwards without affecting the session
+     * @throws DiffException if computing the differences fails
+     * @throws IndexOutOfBoundsException if the given path doesn't lead to a block of the right side
+     */
+    void replace(int[] path, Block block) throws DiffException;
+
+    /**
+     * @return the current right side of the comparison, which must not be modified
+     */
+    Block getRight();
+
+    /**
+     * @return a patch that transforms the left side into the current right side
+     */
+    Patch<Block> getPatch();
+
+    /**
+     * @return the diff tree of the left side and the current right side (see
+     *         {@link BlockDiffMarker#getDiffTree(Block, Block)}), or the left side itself if there are no differences
+     * @throws DiffException if building the diff tree fails
+     */
+    Block getDiffTree() throws DiffException;
+}
@@ -0,0 +1,101 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.block.diff;
+
+import java.util.List;
+
+import org.xwiki.rendering.block.Block;
+import org.xwiki.stability.Unstable;
+
+/**
+ * A conflict found while merging two versions of a block (see {@link BlockDiffManager#merge(Block, Block, Block)}):
+ * both versions changed the same range of their common ancestor, in different ways. The conflicting ranges are
+ * fragments of the list representation of the merged blocks, where the end of each block is marked with an
+ * {@link EndBlock}.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+@Unstable
+public class BlockMergeConflict
+{
+    private final int index;
+
+    private final List<Block> common;
+
+    private final List<Block> previous;
+
+    private final List<Block> next;
+
+    /**
+     * Creates a new conflict.
+     * 
+     * @param index the index of the conflicting range in the list representation of the common ancestor
+     * @param common the conflicting range, in the common ancestor
+     * @param previous the conflicting range, in the previous version
+     * @param next the conflicting range, in the next version
+     */
+    public BlockMergeConflict(int index, List<Block> common, List<Block> previous, List<Block> next)
+    {
+        this.index = index;
+        this.common = common;
+        this.previous = previous;
+        this.next = next;
+    }
+
+    /**
+     * @return the index of the conflicting range in the list representation of the common ancestor
+     */
+    public int getIndex()
+    {
+        return this.index;
+    }
+
+    /**
+     * @return the conflicting range, in the common ancestor
+     */
+    public List<Block> getCommon()
+    {
+        return this.common;
+    }
+
+    /**
+     * @return the conflicting range, in the previous version; this is the version kept in the merged block
+     */
+    public List<Block> getPrevious()
+    {
+        return this.previous;
+    }
+
+    /**
+     * @return the conflicting range, in the next version
+     */
+    public List<Block> getNext()
+    {
+        return this.next;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("Conflict at index [%s]: common %s, previous %s, next %s", this.index, this.common,
+            this.previous, this.next);
+    }
+}
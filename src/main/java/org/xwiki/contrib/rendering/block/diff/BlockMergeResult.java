@@ -0,0 +1,75 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.block.diff;
+
+import java.util.List;
+
+import org.xwiki.rendering.block.Block;
+import org.xwiki.stability.Unstable;
+
+/**
+ * The result of merging two versions of a block, see {@link BlockDiffManager#merge(Block, Block, Block)}.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+@Unstable
+public class BlockMergeResult
+{
+    private final Block merged;
+
+    private final List<BlockMergeConflict> conflicts;
+
+    /**
+     * Creates a new merge result.
+     * 
+     * @param merged the merged block
+     * @param conflicts the conflicts found while merging
+     */
+    public BlockMergeResult(Block merged, List<BlockMergeConflict> conflicts)
+    {
+        this.merged = merged;
+        this.conflicts = conflicts;
+    }
+
+    /**
+     * @return the merged block, where the conflicts are resolved by keeping the previous version
+     */
+    public Block getMerged()
+    {
+        return this.merged;
+    }
+
+    /**
+     * @return the conflicts found while merging, in the order of their index
+     */
+    public List<BlockMergeConflict> getConflicts()
+    {
+        return this.conflicts;
+    }
+
+    /**
+     * @return {@code true} if the merge found conflicts, {@code false} otherwise
+     */
+    public boolean hasConflicts()
+    {
+        return !this.conflicts.isEmpty();
+    }
+}
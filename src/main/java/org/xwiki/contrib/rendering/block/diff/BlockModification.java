@@ -0,0 +1,78 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.block.diff;
+
+import java.io.Serializable;
+
+import org.xwiki.stability.Unstable;
+
+/**
+ * A block whose own attributes (parameters or data, e.g. the class of a table or the reference of a link) changed
+ * while it kept its place in the tree. In the list representation of the compared blocks, where the end of each block
+ * is marked with an {@link EndBlock}, the start of the block is replaced while its end is unchanged, so the patch that
+ * holds the modification (see {@link BlockPatch#getModifications()}) deletes the previous start and inserts the next
+ * one. The child blocks are not part of the modification: they are either unchanged or changed by other deltas.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+@Unstable
+public class BlockModification implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    private final int previousIndex;
+
+    private final int nextIndex;
+
+    /**
+     * Creates a new modification.
+     * 
+     * @param previousIndex the start position of the modified block in the list representation of the previous block
+     * @param nextIndex the start position of the modified block in the list representation of the next block
+     */
+    public BlockModification(int previousIndex, int nextIndex)
+    {
+        this.previousIndex = previousIndex;
+        this.nextIndex = nextIndex;
+    }
+
+    /**
+     * @return the start position of the modified block in the list representation of the previous block
+     */
+    public int getPreviousIndex()
+    {
+        return this.previousIndex;
+    }
+
+    /**
+     * @return the start position of the modified block in the list representation of the next block
+     */
+    public int getNextIndex()
+    {
+        return this.nextIndex;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("Modify [%s] to [%s]", this.previousIndex, this.nextIndex);
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.block.diff;
+
+import java.io.Serializable;
+
+import org.xwiki.stability.Unstable;
+
+/**
+ * A subtree that has been moved: it is deleted from one place of the previous block and inserted, unmodified, at
+ * another place of the next block. The positions refer to the list representations of the compared blocks, where the
+ * end of each block is marked with an {@link EndBlock}, so they match the indexes of the deltas of the patch that
+ * holds the move (see {@link BlockPatch#getMoves()}).
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+@Unstable
+public class BlockMove implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    private final int previousIndex;
+
+    private final int nextIndex;
+
+    private final int size;
+
+    /**
+     * Creates a new move.
+     * 
+     * @param previousIndex the start position of the moved subtree in the list representation of the previous block
+     * @param nextIndex the start position of the moved subtree in the list representation of the next block
+     * @param size the size of the moved subtree, in the list representation (i.e. twice the number of blocks)
+     */
+    public BlockMove(int previousIndex, int nextIndex, int size)
+    {
+        this.previousIndex = previousIndex;
+        this.nextIndex = nextIndex;
+        this.size = size;
+    }
+
+    /**
+     * @return the start position of the moved subtree in the list representation of the previous block
+     */
+    public int getPreviousIndex()
+    {
+        return this.previousIndex;
+    }
+
+    /**
+     * @return the start position of the moved subtree in the list representation of the next block
+     */
+    public int getNextIndex()
+    {
+        return this.nextIndex;
+    }
+
+    /**
+     * @return the size of the moved subtree, in the list representation (i.e. twice the number of blocks)
+     */
+    public int getSize()
+    {
+        return this.size;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("Move [%s, %s] to [%s, %s]", this.previousIndex, this.previousIndex + this.size - 1,
+            this.nextIndex, this.nextIndex + this.size - 1);
+    }
+}
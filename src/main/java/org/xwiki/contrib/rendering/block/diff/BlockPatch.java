@@ -0,0 +1,66 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.block.diff;
+
+import java.util.List;
+
+import org.xwiki.diff.Patch;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.stability.Unstable;
+
+/**
+ * A patch computed between two {@link Block}s of content, see {@link BlockDiffManager#diff(Block, Block)}. The
+ * patches computed by the default {@link BlockDiffManager} implement this interface.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+@Unstable
+public interface BlockPatch extends Patch<Block>
+{
+    /**
+     * A degraded patch is still valid (it transforms the previous block into the next block) but some of its changes
+     * are coarser than needed (e.g. an entire paragraph is replaced although only a word was modified) because the
+     * diff budget was exhausted, see {@link BlockDiffConfiguration#setMaximumComparisons(long)} and
+     * {@link BlockDiffConfiguration#setTimeout(long)}.
+     * 
+     * @return {@code true} if some of the changes are coarser than needed, {@code false} otherwise
+     */
+    boolean isDegraded();
+
+    /**
+     * The subtrees (e.g. sections, tables or paragraphs) that are deleted from one place and inserted unmodified at
+     * another place. The patch still holds the corresponding deletions and insertions, so it can be applied as usual;
+     * the moves let the callers (e.g. {@link BlockDiffMarker}) show the moved content once. Small subtrees are not
+     * reported and the moves are not detected when the patch is degraded.
+     * 
+     * @return the moved subtrees, in the order of their position in the next block
+     */
+    List<BlockMove> getMoves();
+
+    /**
+     * The blocks whose own parameters or data changed while they kept their place in the tree and their child blocks.
+     * Like the moves, the modifications are described by the deltas of the patch; they let the callers (e.g.
+     * {@link BlockDiffMarker}) mark the modified block without marking its descendants.
+     * 
+     * @return the modified blocks, in the order of their position
+     */
+    List<BlockModification> getModifications();
+}
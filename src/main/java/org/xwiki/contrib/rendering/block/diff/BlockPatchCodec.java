@@ -0,0 +1,64 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.block.diff;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.xwiki.component.annotation.Role;
+import org.xwiki.diff.Patch;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.stability.Unstable;
+
+/**
+ * Encodes the patches computed by {@link BlockDiffManager} in a compact binary format, that stores only the changed
+ * index ranges and the content of the inserted blocks (block types, parameters and strings being stored only once per
+ * patch). The deleted blocks are stored as fingerprints, which is enough to verify the patch when it is applied, unless
+ * the patch is encoded as reversible.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+@Role
+@Unstable
+public interface BlockPatchCodec
+{
+    /**
+     * Encodes the given patch.
+     * 
+     * @param patch the patch to encode
+     * @param reversible {@code true} to store also the content of the deleted blocks, which is needed in order to
+     *            restore the decoded patch (see {@link BlockDiffManager#restore(Block, Patch)}), {@code false} to
+     *            store only their fingerprints, in which case the decoded patch can only be applied
+     * @return the encoded patch
+     * @throws IOException if the patch contains blocks that cannot be encoded
+     */
+    byte[] encode(Patch<Block> patch, boolean reversible) throws IOException;
+
+    /**
+     * Decodes a patch. Only the inserted (and, for reversible patches, deleted) blocks are created, without their child
+     * blocks; the patch can be passed directly to {@link BlockDiffManager#apply(Block, Patch)}.
+     * 
+     * @param buffer the encoded patch, read from its current position (which is moved after the patch)
+     * @return the decoded patch
+     * @throws IOException if the given buffer doesn't contain a valid patch
+     */
+    Patch<Block> decode(ByteBuffer buffer) throws IOException;
+}
@@ -0,0 +1,65 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.block.diff;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import org.xwiki.diff.Patch;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.stability.Unstable;
+
+/**
+ * A sequence of patches (e.g. the history of a document, as a chain of patches starting from its first version)
+ * stored in the compact format of {@link BlockPatchCodec}. Loading a patch reads and decodes only that patch, and the
+ * loaded patches can be passed directly to {@link BlockDiffManager#apply(Block, Patch)}. See
+ * {@link BlockPatchStoreFactory} to open a store.
+ * <p>
+ * Implementations are thread safe.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+@Unstable
+public interface BlockPatchStore extends Closeable
+{
+    /**
+     * Adds a patch at the end of the store.
+     * 
+     * @param patch the patch to add
+     * @return the index of the added patch
+     * @throws IOException if the patch cannot be encoded or written
+     */
+    int add(Patch<Block> patch) throws IOException;
+
+    /**
+     * Loads a patch from the store.
+     * 
+     * @param index the index of the patch to load
+     * @return the patch
+     * @throws IOException if the patch cannot be read or decoded
+     */
+    Patch<Block> get(int index) throws IOException;
+
+    /**
+     * @return the number of stored patches
+     */
+    int size();
+}
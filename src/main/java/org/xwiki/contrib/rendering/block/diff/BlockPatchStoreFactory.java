@@ -0,0 +1,60 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.block.diff;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.xwiki.component.annotation.Role;
+import org.xwiki.stability.Unstable;
+
+/**
+ * Opens the {@link BlockPatchStore}s kept in files. Each patch is stored as its length (4 bytes) followed by the patch
+ * encoded with {@link BlockPatchCodec}, and the patches are appended to the file.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+@Role
+@Unstable
+public interface BlockPatchStoreFactory
+{
+    /**
+     * Opens (or creates) a patch store. The file is not modified when it is opened: if its last patch is incomplete
+     * (e.g. because the process stopped while writing it) the store cannot be opened until the file is recovered with
+     * {@link #recover(Path)}.
+     * 
+     * @param file the file where the patches are stored
+     * @param reversible whether to store the content of the deleted blocks, which is needed in order to restore the
+     *            stored patches (see {@link BlockPatchCodec#encode(org.xwiki.diff.Patch, boolean)})
+     * @return the patch store
+     * @throws IOException if the file cannot be opened or if it doesn't contain a sequence of complete patches
+     */
+    BlockPatchStore open(Path file, boolean reversible) throws IOException;
+
+    /**
+     * Drops the incomplete patch found at the end of the given file, if any, so that the file can be opened again.
+     * 
+     * @param file the file where the patches are stored
+     * @return the number of bytes dropped from the end of the file
+     * @throws IOException if the file cannot be read or truncated
+     */
+    long recover(Path file) throws IOException;
+}
@@ -48,6 +48,16 @@ public class EndBlock extends AbstractBlock
         this.type = block.getClass();
     }
 
+    /**
+     * Creates a new instance to mark the end of a block of the given type.
+     * 
+     * @param type the type of block to end
+     */
+    public EndBlock(Class<? extends Block> type)
+    {
+        this.type = type;
+    }
+
     /**
      * @return the block type
      */
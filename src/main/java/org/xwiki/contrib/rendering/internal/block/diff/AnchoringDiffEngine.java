@@ -0,0 +1,77 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+/**
+ * Prepares the ranges to compare before running the actual diff algorithm: the common prefix and suffix are skipped
+ * and the elements that appear only once in both ranges are used to split the remaining ranges into smaller ranges,
+ * which are compared with the wrapped diff engine.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+public class AnchoringDiffEngine implements DiffEngine
+{
+    private final DiffEngine diffEngine;
+
+    /**
+     * Creates a new instance.
+     * 
+     * @param diffEngine the diff engine used to compare the ranges between the anchors
+     */
+    public AnchoringDiffEngine(DiffEngine diffEngine)
+    {
+        this.diffEngine = diffEngine;
+    }
+
+    @Override
+    public void diff(DiffSequences sequences, int previousStart, int previousEnd, int nextStart, int nextEnd,
+        EditScript script)
+    {
+        int prefix = DiffRanges.getCommonPrefix(sequences, previousStart, previousEnd, nextStart, nextEnd);
+        int ps = previousStart + prefix;
+        int ns = nextStart + prefix;
+        int suffix = DiffRanges.getCommonSuffix(sequences, ps, previousEnd, ns, nextEnd);
+        int pe = previousEnd - suffix;
+        int ne = nextEnd - suffix;
+        if (ps == pe || ns == ne) {
+            script.addChange(ps, pe, ns, ne);
+            return;
+        }
+
+        int[] anchors = DiffRanges.getUniqueAnchors(sequences, ps, pe, ns, ne);
+        for (int i = 0; i < anchors.length; i += 2) {
+            diffRange(sequences, ps, anchors[i], ns, anchors[i + 1], script);
+            ps = anchors[i] + 1;
+            ns = anchors[i + 1] + 1;
+        }
+        diffRange(sequences, ps, pe, ns, ne, script);
+    }
+
+    private void diffRange(DiffSequences sequences, int previousStart, int previousEnd, int nextStart, int nextEnd,
+        EditScript script)
+    {
+        if (previousStart == previousEnd || nextStart == nextEnd) {
+            script.addChange(previousStart, previousEnd, nextStart, nextEnd);
+        } else {
+            this.diffEngine.diff(sequences, previousStart, previousEnd, nextStart, nextEnd, script);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+/**
+ * Chooses the diff algorithm based on the size of the compared ranges: the Myers algorithm produces the shortest edit
+ * script but its cost grows with the square of the number of differences, so large ranges are compared with the
+ * histogram algorithm instead.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+public class AutomaticDiffEngine implements DiffEngine
+{
+    /**
+     * The maximum total size of the compared ranges for which the Myers algorithm is used.
+     */
+    private static final int MYERS_THRESHOLD = 2048;
+
+    private final DiffEngine myersDiffEngine;
+
+    private final DiffEngine histogramDiffEngine;
+
+    /**
+     * Creates a new instance.
+     * 
+     * @param myersDiffEngine the diff engine used for small ranges
+     * @param histogramDiffEngine the diff engine used for large ranges
+     */
+    public AutomaticDiffEngine(DiffEngine myersDiffEngine, DiffEngine histogramDiffEngine)
+    {
+        this.myersDiffEngine = myersDiffEngine;
+        this.histogramDiffEngine = histogramDiffEngine;
+    }
+
+    @Override
+    public void diff(DiffSequences sequences, int previousStart, int previousEnd, int nextStart, int nextEnd,
+        EditScript script)
+    {
+        if (previousEnd - previousStart + nextEnd - nextStart <= MYERS_THRESHOLD) {
+            this.myersDiffEngine.diff(sequences, previousStart, previousEnd, nextStart, nextEnd, script);
+        } else {
+            this.histogramDiffEngine.diff(sequences, previousStart, previousEnd, nextStart, nextEnd, script);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+import org.xwiki.contrib.rendering.block.diff.BlockChangeStatistics;
+import org.xwiki.rendering.block.Block;
+
+/**
+ * Checks quickly whether two block trees differ, and roughly how much, without computing the changes.
+ * <ul>
+ * <li>{@link #hasChanges(Block, Block)} walks both trees in lockstep, comparing the blocks with
+ * {@link ShallowBlockComparator}, and stops at the first difference. It doesn't build the list representation of the
+ * trees; it only allocates the path from the root to the current block. Subtrees shared by both trees (the same
+ * instance) are skipped.</li>
+ * <li>{@link #getChangeStatistics(Block, Block)} compares the subtree hashes (see {@link BlockSequences}) of the child
+ * blocks, skips their common prefix and suffix, descends into the block that remains on both sides if it is modified
+ * only inside, and counts the blocks of the remaining subtrees as deleted and inserted. There is no diff algorithm
+ * involved, so the cost is linear in the size of the trees.</li>
+ * </ul>
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+public class BlockChangeDetector
+{
+    /**
+     * The initial size of the arrays used to store the path from the root to the current block while walking the trees.
+     */
+    private static final int INITIAL_DEPTH = 32;
+
+    private final BlockListConverter converter = new BlockListConverter();
+
+    private final ShallowBlockComparator comparator = new ShallowBlockComparator();
+
+    /**
+     * Checks if two block trees differ.
+     * 
+     * @param previous the block before the modification
+     * @param next the block after the modification
+     * @return {@code true} if the given blocks differ, {@code false} otherwise
+     */
+    public boolean hasChanges(Block previous, Block next)
+    {
+        if (previous == next) {
+            return false;
+        } else if (!this.comparator.equals(previous, next)) {
+            return true;
+        }
+
+        Block[] previousPath = new Block[INITIAL_DEPTH];
+        Block[] nextPath = new Block[INITIAL_DEPTH];
+        int[] nextChild = new int[INITIAL_DEPTH];
+        int depth = 0;
+        previousPath[0] = previous;
+        nextPath[0] = next;
+        while (depth >= 0) {
+            List<Block> previousChildren = previousPath[depth].getChildren();
+            List<Block> nextChildren = nextPath[depth].getChildren();
+            if (previousChildren.size() != nextChildren.size()) {
+                return true;
+            } else if (nextChild[depth] < previousChildren.size()) {
+                Block previousChild = previousChildren.get(nextChild[depth]);
+                Block nextChildBlock = nextChildren.get(nextChild[depth]++);
+                if (previousChild != nextChildBlock) {
+                    if (!this.comparator.equals(previousChild, nextChildBlock)) {
+                        return true;
+                    }
+                    depth++;
+                    if (depth == previousPath.length) {
+                        previousPath = Arrays.copyOf(previousPath, 2 * depth);
+                        nextPath = Arrays.copyOf(nextPath, 2 * depth);
+                        nextChild = Arrays.copyOf(nextChild, 2 * depth);
+                    }
+                    previousPath[depth] = previousChild;
+                    nextPath[depth] = nextChildBlock;
+                    nextChild[depth] = 0;
+                }
+            } else {
+                depth--;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Computes roughly how much two block trees differ.
+     * 
+     * @param previous the block before the modification
+     * @param next the block after the modification
+     * @return statistics about the changes between the given blocks
+     */
+    public BlockChangeStatistics getChangeStatistics(Block previous, Block next)
+    {
+        if (!hasChanges(previous, next)) {
+            int blockCount = previous == null ? 0 : this.converter.countBlocks(previous);
+            return new BlockChangeStatistics(blockCount, blockCount, 0, 0);
+        }
+
+        BlockSequences sequences =
+            new BlockSequences(this.converter.toList(previous), this.converter.toList(next), this.comparator);
+        FlatBlockList previousList = sequences.getPrevious();
+        FlatBlockList nextList = sequences.getNext();
+        int deletedPositions = 0;
+        int insertedPositions = 0;
+        Deque<int[]> ranges = new ArrayDeque<>();
+        ranges.push(new int[] {0, previousList.size(), 0, nextList.size()});
+        while (!ranges.isEmpty()) {
+            int[] range = ranges.pop();
+            skipCommonSubtrees(sequences, range);
+            if (range[0] < range[1] && range[2] < range[3] && previousList.getMatch(range[0]) == range[1] - 1
+                && nextList.getMatch(range[2]) == range[3] - 1 && sequences.equals(range[0], range[2])) {
+                // A single block, modified only inside: compare its child blocks.
+                ranges.push(new int[] {range[0] + 1, range[1] - 1, range[2] + 1, range[3] - 1});
+            } else {
+                deletedPositions += range[1] - range[0];
+                insertedPositions += range[3] - range[2];
+            }
+        }
+        // Each block has a start and an end position.
+        return new BlockChangeStatistics(previousList.size() / 2, nextList.size() / 2, deletedPositions / 2,
+            insertedPositions / 2);
+    }
+
+    /**
+     * Skips the common prefix and suffix of two ranges of sibling subtrees.
+     * 
+     * @param sequences the compared lists of blocks
+     * @param range the ranges to reduce: the start and end of the previous range followed by the start and end of the
+     *            next range
+     */
+    private void skipCommonSubtrees(BlockSequences sequences, int[] range)
+    {
+        FlatBlockList previous = sequences.getPrevious();
+        FlatBlockList next = sequences.getNext();
+        while (range[0] < range[1] && range[2] < range[3] && sequences.subtreeEquals(range[0], range[2])) {
+            range[0] = previous.getMatch(range[0]) + 1;
+            range[2] = next.getMatch(range[2]) + 1;
+        }
+        while (range[0] < range[1] && range[2] < range[3]) {
+            int previousLast = previous.getMatch(range[1] - 1);
+            int nextLast = next.getMatch(range[3] - 1);
+            if (!sequences.subtreeEquals(previousLast, nextLast)) {
+                break;
+            }
+            range[1] = previousLast;
+            range[3] = nextLast;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.util.List;
+import java.util.Objects;
+
+import org.xwiki.diff.Chunk;
+import org.xwiki.diff.PatchException;
+import org.xwiki.rendering.block.Block;
+
+/**
+ * A range of blocks from the list representation of a block tree (see {@link BlockListConverter#toList(Block)}), as
+ * part of a {@link BlockDelta}.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+public class BlockChunk implements Chunk<Block>
+{
+    private static final ShallowBlockComparator COMPARATOR = new ShallowBlockComparator();
+
+    private final int index;
+
+    private final List<Block> blocks;
+
+    /**
+     * Creates a new chunk.
+     * 
+     * @param index the index where the chunk starts
+     * @param blocks the blocks from the chunk
+     */
+    public BlockChunk(int index, List<Block> blocks)
+    {
+        this.index = index;
+        this.blocks = blocks;
+    }
+
+    @Override
+    public void verify(List<Block> target) throws PatchException
+    {
+        if (this.index + size() > target.size()) {
+            throw new PatchException(
+                String.format("Incorrect patch: the chunk at index [%s] is out of bounds.", this.index));
+        }
+        for (int i = 0; i < size(); i++) {
+            if (!matches(target.get(this.index + i), i)) {
+                throw new PatchException(
+                    String.format("Incorrect patch: the block at index [%s] doesn't match.", this.index + i));
+            }
+        }
+    }
+
+    /**
+     * Checks if a block of the patched list matches a block of this chunk. The blocks are compared without their child
+     * blocks (see {@link ShallowBlockComparator}), which are verified separately since they are part of the list too.
+     * 
+     * @param block a block from the patched list
+     * @param index the index of a block in this chunk
+     * @return {@code true} if the given block matches the specified block of this chunk, {@code false} otherwise
+     */
+    protected boolean matches(Block block, int index)
+    {
+        return COMPARATOR.equals(block, this.blocks.get(index));
+    }
+
+    @Override
+    public int getIndex()
+    {
+        return this.index;
+    }
+
+    @Override
+    public List<Block> getElements()
+    {
+        return this.blocks;
+    }
+
+    @Override
+    public int size()
+    {
+        return this.blocks.size();
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (obj == this) {
+            return true;
+        }
+
+        if (obj instanceof BlockChunk) {
+            BlockChunk other = (BlockChunk) obj;
+            return this.index == other.index && this.blocks.equals(other.blocks);
+        }
+
+        return false;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(this.index, this.blocks);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("[position: %s, size: %s]", this.index, size());
+    }
+}
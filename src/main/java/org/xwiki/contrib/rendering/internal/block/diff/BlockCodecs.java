@@ -0,0 +1,368 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.xwiki.contrib.rendering.block.diff.EndBlock;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.BulletedListBlock;
+import org.xwiki.rendering.block.DefinitionDescriptionBlock;
+import org.xwiki.rendering.block.DefinitionListBlock;
+import org.xwiki.rendering.block.DefinitionTermBlock;
+import org.xwiki.rendering.block.EmptyLinesBlock;
+import org.xwiki.rendering.block.FormatBlock;
+import org.xwiki.rendering.block.GroupBlock;
+import org.xwiki.rendering.block.HeaderBlock;
+import org.xwiki.rendering.block.HorizontalLineBlock;
+import org.xwiki.rendering.block.IdBlock;
+import org.xwiki.rendering.block.ImageBlock;
+import org.xwiki.rendering.block.LinkBlock;
+import org.xwiki.rendering.block.ListItemBlock;
+import org.xwiki.rendering.block.MacroBlock;
+import org.xwiki.rendering.block.MacroMarkerBlock;
+import org.xwiki.rendering.block.MetaDataBlock;
+import org.xwiki.rendering.block.NewLineBlock;
+import org.xwiki.rendering.block.NumberedListBlock;
+import org.xwiki.rendering.block.ParagraphBlock;
+import org.xwiki.rendering.block.QuotationBlock;
+import org.xwiki.rendering.block.QuotationLineBlock;
+import org.xwiki.rendering.block.RawBlock;
+import org.xwiki.rendering.block.SectionBlock;
+import org.xwiki.rendering.block.SpaceBlock;
+import org.xwiki.rendering.block.SpecialSymbolBlock;
+import org.xwiki.rendering.block.TableBlock;
+import org.xwiki.rendering.block.TableCellBlock;
+import org.xwiki.rendering.block.TableHeadCellBlock;
+import org.xwiki.rendering.block.TableRowBlock;
+import org.xwiki.rendering.block.VerbatimBlock;
+import org.xwiki.rendering.block.WordBlock;
+import org.xwiki.rendering.block.XDOM;
+import org.xwiki.rendering.listener.Format;
+import org.xwiki.rendering.listener.HeaderLevel;
+import org.xwiki.rendering.listener.MetaData;
+import org.xwiki.rendering.listener.reference.ResourceReference;
+import org.xwiki.rendering.listener.reference.ResourceType;
+import org.xwiki.rendering.parser.ParseException;
+import org.xwiki.rendering.syntax.Syntax;
+
+/**
+ * Encodes and decodes the blocks of a patch, in the format of {@link PatchWriter}. Each block is written as its type
+ * (index in the type dictionary), whether it's an {@link EndBlock} and, for start blocks, its parameters (index in the
+ * parameter dictionary) followed by the block data, whose format depends on the block type. Child blocks are not
+ * written because they are part of the list of blocks.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+public class BlockCodecs
+{
+    private static final List<Block> NO_CHILDREN = Collections.emptyList();
+
+    private static final Map<String, String> NO_PARAMETERS = Collections.emptyMap();
+
+    private static final int STRING_VALUE = 0;
+
+    private static final int SYNTAX_VALUE = 1;
+
+    /**
+     * Writes the data of a block.
+     * 
+     * @param <B> the type of block
+     */
+    @FunctionalInterface
+    private interface DataWriter<B extends Block>
+    {
+        void write(B block, PatchWriter writer) throws IOException;
+    }
+
+    /**
+     * Creates a block from its data.
+     */
+    @FunctionalInterface
+    private interface DataReader
+    {
+        Block read(PatchReader reader) throws IOException;
+    }
+
+    private static final class Codec
+    {
+        private final Class<? extends Block> type;
+
+        private final DataWriter<Block> writer;
+
+        private final DataReader reader;
+
+        Codec(Class<? extends Block> type, DataWriter<Block> writer, DataReader reader)
+        {
+            this.type = type;
+            this.writer = writer;
+            this.reader = reader;
+        }
+    }
+
+    private final Map<String, Codec> codecs = new HashMap<>();
+
+    /**
+     * Registers the codecs of the standard block types.
+     */
+    public BlockCodecs()
+    {
+        register(WordBlock.class, (block, writer) -> writer.writeString(block.getWord()),
+            reader -> new WordBlock(reader.readString()));
+        register(SpaceBlock.class, reader -> new SpaceBlock());
+        register(SpecialSymbolBlock.class, (block, writer) -> writer.writeVarInt(block.getSymbol()),
+            reader -> new SpecialSymbolBlock((char) reader.readVarInt()));
+        register(NewLineBlock.class, reader -> new NewLineBlock());
+        register(EmptyLinesBlock.class, (block, writer) -> writer.writeVarInt(block.getEmptyLinesCount()),
+            reader -> new EmptyLinesBlock(reader.readVarInt()));
+        register(HorizontalLineBlock.class, reader -> new HorizontalLineBlock(NO_PARAMETERS));
+        register(IdBlock.class, (block, writer) -> writer.writeString(block.getName()),
+            reader -> new IdBlock(reader.readString()));
+
+        register(ParagraphBlock.class, reader -> new ParagraphBlock(NO_CHILDREN));
+        register(SectionBlock.class, reader -> new SectionBlock(NO_CHILDREN));
+        register(HeaderBlock.class, (block, writer) -> {
+            writer.writeVarInt(block.getLevel().getAsInt());
+            writer.writeString(block.getId());
+        }, reader -> new HeaderBlock(NO_CHILDREN, HeaderLevel.parseInt(reader.readVarInt()), reader.readString()));
+        register(FormatBlock.class, (block, writer) -> writer.writeString(block.getFormat().name()),
+            reader -> new FormatBlock(NO_CHILDREN, readEnum(Format.class, reader.readString())));
+        register(GroupBlock.class, reader -> new GroupBlock(NO_CHILDREN));
+        register(BulletedListBlock.class, reader -> new BulletedListBlock(NO_CHILDREN));
+        register(NumberedListBlock.class, reader -> new NumberedListBlock(NO_CHILDREN));
+        register(ListItemBlock.class, reader -> new ListItemBlock(NO_CHILDREN));
+        register(DefinitionListBlock.class, reader -> new DefinitionListBlock(NO_CHILDREN));
+        register(DefinitionTermBlock.class, reader -> new DefinitionTermBlock(NO_CHILDREN));
+        register(DefinitionDescriptionBlock.class, reader -> new DefinitionDescriptionBlock(NO_CHILDREN));
+        register(QuotationBlock.class, reader -> new QuotationBlock(NO_CHILDREN));
+        register(QuotationLineBlock.class, reader -> new QuotationLineBlock(NO_CHILDREN));
+        register(TableBlock.class, reader -> new TableBlock(NO_CHILDREN, NO_PARAMETERS));
+        register(TableRowBlock.class, reader -> new TableRowBlock(NO_CHILDREN, NO_PARAMETERS));
+        register(TableCellBlock.class, reader -> new TableCellBlock(NO_CHILDREN, NO_PARAMETERS));
+        register(TableHeadCellBlock.class, reader -> new TableHeadCellBlock(NO_CHILDREN, NO_PARAMETERS));
+
+        register(LinkBlock.class, (block, writer) -> {
+            writeReference(block.getReference(), writer);
+            writer.writeBoolean(block.isFreeStandingURI());
+        }, reader -> new LinkBlock(NO_CHILDREN, readReference(reader), reader.readBoolean()));
+        register(ImageBlock.class, (block, writer) -> {
+            writeReference(block.getReference(), writer);
+            writer.writeBoolean(block.isFreeStandingURI());
+        }, reader -> new ImageBlock(readReference(reader), reader.readBoolean()));
+
+        register(MacroBlock.class, (block, writer) -> {
+            writer.writeString(block.getId());
+            writer.writeString(block.getContent());
+            writer.writeBoolean(block.isInline());
+        }, reader -> new MacroBlock(reader.readString(), NO_PARAMETERS, reader.readString(), reader.readBoolean()));
+        register(MacroMarkerBlock.class, (block, writer) -> {
+            writer.writeString(block.getId());
+            writer.writeString(block.getContent());
+            writer.writeBoolean(block.isInline());
+        }, reader -> new MacroMarkerBlock(reader.readString(), NO_PARAMETERS, reader.readString(), NO_CHILDREN,
+            reader.readBoolean()));
+        register(RawBlock.class, (block, writer) -> {
+            writer.writeString(block.getRawContent());
+            writer.writeString(block.getSyntax().toIdString());
+        }, reader -> new RawBlock(reader.readString(), readSyntax(reader.readString())));
+        register(VerbatimBlock.class, (block, writer) -> {
+            writer.writeString(block.getProtectedString());
+            writer.writeBoolean(block.isInline());
+        }, reader -> new VerbatimBlock(reader.readString(), reader.readBoolean()));
+
+        register(MetaDataBlock.class, (block, writer) -> writeMetaData(block.getMetaData(), writer),
+            reader -> new MetaDataBlock(NO_CHILDREN, readMetaData(reader)));
+        register(XDOM.class, (block, writer) -> writeMetaData(block.getMetaData(), writer),
+            reader -> new XDOM(NO_CHILDREN, readMetaData(reader)));
+    }
+
+    /**
+     * Writes a list of blocks.
+     * 
+     * @param blocks the blocks to write
+     * @param writer where to write the blocks
+     * @throws IOException if some of the blocks cannot be encoded
+     */
+    public void writeBlocks(List<Block> blocks, PatchWriter writer) throws IOException
+    {
+        writer.writeVarInt(blocks.size());
+        for (Block block : blocks) {
+            boolean end = block instanceof EndBlock;
+            Class<?> type = end ? ((EndBlock) block).getType() : block.getClass();
+            Codec codec = this.codecs.get(type.getName());
+            if (codec == null || codec.type != type) {
+                throw new IOException(String.format("Unsupported block type [%s].", type.getName()));
+            }
+            writer.writeVarInt(writer.getTypeIndex(type) << 1 | (end ? 1 : 0));
+            if (!end) {
+                writer.writeParameters(block.getParameters());
+                codec.writer.write(block, writer);
+            }
+        }
+    }
+
+    /**
+     * Reads a list of blocks.
+     * 
+     * @param reader where to read the blocks from
+     * @return the blocks that have been read, without child blocks
+     * @throws IOException if the blocks cannot be decoded
+     */
+    public List<Block> readBlocks(PatchReader reader) throws IOException
+    {
+        int size = reader.readVarInt();
+        List<Block> blocks = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            int entry = reader.readVarInt();
+            String type = reader.getType(entry >>> 1);
+            Codec codec = this.codecs.get(type);
+            if (codec == null) {
+                throw new IOException(String.format("Unsupported block type [%s].", type));
+            }
+            if ((entry & 1) == 1) {
+                blocks.add(new EndBlock(codec.type));
+            } else {
+                Map<String, String> parameters = reader.readParameters();
+                Block block = codec.reader.read(reader);
+                if (!parameters.isEmpty()) {
+                    block.setParameters(parameters);
+                }
+                blocks.add(block);
+            }
+        }
+        return blocks;
+    }
+
+    /**
+     * Registers the codec of a block type that doesn't have data besides its parameters and child blocks.
+     */
+    private void register(Class<? extends Block> type, DataReader reader)
+    {
+        this.codecs.put(type.getName(), new Codec(type, (block, writer) -> {
+            // No data to write.
+        }, reader));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <B extends Block> void register(Class<B> type, DataWriter<B> writer, DataReader reader)
+    {
+        this.codecs.put(type.getName(), new Codec(type, (DataWriter<Block>) writer, reader));
+    }
+
+    private static void writeReference(ResourceReference reference, PatchWriter writer) throws IOException
+    {
+        writer.writeString(reference.getClass().getName());
+        writer.writeString(reference.getType().getScheme());
+        writer.writeString(reference.getReference());
+        writer.writeBoolean(reference.isTyped());
+        writer.writeParameters(reference.getParameters());
+        writer.writeVarInt(reference.getBaseReferences().size());
+        for (String baseReference : reference.getBaseReferences()) {
+            writer.writeString(baseReference);
+        }
+    }
+
+    private static ResourceReference readReference(PatchReader reader) throws IOException
+    {
+        String referenceClass = reader.readString();
+        ResourceType type = new ResourceType(reader.readString());
+        String value = reader.readString();
+        ResourceReference reference;
+        if (ResourceReference.class.getName().equals(referenceClass)) {
+            reference = new ResourceReference(value, type);
+        } else {
+            try {
+                // The specialized resource references set their own type.
+                reference = Class.forName(referenceClass, true, ResourceReference.class.getClassLoader())
+                    .asSubclass(ResourceReference.class).getConstructor(String.class).newInstance(value);
+            } catch (ClassNotFoundException | NoSuchMethodException | InstantiationException | IllegalAccessException
+                | InvocationTargetException | ClassCastException e) {
+                throw new IOException(String.format("Unsupported resource reference [%s].", referenceClass), e);
+            }
+        }
+        reference.setTyped(reader.readBoolean());
+        reader.readParameters().forEach(reference::setParameter);
+        int baseReferenceCount = reader.readVarInt();
+        for (int i = 0; i < baseReferenceCount; i++) {
+            reference.addBaseReference(reader.readString());
+        }
+        return reference;
+    }
+
+    private static void writeMetaData(MetaData metaData, PatchWriter writer) throws IOException
+    {
+        Map<String, Object> entries = metaData.getMetaData();
+        writer.writeVarInt(entries.size());
+        for (Map.Entry<String, Object> entry : entries.entrySet()) {
+            writer.writeString(entry.getKey());
+            if (entry.getValue() instanceof Syntax) {
+                writer.writeVarInt(SYNTAX_VALUE);
+                writer.writeString(((Syntax) entry.getValue()).toIdString());
+            } else if (entry.getValue() instanceof String) {
+                writer.writeVarInt(STRING_VALUE);
+                writer.writeString((String) entry.getValue());
+            } else {
+                throw new IOException(String.format("Unsupported value for meta data [%s].", entry.getKey()));
+            }
+        }
+    }
+
+    private static MetaData readMetaData(PatchReader reader) throws IOException
+    {
+        int size = reader.readVarInt();
+        Map<String, Object> entries = new LinkedHashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            String key = reader.readString();
+            int valueType = reader.readVarInt();
+            String value = reader.readString();
+            entries.put(key, valueType == SYNTAX_VALUE ? readSyntax(value) : value);
+        }
+        return new MetaData(entries);
+    }
+
+    private static Syntax readSyntax(String syntaxId) throws IOException
+    {
+        try {
+            return Syntax.valueOf(syntaxId);
+        } catch (ParseException e) {
+            throw new IOException(String.format("Invalid syntax [%s].", syntaxId), e);
+        }
+    }
+
+    private static <E extends Enum<E>> E readEnum(Class<E> type, String name) throws IOException
+    {
+        if (name == null) {
+            throw new IOException(String.format("Missing value for [%s].", type.getSimpleName()));
+        }
+        try {
+            return Enum.valueOf(type, name);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(String.format("Invalid value [%s] for [%s].", name, type.getSimpleName()), e);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.util.List;
+
+import org.xwiki.diff.Chunk;
+import org.xwiki.diff.Delta;
+import org.xwiki.diff.PatchException;
+import org.xwiki.rendering.block.Block;
+
+/**
+ * Replaces a range of blocks (the previous chunk) with another range of blocks (the next chunk) in the list
+ * representation of a block tree. The type of the delta depends on which of the chunks is empty. The deltas of the
+ * patches decoded without the content of the deleted blocks (see {@link FingerprintChunk}) can be applied but not
+ * restored.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+public class BlockDelta implements Delta<Block>
+{
+    private final Chunk<Block> previous;
+
+    private final Chunk<Block> next;
+
+    private final Type type;
+
+    /**
+     * Creates a new delta.
+     * 
+     * @param previous the chunk before the modification
+     * @param next the chunk after the modification
+     */
+    public BlockDelta(Chunk<Block> previous, Chunk<Block> next)
+    {
+        this.previous = previous;
+        this.next = next;
+        if (previous.size() == 0) {
+            this.type = Type.INSERT;
+        } else if (next.size() == 0) {
+            this.type = Type.DELETE;
+        } else {
+            this.type = Type.CHANGE;
+        }
+    }
+
+    @Override
+    public void verify(List<Block> target) throws PatchException
+    {
+        this.previous.verify(target);
+    }
+
+    @Override
+    public void apply(List<Block> target) throws PatchException
+    {
+        replace(target, this.previous, this.next);
+    }
+
+    @Override
+    public void restore(List<Block> target) throws PatchException
+    {
+        replace(target, this.next, this.previous);
+    }
+
+    @Override
+    public Type getType()
+    {
+        return this.type;
+    }
+
+    @Override
+    public Chunk<Block> getPrevious()
+    {
+        return this.previous;
+    }
+
+    @Override
+    public Chunk<Block> getNext()
+    {
+        return this.next;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s %s -> %s", this.type, this.previous, this.next);
+    }
+
+    private void replace(List<Block> target, Chunk<Block> source, Chunk<Block> destination) throws PatchException
+    {
+        source.verify(target);
+        if (destination instanceof FingerprintChunk) {
+            throw new PatchException("Incorrect patch: the patch doesn't have the content of the deleted blocks.");
+        }
+        List<Block> replaced = target.subList(source.getIndex(), source.getIndex() + source.size());
+        replaced.clear();
+        replaced.addAll(destination.getElements());
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.xwiki.contrib.rendering.block.diff.BlockDiffBatchConfiguration;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffBatchResult;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffConfiguration;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffPair;
+import org.xwiki.diff.DiffException;
+import org.xwiki.rendering.block.Block;
+
+/**
+ * Compares a stream of {@link BlockDiffPair}s in parallel. At most a fixed number of pairs are pending (submitted to
+ * the executor, being compared or waiting to be consumed) at any given time: the next pair is read from the input only
+ * when a result is consumed, which bounds the memory used by the batch. The results are returned in the order in which
+ * the comparisons complete.
+ *
+ * @param <K> the type of key that identifies the compared pairs
+ * @param <R> the type of result
+ * @version $Id$
+ * @since 1.0
+ */
+public class BlockDiffBatch<K, R> implements Iterator<BlockDiffBatchResult<K, R>>
+{
+    /**
+     * Compares a pair of blocks.
+     *
+     * @param <R> the type of result
+     */
+    @FunctionalInterface
+    public interface PairDiffer<R>
+    {
+        /**
+         * Compares the given blocks.
+         * 
+         * @param left the left side of the comparison
+         * @param right the right side of the comparison
+         * @param configuration how to compute the differences
+         * @return the result of the comparison
+         * @throws DiffException if the comparison fails
+         */
+        R diff(Block left, Block right, BlockDiffConfiguration configuration) throws DiffException;
+    }
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    private final Iterator<BlockDiffPair<K>> pairs;
+
+    private final PairDiffer<R> differ;
+
+    private final BlockDiffBatchConfiguration configuration;
+
+    private final int maximumPendingComparisons;
+
+    private final ThreadPoolExecutor ownExecutor;
+
+    private final CompletionService<BlockDiffBatchResult<K, R>> completionService;
+
+    /**
+     * The pending comparisons. Only accessed by the thread that consumes the results.
+     */
+    private final Set<Future<BlockDiffBatchResult<K, R>>> pending = new HashSet<>();
+
+    private boolean closed;
+
+    /**
+     * Creates a new batch.
+     * 
+     * @param pairs the pairs to compare
+     * @param differ used to compare each pair
+     * @param configuration how to execute the batch and compute the differences, {@code null} to use the default
+     *            configuration
+     */
+    public BlockDiffBatch(Iterator<BlockDiffPair<K>> pairs, PairDiffer<R> differ,
+        BlockDiffBatchConfiguration configuration)
+    {
+        this.pairs = pairs;
+        this.differ = differ;
+        this.configuration = configuration == null ? new BlockDiffBatchConfiguration() : configuration;
+
+        int processors = Runtime.getRuntime().availableProcessors();
+        this.maximumPendingComparisons = this.configuration.getMaximumPendingComparisons() > 0
+            ? this.configuration.getMaximumPendingComparisons() : 2 * processors;
+
+        Executor executor = this.configuration.getExecutor();
+        if (executor == null) {
+            // The threads are released even if the caller doesn't consume the results nor closes the stream.
+            this.ownExecutor = new ThreadPoolExecutor(processors, processors, 1, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), createThreadFactory());
+            this.ownExecutor.allowCoreThreadTimeOut(true);
+            executor = this.ownExecutor;
+        } else {
+            this.ownExecutor = null;
+        }
+        this.completionService = new ExecutorCompletionService<>(executor);
+    }
+
+    /**
+     * Compares the given pairs in parallel.
+     * 
+     * @param <K> the type of key that identifies the compared pairs
+     * @param <R> the type of result
+     * @param pairs the pairs to compare
+     * @param differ used to compare each pair
+     * @param configuration how to execute the batch and compute the differences, {@code null} to use the default
+     *            configuration
+     * @return the results, in the order in which the comparisons complete; closing the stream cancels the pending
+     *         comparisons and closes the given stream of pairs
+     */
+    public static <K, R> Stream<BlockDiffBatchResult<K, R>> run(Stream<BlockDiffPair<K>> pairs, PairDiffer<R> differ,
+        BlockDiffBatchConfiguration configuration)
+    {
+        BlockDiffBatch<K, R> batch = new BlockDiffBatch<>(pairs.iterator(), differ, configuration);
+        return StreamSupport
+            .stream(Spliterators.spliteratorUnknownSize(batch, Spliterator.NONNULL), false)
+            .onClose(batch::close).onClose(pairs::close);
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        submit();
+        if (this.pending.isEmpty()) {
+            close();
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public BlockDiffBatchResult<K, R> next()
+    {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        Future<BlockDiffBatchResult<K, R>> future;
+        try {
+            future = this.completionService.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+            throw new CancellationException("Interrupted while waiting for the next comparison to complete.");
+        }
+        this.pending.remove(future);
+        // Keep the executor busy while the caller handles the result.
+        submit();
+
+        try {
+            return future.get();
+        } catch (InterruptedException | ExecutionException e) {
+            // The comparison errors are caught by the task so this can happen only for fatal errors.
+            close();
+            throw new IllegalStateException("Unexpected batch failure.", e);
+        }
+    }
+
+    /**
+     * Cancels the pending comparisons and releases the threads created for the batch.
+     */
+    public void close()
+    {
+        if (!this.closed) {
+            this.closed = true;
+            for (Future<BlockDiffBatchResult<K, R>> future : new ArrayList<>(this.pending)) {
+                future.cancel(true);
+            }
+            this.pending.clear();
+            if (this.ownExecutor != null) {
+                this.ownExecutor.shutdownNow();
+            }
+        }
+    }
+
+    private void submit()
+    {
+        while (!this.closed && this.pending.size() < this.maximumPendingComparisons && this.pairs.hasNext()) {
+            BlockDiffPair<K> pair = this.pairs.next();
+            this.pending.add(this.completionService.submit(() -> compare(pair)));
+        }
+    }
+
+    private BlockDiffBatchResult<K, R> compare(BlockDiffPair<K> pair)
+    {
+        try {
+            return new BlockDiffBatchResult<>(pair,
+                this.differ.diff(pair.getLeft(), pair.getRight(), this.configuration), null);
+        } catch (Exception e) {
+            // Isolate the failure so that the other pairs are compared.
+            return new BlockDiffBatchResult<>(pair, null, e);
+        }
+    }
+
+    private static ThreadFactory createThreadFactory()
+    {
+        return runnable -> {
+            Thread thread = new Thread(runnable, "xdom-diff-batch-" + THREAD_COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.xwiki.contrib.rendering.block.diff.BlockDiffMetrics;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffPhase;
+
+/**
+ * Aggregates {@link BlockDiffMetrics}. The counters can be updated concurrently.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+public class BlockDiffStatistics implements BlockDiffStatisticsMBean
+{
+    private final LongAdder operationCount = new LongAdder();
+
+    private final LongAdder degradedOperationCount = new LongAdder();
+
+    private final LongAdder deltaCount = new LongAdder();
+
+    private final LongAdder markedBlockCount = new LongAdder();
+
+    private final LongAdder estimatedAllocation = new LongAdder();
+
+    private final LongAdder totalTime = new LongAdder();
+
+    private final LongAccumulator maximumTime = new LongAccumulator(Math::max, 0);
+
+    private final Map<BlockDiffPhase, LongAdder> phaseTimes = new EnumMap<>(BlockDiffPhase.class);
+
+    /**
+     * Creates empty statistics.
+     */
+    public BlockDiffStatistics()
+    {
+        for (BlockDiffPhase phase : BlockDiffPhase.values()) {
+            this.phaseTimes.put(phase, new LongAdder());
+        }
+    }
+
+    /**
+     * Adds the metrics of an operation.
+     * 
+     * @param metrics the metrics to add
+     */
+    public void add(BlockDiffMetrics metrics)
+    {
+        this.operationCount.increment();
+        if (metrics.isDegraded()) {
+            this.degradedOperationCount.increment();
+        }
+        this.deltaCount.add(metrics.getDeltaCount());
+        this.markedBlockCount.add(metrics.getMarkedBlockCount());
+        this.estimatedAllocation.add(metrics.getEstimatedAllocation());
+        long duration = metrics.getTotalDuration();
+        this.totalTime.add(duration);
+        this.maximumTime.accumulate(duration);
+        for (BlockDiffPhase phase : BlockDiffPhase.values()) {
+            this.phaseTimes.get(phase).add(metrics.getDuration(phase));
+        }
+    }
+
+    @Override
+    public long getOperationCount()
+    {
+        return this.operationCount.sum();
+    }
+
+    @Override
+    public long getDegradedOperationCount()
+    {
+        return this.degradedOperationCount.sum();
+    }
+
+    @Override
+    public long getDeltaCount()
+    {
+        return this.deltaCount.sum();
+    }
+
+    @Override
+    public long getMarkedBlockCount()
+    {
+        return this.markedBlockCount.sum();
+    }
+
+    @Override
+    public long getEstimatedAllocation()
+    {
+        return this.estimatedAllocation.sum();
+    }
+
+    @Override
+    public long getTotalTime()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(this.totalTime.sum());
+    }
+
+    @Override
+    public long getMaximumTime()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(this.maximumTime.get());
+    }
+
+    @Override
+    public Map<String, Long> getPhaseTimes()
+    {
+        Map<String, Long> times = new LinkedHashMap<>();
+        for (Map.Entry<BlockDiffPhase, LongAdder> entry : this.phaseTimes.entrySet()) {
+            times.put(entry.getKey().name(), TimeUnit.NANOSECONDS.toMillis(entry.getValue().sum()));
+        }
+        return times;
+    }
+
+    @Override
+    public void reset()
+    {
+        this.operationCount.reset();
+        this.degradedOperationCount.reset();
+        this.deltaCount.reset();
+        this.markedBlockCount.reset();
+        this.estimatedAllocation.reset();
+        this.totalTime.reset();
+        this.maximumTime.reset();
+        this.phaseTimes.values().forEach(LongAdder::reset);
+    }
+}
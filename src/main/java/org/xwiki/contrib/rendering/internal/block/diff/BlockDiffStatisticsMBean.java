@@ -0,0 +1,76 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.util.Map;
+
+/**
+ * Exposes the statistics collected by {@link JMXBlockDiffMetricsListener}.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+public interface BlockDiffStatisticsMBean
+{
+    /**
+     * @return the number of measured operations
+     */
+    long getOperationCount();
+
+    /**
+     * @return the number of operations that returned a degraded result because the diff budget was exceeded
+     */
+    long getDegradedOperationCount();
+
+    /**
+     * @return the total number of deltas computed by the measured operations
+     */
+    long getDeltaCount();
+
+    /**
+     * @return the total number of blocks marked as inserted or deleted
+     */
+    long getMarkedBlockCount();
+
+    /**
+     * @return the total estimated number of bytes allocated by the measured operations
+     */
+    long getEstimatedAllocation();
+
+    /**
+     * @return the total time spent in the measured operations, in milliseconds
+     */
+    long getTotalTime();
+
+    /**
+     * @return the longest measured operation, in milliseconds
+     */
+    long getMaximumTime();
+
+    /**
+     * @return the total time spent in each phase, in milliseconds, indexed by phase name
+     */
+    Map<String, Long> getPhaseTimes();
+
+    /**
+     * Resets all the statistics.
+     */
+    void reset();
+}
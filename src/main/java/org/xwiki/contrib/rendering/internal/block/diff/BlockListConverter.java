@@ -19,9 +19,11 @@
  */
 package org.xwiki.contrib.rendering.internal.block.diff;
 
-import java.util.LinkedList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.List;
-import java.util.Stack;
 
 import org.xwiki.contrib.rendering.block.diff.EndBlock;
 import org.xwiki.diff.PatchException;
@@ -36,28 +38,62 @@ import org.xwiki.rendering.block.Block;
 public class BlockListConverter
 {
     /**
-     * Serializes an XDOM as a list of blocks in a way that can be reverted with {@link #fromList(List)}.
+     * The initial size of the arrays used to store the path from the root to the current block while walking the tree.
+     */
+    private static final int INITIAL_DEPTH = 32;
+
+    private final ShallowBlockCopier shallowBlockCopier = new ShallowBlockCopier();
+
+    /**
+     * Serializes an XDOM as a list of blocks in a way that can be reverted with {@link #fromList(List)}. The tree is
+     * walked iteratively (so deeply nested trees are supported) and the returned list is allocated only once, based on
+     * the number of blocks in the tree.
+     * <p>
+     * The given tree is not modified: the blocks from the returned list keep their child blocks. Use
+     * {@link ShallowBlockComparator} to compare them.
      * 
      * @param root the XDOM root
      * @return the list of blocks from the given XDOM
      */
-    public List<Block> toList(Block root)
+    public FlatBlockList toList(Block root)
     {
-        List<Block> list = new LinkedList<>();
-        if (root != null) {
-            list.add(root);
-            for (Block child : root.getChildren()) {
-                list.addAll(toList(child));
+        if (root == null) {
+            return new FlatBlockList(0);
+        }
+
+        FlatBlockList list = new FlatBlockList(2 * countBlocks(root));
+        // The start positions of the blocks from the path that leads to the current block, and for each of these blocks
+        // the index of the next child to visit.
+        int[] path = new int[INITIAL_DEPTH];
+        int[] nextChild = new int[INITIAL_DEPTH];
+        int depth = 0;
+        path[0] = list.addStart(root, 0);
+        while (depth >= 0) {
+            List<Block> children = list.getBlock(path[depth]).getChildren();
+            if (nextChild[depth] < children.size()) {
+                Block child = children.get(nextChild[depth]++);
+                depth++;
+                if (depth == path.length) {
+                    path = Arrays.copyOf(path, 2 * depth);
+                    nextChild = Arrays.copyOf(nextChild, 2 * depth);
+                }
+                path[depth] = list.addStart(child, depth);
+                nextChild[depth] = 0;
+            } else {
+                list.addEnd(path[depth]);
+                depth--;
             }
-            // Clear the list of children. It will be restored when calling #fromList().
-            root.getChildren().clear();
-            list.add(new EndBlock(root));
         }
+
         return list;
     }
 
     /**
      * Rebuilds an XDOM tree from a list of blocks.
+     * <p>
+     * Note that the child blocks of the blocks from the given list are replaced, so the given list should contain only
+     * blocks that can be modified: either the list representation of a tree that is meant to be modified, or blocks
+     * copied with {@link #copy(List)}.
      * 
      * @param list a list of blocks that was returned by {@link #toList(Block)}
      * @return the restored XDOM tree
@@ -65,7 +101,7 @@ public class BlockListConverter
      */
     public Block fromList(List<Block> list) throws PatchException
     {
-        Stack<Block> stack = new Stack<>();
+        Deque<Block> stack = new ArrayDeque<>();
         int blockCount = 0;
         for (Block block : list) {
             blockCount++;
@@ -102,4 +138,117 @@ public class BlockListConverter
             return null;
         }
     }
+
+    /**
+     * Copies a fragment of the list representation of a block tree (e.g. the blocks inserted by a patch) so that the
+     * returned blocks can be used to rebuild a tree with {@link #fromList(List)} without modifying the tree they come
+     * from. A block is cloned with its descendants if all its descendants are part of the fragment, in the same order.
+     * Otherwise the block is cloned without its child blocks.
+     * 
+     * @param fragment a fragment of a list of blocks
+     * @return a copy of the given fragment
+     */
+    public List<Block> copy(List<Block> fragment)
+    {
+        int[] subtreeEnds = getSubtreeEnds(fragment);
+        List<Block> copy = new ArrayList<>(fragment.size());
+        int index = 0;
+        while (index < fragment.size()) {
+            Block block = fragment.get(index);
+            if (block instanceof EndBlock) {
+                // End blocks are not part of the tree so they can be shared.
+                copy.add(block);
+                index++;
+            } else if (subtreeEnds[index] < 0) {
+                // Some of the descendants are missing or have been moved so we copy only the block itself.
+                copy.add(copyWithoutChildren(block));
+                index++;
+            } else {
+                copy.addAll(toList(block.clone()));
+                index = subtreeEnds[index] + 1;
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Copies a block without its child blocks, see {@link ShallowBlockCopier}.
+     * 
+     * @param block the block to copy
+     * @return a copy of the given block, without child blocks
+     */
+    public Block copyWithoutChildren(Block block)
+    {
+        return this.shallowBlockCopier.copy(block);
+    }
+
+    /**
+     * Looks for the subtrees that are complete in the given fragment, in a single pass: a start block is matched with
+     * the end block that closes it and its child blocks are compared, by reference, with the start blocks found at the
+     * next level in between.
+     * 
+     * @param fragment a fragment of a list of blocks
+     * @return for each start block, the index of the matching end block if the descendants of the start block are all
+     *         found in the given fragment, in the same order, {@code -1} otherwise
+     */
+    private int[] getSubtreeEnds(List<Block> fragment)
+    {
+        int[] subtreeEnds = new int[fragment.size()];
+        Arrays.fill(subtreeEnds, -1);
+        // The start positions of the blocks that are not closed yet and, for each of them, the number of child blocks
+        // found so far (or -1 if the subtree is incomplete).
+        int[] path = new int[INITIAL_DEPTH];
+        int[] childCount = new int[INITIAL_DEPTH];
+        int depth = -1;
+        for (int i = 0; i < fragment.size(); i++) {
+            Block block = fragment.get(i);
+            if (block instanceof EndBlock) {
+                if (depth < 0) {
+                    // The start block is not part of the fragment.
+                    continue;
+                }
+                Block startBlock = fragment.get(path[depth]);
+                boolean complete = childCount[depth] == startBlock.getChildren().size()
+                    && ((EndBlock) block).getType() == startBlock.getClass();
+                if (complete) {
+                    subtreeEnds[path[depth]] = i;
+                }
+                depth--;
+                if (!complete && depth >= 0) {
+                    childCount[depth] = -1;
+                }
+            } else {
+                if (depth >= 0 && childCount[depth] >= 0) {
+                    List<Block> siblings = fragment.get(path[depth]).getChildren();
+                    int childIndex = childCount[depth];
+                    boolean expected = childIndex < siblings.size() && siblings.get(childIndex) == block;
+                    childCount[depth] = expected ? childIndex + 1 : -1;
+                }
+                depth++;
+                if (depth == path.length) {
+                    path = Arrays.copyOf(path, 2 * depth);
+                    childCount = Arrays.copyOf(childCount, 2 * depth);
+                }
+                path[depth] = i;
+                childCount[depth] = 0;
+            }
+        }
+        return subtreeEnds;
+    }
+
+    /**
+     * @param root the root of a block tree
+     * @return the number of blocks in the given tree, including the root
+     */
+    public int countBlocks(Block root)
+    {
+        int count = 0;
+        Deque<Block> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            count++;
+            stack.pop().getChildren().forEach(stack::push);
+        }
+        return count;
+    }
 }
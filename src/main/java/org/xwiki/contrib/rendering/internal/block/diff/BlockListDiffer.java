@@ -0,0 +1,228 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import org.xwiki.contrib.rendering.block.diff.BlockDiffAlgorithm;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffConfiguration;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffMacroMode;
+import org.xwiki.contrib.rendering.block.diff.BlockMove;
+import org.xwiki.contrib.rendering.block.diff.BlockPatch;
+
+/**
+ * Computes the changes between the list representations of two block trees, comparing the blocks without their child
+ * blocks (see {@link ShallowBlockComparator}), so that the compared trees don't have to be modified. Each block is
+ * reduced to a 64-bit fingerprint once, and the diff engine runs over the fingerprints. Identical subtrees are skipped
+ * (see {@link HierarchicalDiffEngine}), and the common prefix and suffix of the compared ranges are skipped before
+ * running the configured diff algorithm (see {@link AnchoringDiffEngine}). When a {@link ForkJoinPool} is configured,
+ * the modified subtrees (e.g. sections) are compared in parallel. The macros can be compared by their source instead of
+ * the content they generate (see {@link MacroSourceDiffer}).
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+public class BlockListDiffer
+{
+    private final ShallowBlockComparator comparator = new ShallowBlockComparator();
+
+    private final BlockMoveDetector moveDetector = new BlockMoveDetector();
+
+    private final BlockModificationDetector modificationDetector = new BlockModificationDetector();
+
+    private final MacroSourceDiffer macroSourceDiffer = new MacroSourceDiffer();
+
+    private final Map<BlockDiffAlgorithm, HierarchicalDiffEngine> diffEngines = new EnumMap<>(BlockDiffAlgorithm.class);
+
+    private final HierarchicalDiffEngine automaticDiffEngine;
+
+    /**
+     * Creates a new instance.
+     */
+    public BlockListDiffer()
+    {
+        // The Myers algorithm needs O(D^2) memory, so large ranges are compared in linear space.
+        DiffEngine myers = new LinearSpaceDiffEngine(new MyersDiffEngine());
+        DiffEngine histogram = new HistogramDiffEngine(myers);
+        this.diffEngines.put(BlockDiffAlgorithm.MYERS, new HierarchicalDiffEngine(new AnchoringDiffEngine(myers)));
+        this.diffEngines.put(BlockDiffAlgorithm.HISTOGRAM,
+            new HierarchicalDiffEngine(new AnchoringDiffEngine(histogram)));
+        // The patience algorithm already skips the common prefix and suffix and matches the unique blocks first.
+        this.diffEngines.put(BlockDiffAlgorithm.PATIENCE, new HierarchicalDiffEngine(new PatienceDiffEngine(myers)));
+        this.automaticDiffEngine =
+            new HierarchicalDiffEngine(new AnchoringDiffEngine(new AutomaticDiffEngine(myers, histogram)));
+    }
+
+    /**
+     * Computes the changes between two lists of blocks.
+     * 
+     * @param previous the list of blocks before the modification
+     * @param next the list of blocks after the modification
+     * @return the changes between the given lists
+     */
+    public BlockPatch diff(FlatBlockList previous, FlatBlockList next)
+    {
+        return diff(previous, next, null);
+    }
+
+    /**
+     * Computes the changes between two lists of blocks.
+     * 
+     * @param previous the list of blocks before the modification
+     * @param next the list of blocks after the modification
+     * @param configuration how to compute the changes, {@code null} to use the default configuration
+     * @return the changes between the given lists
+     */
+    public BlockPatch diff(FlatBlockList previous, FlatBlockList next, BlockDiffConfiguration configuration)
+    {
+        return diff(previous, next, configuration, DiffBudget.of(configuration));
+    }
+
+    /**
+     * Computes the changes between two lists of blocks.
+     * 
+     * @param previous the list of blocks before the modification
+     * @param next the list of blocks after the modification
+     * @param configuration how to compute the changes, {@code null} to use the default configuration
+     * @param budget the budget of the diff operation, started when the operation was called (before the compared
+     *            trees were converted into lists), {@code null} if the cost of the diff is not limited
+     * @return the changes between the given lists
+     */
+    public BlockPatch diff(FlatBlockList previous, FlatBlockList next, BlockDiffConfiguration configuration,
+        DiffBudget budget)
+    {
+        return diff(previous, next, configuration, this.comparator, budget);
+    }
+
+    /**
+     * Computes the changes between two lists of blocks, using the given comparator (e.g. one that normalizes the
+     * blocks before comparing them, see {@link NormalizingBlockComparator}).
+     * 
+     * @param previous the list of blocks before the modification
+     * @param next the list of blocks after the modification
+     * @param configuration how to compute the changes, {@code null} to use the default configuration
+     * @param comparator the component used to compare the blocks
+     * @param budget the budget of the diff operation, {@code null} if the cost of the diff is not limited
+     * @return the changes between the given lists
+     */
+    public BlockPatch diff(FlatBlockList previous, FlatBlockList next, BlockDiffConfiguration configuration,
+        ShallowBlockComparator comparator, DiffBudget budget)
+    {
+        BlockDiffMacroMode macroMode = configuration != null ? configuration.getMacroMode() : null;
+        if (macroMode != null && macroMode != BlockDiffMacroMode.OUTPUT) {
+            EditScript script = this.macroSourceDiffer.diff(previous, next,
+                macroMode == BlockDiffMacroMode.SOURCE_THEN_CHANGED_OUTPUT, getDiffEngine(configuration),
+                getForkJoinPool(configuration), budget, comparator);
+            // The moves are detected using the subtree hashes of the full lists, which would require comparing the
+            // content generated by the macros.
+            return script.toPatch(previous, next, Collections.emptyList(),
+                this.modificationDetector.detect(previous, next, script));
+        }
+
+        BlockSequences sequences = getSequences(previous, next, configuration, comparator);
+        return getPatch(sequences, diff(sequences, configuration, budget));
+    }
+
+    /**
+     * Prepares two lists of blocks to be compared.
+     * 
+     * @param previous the list of blocks before the modification
+     * @param next the list of blocks after the modification
+     * @param configuration how to compute the changes, {@code null} to use the default configuration
+     * @param comparator the component used to compare the blocks
+     * @return the sequences to compare
+     */
+    public BlockSequences getSequences(FlatBlockList previous, FlatBlockList next,
+        BlockDiffConfiguration configuration, ShallowBlockComparator comparator)
+    {
+        return new BlockSequences(previous, next, comparator, getForkJoinPool(configuration));
+    }
+
+    /**
+     * Builds the patch that corresponds to the given changes, with the moved subtrees (unless the changes are
+     * degraded) and the modified blocks.
+     * 
+     * @param sequences the compared lists of blocks
+     * @param script the changes between the compared lists of blocks
+     * @return the patch
+     */
+    public BlockPatch getPatch(BlockSequences sequences, EditScript script)
+    {
+        FlatBlockList previous = sequences.getPrevious();
+        FlatBlockList next = sequences.getNext();
+        // Coarse changes are not worth the extra cost.
+        List<BlockMove> moves =
+            script.isDegraded() ? Collections.emptyList() : this.moveDetector.detect(sequences, script);
+        return script.toPatch(previous, next, moves, this.modificationDetector.detect(previous, next, script));
+    }
+
+    /**
+     * Computes the changes between two lists of blocks.
+     * 
+     * @param sequences the lists of blocks to compare
+     * @param configuration how to compute the changes, {@code null} to use the default configuration
+     * @param budget the budget of the diff operation, {@code null} if the cost of the diff is not limited
+     * @return the changes between the given lists, as index ranges; the edit script is degraded if the given budget
+     *         was exhausted
+     */
+    public EditScript diff(BlockSequences sequences, BlockDiffConfiguration configuration, DiffBudget budget)
+    {
+        EditScript script = new EditScript();
+        getDiffEngine(configuration).diff(sequences, script, getForkJoinPool(configuration), budget);
+        return script;
+    }
+
+    /**
+     * Computes the changes between two ranges of blocks, without taking into account the tree structure, so the ranges
+     * don't have to cover complete subtrees.
+     * 
+     * @param sequences the lists of blocks to compare
+     * @param previousStart the start of the range to compare from the previous list (inclusive)
+     * @param previousEnd the end of the range to compare from the previous list (exclusive)
+     * @param nextStart the start of the range to compare from the next list (inclusive)
+     * @param nextEnd the end of the range to compare from the next list (exclusive)
+     * @param script where to add the changes; it is marked as degraded if the given budget was exhausted
+     * @param configuration how to compute the changes, {@code null} to use the default configuration
+     * @param budget the budget of the diff operation, {@code null} if the cost of the diff is not limited
+     */
+    public void diff(BlockSequences sequences, int previousStart, int previousEnd, int nextStart, int nextEnd,
+        EditScript script, BlockDiffConfiguration configuration, DiffBudget budget)
+    {
+        getDiffEngine(configuration).diff(sequences, previousStart, previousEnd, nextStart, nextEnd, script, budget);
+    }
+
+    private ForkJoinPool getForkJoinPool(BlockDiffConfiguration configuration)
+    {
+        return configuration != null ? configuration.getForkJoinPool() : null;
+    }
+
+    private HierarchicalDiffEngine getDiffEngine(BlockDiffConfiguration configuration)
+    {
+        if (configuration == null || configuration.getAlgorithm() == null) {
+            return this.automaticDiffEngine;
+        } else {
+            return this.diffEngines.get(configuration.getAlgorithm());
+        }
+    }
+}
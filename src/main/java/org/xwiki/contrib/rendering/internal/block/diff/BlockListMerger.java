@@ -0,0 +1,148 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.xwiki.contrib.rendering.block.diff.BlockMergeConflict;
+import org.xwiki.diff.Delta;
+import org.xwiki.diff.Patch;
+import org.xwiki.rendering.block.Block;
+
+/**
+ * Merges two patches computed against the list representation of the same block tree (the common ancestor). The
+ * changes that don't overlap are all applied. The overlapping changes are grouped and compared: if both versions end
+ * up with the same blocks the change is applied once, otherwise the previous version is kept and a conflict is
+ * reported.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+public class BlockListMerger
+{
+    private final ShallowBlockComparator comparator = new ShallowBlockComparator();
+
+    private final BlockListConverter blockListConverter = new BlockListConverter();
+
+    /**
+     * Merges two patches.
+     * 
+     * @param common the list representation of the common ancestor, used to compute the patches
+     * @param target a copy of the common list (with the same blocks, in the same order) that can be modified and
+     *            used to build the merged list
+     * @param previousPatch the changes from the common ancestor to the previous version
+     * @param nextPatch the changes from the common ancestor to the next version
+     * @param conflicts where to collect the conflicts
+     * @return the merged list of blocks
+     */
+    public List<Block> merge(List<Block> common, List<Block> target, Patch<Block> previousPatch,
+        Patch<Block> nextPatch, List<BlockMergeConflict> conflicts)
+    {
+        // Patches are usually linked lists, so we copy the deltas in order to access them by index.
+        List<Delta<Block>> previous = new ArrayList<>(previousPatch);
+        List<Delta<Block>> next = new ArrayList<>(nextPatch);
+        List<Block> result = new ArrayList<>(target.size());
+        int position = 0;
+        int previousIndex = 0;
+        int nextIndex = 0;
+        while (previousIndex < previous.size() || nextIndex < next.size()) {
+            int start = Math.min(getStart(previous, previousIndex), getStart(next, nextIndex));
+            int end = start;
+            int previousStart = previousIndex;
+            int nextStart = nextIndex;
+            // Collect the deltas that overlap the current range, from both patches, extending the range as needed.
+            boolean extended;
+            do {
+                extended = false;
+                if (previousIndex < previous.size() && overlaps(previous.get(previousIndex), start, end)) {
+                    end = Math.max(end, getEnd(previous.get(previousIndex++)));
+                    extended = true;
+                }
+                if (nextIndex < next.size() && overlaps(next.get(nextIndex), start, end)) {
+                    end = Math.max(end, getEnd(next.get(nextIndex++)));
+                    extended = true;
+                }
+            } while (extended);
+
+            result.addAll(target.subList(position, start));
+            List<Delta<Block>> previousDeltas = previous.subList(previousStart, previousIndex);
+            List<Delta<Block>> nextDeltas = next.subList(nextStart, nextIndex);
+            if (nextDeltas.isEmpty()) {
+                apply(target, start, end, previousDeltas, result);
+            } else if (previousDeltas.isEmpty()) {
+                apply(target, start, end, nextDeltas, result);
+            } else {
+                List<Block> previousVersion = apply(common, start, end, previousDeltas, new ArrayList<>());
+                List<Block> nextVersion = apply(common, start, end, nextDeltas, new ArrayList<>());
+                if (!equals(previousVersion, nextVersion)) {
+                    conflicts.add(new BlockMergeConflict(start, new ArrayList<>(common.subList(start, end)),
+                        previousVersion, nextVersion));
+                }
+                apply(target, start, end, previousDeltas, result);
+            }
+            position = end;
+        }
+        result.addAll(target.subList(position, target.size()));
+        return result;
+    }
+
+    private List<Block> apply(List<Block> blocks, int start, int end, List<Delta<Block>> deltas, List<Block> result)
+    {
+        int position = start;
+        for (Delta<Block> delta : deltas) {
+            result.addAll(blocks.subList(position, delta.getPrevious().getIndex()));
+            result.addAll(this.blockListConverter.copy(delta.getNext().getElements()));
+            position = getEnd(delta);
+        }
+        result.addAll(blocks.subList(position, end));
+        return result;
+    }
+
+    private boolean overlaps(Delta<Block> delta, int start, int end)
+    {
+        // Insertions at the start of the range overlap the range, even if it's empty.
+        int index = delta.getPrevious().getIndex();
+        return index < end || index == start;
+    }
+
+    private boolean equals(List<Block> alice, List<Block> bob)
+    {
+        if (alice.size() != bob.size()) {
+            return false;
+        }
+        for (int i = 0; i < alice.size(); i++) {
+            if (!this.comparator.equals(alice.get(i), bob.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int getStart(List<Delta<Block>> deltas, int index)
+    {
+        return index < deltas.size() ? deltas.get(index).getPrevious().getIndex() : Integer.MAX_VALUE;
+    }
+
+    private int getEnd(Delta<Block> delta)
+    {
+        return delta.getPrevious().getIndex() + delta.getPrevious().getElements().size();
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import org.xwiki.diff.Chunk;
+import org.xwiki.diff.Delta;
+import org.xwiki.diff.Patch;
+import org.xwiki.diff.PatchException;
+import org.xwiki.rendering.block.Block;
+
+/**
+ * Applies and restores patches on the list representation of a block tree. Unlike {@link Patch#apply(List)} and
+ * {@link Patch#restore(List)}, the blocks are verified without their child blocks (see {@link ShallowBlockComparator})
+ * and the blocks added by the patch are copied so that the tree they come from is not modified when the returned list
+ * is converted back into a tree.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+public class BlockListPatcher
+{
+    private final ShallowBlockComparator comparator = new ShallowBlockComparator();
+
+    private final BlockListConverter blockListConverter = new BlockListConverter();
+
+    /**
+     * Applies a patch.
+     * 
+     * @param target the list of blocks before the modification
+     * @param patch the changes to apply
+     * @return the list of blocks after the modification
+     * @throws PatchException if the patch doesn't match the given list of blocks
+     */
+    public List<Block> apply(List<Block> target, Patch<Block> patch) throws PatchException
+    {
+        return patch(target, patch, Delta::getPrevious, Delta::getNext);
+    }
+
+    /**
+     * Restores a patch.
+     * 
+     * @param target the list of blocks after the modification
+     * @param patch the changes to restore
+     * @return the list of blocks before the modification
+     * @throws PatchException if the patch doesn't match the given list of blocks
+     */
+    public List<Block> restore(List<Block> target, Patch<Block> patch) throws PatchException
+    {
+        return patch(target, patch, Delta::getNext, Delta::getPrevious);
+    }
+
+    private List<Block> patch(List<Block> target, Patch<Block> patch, Function<Delta<Block>, Chunk<Block>> source,
+        Function<Delta<Block>, Chunk<Block>> destination) throws PatchException
+    {
+        List<Block> result = new ArrayList<>(target.size());
+        int position = 0;
+        for (Delta<Block> delta : patch) {
+            Chunk<Block> replaced = source.apply(delta);
+            verify(target, replaced, position);
+            if (destination.apply(delta) instanceof FingerprintChunk) {
+                throw new PatchException("Incorrect patch: the patch doesn't have the content of the deleted blocks.");
+            }
+            result.addAll(target.subList(position, replaced.getIndex()));
+            result.addAll(this.blockListConverter.copy(destination.apply(delta).getElements()));
+            position = replaced.getIndex() + replaced.getElements().size();
+        }
+        result.addAll(target.subList(position, target.size()));
+        return result;
+    }
+
+    private void verify(List<Block> target, Chunk<Block> chunk, int position) throws PatchException
+    {
+        List<Block> elements = chunk.getElements();
+        if (chunk.getIndex() < position || chunk.getIndex() + elements.size() > target.size()) {
+            throw new PatchException(String.format("Incorrect patch: the chunk at index [%s] is out of bounds.",
+                chunk.getIndex()));
+        }
+        for (int i = 0; i < elements.size(); i++) {
+            Block block = target.get(chunk.getIndex() + i);
+            boolean matches = chunk instanceof FingerprintChunk
+                ? this.comparator.fingerprint(block) == ((FingerprintChunk) chunk).getFingerprint(i)
+                : this.comparator.equals(block, elements.get(i));
+            if (!matches) {
+                throw new PatchException(String.format("Incorrect patch: the block at index [%s] doesn't match.",
+                    chunk.getIndex() + i));
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.xwiki.contrib.rendering.block.diff.BlockModification;
+
+/**
+ * Finds the blocks whose own attributes (parameters or data) changed while they kept their place in the tree and their
+ * child blocks. In the list representation, such a block has its start replaced by a change while its end is
+ * unchanged. The blocks without children are not reported, because their changes are fully described by the deletion
+ * and the insertion of their start. Each changed start is checked in constant time, plus a binary search over the
+ * changes to map its end, so the cost is linear in the size of the changes.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+public class BlockModificationDetector
+{
+    /**
+     * Finds the modified blocks.
+     * 
+     * @param previous the list of blocks before the modification
+     * @param next the list of blocks after the modification
+     * @param script the changes between the compared lists of blocks
+     * @return the modified blocks, in the order of their position
+     */
+    public List<BlockModification> detect(FlatBlockList previous, FlatBlockList next, EditScript script)
+    {
+        List<BlockModification> modifications = null;
+        for (int i = 0; i < script.size(); i++) {
+            int previousEnd = script.getPreviousEnd(i);
+            int nextStart = script.getNextStart(i);
+            int nextEnd = script.getNextEnd(i);
+            // The root is never modified, because the diff tree has to keep the root of the left side.
+            for (int index = Math.max(1, script.getPreviousStart(i)); index < previousEnd; index++) {
+                int match = previous.getMatch(index);
+                // The blocks without children (e.g. words) are better shown as deleted and inserted.
+                if (match >= previousEnd && match > index + 1) {
+                    // A block that starts in the change and ends after it. Check if its end is unchanged and, if so,
+                    // if it ends a block of the same type that starts in the same change.
+                    int nextMatch = mapUnchanged(script, i, match);
+                    if (nextMatch >= 0) {
+                        int nextIndex = next.getMatch(nextMatch);
+                        if (nextIndex >= nextStart && nextIndex < nextEnd && nextIndex < nextMatch
+                            && next.getBlock(nextIndex).getClass() == previous.getBlock(index).getClass()) {
+                            if (modifications == null) {
+                                modifications = new ArrayList<>();
+                            }
+                            modifications.add(new BlockModification(index, nextIndex));
+                        }
+                    }
+                }
+            }
+        }
+        return modifications == null ? Collections.<BlockModification>emptyList() : modifications;
+    }
+
+    /**
+     * Maps an unchanged position of the previous list to the next list.
+     * 
+     * @param script the changes between the compared lists
+     * @param from the index of a change that precedes the given position
+     * @param previousIndex a position of the previous list
+     * @return the corresponding position in the next list, or {@code -1} if the given position is changed
+     */
+    private int mapUnchanged(EditScript script, int from, int previousIndex)
+    {
+        // Find the last change that starts before or at the given position.
+        int low = from;
+        int high = script.size() - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (script.getPreviousStart(middle) <= previousIndex) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        if (previousIndex < script.getPreviousEnd(low)) {
+            return -1;
+        }
+        return previousIndex + script.getNextEnd(low) - script.getPreviousEnd(low);
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.xwiki.contrib.rendering.block.diff.BlockMove;
+
+/**
+ * Finds the subtrees that are deleted from one place and inserted unmodified at another place. The complete subtrees
+ * from the deleted ranges are indexed by their hash, then the inserted ranges are searched, top-down, for subtrees with
+ * the same hash. Apart from the subtree hashes, which are shared with the diff engines, the cost is linear in the size
+ * of the changes.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+public class BlockMoveDetector
+{
+    /**
+     * The minimum size of a moved subtree, in the list representation. Moving a few words is better shown as a
+     * deletion and an insertion.
+     */
+    static final int MINIMUM_SIZE = 8;
+
+    /**
+     * Finds the moved subtrees.
+     * 
+     * @param sequences the compared lists of blocks
+     * @param script the changes between the compared lists of blocks
+     * @return the moved subtrees, in the order of their position in the next list
+     */
+    public List<BlockMove> detect(BlockSequences sequences, EditScript script)
+    {
+        if (script.size() < 1) {
+            return Collections.emptyList();
+        }
+
+        FlatBlockList previous = sequences.getPrevious();
+        Map<Long, Deque<Integer>> deletedSubtrees = new HashMap<>();
+        for (int i = 0; i < script.size(); i++) {
+            int end = script.getPreviousEnd(i);
+            // The root is never moved.
+            for (int index = Math.max(1, script.getPreviousStart(i)); index < end; index++) {
+                if (isCandidate(previous, index, end)) {
+                    deletedSubtrees.computeIfAbsent(sequences.getPreviousSubtreeHash(index), hash -> new ArrayDeque<>())
+                        .add(index);
+                }
+            }
+        }
+        if (deletedSubtrees.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        FlatBlockList next = sequences.getNext();
+        List<BlockMove> moves = new ArrayList<>();
+        // The deleted subtrees that have been moved, or that contain a moved subtree.
+        BitSet moved = new BitSet(previous.size());
+        for (int i = 0; i < script.size(); i++) {
+            int end = script.getNextEnd(i);
+            int index = Math.max(1, script.getNextStart(i));
+            while (index < end) {
+                int previousIndex = isCandidate(next, index, end) ? findMoved(sequences, deletedSubtrees, moved, index)
+                    : -1;
+                if (previousIndex < 0) {
+                    // Look for a moved subtree inside.
+                    index++;
+                } else {
+                    int size = next.getMatch(index) - index + 1;
+                    moves.add(new BlockMove(previousIndex, index, size));
+                    moved.set(previousIndex, previousIndex + size);
+                    index += size;
+                }
+            }
+        }
+        return moves;
+    }
+
+    private boolean isCandidate(FlatBlockList list, int index, int end)
+    {
+        if (list.isEnd(index)) {
+            return false;
+        }
+        int match = list.getMatch(index);
+        return match < end && match - index + 1 >= MINIMUM_SIZE;
+    }
+
+    private int findMoved(BlockSequences sequences, Map<Long, Deque<Integer>> deletedSubtrees, BitSet moved,
+        int nextIndex)
+    {
+        Deque<Integer> candidates = deletedSubtrees.get(sequences.getNextSubtreeHash(nextIndex));
+        if (candidates != null) {
+            FlatBlockList previous = sequences.getPrevious();
+            for (Integer previousIndex : candidates) {
+                // Skip the subtrees that overlap a subtree that has already been moved.
+                int nextMoved = moved.nextSetBit(previousIndex);
+                boolean overlaps = nextMoved >= 0 && nextMoved <= previous.getMatch(previousIndex);
+                if (!overlaps && sequences.subtreeEquals(previousIndex, nextIndex)) {
+                    candidates.remove(previousIndex);
+                    return previousIndex;
+                }
+            }
+        }
+        return -1;
+    }
+}
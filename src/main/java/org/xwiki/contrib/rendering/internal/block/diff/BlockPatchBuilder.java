@@ -0,0 +1,118 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.xwiki.contrib.rendering.block.diff.BlockModification;
+import org.xwiki.contrib.rendering.block.diff.BlockMove;
+import org.xwiki.contrib.rendering.block.diff.BlockPatch;
+import org.xwiki.diff.Chunk;
+import org.xwiki.diff.Patch;
+import org.xwiki.rendering.block.Block;
+
+/**
+ * Builds a {@link Patch} from the index ranges that have changed between two lists of blocks.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+public class BlockPatchBuilder
+{
+    private final List<Block> previous;
+
+    private final List<Block> next;
+
+    private final DefaultBlockPatch patch = new DefaultBlockPatch();
+
+    /**
+     * Creates a new builder.
+     * 
+     * @param previous the list of blocks before the modification
+     * @param next the list of blocks after the modification
+     */
+    public BlockPatchBuilder(List<Block> previous, List<Block> next)
+    {
+        this.previous = previous;
+        this.next = next;
+    }
+
+    /**
+     * Adds a change to the patch. Changes must be added in the order of their indexes.
+     * 
+     * @param previousStart the index of the first changed block in the previous list
+     * @param previousEnd the index after the last changed block in the previous list
+     * @param nextStart the index of the first changed block in the next list
+     * @param nextEnd the index after the last changed block in the next list
+     * @return this builder
+     */
+    public BlockPatchBuilder addChange(int previousStart, int previousEnd, int nextStart, int nextEnd)
+    {
+        if (previousStart < previousEnd || nextStart < nextEnd) {
+            this.patch.add(new BlockDelta(createChunk(this.previous, previousStart, previousEnd),
+                createChunk(this.next, nextStart, nextEnd)));
+        }
+        return this;
+    }
+
+    /**
+     * @param degraded whether the changes are larger than needed because the diff budget has been exhausted
+     * @return this builder
+     */
+    public BlockPatchBuilder setDegraded(boolean degraded)
+    {
+        this.patch.setDegraded(degraded);
+        return this;
+    }
+
+    /**
+     * @param moves the subtrees that are deleted from one place and inserted unmodified at another place
+     * @return this builder
+     */
+    public BlockPatchBuilder setMoves(List<BlockMove> moves)
+    {
+        this.patch.setMoves(moves);
+        return this;
+    }
+
+    /**
+     * @param modifications the blocks whose own parameters or data changed while they kept their place in the tree
+     * @return this builder
+     */
+    public BlockPatchBuilder setModifications(List<BlockModification> modifications)
+    {
+        this.patch.setModifications(modifications);
+        return this;
+    }
+
+    /**
+     * @return the patch
+     */
+    public BlockPatch build()
+    {
+        return this.patch;
+    }
+
+    private static Chunk<Block> createChunk(List<Block> blocks, int start, int end)
+    {
+        return new BlockChunk(start, new ArrayList<>(blocks.subList(start, end)));
+    }
+}
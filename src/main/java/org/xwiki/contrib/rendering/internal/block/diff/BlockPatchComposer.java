@@ -0,0 +1,329 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+import org.xwiki.diff.Chunk;
+import org.xwiki.diff.Delta;
+import org.xwiki.diff.Patch;
+import org.xwiki.diff.PatchException;
+import org.xwiki.rendering.block.Block;
+
+/**
+ * Composes and inverts patches computed on the list representation of block trees (see {@link BlockListConverter}).
+ * Only the index ranges of the deltas are used, so the cost depends on the size of the changes and not on the size of
+ * the patched lists, which are never built.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+public class BlockPatchComposer
+{
+    private final ShallowBlockComparator comparator = new ShallowBlockComparator();
+
+    /**
+     * Composes a sequence of patches, where each patch transforms the list of blocks produced by the previous patch.
+     * 
+     * @param patches the patches to compose, in the order in which they would be applied
+     * @return a patch that is equivalent to applying the given patches in order
+     * @throws PatchException if the patches don't follow each other
+     */
+    public Patch<Block> compose(List<Patch<Block>> patches) throws PatchException
+    {
+        if (patches.isEmpty()) {
+            return new DefaultBlockPatch();
+        }
+        // Compose the patches two by two, so that each change is composed a logarithmic number of times.
+        List<Patch<Block>> level = patches;
+        while (level.size() > 1) {
+            List<Patch<Block>> nextLevel = new ArrayList<>((level.size() + 1) / 2);
+            for (int i = 0; i < level.size(); i += 2) {
+                nextLevel.add(i + 1 < level.size() ? compose(level.get(i), level.get(i + 1)) : level.get(i));
+            }
+            level = nextLevel;
+        }
+        return level.get(0);
+    }
+
+    /**
+     * Composes two patches.
+     * 
+     * @param first a patch that transforms a list A into a list B
+     * @param second a patch that transforms the list B into a list C
+     * @return a patch that transforms the list A into the list C
+     * @throws PatchException if the second patch doesn't match the output of the first patch
+     */
+    public Patch<Block> compose(Patch<Block> first, Patch<Block> second) throws PatchException
+    {
+        return new Composition(first, second).compose();
+    }
+
+    /**
+     * Inverts a patch.
+     * 
+     * @param patch a patch that transforms a list A into a list B
+     * @return a patch that transforms the list B into the list A
+     * @throws PatchException if the patch doesn't have the content of the deleted blocks
+     */
+    public Patch<Block> invert(Patch<Block> patch) throws PatchException
+    {
+        Patch<Block> inverse = new DefaultBlockPatch();
+        for (Delta<Block> delta : patch) {
+            if (delta.getPrevious() instanceof FingerprintChunk) {
+                throw new PatchException("Incorrect patch: the patch doesn't have the content of the deleted blocks.");
+            }
+            inverse.add(new BlockDelta(delta.getNext(), delta.getPrevious()));
+        }
+        return inverse;
+    }
+
+    /**
+     * Walks the intermediate list B once, from one change to the next, skipping the ranges that neither patch
+     * modifies. Each position inside a change is either inserted by the first patch or copied from A, and then either
+     * deleted by the second patch or copied to C.
+     */
+    private final class Composition
+    {
+        private final List<Delta<Block>> firstDeltas;
+
+        private final List<Delta<Block>> secondDeltas;
+
+        private final Patch<Block> result = new DefaultBlockPatch();
+
+        private int firstIndex;
+
+        private int secondIndex;
+
+        /**
+         * The delta of the first patch whose inserted blocks contain the current position, if any.
+         */
+        private Delta<Block> first;
+
+        /**
+         * The delta of the second patch whose deleted blocks contain the current position, if any.
+         */
+        private Delta<Block> second;
+
+        /**
+         * The difference between an index in B and the corresponding index in A, outside of the changes.
+         */
+        private int firstOffset;
+
+        /**
+         * The difference between an index in C and the corresponding index in B, outside of the changes.
+         */
+        private int secondOffset;
+
+        private ChunkBuilder previous;
+
+        private ChunkBuilder next;
+
+        Composition(Patch<Block> first, Patch<Block> second)
+        {
+            // Patches are usually linked lists, so we copy the deltas in order to access them by index.
+            this.firstDeltas = new ArrayList<>(first);
+            this.secondDeltas = new ArrayList<>(second);
+        }
+
+        Patch<Block> compose() throws PatchException
+        {
+            int position = 0;
+            while (true) {
+                startDeltas(position);
+                if (this.first == null && this.second == null) {
+                    flush();
+                    int nextPosition = Math.min(getStart(this.firstDeltas, this.firstIndex, Delta::getNext),
+                        getStart(this.secondDeltas, this.secondIndex, Delta::getPrevious));
+                    if (nextPosition == Integer.MAX_VALUE) {
+                        break;
+                    }
+                    position = nextPosition;
+                } else {
+                    compose(position++);
+                    endDeltas(position);
+                }
+            }
+            return this.result;
+        }
+
+        private void compose(int position) throws PatchException
+        {
+            if (this.second == null) {
+                // Inserted by the first patch and kept by the second patch.
+                this.next.add(this.first.getNext(), position - this.first.getNext().getIndex());
+            } else if (this.first == null) {
+                // Copied from A and deleted by the second patch.
+                this.previous.add(this.second.getPrevious(), position - this.second.getPrevious().getIndex());
+            } else {
+                // Inserted by the first patch and deleted by the second patch: the changes cancel each other.
+                Chunk<Block> deleted = this.second.getPrevious();
+                Block inserted = this.first.getNext().getElements().get(position - this.first.getNext().getIndex());
+                if (!(deleted instanceof FingerprintChunk) && !BlockPatchComposer.this.comparator.equals(inserted,
+                    deleted.getElements().get(position - deleted.getIndex()))) {
+                    throw new PatchException(String.format(
+                        "Incorrect patch: the block at index [%s] doesn't match the previous patch.", position));
+                }
+            }
+        }
+
+        private void startDeltas(int position) throws PatchException
+        {
+            boolean started;
+            do {
+                started = false;
+                if (this.first == null && this.firstIndex < this.firstDeltas.size()) {
+                    Delta<Block> delta = this.firstDeltas.get(this.firstIndex);
+                    if (checkStart(delta.getNext(), position)) {
+                        this.firstIndex++;
+                        this.first = delta;
+                        startChange(position);
+                        this.previous.addAll(delta.getPrevious());
+                        started = true;
+                    }
+                }
+                if (this.second == null && this.secondIndex < this.secondDeltas.size()) {
+                    Delta<Block> delta = this.secondDeltas.get(this.secondIndex);
+                    if (checkStart(delta.getPrevious(), position)) {
+                        this.secondIndex++;
+                        this.second = delta;
+                        startChange(position);
+                        this.next.addAll(delta.getNext());
+                        started = true;
+                    }
+                }
+                // Deltas that don't cover any position of B end where they start.
+                endDeltas(position);
+            } while (started);
+        }
+
+        private boolean checkStart(Chunk<Block> chunk, int position) throws PatchException
+        {
+            if (chunk.getIndex() < position) {
+                throw new PatchException(String.format(
+                    "Incorrect patch: the chunk at index [%s] overlaps a previous change.", chunk.getIndex()));
+            }
+            return chunk.getIndex() == position;
+        }
+
+        private void endDeltas(int position)
+        {
+            if (this.first != null && position == getEnd(this.first.getNext())) {
+                this.firstOffset +=
+                    this.first.getNext().getElements().size() - this.first.getPrevious().getElements().size();
+                this.first = null;
+            }
+            if (this.second != null && position == getEnd(this.second.getPrevious())) {
+                this.secondOffset +=
+                    this.second.getNext().getElements().size() - this.second.getPrevious().getElements().size();
+                this.second = null;
+            }
+        }
+
+        private void startChange(int position)
+        {
+            if (this.previous == null) {
+                this.previous = new ChunkBuilder(position - this.firstOffset);
+                this.next = new ChunkBuilder(position + this.secondOffset);
+            }
+        }
+
+        private void flush()
+        {
+            if (this.previous != null) {
+                if (!this.previous.isEmpty() || !this.next.isEmpty()) {
+                    this.result.add(new BlockDelta(this.previous.build(), this.next.build()));
+                }
+                this.previous = null;
+                this.next = null;
+            }
+        }
+
+        private int getStart(List<Delta<Block>> deltas, int index, Function<Delta<Block>, Chunk<Block>> chunk)
+        {
+            return index < deltas.size() ? chunk.apply(deltas.get(index)).getIndex() : Integer.MAX_VALUE;
+        }
+
+        private int getEnd(Chunk<Block> chunk)
+        {
+            return chunk.getIndex() + chunk.getElements().size();
+        }
+    }
+
+    /**
+     * Collects the blocks of a composed chunk. The chunk only has the fingerprints of its blocks (see
+     * {@link FingerprintChunk}) as soon as one of them comes from a chunk that only has fingerprints.
+     */
+    private final class ChunkBuilder
+    {
+        private final int index;
+
+        private final List<Block> blocks = new ArrayList<>();
+
+        private long[] fingerprints;
+
+        ChunkBuilder(int index)
+        {
+            this.index = index;
+        }
+
+        void addAll(Chunk<Block> chunk)
+        {
+            for (int i = 0; i < chunk.getElements().size(); i++) {
+                add(chunk, i);
+            }
+        }
+
+        void add(Chunk<Block> chunk, int i)
+        {
+            if (chunk instanceof FingerprintChunk && this.fingerprints == null) {
+                this.fingerprints = new long[Math.max(16, 2 * this.blocks.size())];
+                for (int j = 0; j < this.blocks.size(); j++) {
+                    this.fingerprints[j] = BlockPatchComposer.this.comparator.fingerprint(this.blocks.get(j));
+                }
+            }
+            Block block = chunk.getElements().get(i);
+            if (this.fingerprints != null) {
+                if (this.blocks.size() == this.fingerprints.length) {
+                    this.fingerprints = Arrays.copyOf(this.fingerprints, 2 * this.fingerprints.length);
+                }
+                this.fingerprints[this.blocks.size()] = block == null ? ((FingerprintChunk) chunk).getFingerprint(i)
+                    : BlockPatchComposer.this.comparator.fingerprint(block);
+            }
+            this.blocks.add(block);
+        }
+
+        boolean isEmpty()
+        {
+            return this.blocks.isEmpty();
+        }
+
+        Chunk<Block> build()
+        {
+            if (this.fingerprints != null && !this.blocks.isEmpty()) {
+                return new FingerprintChunk(this.index, Arrays.copyOf(this.fingerprints, this.blocks.size()));
+            }
+            return new BlockChunk(this.index, this.blocks);
+        }
+    }
+}
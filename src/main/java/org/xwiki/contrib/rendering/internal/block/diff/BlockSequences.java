@@ -0,0 +1,356 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.xwiki.rendering.block.Block;
+
+/**
+ * The list representations of the two block trees to compare, each block being represented by its 64-bit
+ * fingerprint. Diff engines compare the fingerprints (primitive comparison, no allocation) and check the full (shallow)
+ * block equality only when the fingerprints match.
+ * <p>
+ * We also compute (lazily) a subtree hash for each block, from its fingerprint and the subtree hashes of its child
+ * blocks (like in a Merkle tree). Two blocks with the same subtree hash most probably have the same descendants, which
+ * is verified only once, so we can skip their descendants when comparing the trees.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+public class BlockSequences implements DiffSequences
+{
+    private static final long HASH_PRIME = 0x100000001b3L;
+
+    /**
+     * The number of blocks fingerprinted by a single task when the fingerprints are computed in parallel.
+     */
+    private static final int FINGERPRINT_BATCH_SIZE = 8192;
+
+    /**
+     * Computes the fingerprints of a range of blocks, splitting the range when it's too large.
+     */
+    private static final class FingerprintTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final transient FlatBlockList list;
+
+        private final transient ShallowBlockComparator comparator;
+
+        private final long[] fingerprints;
+
+        private final int start;
+
+        private final int end;
+
+        FingerprintTask(FlatBlockList list, ShallowBlockComparator comparator, long[] fingerprints, int start, int end)
+        {
+            this.list = list;
+            this.comparator = comparator;
+            this.fingerprints = fingerprints;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (this.end - this.start <= FINGERPRINT_BATCH_SIZE) {
+                fingerprint(this.list, this.comparator, this.fingerprints, this.start, this.end);
+            } else {
+                int middle = (this.start + this.end) >>> 1;
+                invokeAll(new FingerprintTask(this.list, this.comparator, this.fingerprints, this.start, middle),
+                    new FingerprintTask(this.list, this.comparator, this.fingerprints, middle, this.end));
+            }
+        }
+    }
+
+    private final FlatBlockList previous;
+
+    private final FlatBlockList next;
+
+    private final long[] previousFingerprints;
+
+    private final long[] nextFingerprints;
+
+    private final ShallowBlockComparator comparator;
+
+    private long[] previousSubtreeHashes;
+
+    private long[] nextSubtreeHashes;
+
+    /**
+     * For each start position of the previous list, the start position (plus one) of the last subtree from the next
+     * list that was found equal by {@link #subtreeEquals(int, int)}, {@code 0} if none.
+     */
+    private volatile int[] verifiedMatches;
+
+    /**
+     * Creates the sequences to compare.
+     * 
+     * @param previous the list of blocks before the modification
+     * @param next the list of blocks after the modification
+     * @param comparator the component used to compare the blocks
+     */
+    public BlockSequences(FlatBlockList previous, FlatBlockList next, ShallowBlockComparator comparator)
+    {
+        this(previous, next, comparator, null);
+    }
+
+    /**
+     * Creates the sequences to compare.
+     * 
+     * @param previous the list of blocks before the modification
+     * @param next the list of blocks after the modification
+     * @param comparator the component used to compare the blocks
+     * @param pool the pool used to compute the fingerprints in parallel, {@code null} to compute them in the current
+     *            thread
+     */
+    public BlockSequences(FlatBlockList previous, FlatBlockList next, ShallowBlockComparator comparator,
+        ForkJoinPool pool)
+    {
+        this.previous = previous;
+        this.next = next;
+        this.comparator = comparator;
+        this.previousFingerprints = fingerprint(previous, comparator, pool);
+        this.nextFingerprints = fingerprint(next, comparator, pool);
+    }
+
+    private BlockSequences(FlatBlockList previous, long[] previousFingerprints, long[] previousSubtreeHashes,
+        FlatBlockList next, long[] nextFingerprints, ShallowBlockComparator comparator)
+    {
+        this.previous = previous;
+        this.next = next;
+        this.comparator = comparator;
+        this.previousFingerprints = previousFingerprints;
+        this.previousSubtreeHashes = previousSubtreeHashes;
+        this.nextFingerprints = nextFingerprints;
+    }
+
+    /**
+     * Creates the sequences to compare the same list of blocks before the modification with another list of blocks
+     * after the modification. The fingerprints and the subtree hashes of the blocks before the modification are reused.
+     * 
+     * @param otherNext the list of blocks after the modification
+     * @param otherNextFingerprints the fingerprints of the blocks after the modification, computed with the same
+     *            comparator
+     * @return the sequences to compare
+     */
+    public BlockSequences withNext(FlatBlockList otherNext, long[] otherNextFingerprints)
+    {
+        // Compute the subtree hashes now so that they are shared with the returned sequences.
+        if (this.previousSubtreeHashes == null) {
+            this.previousSubtreeHashes = hashSubtrees(this.previous, this.previousFingerprints);
+        }
+        return new BlockSequences(this.previous, this.previousFingerprints, this.previousSubtreeHashes, otherNext,
+            otherNextFingerprints, this.comparator);
+    }
+
+    /**
+     * @return the component used to compare the blocks
+     */
+    public ShallowBlockComparator getComparator()
+    {
+        return this.comparator;
+    }
+
+    /**
+     * @return the list of blocks before the modification
+     */
+    public FlatBlockList getPrevious()
+    {
+        return this.previous;
+    }
+
+    /**
+     * @return the list of blocks after the modification
+     */
+    public FlatBlockList getNext()
+    {
+        return this.next;
+    }
+
+    /**
+     * @return the fingerprints of the blocks before the modification
+     */
+    public long[] getPreviousFingerprints()
+    {
+        return this.previousFingerprints;
+    }
+
+    /**
+     * @return the fingerprints of the blocks after the modification
+     */
+    public long[] getNextFingerprints()
+    {
+        return this.nextFingerprints;
+    }
+
+    @Override
+    public long getPreviousKey(int index)
+    {
+        return this.previousFingerprints[index];
+    }
+
+    @Override
+    public long getNextKey(int index)
+    {
+        return this.nextFingerprints[index];
+    }
+
+    /**
+     * Checks if two blocks are equal, ignoring their child blocks.
+     * 
+     * @param previousIndex a position in the list of blocks before the modification
+     * @param nextIndex a position in the list of blocks after the modification
+     * @return {@code true} if the blocks found at the specified positions are equal, {@code false} otherwise
+     */
+    @Override
+    public boolean equals(int previousIndex, int nextIndex)
+    {
+        if (this.previousFingerprints[previousIndex] != this.nextFingerprints[nextIndex]) {
+            return false;
+        }
+
+        // Same fingerprint: most probably equal, but we need to make sure.
+        boolean end = this.previous.isEnd(previousIndex);
+        if (end != this.next.isEnd(nextIndex)) {
+            return false;
+        }
+        Block previousBlock = this.previous.getBlock(previousIndex);
+        Block nextBlock = this.next.getBlock(nextIndex);
+        return end ? previousBlock.getClass() == nextBlock.getClass()
+            : this.comparator.equals(previousBlock, nextBlock);
+    }
+
+    /**
+     * @param index a position in the list of blocks before the modification
+     * @return the hash of the subtree that starts or ends at the specified position
+     */
+    public long getPreviousSubtreeHash(int index)
+    {
+        if (this.previousSubtreeHashes == null) {
+            this.previousSubtreeHashes = hashSubtrees(this.previous, this.previousFingerprints);
+        }
+        return this.previousSubtreeHashes[index];
+    }
+
+    /**
+     * @param index a position in the list of blocks after the modification
+     * @return the hash of the subtree that starts or ends at the specified position
+     */
+    public long getNextSubtreeHash(int index)
+    {
+        if (this.nextSubtreeHashes == null) {
+            this.nextSubtreeHashes = hashSubtrees(this.next, this.nextFingerprints);
+        }
+        return this.nextSubtreeHashes[index];
+    }
+
+    /**
+     * Checks if two subtrees are equal. The subtrees with different hashes or sizes are different. The subtrees with
+     * the same hash and size are most probably equal, but the block fingerprints are not collision free (e.g. some
+     * block data is hashed with {@link Object#hashCode()}, on 32 bits) so we confirm the match by comparing the blocks
+     * one by one (see {@link #equals(int, int)}). The verified matches are remembered, so that the diff engines, which
+     * can ask for the same pair of subtrees many times, verify each of them only once (per start position of the
+     * previous list). In the end, each block is compared with the blocks it is matched with, like in a flat diff.
+     * 
+     * @param previousIndex the start position of a subtree from the list of blocks before the modification
+     * @param nextIndex the start position of a subtree from the list of blocks after the modification
+     * @return {@code true} if the specified subtrees are equal, {@code false} otherwise
+     */
+    public boolean subtreeEquals(int previousIndex, int nextIndex)
+    {
+        int size = this.previous.getMatch(previousIndex) - previousIndex;
+        if (getPreviousSubtreeHash(previousIndex) != getNextSubtreeHash(nextIndex)
+            || size != this.next.getMatch(nextIndex) - nextIndex) {
+            return false;
+        }
+        if (this.verifiedMatches == null) {
+            // Concurrent initializations only lose some verified matches.
+            this.verifiedMatches = new int[this.previous.size()];
+        }
+        int[] matches = this.verifiedMatches;
+        if (matches[previousIndex] == nextIndex + 1) {
+            return true;
+        }
+        for (int offset = 0; offset <= size; offset++) {
+            if (!equals(previousIndex + offset, nextIndex + offset)) {
+                return false;
+            }
+        }
+        matches[previousIndex] = nextIndex + 1;
+        return true;
+    }
+
+    /**
+     * Computes the hash of an entire block tree, the same way the subtree hashes are computed.
+     * 
+     * @param list the list representation of the block tree
+     * @param comparator the component used to compute the block fingerprints
+     * @return the hash of the block tree
+     */
+    public static long hashTree(FlatBlockList list, ShallowBlockComparator comparator)
+    {
+        return list.isEmpty() ? 0 : hashSubtrees(list, fingerprint(list, comparator, null))[0];
+    }
+
+    private static long[] hashSubtrees(FlatBlockList list, long[] fingerprints)
+    {
+        long[] hashes = new long[list.size()];
+        // Walk the list backwards so that the child blocks are hashed before their parent.
+        for (int i = list.size() - 1; i >= 0; i--) {
+            int match = list.getMatch(i);
+            if (match > i) {
+                long hash = fingerprints[i];
+                for (int child = i + 1; child < match; child = list.getMatch(child) + 1) {
+                    hash = (hash ^ hashes[child]) * HASH_PRIME + 1;
+                }
+                hash = (hash ^ fingerprints[match]) * HASH_PRIME;
+                hashes[i] = hash ^ (hash >>> 29);
+                hashes[match] = hashes[i];
+            }
+        }
+        return hashes;
+    }
+
+    private static long[] fingerprint(FlatBlockList list, ShallowBlockComparator comparator, ForkJoinPool pool)
+    {
+        long[] fingerprints = new long[list.size()];
+        if (pool == null || fingerprints.length <= FINGERPRINT_BATCH_SIZE) {
+            fingerprint(list, comparator, fingerprints, 0, fingerprints.length);
+        } else {
+            pool.invoke(new FingerprintTask(list, comparator, fingerprints, 0, fingerprints.length));
+        }
+        return fingerprints;
+    }
+
+    private static void fingerprint(FlatBlockList list, ShallowBlockComparator comparator, long[] fingerprints,
+        int start, int end)
+    {
+        for (int i = start; i < end; i++) {
+            Block block = list.getBlock(i);
+            fingerprints[i] = list.isEnd(i) ? comparator.fingerprintEnd(block.getClass())
+                : comparator.fingerprint(block);
+        }
+    }
+}
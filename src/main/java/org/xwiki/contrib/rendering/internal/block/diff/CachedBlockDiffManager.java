@@ -0,0 +1,212 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.contrib.rendering.block.diff.BlockChangeStatistics;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffBatchConfiguration;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffBatchResult;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffCache;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffCacheStatistics;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffConfiguration;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffManager;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffPair;
+import org.xwiki.contrib.rendering.block.diff.BlockMergeResult;
+import org.xwiki.contrib.rendering.block.diff.BlockPatch;
+import org.xwiki.contrib.rendering.block.diff.EndBlock;
+import org.xwiki.diff.Chunk;
+import org.xwiki.diff.Delta;
+import org.xwiki.diff.DiffException;
+import org.xwiki.diff.MergeException;
+import org.xwiki.diff.Patch;
+import org.xwiki.diff.PatchException;
+import org.xwiki.rendering.block.Block;
+
+/**
+ * Caches the patches computed by the default {@link BlockDiffManager}, using the keys given by the caller or the
+ * content of the compared blocks as key (see {@link DiffCacheKey}). The cached patches don't reference the compared
+ * blocks and they are shared, so they must not be modified.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+@Component
+@Named("cached")
+@Singleton
+public class CachedBlockDiffManager implements BlockDiffManager, BlockDiffCache
+{
+    /**
+     * The estimated size of a block from a cached result, in bytes.
+     */
+    static final long BLOCK_WEIGHT = 128;
+
+    /**
+     * The estimated size of a delta from a cached patch, in bytes, without the blocks.
+     */
+    private static final long DELTA_WEIGHT = 96;
+
+    @Inject
+    private BlockDiffManager diffManager;
+
+    private BlockListConverter blockListConverter = new BlockListConverter();
+
+    private ShallowBlockComparator comparator = new ShallowBlockComparator();
+
+    private DiffResultCache<DiffCacheKey, Patch<Block>> cache = new DiffResultCache<>();
+
+    @Override
+    public Patch<Block> diff(Block previous, Block next) throws DiffException
+    {
+        return diff(previous, next, null);
+    }
+
+    @Override
+    public Patch<Block> diff(Block previous, Block next, BlockDiffConfiguration configuration) throws DiffException
+    {
+        DiffCacheKey key = DiffCacheKey.of(previous, next, configuration, this.blockListConverter, this.comparator);
+        Patch<Block> patch = this.cache.get(key);
+        if (patch == null) {
+            patch = this.diffManager.diff(previous, next, configuration);
+            if (patch instanceof BlockPatch && ((BlockPatch) patch).isDegraded()) {
+                // Coarse patches are not cached because a later comparison might have more time.
+                return patch;
+            }
+            patch = detach(patch);
+            long weight = 0;
+            for (Delta<Block> delta : patch) {
+                weight += DELTA_WEIGHT + BLOCK_WEIGHT
+                    * (delta.getPrevious().getElements().size() + delta.getNext().getElements().size());
+            }
+            this.cache.put(key, patch, weight);
+        }
+        return patch;
+    }
+
+    @Override
+    public boolean hasChanges(Block previous, Block next) throws DiffException
+    {
+        // Cheaper than computing the cache key.
+        return this.diffManager.hasChanges(previous, next);
+    }
+
+    @Override
+    public BlockChangeStatistics getChangeStatistics(Block previous, Block next) throws DiffException
+    {
+        return this.diffManager.getChangeStatistics(previous, next);
+    }
+
+    @Override
+    public <K> Stream<BlockDiffBatchResult<K, Patch<Block>>> diffAll(Stream<BlockDiffPair<K>> pairs,
+        BlockDiffBatchConfiguration configuration)
+    {
+        return BlockDiffBatch.run(pairs, this::diff, configuration);
+    }
+
+    @Override
+    public Block apply(Block previous, Patch<Block> patch) throws PatchException
+    {
+        return this.diffManager.apply(previous, patch);
+    }
+
+    @Override
+    public Block restore(Block next, Patch<Block> patch) throws PatchException
+    {
+        return this.diffManager.restore(next, patch);
+    }
+
+    @Override
+    public Patch<Block> compose(List<Patch<Block>> patches) throws PatchException
+    {
+        return this.diffManager.compose(patches);
+    }
+
+    @Override
+    public Patch<Block> invert(Patch<Block> patch) throws PatchException
+    {
+        return this.diffManager.invert(patch);
+    }
+
+    @Override
+    public BlockMergeResult merge(Block common, Block previous, Block next) throws MergeException
+    {
+        return this.diffManager.merge(common, previous, next);
+    }
+
+    @Override
+    public BlockDiffCacheStatistics getStatistics()
+    {
+        return this.cache.getStatistics();
+    }
+
+    @Override
+    public void setMaximumWeight(long maximumWeight)
+    {
+        this.cache.setMaximumWeight(maximumWeight);
+    }
+
+    @Override
+    public void clear()
+    {
+        this.cache.clear();
+    }
+
+    /**
+     * Copies the blocks of the given patch so that the cached patch doesn't keep the compared trees in memory.
+     */
+    private Patch<Block> detach(Patch<Block> patch)
+    {
+        DefaultBlockPatch detachedPatch = new DefaultBlockPatch();
+        for (Delta<Block> delta : patch) {
+            detachedPatch.add(new BlockDelta(detach(delta.getPrevious()), detach(delta.getNext())));
+        }
+        if (patch instanceof BlockPatch) {
+            // The moves and the modifications don't reference any blocks.
+            detachedPatch.setMoves(((BlockPatch) patch).getMoves());
+            detachedPatch.setModifications(((BlockPatch) patch).getModifications());
+        }
+        return detachedPatch;
+    }
+
+    private Chunk<Block> detach(Chunk<Block> chunk)
+    {
+        List<Block> blocks = this.blockListConverter.copy(chunk.getElements());
+        // The copies of the top level blocks still reference the parent and the siblings of the copied blocks.
+        Set<Block> copies = Collections.newSetFromMap(new IdentityHashMap<>());
+        copies.addAll(blocks);
+        for (Block block : blocks) {
+            if (!(block instanceof EndBlock) && !copies.contains(block.getParent())) {
+                block.setParent(null);
+                block.setPreviousSiblingBlock(null);
+                block.setNextSiblingBlock(null);
+            }
+        }
+        return new BlockChunk(chunk.getIndex(), blocks);
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.util.Collections;
+import java.util.stream.Stream;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffBatchConfiguration;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffBatchResult;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffCache;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffCacheStatistics;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffConfiguration;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffMarker;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffPair;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffSession;
+import org.xwiki.diff.DiffException;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.XDOM;
+
+/**
+ * Caches the diff trees computed by the default {@link BlockDiffMarker}, using the content of the compared blocks as
+ * key (see {@link DiffCacheKey}). The cached diff trees are returned as is, without copying them, so they are shared
+ * and must not be modified. Only {@link #getDiffTree(Block, Block)} is cached because {@link #markDiff(Block, Block)}
+ * has to modify the given blocks. {@link #streamDiff(Block, Block, org.xwiki.rendering.listener.Listener,
+ * BlockDiffConfiguration)} traverses the cached diff tree.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+@Component
+@Named("cached")
+@Singleton
+public class CachedBlockDiffMarker implements BlockDiffMarker, BlockDiffCache
+{
+    /**
+     * Cached instead of the left side when there are no differences, in order to not keep the left side in memory.
+     */
+    private static final Block NO_DIFFERENCES = new XDOM(Collections.emptyList());
+
+    @Inject
+    private BlockDiffMarker diffMarker;
+
+    private BlockListConverter blockListConverter = new BlockListConverter();
+
+    private ShallowBlockComparator comparator = new ShallowBlockComparator();
+
+    private DiffResultCache<DiffCacheKey, Block> cache = new DiffResultCache<>();
+
+    @Override
+    public boolean markDiff(Block left, Block right) throws DiffException
+    {
+        return this.diffMarker.markDiff(left, right);
+    }
+
+    @Override
+    public boolean markDiff(Block left, Block right, BlockDiffConfiguration configuration) throws DiffException
+    {
+        return this.diffMarker.markDiff(left, right, configuration);
+    }
+
+    @Override
+    public Block getDiffTree(Block left, Block right) throws DiffException
+    {
+        return getDiffTree(left, right, null);
+    }
+
+    @Override
+    public Block getDiffTree(Block left, Block right, BlockDiffConfiguration configuration) throws DiffException
+    {
+        DiffCacheKey key = DiffCacheKey.of(left, right, configuration, this.blockListConverter, this.comparator);
+        Block cachedDiffTree = this.cache.get(key);
+        if (cachedDiffTree == null) {
+            Block diffTree = this.diffMarker.getDiffTree(left, right, configuration);
+            if (diffTree == left) {
+                this.cache.put(key, NO_DIFFERENCES, 0);
+            } else if (diffTree.getParameter(DefaultBlockDiffMarker.DEGRADED_PARAMETER) == null) {
+                // Coarse diff trees are not cached because a later comparison might have more time.
+                // The diff tree doesn't reference the compared blocks so it can be cached as is.
+                this.cache.put(key, diffTree,
+                    CachedBlockDiffManager.BLOCK_WEIGHT * this.blockListConverter.countBlocks(diffTree));
+            }
+            return diffTree;
+        }
+        return cachedDiffTree == NO_DIFFERENCES ? left : cachedDiffTree;
+    }
+
+    @Override
+    public <K> Stream<BlockDiffBatchResult<K, Boolean>> markDiffAll(Stream<BlockDiffPair<K>> pairs,
+        BlockDiffBatchConfiguration configuration)
+    {
+        return BlockDiffBatch.run(pairs, this::markDiff, configuration);
+    }
+
+    @Override
+    public <K> Stream<BlockDiffBatchResult<K, Block>> getDiffTreeAll(Stream<BlockDiffPair<K>> pairs,
+        BlockDiffBatchConfiguration configuration)
+    {
+        return BlockDiffBatch.run(pairs, this::getDiffTree, configuration);
+    }
+
+    @Override
+    public BlockDiffSession createSession(Block left, Block right, BlockDiffConfiguration configuration)
+        throws DiffException
+    {
+        // The session keeps its own state so there's nothing to cache.
+        return this.diffMarker.createSession(left, right, configuration);
+    }
+
+    @Override
+    public BlockDiffCacheStatistics getStatistics()
+    {
+        return this.cache.getStatistics();
+    }
+
+    @Override
+    public void setMaximumWeight(long maximumWeight)
+    {
+        this.cache.setMaximumWeight(maximumWeight);
+    }
+
+    @Override
+    public void clear()
+    {
+        this.cache.clear();
+    }
+}
@@ -19,15 +19,27 @@
  */
 package org.xwiki.contrib.rendering.internal.block.diff;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.stream.Stream;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
 import org.xwiki.component.annotation.Component;
+import org.xwiki.contrib.rendering.block.diff.BlockChangeStatistics;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffBatchConfiguration;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffBatchResult;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffConfiguration;
 import org.xwiki.contrib.rendering.block.diff.BlockDiffManager;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffMetricsListener;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffPair;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffPhase;
+import org.xwiki.contrib.rendering.block.diff.BlockMergeConflict;
+import org.xwiki.contrib.rendering.block.diff.BlockMergeResult;
 import org.xwiki.diff.DiffException;
-import org.xwiki.diff.DiffManager;
+import org.xwiki.diff.MergeException;
 import org.xwiki.diff.Patch;
 import org.xwiki.diff.PatchException;
 import org.xwiki.rendering.block.Block;
@@ -43,27 +55,127 @@ import org.xwiki.rendering.block.Block;
 public class DefaultBlockDiffManager implements BlockDiffManager
 {
     @Inject
-    private DiffManager diffManager;
+    private List<BlockDiffMetricsListener> metricsListeners;
 
     private BlockListConverter blockListConverter = new BlockListConverter();
 
+    private BlockListDiffer blockListDiffer = new BlockListDiffer();
+
+    private BlockListPatcher blockListPatcher = new BlockListPatcher();
+
+    private BlockPatchComposer blockPatchComposer = new BlockPatchComposer();
+
+    private BlockListMerger blockListMerger = new BlockListMerger();
+
+    private BlockChangeDetector blockChangeDetector = new BlockChangeDetector();
+
     @Override
     public Patch<Block> diff(Block previous, Block next) throws DiffException
     {
-        List<Block> previousList = this.blockListConverter.toList(previous);
-        List<Block> nextList = this.blockListConverter.toList(next);
-        return this.diffManager.diff(previousList, nextList, null).getPatch();
+        return diff(previous, next, null);
+    }
+
+    @Override
+    public Patch<Block> diff(Block previous, Block next, BlockDiffConfiguration configuration) throws DiffException
+    {
+        DiffMetricsRecorder recorder = DiffMetricsRecorder.start("diff", this.metricsListeners);
+        // The budget covers the whole operation, including the conversion of the trees.
+        DiffBudget budget = DiffBudget.of(configuration);
+        FlatBlockList previousList = this.blockListConverter.toList(previous);
+        FlatBlockList nextList = this.blockListConverter.toList(next);
+        recorder.lap(BlockDiffPhase.FLATTEN);
+        Patch<Block> patch = this.blockListDiffer.diff(previousList, nextList, configuration, budget);
+        recorder.lap(BlockDiffPhase.DIFF);
+        recorder.recordSizes(previousList, nextList);
+        recorder.recordPatch(patch);
+        recorder.finish();
+        return patch;
+    }
+
+    @Override
+    public boolean hasChanges(Block previous, Block next)
+    {
+        return this.blockChangeDetector.hasChanges(previous, next);
+    }
+
+    @Override
+    public BlockChangeStatistics getChangeStatistics(Block previous, Block next)
+    {
+        return this.blockChangeDetector.getChangeStatistics(previous, next);
+    }
+
+    @Override
+    public <K> Stream<BlockDiffBatchResult<K, Patch<Block>>> diffAll(Stream<BlockDiffPair<K>> pairs,
+        BlockDiffBatchConfiguration configuration)
+    {
+        return BlockDiffBatch.run(pairs, this::diff, configuration);
     }
 
     @Override
     public Block apply(Block previous, Patch<Block> patch) throws PatchException
     {
-        return this.blockListConverter.fromList(patch.apply(this.blockListConverter.toList(previous)));
+        // Apply the patch on a copy because the returned tree is rebuilt from the list of blocks.
+        return this.blockListConverter
+            .fromList(this.blockListPatcher.apply(this.blockListConverter.toList(copy(previous)), patch));
     }
 
     @Override
     public Block restore(Block next, Patch<Block> patch) throws PatchException
     {
-        return this.blockListConverter.fromList(patch.restore(this.blockListConverter.toList(next)));
+        // Restore the patch on a copy because the returned tree is rebuilt from the list of blocks.
+        return this.blockListConverter
+            .fromList(this.blockListPatcher.restore(this.blockListConverter.toList(copy(next)), patch));
+    }
+
+    @Override
+    public Patch<Block> compose(List<Patch<Block>> patches) throws PatchException
+    {
+        return this.blockPatchComposer.compose(patches);
+    }
+
+    @Override
+    public Patch<Block> invert(Patch<Block> patch) throws PatchException
+    {
+        return this.blockPatchComposer.invert(patch);
+    }
+
+    @Override
+    public BlockMergeResult merge(Block common, Block previous, Block next) throws MergeException
+    {
+        DiffMetricsRecorder recorder = DiffMetricsRecorder.start("merge", this.metricsListeners);
+        FlatBlockList commonList = this.blockListConverter.toList(common);
+        FlatBlockList previousList = this.blockListConverter.toList(previous);
+        FlatBlockList nextList = this.blockListConverter.toList(next);
+        FlatBlockList mergedList = this.blockListConverter.toList(copy(common));
+        recorder.lap(BlockDiffPhase.FLATTEN);
+        recorder.recordSizes(previousList, nextList);
+        Patch<Block> previousPatch = this.blockListDiffer.diff(commonList, previousList);
+        Patch<Block> nextPatch = this.blockListDiffer.diff(commonList, nextList);
+        recorder.lap(BlockDiffPhase.DIFF);
+        recorder.recordPatch(previousPatch);
+        recorder.recordPatch(nextPatch);
+
+        List<BlockMergeConflict> conflicts = new ArrayList<>();
+        List<Block> merged = this.blockListMerger.merge(commonList, mergedList, previousPatch, nextPatch, conflicts);
+        recorder.lap(BlockDiffPhase.MERGE);
+
+        BlockMergeResult result;
+        try {
+            result = new BlockMergeResult(this.blockListConverter.fromList(merged), conflicts);
+        } catch (PatchException e) {
+            // The merged changes don't form a valid tree, so we can't merge anything. The conflict holds copies, like
+            // the conflicts found by the merger, so that it doesn't reference the blocks of the caller.
+            result = new BlockMergeResult(copy(previous),
+                Collections.singletonList(new BlockMergeConflict(0, this.blockListConverter.copy(commonList),
+                    this.blockListConverter.copy(previousList), this.blockListConverter.copy(nextList))));
+        }
+        recorder.lap(BlockDiffPhase.REBUILD);
+        recorder.finish();
+        return result;
+    }
+
+    private Block copy(Block block)
+    {
+        return block == null ? null : block.clone();
     }
 }
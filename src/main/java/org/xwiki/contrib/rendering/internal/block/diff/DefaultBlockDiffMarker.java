@@ -19,22 +19,45 @@
  */
 package org.xwiki.contrib.rendering.internal.block.diff;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.BiConsumer;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.Stream;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
+import org.apache.commons.lang3.StringUtils;
 import org.xwiki.component.annotation.Component;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffBatchConfiguration;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffBatchResult;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffConfiguration;
 import org.xwiki.contrib.rendering.block.diff.BlockDiffMarker;
 import org.xwiki.contrib.rendering.block.diff.BlockDiffMarkerFilter;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffMetricsListener;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffNormalizer;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffPair;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffPhase;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffSession;
+import org.xwiki.contrib.rendering.block.diff.BlockModification;
+import org.xwiki.contrib.rendering.block.diff.BlockMove;
+import org.xwiki.contrib.rendering.block.diff.BlockPatch;
 import org.xwiki.contrib.rendering.block.diff.EndBlock;
 import org.xwiki.diff.Delta;
 import org.xwiki.diff.DiffException;
-import org.xwiki.diff.DiffManager;
 import org.xwiki.diff.Patch;
 import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.listener.Listener;
 
 /**
  * Default implementation of {@link BlockDiffMarker}.
@@ -51,37 +74,223 @@ public class DefaultBlockDiffMarker implements BlockDiffMarker
      */
     static final String DIFF_MARKER_PARAMETER = "data-xdom-diff";
 
+    /**
+     * The parameter set on the root of the diff tree when the changes were computed coarsely because the diff budget
+     * was exhausted (see {@link BlockPatch#isDegraded()}).
+     */
+    static final String DEGRADED_PARAMETER = "data-xdom-diff-degraded";
+
     /**
      * Used to mark deleted blocks.
      */
-    private static final String DELETED = "deleted";
+    static final String DELETED = "deleted";
 
     /**
      * Used to mark inserted blocks.
      */
-    private static final String INSERTED = "inserted";
+    static final String INSERTED = "inserted";
 
-    @Inject
-    private DiffManager diffManager;
+    /**
+     * Used to mark the blocks whose own parameters or data changed, see {@link BlockPatch#getModifications()}.
+     */
+    static final String MODIFIED = "modified";
+
+    /**
+     * The block parameter that lists the names of the parameters of a modified block that changed.
+     */
+    static final String MODIFIED_PARAMETER = "data-xdom-diff-modified";
+
+    /**
+     * The block parameter that links the old and the new position of a moved subtree.
+     */
+    static final String MOVE_PARAMETER = "data-xdom-diff-move";
+
+    /**
+     * Used to mark the old position of a moved subtree.
+     */
+    static final String MOVED_FROM = "moved-from";
+
+    /**
+     * Used to mark the new position of a moved subtree.
+     */
+    static final String MOVED_TO = "moved-to";
 
     @Inject
     private List<BlockDiffMarkerFilter> diffMarkerFilters;
 
+    @Inject
+    private List<BlockDiffMetricsListener> metricsListeners;
+
+    @Inject
+    private List<BlockDiffNormalizer> normalizers;
+
     private BlockListConverter blockListConverter = new BlockListConverter();
 
+    private BlockListDiffer blockListDiffer = new BlockListDiffer();
+
     @Override
     public boolean markDiff(Block left, Block right) throws DiffException
     {
-        List<Block> leftList = this.blockListConverter.toList(left);
-        List<Block> rightList = this.blockListConverter.toList(right);
-        Patch<Block> patch = this.diffManager.diff(leftList, rightList, null).getPatch();
+        return markDiff(left, right, null);
+    }
+
+    @Override
+    public boolean markDiff(Block left, Block right, BlockDiffConfiguration configuration) throws DiffException
+    {
+        DiffMetricsRecorder recorder = DiffMetricsRecorder.start("markDiff", this.metricsListeners);
+        DiffBudget budget = DiffBudget.of(configuration);
+        FlatBlockList leftList = this.blockListConverter.toList(left);
+        FlatBlockList rightList = this.blockListConverter.toList(right);
+        recorder.lap(BlockDiffPhase.FLATTEN);
+        Patch<Block> patch = diff(leftList, rightList, configuration, budget);
+        recorder.lap(BlockDiffPhase.DIFF);
+        recorder.recordSizes(leftList, rightList);
+        recorder.recordPatch(patch);
         if (!patch.isEmpty()) {
-            this.blockListConverter.fromList(this.markPatch(leftList, patch));
-            amend(left);
+            mark(leftList, patch, recorder);
         }
+        recorder.finish();
         return !patch.isEmpty();
     }
 
+    @Override
+    public Block getDiffTree(Block left, Block right) throws DiffException
+    {
+        return getDiffTree(left, right, null);
+    }
+
+    @Override
+    public Block getDiffTree(Block left, Block right, BlockDiffConfiguration configuration) throws DiffException
+    {
+        DiffMetricsRecorder recorder = DiffMetricsRecorder.start("getDiffTree", this.metricsListeners);
+        DiffBudget budget = DiffBudget.of(configuration);
+        FlatBlockList leftList = this.blockListConverter.toList(left);
+        FlatBlockList rightList = this.blockListConverter.toList(right);
+        recorder.lap(BlockDiffPhase.FLATTEN);
+        Patch<Block> patch = diff(leftList, rightList, configuration, budget);
+        recorder.lap(BlockDiffPhase.DIFF);
+        recorder.recordSizes(leftList, rightList);
+        recorder.recordPatch(patch);
+        Block diffTree = getDiffTree(left, patch, recorder);
+        recorder.finish();
+        return diffTree;
+    }
+
+    /**
+     * Builds the diff tree from the given changes.
+     * 
+     * @param left the left side of the comparison
+     * @param patch the changes between the left side and the right side
+     * @return the diff tree, or the left side itself if there are no differences to mark
+     * @throws DiffException if the diff tree cannot be built
+     */
+    Block getDiffTree(Block left, Patch<Block> patch) throws DiffException
+    {
+        DiffMetricsRecorder recorder = DiffMetricsRecorder.start("session.getDiffTree", this.metricsListeners);
+        recorder.recordPatch(patch);
+        Block diffTree = getDiffTree(left, patch, recorder);
+        recorder.finish();
+        return diffTree;
+    }
+
+    private Block getDiffTree(Block left, Patch<Block> patch, DiffMetricsRecorder recorder) throws DiffException
+    {
+        if (patch.isEmpty()) {
+            return left;
+        } else {
+            // Mark the changes on a copy of the left side. The copy has the same list representation as the left side
+            // so we can use the same patch.
+            FlatBlockList leftList = this.blockListConverter.toList(left.clone());
+            recorder.lap(BlockDiffPhase.FLATTEN);
+            recorder.recordMarkedBlocks(0, leftList.size() / 2);
+            return mark(leftList, patch, recorder);
+        }
+    }
+
+    @Override
+    public void streamDiff(Block left, Block right, Listener listener, BlockDiffConfiguration configuration)
+        throws DiffException
+    {
+        DiffMetricsRecorder recorder = DiffMetricsRecorder.start("streamDiff", this.metricsListeners);
+        DiffBudget budget = DiffBudget.of(configuration);
+        FlatBlockList leftList = this.blockListConverter.toList(left);
+        FlatBlockList rightList = this.blockListConverter.toList(right);
+        recorder.lap(BlockDiffPhase.FLATTEN);
+        Patch<Block> patch = diff(leftList, rightList, configuration, budget);
+        recorder.lap(BlockDiffPhase.DIFF);
+        recorder.recordSizes(leftList, rightList);
+        recorder.recordPatch(patch);
+        if (patch.isEmpty()) {
+            left.traverse(listener);
+        } else {
+            // The blocks are not modified so we don't need to copy them, except for the roots of the moved subtrees.
+            DiffEventStreamer streamer = new DiffEventStreamer(listener);
+            mergePatch(leftList, patch, false, streamer);
+            streamer.close();
+        }
+        // The time spent by the listener (e.g. rendering) is included.
+        recorder.lap(BlockDiffPhase.MARK);
+        recorder.finish();
+    }
+
+    @Override
+    public <K> Stream<BlockDiffBatchResult<K, Boolean>> markDiffAll(Stream<BlockDiffPair<K>> pairs,
+        BlockDiffBatchConfiguration configuration)
+    {
+        return BlockDiffBatch.run(pairs, this::markDiff, configuration);
+    }
+
+    @Override
+    public <K> Stream<BlockDiffBatchResult<K, Block>> getDiffTreeAll(Stream<BlockDiffPair<K>> pairs,
+        BlockDiffBatchConfiguration configuration)
+    {
+        return BlockDiffBatch.run(pairs, this::getDiffTree, configuration);
+    }
+
+    @Override
+    public BlockDiffSession createSession(Block left, Block right, BlockDiffConfiguration configuration)
+        throws DiffException
+    {
+        return new DefaultBlockDiffSession((sessionLeft, sessionRight, patch) -> getDiffTree(sessionLeft, patch),
+            this.blockListDiffer, NormalizingBlockComparator.of(this.normalizers), left, right, configuration);
+    }
+
+    /**
+     * Computes the changes to mark, ignoring the changes that have no visual difference (see
+     * {@link BlockDiffNormalizer}).
+     */
+    private Patch<Block> diff(FlatBlockList leftList, FlatBlockList rightList, BlockDiffConfiguration configuration,
+        DiffBudget budget)
+    {
+        return this.blockListDiffer.diff(leftList, rightList, configuration,
+            NormalizingBlockComparator.of(this.normalizers), budget);
+    }
+
+    /**
+     * Marks the changes on the given list of blocks and then rebuilds and amends the tree.
+     * 
+     * @param list the list representation of the tree to mark
+     * @param patch the changes to mark
+     * @param recorder used to measure the phases
+     * @return the tree with the changes marked
+     * @throws DiffException if the tree cannot be rebuilt
+     */
+    private Block mark(List<Block> list, Patch<Block> patch, DiffMetricsRecorder recorder) throws DiffException
+    {
+        List<Block> markedBlocks = new ArrayList<>();
+        List<Block> markedList = this.markPatch(list, patch, markedBlocks);
+        recorder.lap(BlockDiffPhase.MARK);
+        Block markedBlock = this.blockListConverter.fromList(markedList);
+        recorder.lap(BlockDiffPhase.REBUILD);
+        amend(markedBlock, markedBlocks, this.diffMarkerFilters);
+        if (patch instanceof BlockPatch && ((BlockPatch) patch).isDegraded()) {
+            markedBlock.setParameter(DEGRADED_PARAMETER, Boolean.TRUE.toString());
+        }
+        recorder.lap(BlockDiffPhase.FILTER);
+        recorder.recordMarkedBlocks(markedBlocks.size(), markedList.size() - list.size());
+        return markedBlock;
+    }
+
     /**
      * Adds inserted blocks to the original list and marks both the deleted and inserted blocks accordingly using block
      * parameters.
@@ -89,83 +298,272 @@ public class DefaultBlockDiffMarker implements BlockDiffMarker
      * Note that we treat all blocks <b>equally</b>, taking into account only the parent-child relationship and
      * considering that all blocks support parameters, i.e. that all blocks can be marked as deleted or inserted. This
      * means that the produced block tree might have to be amended in order to preserve its semantic and in order to be
-     * able to render it properly. We do this in {@link #amend(Block)}.
+     * able to render it properly. We do this in {@link #amend(Block, List, List)}.
+     * <p>
+     * The deltas are processed in a single forward pass that copies the unmodified, deleted and inserted blocks to the
+     * result, so the cost is linear in the size of the list plus the size of the changes.
      * 
      * @param list the list of blocks before the modification
      * @param patch the changes made to the given list
+     * @param markedBlocks where to collect the blocks that have been marked, in document order
      * @return a list of blocks that contains unmodified, deleted and inserted blocks in the right order, with deleted
      *         and inserted blocks being marked accordingly using block parameters
      */
-    private List<Block> markPatch(List<Block> list, Patch<Block> patch)
+    List<Block> markPatch(List<Block> list, Patch<Block> patch, List<Block> markedBlocks)
+    {
+        int size = list.size();
+        for (Delta<Block> delta : patch) {
+            size += delta.getNext().getElements().size();
+        }
+        List<Block> result = new ArrayList<>(size);
+        // Copy the inserted blocks because they belong to the right side, which must not be modified.
+        mergePatch(list, patch, true, (block, marker) -> {
+            if (marker != null) {
+                block.setParameter(DIFF_MARKER_PARAMETER, marker);
+                markedBlocks.add(block);
+            }
+            result.add(block);
+        });
+        return result;
+    }
+
+    /**
+     * Walks the unmodified, deleted and inserted blocks in the right order.
+     * 
+     * @param list the list of blocks before the modification
+     * @param patch the changes made to the given list
+     * @param copyInserted whether to copy the inserted blocks; in this case the given list can be modified, otherwise
+     *            the blocks are output as they are, except for the moved subtrees (see {@link BlockPatch#getMoves()})
+     *            whose root block is copied in order to be marked
+     * @param output called for each block, in order, with the diff marker of the block ({@code null} if the block
+     *            doesn't have to be marked)
+     */
+    private void mergePatch(List<Block> list, Patch<Block> patch, boolean copyInserted,
+        BiConsumer<Block, String> output)
     {
-        for (int i = patch.size() - 1; i >= 0; i--) {
-            Delta<Block> delta = patch.get(i);
+        Moves moves = new Moves(patch, !copyInserted);
+        Iterator<BlockModification> modifications = patch instanceof BlockPatch
+            ? ((BlockPatch) patch).getModifications().iterator() : Collections.emptyIterator();
+        BlockModification modification = modifications.hasNext() ? modifications.next() : null;
+        int position = 0;
+        for (Delta<Block> delta : patch) {
             int changeIndex = delta.getPrevious().getIndex();
-            List<Block> deleted = delta.getPrevious().getElements();
-            List<Block> inserted = delta.getNext().getElements();
-            // Replace the previous (deleted) elements with the result of the merge between deleted and inserted.
-            list.subList(changeIndex, changeIndex + deleted.size()).clear();
-            list.addAll(changeIndex, merge(deleted, inserted));
+            // Copy the unmodified blocks.
+            for (; position < changeIndex; position++) {
+                output.accept(list.get(position), null);
+            }
+            // Take the deleted blocks from the given list, which can be a copy of the list the patch was computed for.
+            position = changeIndex + delta.getPrevious().getElements().size();
+            List<Block> inserted = copyInserted ? this.blockListConverter.copy(delta.getNext().getElements())
+                : delta.getNext().getElements();
+            int insertedStart = delta.getNext().getIndex();
+            IntUnaryOperator deletedMoves = index -> moves.outputSource(list, index, output);
+            IntUnaryOperator insertedMoves =
+                index -> moves.outputTarget(list, insertedStart + index, output) - insertedStart;
+            int deletedIndex = changeIndex;
+            int insertedIndex = 0;
+            // The modified blocks split the change: the blocks before them are merged first, then the modified blocks
+            // replace their previous version, keeping the child blocks that follow.
+            while (modification != null && modification.getPreviousIndex() < position) {
+                int insertedModification = modification.getNextIndex() - insertedStart;
+                merge(list, deletedIndex, modification.getPreviousIndex(), inserted, insertedIndex,
+                    insertedModification, deletedMoves, insertedMoves, output);
+                Block modifiedBlock = inserted.get(insertedModification);
+                if (copyInserted) {
+                    modifiedBlock.setParameter(MODIFIED_PARAMETER,
+                        getModifiedParameters(list.get(modification.getPreviousIndex()), modifiedBlock));
+                }
+                output.accept(modifiedBlock, MODIFIED);
+                deletedIndex = modification.getPreviousIndex() + 1;
+                insertedIndex = insertedModification + 1;
+                modification = modifications.hasNext() ? modifications.next() : null;
+            }
+            merge(list, deletedIndex, position, inserted, insertedIndex, inserted.size(), deletedMoves,
+                insertedMoves, output);
+        }
+        for (; position < list.size(); position++) {
+            output.accept(list.get(position), null);
         }
-        return list;
+    }
+
+    /**
+     * @param previous the previous version of a modified block
+     * @param next the next version of a modified block
+     * @return the names of the parameters that changed, separated by spaces, empty if only the block data changed
+     */
+    private String getModifiedParameters(Block previous, Block next)
+    {
+        Set<String> names = new TreeSet<>();
+        for (Map.Entry<String, String> parameter : previous.getParameters().entrySet()) {
+            if (!Objects.equals(parameter.getValue(), next.getParameter(parameter.getKey()))) {
+                names.add(parameter.getKey());
+            }
+        }
+        for (String name : next.getParameters().keySet()) {
+            if (!previous.getParameters().containsKey(name)) {
+                names.add(name);
+            }
+        }
+        return StringUtils.join(names, ' ');
     }
 
     /**
      * The deleted / inserted blocks can correspond to different levels in the XDOM tree so cannot display the changes
      * unless we alternate deleted and inserted blocks from the same level.
      * 
-     * @param deleted the list of deleted blocks from a delta
+     * @param list the list that contains the deleted blocks
+     * @param deletedStart the position of the first deleted block
+     * @param deletedEnd the position after the last deleted block
      * @param inserted the list of inserted blocks from a delta
-     * @return a list of blocks where deleted and inserted blocks are interleaved so that inserted blocks follow deleted
-     *         blocks from the same level as much as possible
+     * @param insertedStart the position of the first inserted block to merge
+     * @param insertedEnd the position after the last inserted block to merge
+     * @param deletedMoves outputs the moved subtree that starts at the given position of the list, if any, and returns
+     *            the position after it (or the given position if there is no move)
+     * @param insertedMoves same as {@code deletedMoves} but for the positions of the inserted blocks
+     * @param output where to send the deleted and inserted blocks, interleaved so that inserted blocks follow deleted
+     *            blocks from the same level as much as possible
      */
-    private List<Block> merge(List<Block> deleted, List<Block> inserted)
+    private void merge(List<Block> list, int deletedStart, int deletedEnd, List<Block> inserted, int insertedStart,
+        int insertedEnd, IntUnaryOperator deletedMoves, IntUnaryOperator insertedMoves,
+        BiConsumer<Block, String> output)
     {
-        List<Block> result = new LinkedList<>();
-        Iterator<Block> deletedIterator = deleted.iterator();
-        Iterator<Block> insertedIterator = inserted.iterator();
-        do {
+        int deletedIndex = deletedStart;
+        int insertedIndex = insertedStart;
+        Deque<Block> openDeleted = new ArrayDeque<>();
+        while (deletedIndex < deletedEnd || insertedIndex < insertedEnd) {
             // Alternate deleted and inserted blocks on the same level.
-            result.addAll(markDescendants(deletedIterator, DELETED));
-            result.addAll(markDescendants(insertedIterator, INSERTED));
-        } while (deletedIterator.hasNext() || insertedIterator.hasNext());
-        return result;
+            deletedIndex =
+                markDescendants(list, deletedIndex, deletedEnd, DELETED, deletedMoves, output, openDeleted);
+            if (insertedIndex < insertedEnd) {
+                // The deleted blocks that end after the change (e.g. a replaced word, whose end block is unchanged)
+                // are closed before the inserted blocks, which are closed by the end blocks that follow the change.
+                while (!openDeleted.isEmpty()) {
+                    output.accept(new EndBlock(openDeleted.pop()), null);
+                }
+            }
+            insertedIndex = markDescendants(inserted, insertedIndex, insertedEnd, INSERTED, insertedMoves, output,
+                new ArrayDeque<>());
+        }
     }
 
     /**
      * Mark the descendant blocks from the current level.
      * 
-     * @param iterator the remaining blocks
+     * @param blocks the list that contains the blocks to mark
+     * @param start the position of the first remaining block
+     * @param end the position after the last remaining block
      * @param marker the marker to use
-     * @return the descendant blocks that have been processed
+     * @param moves outputs the moved subtree that starts at the given position, if any, and returns the position after
+     *            it (or the given position if there is no move)
+     * @param output where to send the descendant blocks that have been processed, along with their marker
+     * @param openBlocks collects the processed blocks whose end is after the given end position, innermost first
+     * @return the position after the processed blocks
      */
-    private List<Block> markDescendants(Iterator<Block> iterator, String marker)
+    private int markDescendants(List<Block> blocks, int start, int end, String marker, IntUnaryOperator moves,
+        BiConsumer<Block, String> output, Deque<Block> openBlocks)
     {
-        List<Block> descendants = new LinkedList<>();
         int level = 0;
-        while (iterator.hasNext()) {
-            Block descendant = iterator.next();
-            descendants.add(descendant);
+        int index = start;
+        while (index < end) {
+            int afterMove = moves.applyAsInt(index);
+            if (afterMove > index) {
+                // A moved subtree doesn't change the level.
+                index = afterMove;
+                continue;
+            }
+            Block descendant = blocks.get(index++);
             if (descendant instanceof EndBlock) {
                 // Go back up, outside the block.
                 level--;
                 if (level < 0) {
-                    if (DELETED.equals(marker)) {
-                        descendants.remove(descendants.size() - 1);
+                    if (!DELETED.equals(marker)) {
+                        output.accept(descendant, null);
                     }
                     // We stepped outside the root.
                     break;
                 }
+                openBlocks.pop();
+                output.accept(descendant, null);
             } else {
                 // Mark only the blocks on the first level (the blocks below inherit the marker).
-                if (level == 0) {
-                    descendant.setParameter(DIFF_MARKER_PARAMETER, marker);
-                }
+                output.accept(descendant, level == 0 ? marker : null);
+                openBlocks.push(descendant);
                 // Go down, inside the block.
                 level++;
             }
         }
-        return descendants;
+        return index;
+    }
+
+    /**
+     * Outputs each moved subtree once: its blocks are output at the new position, marked as {@value #MOVED_TO}, and an
+     * empty copy of its root block is output at the old position, marked as {@value #MOVED_FROM}. Both marked blocks
+     * have the same {@value #MOVE_PARAMETER} parameter.
+     */
+    private final class Moves
+    {
+        private final List<BlockMove> moves;
+
+        /**
+         * Whether the blocks of the list belong to the caller, in which case the root of a moved subtree is copied
+         * (without its children) before being marked.
+         */
+        private final boolean sharedBlocks;
+
+        /**
+         * The start position of the moved subtrees, in the previous list, and the index of the move.
+         */
+        private final Map<Integer, Integer> sources = new HashMap<>();
+
+        /**
+         * The start position of the moved subtrees, in the next list, and the index of the move.
+         */
+        private final Map<Integer, Integer> targets = new HashMap<>();
+
+        Moves(Patch<Block> patch, boolean sharedBlocks)
+        {
+            this.sharedBlocks = sharedBlocks;
+            this.moves = patch instanceof BlockPatch ? ((BlockPatch) patch).getMoves() : Collections.emptyList();
+            for (int i = 0; i < this.moves.size(); i++) {
+                this.sources.put(this.moves.get(i).getPreviousIndex(), i);
+                this.targets.put(this.moves.get(i).getNextIndex(), i);
+            }
+        }
+
+        int outputSource(List<Block> list, int index, BiConsumer<Block, String> output)
+        {
+            Integer move = this.sources.get(index);
+            if (move == null) {
+                return index;
+            }
+            BlockMove blockMove = this.moves.get(move);
+            Block placeholder = DefaultBlockDiffMarker.this.blockListConverter.copyWithoutChildren(list.get(index));
+            placeholder.setParameter(MOVE_PARAMETER, String.valueOf(move + 1));
+            output.accept(placeholder, MOVED_FROM);
+            output.accept(list.get(index + blockMove.getSize() - 1), null);
+            return index + blockMove.getSize();
+        }
+
+        int outputTarget(List<Block> list, int nextIndex, BiConsumer<Block, String> output)
+        {
+            Integer move = this.targets.get(nextIndex);
+            if (move == null) {
+                return nextIndex;
+            }
+            BlockMove blockMove = this.moves.get(move);
+            // Reuse the blocks of the old position.
+            int previousIndex = blockMove.getPreviousIndex();
+            Block root = list.get(previousIndex);
+            if (this.sharedBlocks) {
+                root = DefaultBlockDiffMarker.this.blockListConverter.copyWithoutChildren(root);
+            }
+            root.setParameter(MOVE_PARAMETER, String.valueOf(move + 1));
+            output.accept(root, MOVED_TO);
+            for (int i = previousIndex + 1; i < previousIndex + blockMove.getSize(); i++) {
+                output.accept(list.get(i), null);
+            }
+            return nextIndex + blockMove.getSize();
+        }
     }
 
     /**
@@ -178,11 +576,47 @@ public class DefaultBlockDiffMarker implements BlockDiffMarker
      * valid; inserted blocks can "duplicate" deleted blocks and the parent might not allow it</li>
      * </ul>
      * 
+     * <p>
+     * The filters that declare the types of blocks they handle are called in a single pass over the marked blocks, so
+     * their cost depends on the number of changes rather than on the size of the tree. The other filters are called
+     * with the entire tree.
+     * 
      * @param markedBlock a block that has directly (on itself) or indirectly (on its descendants) change markers
      *            (inserted or deleted)
+     * @param markedBlocks the blocks that have been marked, in document order
+     * @param diffMarkerFilters the filters to apply
      */
-    private void amend(Block markedBlock)
+    static void amend(Block markedBlock, List<Block> markedBlocks, List<BlockDiffMarkerFilter> diffMarkerFilters)
     {
-        this.diffMarkerFilters.forEach(filter -> filter.filter(markedBlock));
+        List<BlockDiffMarkerFilter> targetedFilters = new ArrayList<>();
+        List<BlockDiffMarkerFilter> treeFilters = new ArrayList<>();
+        for (BlockDiffMarkerFilter filter : diffMarkerFilters) {
+            if (filter.getBlockTypes().isEmpty()) {
+                treeFilters.add(filter);
+            } else {
+                targetedFilters.add(filter);
+            }
+        }
+
+        if (!targetedFilters.isEmpty()) {
+            Map<Class<?>, List<BlockDiffMarkerFilter>> filtersByType = new HashMap<>();
+            for (Block block : markedBlocks) {
+                filtersByType.computeIfAbsent(block.getClass(), type -> getFilters(targetedFilters, type))
+                    .forEach(filter -> filter.filterMarkedBlock(block));
+            }
+        }
+
+        treeFilters.forEach(filter -> filter.filter(markedBlock));
+    }
+
+    private static List<BlockDiffMarkerFilter> getFilters(List<BlockDiffMarkerFilter> filters, Class<?> blockType)
+    {
+        List<BlockDiffMarkerFilter> filtersForType = new ArrayList<>();
+        for (BlockDiffMarkerFilter filter : filters) {
+            if (filter.getBlockTypes().stream().anyMatch(type -> type.isAssignableFrom(blockType))) {
+                filtersForType.add(filter);
+            }
+        }
+        return filtersForType;
     }
 }
@@ -0,0 +1,270 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import org.xwiki.contrib.rendering.block.diff.BlockDiffConfiguration;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffSession;
+import org.xwiki.diff.DiffException;
+import org.xwiki.diff.Patch;
+import org.xwiki.rendering.block.Block;
+
+/**
+ * Default implementation of {@link BlockDiffSession}. The changes are kept as an {@link EditScript}. When a subtree of
+ * the right side is replaced, only the range of the right side covered by the replaced subtree (extended to the
+ * changes it touches) is compared again, with the flat diff engine and within the diff budget of the configuration,
+ * to the matching range of the left side. The changes before this range are kept and the changes after it are
+ * shifted. The cost of an update is the size of the compared ranges plus a copy of the index arrays of the right side.
+ * The blocks are compared with the comparator of the marker that created the session, so the same differences are
+ * ignored.
+ * <p>
+ * The patch is computed from the edit script when it is requested, with the moved subtrees and the modified blocks,
+ * which is linear in the size of both sides but doesn't compare any blocks. The diff tree is then built from the
+ * patch, which is linear in the size of the left side.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+public class DefaultBlockDiffSession implements BlockDiffSession
+{
+    private final DiffTreeBuilder diffTreeBuilder;
+
+    private final BlockListDiffer blockListDiffer;
+
+    private final BlockDiffConfiguration configuration;
+
+    private final ShallowBlockComparator comparator;
+
+    private final BlockListConverter blockListConverter = new BlockListConverter();
+
+    private final Block left;
+
+    private Block right;
+
+    /**
+     * The list representations of both sides, with the fingerprints of their blocks.
+     */
+    private BlockSequences sequences;
+
+    private EditScript script;
+
+    private Patch<Block> patch;
+
+    private Block diffTree;
+
+    /**
+     * Builds the diff tree from the changes computed by the session.
+     */
+    @FunctionalInterface
+    public interface DiffTreeBuilder
+    {
+        /**
+         * Builds the diff tree.
+         * 
+         * @param left the left side of the comparison
+         * @param right the current right side of the comparison, which must not be modified
+         * @param patch the changes between the left side and the right side, where the indexes of the deleted and
+         *            inserted blocks refer to the list representations of both sides
+         * @return the diff tree, or the left side itself if there are no differences to mark
+         * @throws DiffException if the diff tree cannot be built
+         */
+        Block getDiffTree(Block left, Block right, Patch<Block> patch) throws DiffException;
+    }
+
+    /**
+     * Creates a new session and computes the initial differences.
+     * 
+     * @param diffTreeBuilder used to build the diff tree
+     * @param blockListDiffer the component used to compute the differences
+     * @param comparator the component used to compare the blocks (e.g. one that normalizes the blocks before comparing
+     *            them, see {@link NormalizingBlockComparator})
+     * @param left the left side of the comparison
+     * @param right the initial right side of the comparison
+     * @param configuration how to compute the differences, {@code null} to use the default configuration
+     */
+    public DefaultBlockDiffSession(DiffTreeBuilder diffTreeBuilder, BlockListDiffer blockListDiffer,
+        ShallowBlockComparator comparator, Block left, Block right, BlockDiffConfiguration configuration)
+    {
+        DiffBudget budget = DiffBudget.of(configuration);
+        this.diffTreeBuilder = diffTreeBuilder;
+        this.blockListDiffer = blockListDiffer;
+        this.configuration = configuration;
+        this.comparator = comparator;
+        this.left = left;
+        // Work on a copy of the right side because its subtrees are replaced.
+        this.right = right == null ? null : right.clone();
+
+        this.sequences = blockListDiffer.getSequences(this.blockListConverter.toList(left),
+            this.blockListConverter.toList(this.right), configuration, comparator);
+        this.script = blockListDiffer.diff(this.sequences, configuration, budget);
+    }
+
+    @Override
+    public void replace(int[] path, Block block) throws DiffException
+    {
+        // Each update has its own budget, which covers the conversion of the replacement.
+        DiffBudget budget = DiffBudget.of(this.configuration);
+        FlatBlockList rightList = this.sequences.getNext();
+        int oldStart = locate(path);
+        int oldEnd = rightList.isEmpty() ? 0 : rightList.getMatch(oldStart) + 1;
+
+        // Update the right tree.
+        Block replacement = block.clone();
+        if (path.length == 0) {
+            this.right = replacement;
+        } else {
+            Block replaced = rightList.getBlock(oldStart);
+            replaced.getParent().replaceChild(replacement, replaced);
+        }
+
+        FlatBlockList inserted = this.blockListConverter.toList(replacement);
+        int[] window = getWindow(oldStart, oldEnd);
+        splice(oldStart, oldEnd, inserted);
+
+        // Compare the window again, keeping the changes before it and shifting the changes after it.
+        int shift = inserted.size() - (oldEnd - oldStart);
+        EditScript updated = new EditScript();
+        if (this.script.isDegraded()) {
+            // We don't know which of the kept changes are coarse.
+            updated.markDegraded();
+        }
+        int change = 0;
+        for (; change < this.script.size() && this.script.getNextEnd(change) < oldStart; change++) {
+            updated.addChange(this.script.getPreviousStart(change), this.script.getPreviousEnd(change),
+                this.script.getNextStart(change), this.script.getNextEnd(change));
+        }
+        this.blockListDiffer.diff(this.sequences, window[0], window[1], window[2], window[3] + shift, updated,
+            this.configuration, budget);
+        for (change = window[4]; change < this.script.size(); change++) {
+            updated.addChange(this.script.getPreviousStart(change), this.script.getPreviousEnd(change),
+                this.script.getNextStart(change) + shift, this.script.getNextEnd(change) + shift);
+        }
+        this.script = updated;
+        this.patch = null;
+        this.diffTree = null;
+    }
+
+    @Override
+    public Block getRight()
+    {
+        return this.right;
+    }
+
+    @Override
+    public Patch<Block> getPatch()
+    {
+        if (this.patch == null) {
+            this.patch = this.blockListDiffer.getPatch(this.sequences, this.script);
+        }
+        return this.patch;
+    }
+
+    @Override
+    public Block getDiffTree() throws DiffException
+    {
+        if (this.diffTree == null) {
+            this.diffTree = this.diffTreeBuilder.getDiffTree(this.left, this.right, getPatch());
+        }
+        return this.diffTree;
+    }
+
+    /**
+     * @param path the indexes of the child blocks that lead to a block of the right side
+     * @return the position of the start of the specified block in the right list
+     */
+    private int locate(int[] path)
+    {
+        FlatBlockList rightList = this.sequences.getNext();
+        if (rightList.isEmpty() && path.length > 0) {
+            throw new IndexOutOfBoundsException("The right side is empty.");
+        }
+        int position = 0;
+        for (int depth = 0; depth < path.length; depth++) {
+            int parentEnd = rightList.getMatch(position);
+            int child = position + 1;
+            for (int i = 0; i < path[depth] && child < parentEnd; i++) {
+                child = rightList.getMatch(child) + 1;
+            }
+            if (path[depth] < 0 || child >= parentEnd) {
+                throw new IndexOutOfBoundsException(
+                    String.format("No child block at index [%s] for depth [%s].", path[depth], depth));
+            }
+            position = child;
+        }
+        return position;
+    }
+
+    /**
+     * Computes the ranges to compare again when the given range of the right side is replaced: the replaced range,
+     * extended to the changes that overlap or touch it, and the matching range of the left side.
+     * 
+     * @return the start and end of the left range, the start and end of the right range (before the replacement) and
+     *         the index of the first change that comes after the window
+     */
+    private int[] getWindow(int oldStart, int oldEnd)
+    {
+        int first = 0;
+        while (first < this.script.size() && this.script.getNextEnd(first) < oldStart) {
+            first++;
+        }
+        int last = first;
+        while (last < this.script.size() && this.script.getNextStart(last) <= oldEnd) {
+            last++;
+        }
+
+        // The difference between the right and the left positions that are not changed, before and after the window.
+        int startOffset = getOffset(first - 1);
+        int endOffset = getOffset(last - 1);
+        int[] window = new int[] {oldStart - startOffset, oldEnd - endOffset, oldStart, oldEnd, last};
+        if (first < last && this.script.getNextStart(first) < oldStart) {
+            window[0] = this.script.getPreviousStart(first);
+            window[2] = this.script.getNextStart(first);
+        }
+        if (first < last && this.script.getNextEnd(last - 1) > oldEnd) {
+            window[1] = this.script.getPreviousEnd(last - 1);
+            window[3] = this.script.getNextEnd(last - 1);
+        }
+        return window;
+    }
+
+    private int getOffset(int change)
+    {
+        return change < 0 ? 0 : this.script.getNextEnd(change) - this.script.getPreviousEnd(change);
+    }
+
+    /**
+     * Replaces a range of the right list and updates the fingerprints.
+     */
+    private void splice(int oldStart, int oldEnd, FlatBlockList inserted)
+    {
+        FlatBlockList rightList = this.sequences.getNext();
+        long[] rightFingerprints = this.sequences.getNextFingerprints();
+        int shift = inserted.size() - (oldEnd - oldStart);
+        long[] fingerprints = new long[rightFingerprints.length + shift];
+        System.arraycopy(rightFingerprints, 0, fingerprints, 0, oldStart);
+        for (int i = 0; i < inserted.size(); i++) {
+            Block block = inserted.getBlock(i);
+            fingerprints[oldStart + i] = inserted.isEnd(i) ? this.comparator.fingerprintEnd(block.getClass())
+                : this.comparator.fingerprint(block);
+        }
+        System.arraycopy(rightFingerprints, oldEnd, fingerprints, oldEnd + shift, rightFingerprints.length - oldEnd);
+
+        this.sequences = this.sequences.withNext(rightList.replace(oldStart, oldEnd, inserted), fingerprints);
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.ListIterator;
+
+import org.xwiki.contrib.rendering.block.diff.BlockModification;
+import org.xwiki.contrib.rendering.block.diff.BlockMove;
+import org.xwiki.contrib.rendering.block.diff.BlockPatch;
+import org.xwiki.diff.Delta;
+import org.xwiki.diff.PatchException;
+import org.xwiki.rendering.block.Block;
+
+/**
+ * Default implementation of {@link BlockPatch}. The deltas are applied to a copy of the given list, starting with the
+ * last one, so that each delta applies at the index where it was computed.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+public class DefaultBlockPatch extends ArrayList<Delta<Block>> implements BlockPatch
+{
+    private static final long serialVersionUID = 1L;
+
+    private boolean degraded;
+
+    private List<BlockMove> moves = Collections.emptyList();
+
+    private List<BlockModification> modifications = Collections.emptyList();
+
+    @Override
+    public List<Block> apply(List<Block> target) throws PatchException
+    {
+        List<Block> result = new ArrayList<>(target);
+        for (ListIterator<Delta<Block>> it = listIterator(size()); it.hasPrevious();) {
+            it.previous().apply(result);
+        }
+        return result;
+    }
+
+    @Override
+    public List<Block> restore(List<Block> target) throws PatchException
+    {
+        List<Block> result = new ArrayList<>(target);
+        for (ListIterator<Delta<Block>> it = listIterator(size()); it.hasPrevious();) {
+            it.previous().restore(result);
+        }
+        return result;
+    }
+
+    @Override
+    public boolean isDegraded()
+    {
+        return this.degraded;
+    }
+
+    /**
+     * @param degraded whether some of the changes are coarser than needed
+     */
+    public void setDegraded(boolean degraded)
+    {
+        this.degraded = degraded;
+    }
+
+    @Override
+    public List<BlockMove> getMoves()
+    {
+        return this.moves;
+    }
+
+    /**
+     * @param moves the subtrees that are deleted from one place and inserted unmodified at another place
+     */
+    public void setMoves(List<BlockMove> moves)
+    {
+        this.moves = moves;
+    }
+
+    @Override
+    public List<BlockModification> getModifications()
+    {
+        return this.modifications;
+    }
+
+    /**
+     * @param modifications the blocks whose own parameters or data changed while they kept their place in the tree
+     */
+    public void setModifications(List<BlockModification> modifications)
+    {
+        this.modifications = modifications;
+    }
+}
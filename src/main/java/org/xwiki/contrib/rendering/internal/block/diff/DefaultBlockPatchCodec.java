@@ -0,0 +1,118 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.contrib.rendering.block.diff.BlockPatchCodec;
+import org.xwiki.diff.Chunk;
+import org.xwiki.diff.Delta;
+import org.xwiki.diff.Patch;
+import org.xwiki.rendering.block.Block;
+
+/**
+ * Default implementation of {@link BlockPatchCodec}. The body of an encoded patch (see {@link PatchWriter} for the
+ * dictionaries) contains:
+ * <ul>
+ * <li>whether the patch is reversible</li>
+ * <li>the number of deltas</li>
+ * <li>for each delta: the index of the previous chunk, the previous chunk (the blocks, for reversible patches, or the
+ * number of blocks and their fingerprints otherwise), the index of the next chunk and the next chunk (the blocks, see
+ * {@link BlockCodecs})</li>
+ * </ul>
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+@Component
+@Singleton
+public class DefaultBlockPatchCodec implements BlockPatchCodec
+{
+    private final BlockCodecs blockCodecs = new BlockCodecs();
+
+    private final ShallowBlockComparator comparator = new ShallowBlockComparator();
+
+    @Override
+    public byte[] encode(Patch<Block> patch, boolean reversible) throws IOException
+    {
+        PatchWriter writer = new PatchWriter();
+        writer.writeBoolean(reversible);
+        writer.writeVarInt(patch.size());
+        for (Delta<Block> delta : patch) {
+            Chunk<Block> previous = delta.getPrevious();
+            writer.writeVarInt(previous.getIndex());
+            if (reversible) {
+                if (previous instanceof FingerprintChunk) {
+                    throw new IOException("The patch doesn't have the content of the deleted blocks.");
+                }
+                this.blockCodecs.writeBlocks(previous.getElements(), writer);
+            } else {
+                writeFingerprints(previous, writer);
+            }
+            writer.writeVarInt(delta.getNext().getIndex());
+            this.blockCodecs.writeBlocks(delta.getNext().getElements(), writer);
+        }
+        return writer.toByteArray();
+    }
+
+    @Override
+    public Patch<Block> decode(ByteBuffer buffer) throws IOException
+    {
+        PatchReader reader = new PatchReader(buffer);
+        boolean reversible = reader.readBoolean();
+        int deltaCount = reader.readVarInt();
+        Patch<Block> patch = new DefaultBlockPatch();
+        for (int i = 0; i < deltaCount; i++) {
+            int previousIndex = reader.readVarInt();
+            Chunk<Block> previous;
+            if (reversible) {
+                previous = new BlockChunk(previousIndex, this.blockCodecs.readBlocks(reader));
+            } else {
+                long[] fingerprints = new long[reader.readVarInt()];
+                for (int j = 0; j < fingerprints.length; j++) {
+                    fingerprints[j] = reader.readLong();
+                }
+                // Empty chunks can be inserted (e.g. when the patch is restored) so they don't need fingerprints.
+                previous = fingerprints.length > 0 ? new FingerprintChunk(previousIndex, fingerprints)
+                    : new BlockChunk(previousIndex, Collections.emptyList());
+            }
+            int nextIndex = reader.readVarInt();
+            Chunk<Block> next = new BlockChunk(nextIndex, this.blockCodecs.readBlocks(reader));
+            patch.add(new BlockDelta(previous, next));
+        }
+        return patch;
+    }
+
+    private void writeFingerprints(Chunk<Block> chunk, PatchWriter writer) throws IOException
+    {
+        List<Block> elements = chunk.getElements();
+        writer.writeVarInt(elements.size());
+        for (int i = 0; i < elements.size(); i++) {
+            writer.writeLong(chunk instanceof FingerprintChunk ? ((FingerprintChunk) chunk).getFingerprint(i)
+                : this.comparator.fingerprint(elements.get(i)));
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.contrib.rendering.block.diff.BlockPatchCodec;
+import org.xwiki.contrib.rendering.block.diff.BlockPatchStore;
+import org.xwiki.contrib.rendering.block.diff.BlockPatchStoreFactory;
+
+/**
+ * Default implementation of {@link BlockPatchStoreFactory}, see {@link FileBlockPatchStore}.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+@Component
+@Singleton
+public class DefaultBlockPatchStoreFactory implements BlockPatchStoreFactory
+{
+    @Inject
+    private BlockPatchCodec codec;
+
+    @Override
+    public BlockPatchStore open(Path file, boolean reversible) throws IOException
+    {
+        return new FileBlockPatchStore(file, this.codec, reversible);
+    }
+
+    @Override
+    public long recover(Path file) throws IOException
+    {
+        return FileBlockPatchStore.recover(file);
+    }
+}
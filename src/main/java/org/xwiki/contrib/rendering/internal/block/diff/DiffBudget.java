@@ -0,0 +1,181 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.xwiki.contrib.rendering.block.diff.BlockDiffConfiguration;
+
+/**
+ * Limits the cost of a diff (see {@link BlockDiffConfiguration#setMaximumComparisons(long)} and
+ * {@link BlockDiffConfiguration#setTimeout(long)}). The diff engines access the compared blocks through the sequences
+ * returned by {@link #wrap(DiffSequences)}, which count the accesses and throw {@link ExhaustedException} when the
+ * budget is exhausted. The budget can be shared by the subtrees compared in parallel.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+public class DiffBudget
+{
+    /**
+     * The number of accesses that are counted locally before updating the shared counter and checking the clock.
+     */
+    private static final int CHECK_INTERVAL = 1024;
+
+    private static final ExhaustedException EXHAUSTED = new ExhaustedException();
+
+    private final long maximumComparisons;
+
+    private final long deadline;
+
+    private final boolean hasDeadline;
+
+    private final AtomicLong comparisons = new AtomicLong();
+
+    private volatile boolean exhausted;
+
+    /**
+     * Thrown by the sequences returned by {@link DiffBudget#wrap(DiffSequences)} when the budget is exhausted.
+     */
+    public static final class ExhaustedException extends RuntimeException
+    {
+        private static final long serialVersionUID = 1L;
+
+        private ExhaustedException()
+        {
+            // The exception is only used for control flow, so it doesn't need a stack trace.
+            super("The diff budget is exhausted.", null, false, false);
+        }
+    }
+
+    /**
+     * The sequences that count the accesses to the compared blocks.
+     */
+    public final class BudgetedSequences implements DiffSequences
+    {
+        private final DiffSequences sequences;
+
+        private int pendingComparisons;
+
+        BudgetedSequences(DiffSequences sequences)
+        {
+            this.sequences = sequences;
+        }
+
+        @Override
+        public long getPreviousKey(int index)
+        {
+            spend();
+            return this.sequences.getPreviousKey(index);
+        }
+
+        @Override
+        public long getNextKey(int index)
+        {
+            spend();
+            return this.sequences.getNextKey(index);
+        }
+
+        @Override
+        public boolean equals(int previousIndex, int nextIndex)
+        {
+            spend();
+            return this.sequences.equals(previousIndex, nextIndex);
+        }
+
+        /**
+         * Counts the remaining accesses, without throwing an exception because the comparison is over.
+         */
+        public void flush()
+        {
+            if (DiffBudget.this.isExceeded(this.pendingComparisons)) {
+                DiffBudget.this.exhausted = true;
+            }
+            this.pendingComparisons = 0;
+        }
+
+        private void spend()
+        {
+            if (++this.pendingComparisons == CHECK_INTERVAL) {
+                this.pendingComparisons = 0;
+                DiffBudget.this.spend(CHECK_INTERVAL);
+            }
+        }
+    }
+
+    /**
+     * Creates a new budget.
+     * 
+     * @param maximumComparisons the maximum number of comparisons, {@code 0} for no limit
+     * @param timeout the maximum duration in milliseconds, {@code 0} for no limit
+     */
+    public DiffBudget(long maximumComparisons, long timeout)
+    {
+        this.maximumComparisons = maximumComparisons > 0 ? maximumComparisons : Long.MAX_VALUE;
+        this.hasDeadline = timeout > 0;
+        this.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+    }
+
+    /**
+     * @param configuration the diff configuration
+     * @return the budget specified by the given configuration, {@code null} if the configuration doesn't limit the
+     *         cost of the diff
+     */
+    public static DiffBudget of(BlockDiffConfiguration configuration)
+    {
+        if (configuration == null
+            || (configuration.getMaximumComparisons() <= 0 && configuration.getTimeout() <= 0)) {
+            return null;
+        }
+        return new DiffBudget(configuration.getMaximumComparisons(), configuration.getTimeout());
+    }
+
+    /**
+     * @param sequences the sequences to compare
+     * @return sequences that count the comparisons against this budget
+     */
+    public BudgetedSequences wrap(DiffSequences sequences)
+    {
+        return new BudgetedSequences(sequences);
+    }
+
+    /**
+     * @return {@code true} if the budget is exhausted, {@code false} otherwise
+     */
+    public boolean isExhausted()
+    {
+        return this.exhausted;
+    }
+
+    private void spend(int count)
+    {
+        if (this.exhausted || isExceeded(count)) {
+            this.exhausted = true;
+            throw EXHAUSTED;
+        }
+    }
+
+    private boolean isExceeded(int count)
+    {
+        return this.comparisons.addAndGet(count) > this.maximumComparisons
+            || (this.hasDeadline && System.nanoTime() - this.deadline > 0);
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.util.Objects;
+
+import org.xwiki.contrib.rendering.block.diff.BlockDiffAlgorithm;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffConfiguration;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffMacroMode;
+import org.xwiki.rendering.block.Block;
+
+/**
+ * Identifies a diff result by the compared contents. Each side is identified either by the key given by the caller
+ * (see {@link BlockDiffConfiguration#setKeys(Object, Object)}) or, when there's no such key, by the hash of the
+ * compared tree (see {@link BlockSequences#hashTree(FlatBlockList, ShallowBlockComparator)}) and its size, which costs
+ * a pass over the tree.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+public final class DiffCacheKey
+{
+    private final Object previous;
+
+    private final Object next;
+
+    private final BlockDiffAlgorithm algorithm;
+
+    private final BlockDiffMacroMode macroMode;
+
+    private DiffCacheKey(Object previous, Object next, BlockDiffAlgorithm algorithm, BlockDiffMacroMode macroMode)
+    {
+        this.previous = previous;
+        this.next = next;
+        this.algorithm = algorithm;
+        this.macroMode = macroMode;
+    }
+
+    /**
+     * Computes the key of a diff result.
+     * 
+     * @param previous the block before the modification
+     * @param next the block after the modification
+     * @param configuration how the changes are computed, {@code null} for the default configuration
+     * @param converter the component used to convert the blocks into lists
+     * @param comparator the component used to compute the block fingerprints
+     * @return the key of the diff result
+     */
+    public static DiffCacheKey of(Block previous, Block next, BlockDiffConfiguration configuration,
+        BlockListConverter converter, ShallowBlockComparator comparator)
+    {
+        if (configuration == null) {
+            return new DiffCacheKey(ContentHash.of(previous, converter, comparator),
+                ContentHash.of(next, converter, comparator), null, null);
+        }
+        Object previousKey = configuration.getPreviousKey();
+        Object nextKey = configuration.getNextKey();
+        // The fork join pool and the budget don't change the cached results (the degraded results are not cached), so
+        // only the algorithm and the macro mode are part of the key.
+        return new DiffCacheKey(previousKey != null ? previousKey : ContentHash.of(previous, converter, comparator),
+            nextKey != null ? nextKey : ContentHash.of(next, converter, comparator), configuration.getAlgorithm(),
+            configuration.getMacroMode());
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (obj == this) {
+            return true;
+        }
+
+        if (obj instanceof DiffCacheKey) {
+            DiffCacheKey other = (DiffCacheKey) obj;
+            return this.previous.equals(other.previous) && this.next.equals(other.next)
+                && this.algorithm == other.algorithm && this.macroMode == other.macroMode;
+        }
+
+        return false;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(this.previous, this.next, this.algorithm, this.macroMode);
+    }
+
+    /**
+     * Identifies a block tree by its content: two trees with the same hash and the same size are considered equal.
+     */
+    private static final class ContentHash
+    {
+        private final long hash;
+
+        private final int size;
+
+        private ContentHash(long hash, int size)
+        {
+            this.hash = hash;
+            this.size = size;
+        }
+
+        static ContentHash of(Block block, BlockListConverter converter, ShallowBlockComparator comparator)
+        {
+            FlatBlockList list = converter.toList(block);
+            return new ContentHash(BlockSequences.hashTree(list, comparator), list.size());
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (obj instanceof ContentHash) {
+                ContentHash other = (ContentHash) obj;
+                return this.hash == other.hash && this.size == other.size;
+            }
+
+            return false;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Long.hashCode(this.hash) * 31 + this.size;
+        }
+    }
+}
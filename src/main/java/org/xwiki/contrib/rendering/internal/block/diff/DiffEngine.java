@@ -0,0 +1,42 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+/**
+ * Computes the changes between two sequences of blocks.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+public interface DiffEngine
+{
+    /**
+     * Computes the changes between two ranges of the given sequences.
+     * 
+     * @param sequences the sequences to compare
+     * @param previousStart the start of the range to compare from the previous sequence (inclusive)
+     * @param previousEnd the end of the range to compare from the previous sequence (exclusive)
+     * @param nextStart the start of the range to compare from the next sequence (inclusive)
+     * @param nextEnd the end of the range to compare from the next sequence (exclusive)
+     * @param script where to add the changes
+     */
+    void diff(DiffSequences sequences, int previousStart, int previousEnd, int nextStart, int nextEnd,
+        EditScript script);
+}
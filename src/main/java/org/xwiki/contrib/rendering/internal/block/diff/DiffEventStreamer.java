@@ -0,0 +1,211 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+import org.xwiki.contrib.rendering.block.diff.EndBlock;
+import org.xwiki.diff.DiffException;
+import org.xwiki.rendering.block.AbstractBlock;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.SpaceBlock;
+import org.xwiki.rendering.block.WordBlock;
+import org.xwiki.rendering.listener.Format;
+import org.xwiki.rendering.listener.Listener;
+
+import static org.xwiki.contrib.rendering.internal.block.diff.DefaultBlockDiffMarker.DIFF_MARKER_PARAMETER;
+
+/**
+ * Sends the rendering events corresponding to a list of unmodified, deleted and inserted blocks (as produced by
+ * {@link DefaultBlockDiffMarker}) to a {@link Listener}, without building the diff tree and without modifying the
+ * blocks. The diff markers are added to the parameters of the first event of each marked block, and the marked word
+ * and space blocks are wrapped in format events, like {@link FormatWrapperFilter} does.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+public class DiffEventStreamer implements BiConsumer<Block, String>
+{
+    /**
+     * The blocks that override {@link Block#traverse(Listener)} (i.e. the leaf blocks) send their events from there,
+     * instead of {@link AbstractBlock#before(Listener)} and {@link AbstractBlock#after(Listener)}.
+     */
+    private static final ClassValue<Boolean> TRAVERSE_OVERRIDDEN = new ClassValue<Boolean>()
+    {
+        @Override
+        protected Boolean computeValue(Class<?> type)
+        {
+            Class<?> current = type;
+            while (current != null && current != AbstractBlock.class) {
+                try {
+                    current.getDeclaredMethod("traverse", Listener.class);
+                    return true;
+                } catch (NoSuchMethodException e) {
+                    // Look in the super class.
+                    current = current.getSuperclass();
+                }
+            }
+            return false;
+        }
+    };
+
+    /**
+     * Adds the current diff marker to the parameters of the first event that accepts parameters.
+     */
+    private final class MarkerInvocationHandler implements InvocationHandler
+    {
+        private String marker;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+        {
+            Object[] actualArgs = args;
+            if (this.marker != null && args != null) {
+                Class<?>[] parameterTypes = method.getParameterTypes();
+                for (int i = 0; i < parameterTypes.length; i++) {
+                    if (parameterTypes[i] == Map.class) {
+                        actualArgs = args.clone();
+                        @SuppressWarnings("unchecked")
+                        Map<String, String> parameters = new LinkedHashMap<>((Map<String, String>) args[i]);
+                        parameters.put(DIFF_MARKER_PARAMETER, this.marker);
+                        actualArgs[i] = parameters;
+                        this.marker = null;
+                        break;
+                    }
+                }
+            }
+            try {
+                return method.invoke(DiffEventStreamer.this.listener, actualArgs);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    private final Listener listener;
+
+    private final MarkerInvocationHandler markerHandler = new MarkerInvocationHandler();
+
+    private final Listener markerListener;
+
+    private final Deque<Block> openBlocks = new ArrayDeque<>();
+
+    private String openFormatMarker;
+
+    private boolean malformed;
+
+    /**
+     * Creates a new instance.
+     * 
+     * @param listener the listener that receives the events
+     */
+    public DiffEventStreamer(Listener listener)
+    {
+        this.listener = listener;
+        this.markerListener = (Listener) Proxy.newProxyInstance(Listener.class.getClassLoader(),
+            new Class<?>[] {Listener.class}, this.markerHandler);
+    }
+
+    /**
+     * Sends the events corresponding to the next block from the list.
+     * 
+     * @param block the next block, either a start block or an {@link EndBlock}
+     * @param marker the diff marker of the block, {@code null} if the block is not marked
+     */
+    @Override
+    public void accept(Block block, String marker)
+    {
+        if (block instanceof EndBlock) {
+            end((EndBlock) block);
+        } else {
+            this.openBlocks.push(block);
+            if (marker != null && (block instanceof WordBlock || block instanceof SpaceBlock)) {
+                if (!marker.equals(this.openFormatMarker)) {
+                    closeFormat();
+                    this.listener.beginFormat(Format.NONE, Collections.singletonMap(DIFF_MARKER_PARAMETER, marker));
+                    this.openFormatMarker = marker;
+                }
+                block.traverse(this.listener);
+            } else {
+                closeFormat();
+                Listener target = this.listener;
+                if (marker != null) {
+                    this.markerHandler.marker = marker;
+                    target = this.markerListener;
+                }
+                if (isLeaf(block)) {
+                    block.traverse(target);
+                } else {
+                    ((AbstractBlock) block).before(target);
+                }
+                this.markerHandler.marker = null;
+            }
+        }
+    }
+
+    /**
+     * Ends the events.
+     * 
+     * @throws DiffException if the streamed list of blocks doesn't correspond to a tree
+     */
+    public void close() throws DiffException
+    {
+        closeFormat();
+        if (this.malformed || !this.openBlocks.isEmpty()) {
+            throw new DiffException("The marked blocks cannot be converted into a single tree.");
+        }
+    }
+
+    private void end(EndBlock endBlock)
+    {
+        if (this.openBlocks.isEmpty() || this.openBlocks.peek().getClass() != endBlock.getType()) {
+            this.malformed = true;
+            return;
+        }
+        Block startBlock = this.openBlocks.pop();
+        if (!isLeaf(startBlock)) {
+            closeFormat();
+            ((AbstractBlock) startBlock).after(this.listener);
+        }
+    }
+
+    private boolean isLeaf(Block block)
+    {
+        return !(block instanceof AbstractBlock) || TRAVERSE_OVERRIDDEN.get(block.getClass());
+    }
+
+    private void closeFormat()
+    {
+        if (this.openFormatMarker != null) {
+            this.listener.endFormat(Format.NONE,
+                Collections.singletonMap(DIFF_MARKER_PARAMETER, this.openFormatMarker));
+            this.openFormatMarker = null;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.util.List;
+
+import org.xwiki.contrib.rendering.block.diff.BlockDiffMetrics;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffMetricsListener;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffPhase;
+import org.xwiki.contrib.rendering.block.diff.BlockPatch;
+import org.xwiki.diff.Delta;
+import org.xwiki.diff.Patch;
+import org.xwiki.rendering.block.Block;
+
+/**
+ * Measures a diff operation and reports the {@link BlockDiffMetrics} to the enabled {@link BlockDiffMetricsListener}s.
+ * When there are no enabled listeners the recorder is disabled and all its methods return immediately, without
+ * reading the clock.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+public final class DiffMetricsRecorder
+{
+    /**
+     * The estimated size of an entry of the list representation of a tree, in bytes: the block reference, the depth,
+     * the matching position, the fingerprint and the subtree hash.
+     */
+    private static final long ENTRY_WEIGHT = 32;
+
+    /**
+     * The estimated size of a reference to a block, stored in a patch or in a list, in bytes.
+     */
+    private static final long REFERENCE_WEIGHT = 8;
+
+    private static final DiffMetricsRecorder DISABLED = new DiffMetricsRecorder(null, null);
+
+    private final List<BlockDiffMetricsListener> listeners;
+
+    private final BlockDiffMetrics metrics;
+
+    private long lapStart;
+
+    private DiffMetricsRecorder(List<BlockDiffMetricsListener> listeners, BlockDiffMetrics metrics)
+    {
+        this.listeners = listeners;
+        this.metrics = metrics;
+        if (metrics != null) {
+            this.lapStart = System.nanoTime();
+        }
+    }
+
+    /**
+     * Starts measuring an operation.
+     * 
+     * @param operation the name of the operation
+     * @param listeners the listeners to notify at the end of the operation, can be {@code null}
+     * @return the recorder, disabled if there are no enabled listeners
+     */
+    public static DiffMetricsRecorder start(String operation, List<BlockDiffMetricsListener> listeners)
+    {
+        if (listeners != null) {
+            for (BlockDiffMetricsListener listener : listeners) {
+                if (listener.isEnabled()) {
+                    return new DiffMetricsRecorder(listeners, new BlockDiffMetrics(operation));
+                }
+            }
+        }
+        return DISABLED;
+    }
+
+    /**
+     * @return a recorder that doesn't measure anything
+     */
+    public static DiffMetricsRecorder disabled()
+    {
+        return DISABLED;
+    }
+
+    /**
+     * Ends a phase of the operation: the time spent since the end of the previous phase (or since the start of the
+     * operation) is added to the given phase.
+     * 
+     * @param phase the phase that ended
+     */
+    public void lap(BlockDiffPhase phase)
+    {
+        if (this.metrics != null) {
+            long now = System.nanoTime();
+            this.metrics.addDuration(phase, now - this.lapStart);
+            this.lapStart = now;
+        }
+    }
+
+    /**
+     * Records the size of the compared trees.
+     * 
+     * @param previous the list representation of the previous tree
+     * @param next the list representation of the next tree
+     */
+    public void recordSizes(List<Block> previous, List<Block> next)
+    {
+        if (this.metrics != null) {
+            this.metrics.setPreviousSize(previous.size());
+            this.metrics.setNextSize(next.size());
+            this.metrics.addEstimatedAllocation(ENTRY_WEIGHT * (previous.size() + next.size()));
+        }
+    }
+
+    /**
+     * Records the size of the computed patch.
+     * 
+     * @param patch the computed patch
+     */
+    public void recordPatch(Patch<Block> patch)
+    {
+        if (this.metrics != null) {
+            this.metrics.setDeltaCount(this.metrics.getDeltaCount() + patch.size());
+            for (Delta<Block> delta : patch) {
+                this.metrics.addEstimatedAllocation(REFERENCE_WEIGHT
+                    * (delta.getPrevious().getElements().size() + delta.getNext().getElements().size()));
+            }
+            if (patch instanceof BlockPatch && ((BlockPatch) patch).isDegraded()) {
+                this.metrics.setDegraded(true);
+            }
+        }
+    }
+
+    /**
+     * Records the blocks that have been marked as deleted or inserted.
+     * 
+     * @param markedBlockCount the number of marked blocks
+     * @param copiedBlockCount the number of blocks that have been copied (e.g. the inserted blocks)
+     */
+    public void recordMarkedBlocks(int markedBlockCount, int copiedBlockCount)
+    {
+        if (this.metrics != null) {
+            this.metrics.setMarkedBlockCount(this.metrics.getMarkedBlockCount() + markedBlockCount);
+            this.metrics.addEstimatedAllocation(CachedBlockDiffManager.BLOCK_WEIGHT * copiedBlockCount);
+        }
+    }
+
+    /**
+     * Ends the operation and notifies the listeners.
+     */
+    public void finish()
+    {
+        if (this.metrics != null) {
+            for (BlockDiffMetricsListener listener : this.listeners) {
+                if (listener.isEnabled()) {
+                    listener.onDiff(this.metrics);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.util.Arrays;
+
+/**
+ * Helper methods shared by the diff engines.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+public final class DiffRanges
+{
+    private DiffRanges()
+    {
+    }
+
+    /**
+     * @param sequences the sequences to compare
+     * @param previousStart the start of the range to compare from the previous sequence (inclusive)
+     * @param previousEnd the end of the range to compare from the previous sequence (exclusive)
+     * @param nextStart the start of the range to compare from the next sequence (inclusive)
+     * @param nextEnd the end of the range to compare from the next sequence (exclusive)
+     * @return the length of the common prefix of the specified ranges
+     */
+    public static int getCommonPrefix(DiffSequences sequences, int previousStart, int previousEnd, int nextStart,
+        int nextEnd)
+    {
+        int length = 0;
+        while (previousStart + length < previousEnd && nextStart + length < nextEnd
+            && sequences.equals(previousStart + length, nextStart + length)) {
+            length++;
+        }
+        return length;
+    }
+
+    /**
+     * @param sequences the sequences to compare
+     * @param previousStart the start of the range to compare from the previous sequence (inclusive)
+     * @param previousEnd the end of the range to compare from the previous sequence (exclusive)
+     * @param nextStart the start of the range to compare from the next sequence (inclusive)
+     * @param nextEnd the end of the range to compare from the next sequence (exclusive)
+     * @return the length of the common suffix of the specified ranges
+     */
+    public static int getCommonSuffix(DiffSequences sequences, int previousStart, int previousEnd, int nextStart,
+        int nextEnd)
+    {
+        int length = 0;
+        while (previousEnd - length > previousStart && nextEnd - length > nextStart
+            && sequences.equals(previousEnd - length - 1, nextEnd - length - 1)) {
+            length++;
+        }
+        return length;
+    }
+
+    /**
+     * Looks for the elements that appear only once in both ranges and returns the longest sequence of such elements
+     * that appear in the same order in both ranges (the patience diff anchors).
+     * 
+     * @param sequences the sequences to compare
+     * @param previousStart the start of the range to compare from the previous sequence (inclusive)
+     * @param previousEnd the end of the range to compare from the previous sequence (exclusive)
+     * @param nextStart the start of the range to compare from the next sequence (inclusive)
+     * @param nextEnd the end of the range to compare from the next sequence (exclusive)
+     * @return the positions of the anchors, as pairs of previous and next positions, in increasing order
+     */
+    public static int[] getUniqueAnchors(DiffSequences sequences, int previousStart, int previousEnd, int nextStart,
+        int nextEnd)
+    {
+        KeyTable table = new KeyTable(previousEnd - previousStart + nextEnd - nextStart);
+        for (int i = previousStart; i < previousEnd; i++) {
+            table.addPrevious(sequences.getPreviousKey(i), i);
+        }
+        for (int j = nextStart; j < nextEnd; j++) {
+            table.addNext(sequences.getNextKey(j), j);
+        }
+
+        // The candidates, in the order of their next position.
+        int maxCandidates = Math.min(previousEnd - previousStart, nextEnd - nextStart);
+        int[] previousCandidates = new int[maxCandidates];
+        int[] nextCandidates = new int[maxCandidates];
+        int candidateCount = 0;
+        for (int j = nextStart; j < nextEnd; j++) {
+            int previousIndex = table.getUniquePrevious(sequences.getNextKey(j));
+            if (previousIndex >= 0 && sequences.equals(previousIndex, j)) {
+                previousCandidates[candidateCount] = previousIndex;
+                nextCandidates[candidateCount++] = j;
+            }
+        }
+
+        // Find the longest increasing subsequence of previous positions (patience sorting).
+        int[] tails = new int[candidateCount];
+        int[] predecessors = new int[candidateCount];
+        int length = 0;
+        for (int c = 0; c < candidateCount; c++) {
+            int previousIndex = previousCandidates[c];
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (previousCandidates[tails[middle]] < previousIndex) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            predecessors[c] = low > 0 ? tails[low - 1] : -1;
+            tails[low] = c;
+            if (low == length) {
+                length++;
+            }
+        }
+
+        int[] anchors = new int[2 * length];
+        for (int i = length - 1, c = length > 0 ? tails[length - 1] : -1; i >= 0; i--, c = predecessors[c]) {
+            anchors[2 * i] = previousCandidates[c];
+            anchors[2 * i + 1] = nextCandidates[c];
+        }
+        return anchors;
+    }
+
+    /**
+     * An open addressing hash table that counts the occurrences of each key in the previous and next ranges.
+     */
+    private static final class KeyTable
+    {
+        private final long[] keys;
+
+        private final int[] previousCounts;
+
+        private final int[] previousPositions;
+
+        private final int[] nextCounts;
+
+        private final boolean[] used;
+
+        private final int mask;
+
+        KeyTable(int size)
+        {
+            int capacity = Integer.highestOneBit(Math.max(size, 1)) << 2;
+            this.keys = new long[capacity];
+            this.previousCounts = new int[capacity];
+            this.previousPositions = new int[capacity];
+            this.nextCounts = new int[capacity];
+            this.used = new boolean[capacity];
+            this.mask = capacity - 1;
+            Arrays.fill(this.previousPositions, -1);
+        }
+
+        void addPrevious(long key, int position)
+        {
+            int slot = getSlot(key);
+            this.previousCounts[slot]++;
+            this.previousPositions[slot] = position;
+        }
+
+        void addNext(long key, int position)
+        {
+            this.nextCounts[getSlot(key)]++;
+        }
+
+        /**
+         * @return the previous position of the given key if the key appears only once in both ranges, -1 otherwise
+         */
+        int getUniquePrevious(long key)
+        {
+            int slot = getSlot(key);
+            return this.previousCounts[slot] == 1 && this.nextCounts[slot] == 1 ? this.previousPositions[slot] : -1;
+        }
+
+        private int getSlot(long key)
+        {
+            int slot = (int) (key ^ (key >>> 32)) & this.mask;
+            while (this.used[slot] && this.keys[slot] != key) {
+                slot = (slot + 1) & this.mask;
+            }
+            if (!this.used[slot]) {
+                this.used[slot] = true;
+                this.keys[slot] = key;
+            }
+            return slot;
+        }
+    }
+}
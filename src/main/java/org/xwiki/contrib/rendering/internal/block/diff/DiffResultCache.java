@@ -0,0 +1,147 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.xwiki.contrib.rendering.block.diff.BlockDiffCacheStatistics;
+
+/**
+ * A thread-safe least recently used cache of diff results, bounded by the estimated size (weight) of the cached
+ * results. The results are computed outside the lock, so the same result may be computed more than once when it is
+ * requested concurrently, but the lookups are never blocked by a running diff.
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of cached results
+ * @version $Id$
+ * @since 1.0
+ */
+public class DiffResultCache<K, V>
+{
+    /**
+     * The default maximum size of the cached results: 64MB.
+     */
+    public static final long DEFAULT_MAXIMUM_WEIGHT = 64L * 1024 * 1024;
+
+    private static final class Entry<V>
+    {
+        private final V value;
+
+        private final long weight;
+
+        Entry(V value, long weight)
+        {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    private final Map<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder missCount = new LongAdder();
+
+    private final LongAdder evictionCount = new LongAdder();
+
+    private long weight;
+
+    private long maximumWeight = DEFAULT_MAXIMUM_WEIGHT;
+
+    /**
+     * @param key the key of the result
+     * @return the cached result, or {@code null} if the result is not cached
+     */
+    public V get(K key)
+    {
+        Entry<V> entry;
+        synchronized (this) {
+            entry = this.entries.get(key);
+        }
+        if (entry == null) {
+            this.missCount.increment();
+            return null;
+        } else {
+            this.hitCount.increment();
+            return entry.value;
+        }
+    }
+
+    /**
+     * Caches a result, evicting the least recently used results if needed. Results larger than the maximum weight
+     * are not cached.
+     * 
+     * @param key the key of the result
+     * @param value the result to cache
+     * @param valueWeight the estimated size of the result, in bytes
+     */
+    public synchronized void put(K key, V value, long valueWeight)
+    {
+        if (valueWeight > this.maximumWeight) {
+            return;
+        }
+        Entry<V> previousEntry = this.entries.put(key, new Entry<>(value, valueWeight));
+        if (previousEntry != null) {
+            this.weight -= previousEntry.weight;
+        }
+        this.weight += valueWeight;
+        evict();
+    }
+
+    /**
+     * @param maximumWeight the maximum size of the cached results, in bytes
+     */
+    public synchronized void setMaximumWeight(long maximumWeight)
+    {
+        this.maximumWeight = maximumWeight;
+        evict();
+    }
+
+    /**
+     * Removes all the cached results.
+     */
+    public synchronized void clear()
+    {
+        this.entries.clear();
+        this.weight = 0;
+    }
+
+    /**
+     * @return the current cache statistics
+     */
+    public synchronized BlockDiffCacheStatistics getStatistics()
+    {
+        return new BlockDiffCacheStatistics(this.hitCount.sum(), this.missCount.sum(), this.evictionCount.sum(),
+            this.entries.size(), this.weight, this.maximumWeight);
+    }
+
+    private void evict()
+    {
+        Iterator<Entry<V>> iterator = this.entries.values().iterator();
+        while (this.weight > this.maximumWeight && iterator.hasNext()) {
+            this.weight -= iterator.next().weight;
+            iterator.remove();
+            this.evictionCount.increment();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+/**
+ * Two sequences to compare. Each element is identified by a 64-bit key (e.g. a fingerprint): elements with different
+ * keys are different, elements with the same key are most probably equal.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+public interface DiffSequences
+{
+    /**
+     * @param index a position in the previous sequence
+     * @return the key of the element found at the specified position
+     */
+    long getPreviousKey(int index);
+
+    /**
+     * @param index a position in the next sequence
+     * @return the key of the element found at the specified position
+     */
+    long getNextKey(int index);
+
+    /**
+     * Checks if two elements are equal.
+     * 
+     * @param previousIndex a position in the previous sequence
+     * @param nextIndex a position in the next sequence
+     * @return {@code true} if the elements found at the specified positions are equal, {@code false} otherwise
+     */
+    boolean equals(int previousIndex, int nextIndex);
+}
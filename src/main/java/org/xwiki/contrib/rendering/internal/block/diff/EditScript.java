@@ -0,0 +1,196 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.xwiki.contrib.rendering.block.diff.BlockModification;
+import org.xwiki.contrib.rendering.block.diff.BlockMove;
+import org.xwiki.contrib.rendering.block.diff.BlockPatch;
+import org.xwiki.rendering.block.Block;
+
+/**
+ * The result of a diff engine: the list of index ranges that have changed between two sequences, in increasing order.
+ * Adjacent changes are merged.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+public class EditScript
+{
+    private static final int CHANGE_SIZE = 4;
+
+    private int[] changes = new int[16 * CHANGE_SIZE];
+
+    private int size;
+
+    private boolean degraded;
+
+    /**
+     * Adds a change. Changes must be added in the order of their indexes. Empty changes are ignored.
+     * 
+     * @param previousStart the index of the first changed element in the previous sequence
+     * @param previousEnd the index after the last changed element in the previous sequence
+     * @param nextStart the index of the first changed element in the next sequence
+     * @param nextEnd the index after the last changed element in the next sequence
+     */
+    public void addChange(int previousStart, int previousEnd, int nextStart, int nextEnd)
+    {
+        if (previousStart == previousEnd && nextStart == nextEnd) {
+            return;
+        }
+
+        int last = (this.size - 1) * CHANGE_SIZE;
+        if (this.size > 0 && this.changes[last + 1] == previousStart && this.changes[last + 3] == nextStart) {
+            // Merge with the previous change.
+            this.changes[last + 1] = previousEnd;
+            this.changes[last + 3] = nextEnd;
+        } else {
+            if ((this.size + 1) * CHANGE_SIZE > this.changes.length) {
+                this.changes = Arrays.copyOf(this.changes, 2 * this.changes.length);
+            }
+            int offset = this.size * CHANGE_SIZE;
+            this.changes[offset] = previousStart;
+            this.changes[offset + 1] = previousEnd;
+            this.changes[offset + 2] = nextStart;
+            this.changes[offset + 3] = nextEnd;
+            this.size++;
+        }
+    }
+
+    /**
+     * Adds all the changes from the given edit script. The given changes must come after the changes of this edit
+     * script.
+     * 
+     * @param script the edit script to append
+     */
+    public void addAll(EditScript script)
+    {
+        this.degraded |= script.degraded;
+        for (int i = 0; i < script.size; i++) {
+            addChange(script.getPreviousStart(i), script.getPreviousEnd(i), script.getNextStart(i),
+                script.getNextEnd(i));
+        }
+    }
+
+    /**
+     * Marks this edit script as degraded: some of the changes are larger than needed because the diff budget has been
+     * exhausted (see {@link DiffBudget}).
+     */
+    public void markDegraded()
+    {
+        this.degraded = true;
+    }
+
+    /**
+     * @return {@code true} if some of the changes are larger than needed because the diff budget has been exhausted,
+     *         {@code false} otherwise
+     */
+    public boolean isDegraded()
+    {
+        return this.degraded;
+    }
+
+    /**
+     * @return the number of changes
+     */
+    public int size()
+    {
+        return this.size;
+    }
+
+    /**
+     * @return {@code true} if there are no changes, {@code false} otherwise
+     */
+    public boolean isEmpty()
+    {
+        return this.size == 0;
+    }
+
+    /**
+     * @param index the index of a change
+     * @return the index of the first changed element in the previous sequence
+     */
+    public int getPreviousStart(int index)
+    {
+        return this.changes[index * CHANGE_SIZE];
+    }
+
+    /**
+     * @param index the index of a change
+     * @return the index after the last changed element in the previous sequence
+     */
+    public int getPreviousEnd(int index)
+    {
+        return this.changes[index * CHANGE_SIZE + 1];
+    }
+
+    /**
+     * @param index the index of a change
+     * @return the index of the first changed element in the next sequence
+     */
+    public int getNextStart(int index)
+    {
+        return this.changes[index * CHANGE_SIZE + 2];
+    }
+
+    /**
+     * @param index the index of a change
+     * @return the index after the last changed element in the next sequence
+     */
+    public int getNextEnd(int index)
+    {
+        return this.changes[index * CHANGE_SIZE + 3];
+    }
+
+    /**
+     * Converts this edit script into a patch.
+     * 
+     * @param previous the list of blocks before the modification
+     * @param next the list of blocks after the modification
+     * @return the patch that transforms the previous list into the next list
+     */
+    public BlockPatch toPatch(List<Block> previous, List<Block> next)
+    {
+        return toPatch(previous, next, Collections.emptyList(), Collections.emptyList());
+    }
+
+    /**
+     * Converts this edit script into a patch.
+     * 
+     * @param previous the list of blocks before the modification
+     * @param next the list of blocks after the modification
+     * @param moves the moved subtrees, see {@link BlockMoveDetector}
+     * @param modifications the blocks whose own attributes changed, see {@link BlockModificationDetector}
+     * @return the patch that transforms the previous list into the next list
+     */
+    public BlockPatch toPatch(List<Block> previous, List<Block> next, List<BlockMove> moves,
+        List<BlockModification> modifications)
+    {
+        BlockPatchBuilder patchBuilder = new BlockPatchBuilder(previous, next).setDegraded(this.degraded)
+            .setMoves(moves).setModifications(modifications);
+        for (int i = 0; i < this.size; i++) {
+            patchBuilder.addChange(getPreviousStart(i), getPreviousEnd(i), getNextStart(i), getNextEnd(i));
+        }
+        return patchBuilder.build();
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+import org.xwiki.contrib.rendering.block.diff.BlockPatchCodec;
+import org.xwiki.contrib.rendering.block.diff.BlockPatchStore;
+import org.xwiki.diff.Patch;
+import org.xwiki.rendering.block.Block;
+
+/**
+ * Stores a sequence of patches in a file, see {@link DefaultBlockPatchStoreFactory}. Each patch is stored as its length
+ * (4 bytes) followed by the encoded patch. The offsets of the patches are read when the store is opened, and each
+ * patch is then loaded with a single positional read that covers only that patch, whatever the size of the file.
+ * <p>
+ * This class is thread safe.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+public class FileBlockPatchStore implements BlockPatchStore
+{
+    private static final int LENGTH_SIZE = Integer.BYTES;
+
+    private final FileChannel channel;
+
+    private final BlockPatchCodec codec;
+
+    private final boolean reversible;
+
+    private long[] offsets = new long[16];
+
+    private int size;
+
+    private long end;
+
+    /**
+     * Opens (or creates) a patch store. The file is not modified.
+     * 
+     * @param file the file where the patches are stored
+     * @param codec the component used to encode and decode the patches
+     * @param reversible whether to store the content of the deleted blocks, which is needed in order to restore the
+     *            stored patches (see {@link BlockPatchCodec#encode(Patch, boolean)})
+     * @throws IOException if the file cannot be opened or if its last patch is incomplete (see {@link #recover(Path)})
+     */
+    public FileBlockPatchStore(Path file, BlockPatchCodec codec, boolean reversible) throws IOException
+    {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+        this.codec = codec;
+        this.reversible = reversible;
+        try {
+            this.end = readOffsets(this.channel, this::addOffset);
+            if (this.end < this.channel.size()) {
+                throw new IOException(String.format(
+                    "The patch store [%s] ends with an incomplete patch at offset [%s].", file, this.end));
+            }
+        } catch (IOException e) {
+            this.channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Drops the incomplete patch found at the end of the given file, if any.
+     * 
+     * @param file the file where the patches are stored
+     * @return the number of bytes dropped from the end of the file
+     * @throws IOException if the file cannot be read or truncated
+     */
+    public static long recover(Path file) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long fileSize = channel.size();
+            long end = readOffsets(channel, offset -> { });
+            channel.truncate(end);
+            return fileSize - end;
+        }
+    }
+
+    @Override
+    public synchronized int add(Patch<Block> patch) throws IOException
+    {
+        byte[] encoded = this.codec.encode(patch, this.reversible);
+        ByteBuffer record = ByteBuffer.allocate(LENGTH_SIZE + encoded.length);
+        record.putInt(encoded.length).put(encoded).flip();
+        long position = this.end;
+        while (record.hasRemaining()) {
+            position += this.channel.write(record, position);
+        }
+        addOffset(this.end);
+        this.end = position;
+        return this.size - 1;
+    }
+
+    @Override
+    public synchronized Patch<Block> get(int index) throws IOException
+    {
+        if (index < 0 || index >= this.size) {
+            throw new IndexOutOfBoundsException(String.format("No patch at index [%s].", index));
+        }
+        long offset = this.offsets[index] + LENGTH_SIZE;
+        long recordEnd = index + 1 < this.size ? this.offsets[index + 1] : this.end;
+        ByteBuffer record = ByteBuffer.allocate((int) (recordEnd - offset));
+        read(this.channel, record, offset);
+        record.flip();
+        return this.codec.decode(record);
+    }
+
+    @Override
+    public synchronized int size()
+    {
+        return this.size;
+    }
+
+    @Override
+    public synchronized void close() throws IOException
+    {
+        this.channel.close();
+    }
+
+    /**
+     * Reads the offsets of the complete patches stored in the given file.
+     * 
+     * @param channel the file where the patches are stored
+     * @param offsets called with the offset of each complete patch
+     * @return the end of the last complete patch
+     */
+    private static long readOffsets(FileChannel channel, LongConsumer offsets) throws IOException
+    {
+        long fileSize = channel.size();
+        ByteBuffer length = ByteBuffer.allocate(LENGTH_SIZE);
+        long position = 0;
+        while (position + LENGTH_SIZE <= fileSize) {
+            length.clear();
+            read(channel, length, position);
+            long recordEnd = position + LENGTH_SIZE + length.getInt(0);
+            if (length.getInt(0) < 0 || recordEnd > fileSize) {
+                break;
+            }
+            offsets.accept(position);
+            position = recordEnd;
+        }
+        return position;
+    }
+
+    private static void read(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+    {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException(String.format("Unexpected end of file at offset [%s].", position));
+            }
+        }
+    }
+
+    private void addOffset(long offset)
+    {
+        if (this.size == this.offsets.length) {
+            this.offsets = Arrays.copyOf(this.offsets, 2 * this.size);
+        }
+        this.offsets[this.size++] = offset;
+    }
+}
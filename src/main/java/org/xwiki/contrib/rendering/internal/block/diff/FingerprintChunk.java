@@ -0,0 +1,68 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.xwiki.rendering.block.Block;
+
+/**
+ * A chunk of a decoded patch (see {@link DefaultBlockPatchCodec}) for which only the block fingerprints (see
+ * {@link ShallowBlockComparator#fingerprint(Block)}) are known. This is enough to verify the chunk when the patch is
+ * applied, but the chunk cannot be inserted (see {@link BlockDelta#restore(List)}). The elements of the chunk are
+ * {@code null} placeholders.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+public class FingerprintChunk extends BlockChunk
+{
+    private static final ShallowBlockComparator COMPARATOR = new ShallowBlockComparator();
+
+    private final long[] fingerprints;
+
+    /**
+     * Creates a new chunk.
+     * 
+     * @param index the index where the chunk starts
+     * @param fingerprints the fingerprints of the blocks from the chunk
+     */
+    public FingerprintChunk(int index, long[] fingerprints)
+    {
+        super(index, Collections.nCopies(fingerprints.length, null));
+        this.fingerprints = fingerprints;
+    }
+
+    /**
+     * @param index the index of a block in this chunk
+     * @return the fingerprint of the specified block
+     */
+    public long getFingerprint(int index)
+    {
+        return this.fingerprints[index];
+    }
+
+    @Override
+    protected boolean matches(Block block, int index)
+    {
+        return COMPARATOR.fingerprint(block) == this.fingerprints[index];
+    }
+}
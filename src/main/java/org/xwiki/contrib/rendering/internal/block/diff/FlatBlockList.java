@@ -0,0 +1,200 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+import org.xwiki.contrib.rendering.block.diff.EndBlock;
+import org.xwiki.rendering.block.Block;
+
+/**
+ * The list representation of a block tree, as produced by {@link BlockListConverter#toList(Block)}. Each block appears
+ * twice in this list: once at its start position and once at its end position (where it is represented by an
+ * {@link EndBlock}). Instead of allocating an {@link EndBlock} for each block we store, for each position, the start
+ * block reference, the depth in the tree and the index of the matching start or end position. End blocks are created
+ * only when they are accessed through {@link #get(int)}.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+public class FlatBlockList extends AbstractList<Block> implements RandomAccess
+{
+    private final Block[] blocks;
+
+    private final int[] depths;
+
+    private final int[] matches;
+
+    private EndBlock[] endBlocks;
+
+    private int size;
+
+    /**
+     * Creates a new empty list.
+     * 
+     * @param capacity the number of positions to allocate, i.e. twice the number of blocks
+     */
+    FlatBlockList(int capacity)
+    {
+        this.blocks = new Block[capacity];
+        this.depths = new int[capacity];
+        this.matches = new int[capacity];
+    }
+
+    /**
+     * Adds the start position of a block.
+     * 
+     * @param block the block to add
+     * @param depth the depth of the block in the tree
+     * @return the index of the start position
+     */
+    int addStart(Block block, int depth)
+    {
+        this.blocks[this.size] = block;
+        this.depths[this.size] = depth;
+        // The matching end position is not known yet.
+        this.matches[this.size] = this.blocks.length;
+        return this.size++;
+    }
+
+    /**
+     * Adds the end position of a block.
+     * 
+     * @param start the index of the start position of the block to end
+     */
+    void addEnd(int start)
+    {
+        this.blocks[this.size] = this.blocks[start];
+        this.depths[this.size] = this.depths[start];
+        this.matches[this.size] = start;
+        this.matches[start] = this.size;
+        this.size++;
+    }
+
+    /**
+     * Replaces a range of this list. This list is not modified.
+     * 
+     * @param start the start of the replaced range (inclusive), which must be the start of a block or the end of the
+     *            list
+     * @param end the end of the replaced range (exclusive), which must be right after the end of the same block
+     * @param replacement the list representation of the block that replaces the specified range
+     * @return a new list where the specified range is replaced
+     */
+    FlatBlockList replace(int start, int end, FlatBlockList replacement)
+    {
+        int shift = replacement.size - (end - start);
+        FlatBlockList list = new FlatBlockList(this.size + shift);
+        // The replacement is at the same depth as the replaced block.
+        int depth = start < this.size ? this.depths[start] : 0;
+
+        System.arraycopy(this.blocks, 0, list.blocks, 0, start);
+        System.arraycopy(this.depths, 0, list.depths, 0, start);
+        for (int i = 0; i < start; i++) {
+            // The ancestors of the replaced block end after it.
+            int match = this.matches[i];
+            list.matches[i] = match >= end ? match + shift : match;
+        }
+        System.arraycopy(replacement.blocks, 0, list.blocks, start, replacement.size);
+        for (int i = 0; i < replacement.size; i++) {
+            list.depths[start + i] = replacement.depths[i] + depth;
+            list.matches[start + i] = replacement.matches[i] + start;
+        }
+        System.arraycopy(this.blocks, end, list.blocks, end + shift, this.size - end);
+        System.arraycopy(this.depths, end, list.depths, end + shift, this.size - end);
+        for (int i = end; i < this.size; i++) {
+            // The ancestors of the replaced block start before it.
+            int match = this.matches[i];
+            list.matches[i + shift] = match < start ? match : match + shift;
+        }
+        list.size = this.size + shift;
+        return list;
+    }
+
+    @Override
+    public Block get(int index)
+    {
+        checkIndex(index);
+        if (isEnd(index)) {
+            if (this.endBlocks == null) {
+                this.endBlocks = new EndBlock[this.size];
+            }
+            if (this.endBlocks[index] == null) {
+                this.endBlocks[index] = new EndBlock(this.blocks[index]);
+            }
+            return this.endBlocks[index];
+        }
+        return this.blocks[index];
+    }
+
+    @Override
+    public int size()
+    {
+        return this.size;
+    }
+
+    /**
+     * @param index a position in this list
+     * @return the block that starts or ends at the specified position
+     */
+    public Block getBlock(int index)
+    {
+        checkIndex(index);
+        return this.blocks[index];
+    }
+
+    /**
+     * @param index a position in this list
+     * @return {@code true} if the specified position marks the end of a block, {@code false} if it marks the start
+     */
+    public boolean isEnd(int index)
+    {
+        checkIndex(index);
+        return this.matches[index] < index;
+    }
+
+    /**
+     * @param index a position in this list
+     * @return the depth, in the tree, of the block that starts or ends at the specified position
+     */
+    public int getDepth(int index)
+    {
+        checkIndex(index);
+        return this.depths[index];
+    }
+
+    /**
+     * @param index a position in this list
+     * @return the index of the matching end position, if the specified position is a start position, or the index of
+     *         the matching start position, if the specified position is an end position
+     */
+    public int getMatch(int index)
+    {
+        checkIndex(index);
+        return this.matches[index];
+    }
+
+    private void checkIndex(int index)
+    {
+        if (index < 0 || index >= this.size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+        }
+    }
+}
@@ -19,7 +19,11 @@
  */
 package org.xwiki.contrib.rendering.internal.block.diff;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Objects;
+import java.util.Set;
 
 import javax.inject.Named;
 import javax.inject.Singleton;
@@ -45,6 +49,23 @@ import static org.xwiki.contrib.rendering.internal.block.diff.DefaultBlockDiffMa
 @Singleton
 public class FormatWrapperFilter implements BlockDiffMarkerFilter
 {
+    private static final Set<Class<? extends Block>> BLOCK_TYPES =
+        Collections.unmodifiableSet(new HashSet<>(Arrays.asList(WordBlock.class, SpaceBlock.class)));
+
+    @Override
+    public Set<Class<? extends Block>> getBlockTypes()
+    {
+        return BLOCK_TYPES;
+    }
+
+    @Override
+    public void filterMarkedBlock(Block markedBlock)
+    {
+        if (markedBlock.getParameter(DIFF_MARKER_PARAMETER) != null) {
+            wrapBlock(markedBlock);
+        }
+    }
+
     @Override
     public void filter(Block root)
     {
@@ -0,0 +1,53 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.util.Collections;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffNormalizer;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.HeaderBlock;
+
+/**
+ * Ignores the identifier of the headings, which is usually generated from the heading text, so it changes with the
+ * text (which is compared anyway) or when the generation rule changes.
+ * 
+ * @version $Id$
+ * @since 1.0
+ */
+@Component
+@Named("headerId")
+@Singleton
+public class HeaderIdNormalizer implements BlockDiffNormalizer
+{
+    @Override
+    public Block normalize(Block block)
+    {
+        if (block.getClass() == HeaderBlock.class && ((HeaderBlock) block).getId() != null) {
+            HeaderBlock header = (HeaderBlock) block;
+            return new HeaderBlock(Collections.emptyList(), header.getLevel(), header.getParameters(), null);
+        }
+        return block;
+    }
+}
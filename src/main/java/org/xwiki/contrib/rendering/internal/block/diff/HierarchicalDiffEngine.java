@@ -0,0 +1,341 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Compares two block trees level by level, using the subtree hashes (see {@link BlockSequences}) to skip the subtrees
+ * that are identical. Starting from the roots, we align the child subtrees of two matching blocks by their subtree
+ * hash. When a block is matched with a block that has the same start but a different subtree hash we continue with
+ * their child blocks. Otherwise the list representations of the subtrees that don't match are compared with a (flat)
+ * diff engine. This way the cost of the diff depends on the size of the changes rather than on the size of the trees.
+ * <p>
+ * The produced edit script refers to positions in the list representations of the compared trees, so it is equivalent
+ * to the one produced by running the flat diff engine on the entire lists.
+ * <p>
+ * The pairs of subtrees that have to be compared (e.g. the sections that have been modified) are independent, so they
+ * can be compared in parallel. The edit scripts of the subtrees are then concatenated in the order of their positions,
+ * which produces the same edit script as the sequential comparison.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+public class HierarchicalDiffEngine
+{
+    /**
+     * Compare the child subtrees of two matching blocks.
+     */
+    private static final int SUBTREES = 0;
+
+    /**
+     * Compare the list representations of some subtrees.
+     */
+    private static final int FLAT = 1;
+
+    /**
+     * The minimum number of positions covered by a task for it to be split into subtasks executed in parallel.
+     */
+    private static final int PARALLEL_THRESHOLD = 4096;
+
+    /**
+     * The sequences of subtrees found between two positions of the lists of blocks.
+     */
+    private static final class SubtreeSequences implements DiffSequences
+    {
+        private final BlockSequences sequences;
+
+        private final int[] previous;
+
+        private final int[] next;
+
+        SubtreeSequences(BlockSequences sequences, int[] previous, int[] next)
+        {
+            this.sequences = sequences;
+            this.previous = previous;
+            this.next = next;
+        }
+
+        @Override
+        public long getPreviousKey(int index)
+        {
+            return this.sequences.getPreviousSubtreeHash(this.previous[index]);
+        }
+
+        @Override
+        public long getNextKey(int index)
+        {
+            return this.sequences.getNextSubtreeHash(this.next[index]);
+        }
+
+        @Override
+        public boolean equals(int previousIndex, int nextIndex)
+        {
+            return this.sequences.subtreeEquals(this.previous[previousIndex], this.next[nextIndex]);
+        }
+    }
+
+    /**
+     * Compares two subtrees, splitting the work into subtasks that are executed in parallel.
+     */
+    private final class DiffTask extends RecursiveTask<EditScript>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final transient BlockSequences sequences;
+
+        private final int[] task;
+
+        private final transient DiffBudget budget;
+
+        DiffTask(BlockSequences sequences, int[] task, DiffBudget budget)
+        {
+            this.sequences = sequences;
+            this.task = task;
+            this.budget = budget;
+        }
+
+        @Override
+        protected EditScript compute()
+        {
+            EditScript script = new EditScript();
+            int size = this.task[2] - this.task[1] + this.task[4] - this.task[3];
+            if (this.task[0] == FLAT || size < PARALLEL_THRESHOLD) {
+                diff(this.sequences, this.task, script, this.budget);
+            } else {
+                List<int[]> subtasks = diffSubtrees(this.sequences, this.task[1], this.task[2], this.task[3],
+                    this.task[4], script, this.budget);
+                List<DiffTask> forkedSubtasks = new ArrayList<>(subtasks.size());
+                for (int[] subtask : subtasks) {
+                    forkedSubtasks.add(new DiffTask(this.sequences, subtask, this.budget));
+                }
+                invokeAll(forkedSubtasks);
+                for (DiffTask forkedSubtask : forkedSubtasks) {
+                    script.addAll(forkedSubtask.join());
+                }
+            }
+            return script;
+        }
+    }
+
+    private final DiffEngine flatDiffEngine;
+
+    /**
+     * Creates a new instance.
+     * 
+     * @param flatDiffEngine the diff engine used to align the subtrees and to compare the subtrees that don't match
+     */
+    public HierarchicalDiffEngine(DiffEngine flatDiffEngine)
+    {
+        this.flatDiffEngine = flatDiffEngine;
+    }
+
+    /**
+     * @return the diff engine used to align the subtrees and to compare the subtrees that don't match
+     */
+    public DiffEngine getFlatDiffEngine()
+    {
+        return this.flatDiffEngine;
+    }
+
+    /**
+     * Computes the changes between two block trees.
+     * 
+     * @param sequences the list representations of the trees to compare
+     * @param script where to add the changes
+     */
+    public void diff(BlockSequences sequences, EditScript script)
+    {
+        diff(sequences, script, null);
+    }
+
+    /**
+     * Computes the changes between two block trees.
+     * 
+     * @param sequences the list representations of the trees to compare
+     * @param script where to add the changes
+     * @param pool the pool used to compare the modified subtrees in parallel, {@code null} to compare them in the
+     *            current thread
+     */
+    public void diff(BlockSequences sequences, EditScript script, ForkJoinPool pool)
+    {
+        diff(sequences, script, pool, null);
+    }
+
+    /**
+     * Computes the changes between two block trees, within the given budget. When the budget is exhausted the
+     * remaining ranges are compared coarsely: only their common prefix and suffix are skipped (at the level of the
+     * subtrees first, and then of the blocks) and the rest is replaced. The produced edit script is still valid, it
+     * just has larger changes, and it is marked as degraded.
+     * 
+     * @param sequences the list representations of the trees to compare
+     * @param script where to add the changes
+     * @param pool the pool used to compare the modified subtrees in parallel, {@code null} to compare them in the
+     *            current thread
+     * @param budget limits the cost of the comparison, {@code null} for no limit
+     */
+    public void diff(BlockSequences sequences, EditScript script, ForkJoinPool pool, DiffBudget budget)
+    {
+        int[] task = new int[] {SUBTREES, 0, sequences.getPrevious().size(), 0, sequences.getNext().size()};
+        if (pool == null) {
+            diff(sequences, task, script, budget);
+        } else {
+            script.addAll(pool.invoke(new DiffTask(sequences, task, budget)));
+        }
+    }
+
+    /**
+     * Computes the changes between two ranges of blocks with the flat diff engine (see {@link #getFlatDiffEngine()}),
+     * within the given budget. The ranges don't have to cover complete subtrees. When the budget is exhausted the
+     * ranges are compared coarsely, see {@link #diff(BlockSequences, EditScript, ForkJoinPool, DiffBudget)}.
+     * 
+     * @param sequences the sequences to compare
+     * @param previousStart the start of the range to compare from the previous sequence (inclusive)
+     * @param previousEnd the end of the range to compare from the previous sequence (exclusive)
+     * @param nextStart the start of the range to compare from the next sequence (inclusive)
+     * @param nextEnd the end of the range to compare from the next sequence (exclusive)
+     * @param script where to add the changes
+     * @param budget limits the cost of the comparison, {@code null} for no limit
+     */
+    public void diff(DiffSequences sequences, int previousStart, int previousEnd, int nextStart, int nextEnd,
+        EditScript script, DiffBudget budget)
+    {
+        diffFlat(sequences, previousStart, previousEnd, nextStart, nextEnd, script, budget);
+    }
+
+    private void diff(BlockSequences sequences, int[] task, EditScript script, DiffBudget budget)
+    {
+        // Use a stack of tasks instead of recursion in order to support deeply nested trees. The tasks are executed in
+        // the order of the positions they cover so that the changes are added to the edit script in the right order.
+        Deque<int[]> tasks = new ArrayDeque<>();
+        tasks.push(task);
+        while (!tasks.isEmpty()) {
+            int[] current = tasks.pop();
+            if (current[0] == FLAT) {
+                diffFlat(sequences, current[1], current[2], current[3], current[4], script, budget);
+            } else {
+                List<int[]> subtasks =
+                    diffSubtrees(sequences, current[1], current[2], current[3], current[4], script, budget);
+                for (int i = subtasks.size() - 1; i >= 0; i--) {
+                    tasks.push(subtasks.get(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * @param script the edit script of the current task, marked as degraded if the subtrees are aligned coarsely
+     */
+    private List<int[]> diffSubtrees(BlockSequences sequences, int previousStart, int previousEnd, int nextStart,
+        int nextEnd, EditScript script, DiffBudget budget)
+    {
+        FlatBlockList previous = sequences.getPrevious();
+        FlatBlockList next = sequences.getNext();
+        int[] previousSubtrees = getSubtrees(previous, previousStart, previousEnd);
+        int[] nextSubtrees = getSubtrees(next, nextStart, nextEnd);
+        EditScript subtreeScript = new EditScript();
+        diffFlat(new SubtreeSequences(sequences, previousSubtrees, nextSubtrees), 0, previousSubtrees.length, 0,
+            nextSubtrees.length, subtreeScript, budget);
+        if (subtreeScript.isDegraded()) {
+            script.markDegraded();
+        }
+
+        List<int[]> subtasks = new ArrayList<>(subtreeScript.size());
+        for (int i = 0; i < subtreeScript.size(); i++) {
+            int previousSubtreeStart = subtreeScript.getPreviousStart(i);
+            int nextSubtreeStart = subtreeScript.getNextStart(i);
+            if (subtreeScript.getPreviousEnd(i) - previousSubtreeStart == 1
+                && subtreeScript.getNextEnd(i) - nextSubtreeStart == 1 && sequences
+                    .equals(previousSubtrees[previousSubtreeStart], nextSubtrees[nextSubtreeStart])) {
+                // A block that has been modified only inside: compare the child blocks.
+                int previousIndex = previousSubtrees[previousSubtreeStart];
+                int nextIndex = nextSubtrees[nextSubtreeStart];
+                subtasks.add(new int[] {SUBTREES, previousIndex + 1, previous.getMatch(previousIndex), nextIndex + 1,
+                    next.getMatch(nextIndex)});
+            } else {
+                subtasks.add(new int[] {FLAT, getPosition(previousSubtrees, previousSubtreeStart, previousEnd),
+                    getPosition(previousSubtrees, subtreeScript.getPreviousEnd(i), previousEnd),
+                    getPosition(nextSubtrees, nextSubtreeStart, nextEnd),
+                    getPosition(nextSubtrees, subtreeScript.getNextEnd(i), nextEnd)});
+            }
+        }
+        return subtasks;
+    }
+
+    private void diffFlat(DiffSequences sequences, int previousStart, int previousEnd, int nextStart, int nextEnd,
+        EditScript script, DiffBudget budget)
+    {
+        if (budget == null) {
+            this.flatDiffEngine.diff(sequences, previousStart, previousEnd, nextStart, nextEnd, script);
+            return;
+        }
+
+        if (!budget.isExhausted()) {
+            // Collect the changes separately because they are dropped if the budget is exhausted in the middle.
+            EditScript budgetedScript = new EditScript();
+            try {
+                DiffBudget.BudgetedSequences budgetedSequences = budget.wrap(sequences);
+                this.flatDiffEngine.diff(budgetedSequences, previousStart, previousEnd, nextStart, nextEnd,
+                    budgetedScript);
+                budgetedSequences.flush();
+                script.addAll(budgetedScript);
+                return;
+            } catch (DiffBudget.ExhaustedException e) {
+                // Fall back on the coarse comparison.
+            }
+        }
+
+        int prefix = DiffRanges.getCommonPrefix(sequences, previousStart, previousEnd, nextStart, nextEnd);
+        int suffix =
+            DiffRanges.getCommonSuffix(sequences, previousStart + prefix, previousEnd, nextStart + prefix, nextEnd);
+        script.addChange(previousStart + prefix, previousEnd - suffix, nextStart + prefix, nextEnd - suffix);
+        script.markDegraded();
+    }
+
+    /**
+     * @return the start positions of the subtrees found between the specified positions
+     */
+    private int[] getSubtrees(FlatBlockList list, int start, int end)
+    {
+        int count = 0;
+        for (int i = start; i < end; i = list.getMatch(i) + 1) {
+            count++;
+        }
+        int[] subtrees = new int[count];
+        count = 0;
+        for (int i = start; i < end; i = list.getMatch(i) + 1) {
+            subtrees[count++] = i;
+        }
+        return subtrees;
+    }
+
+    /**
+     * @return the position where the specified subtree starts
+     */
+    private int getPosition(int[] subtrees, int subtree, int end)
+    {
+        return subtree < subtrees.length ? subtrees[subtree] : end;
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * The histogram diff algorithm: the common region that starts with the element having the lowest number of
+ * occurrences in the previous range is matched first and the ranges before and after it are compared recursively.
+ * Elements that appear too many times are not used to find common regions; when only such elements are common the
+ * ranges are compared with the fallback diff engine.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+public class HistogramDiffEngine implements DiffEngine
+{
+    /**
+     * The maximum number of occurrences of an element in the previous range for it to be used to find common regions.
+     */
+    private static final int MAX_CHAIN_LENGTH = 64;
+
+    private static final int[] FALLBACK = new int[0];
+
+    private final DiffEngine fallbackDiffEngine;
+
+    /**
+     * Creates a new instance.
+     * 
+     * @param fallbackDiffEngine the diff engine used when the common elements appear too many times
+     */
+    public HistogramDiffEngine(DiffEngine fallbackDiffEngine)
+    {
+        this.fallbackDiffEngine = fallbackDiffEngine;
+    }
+
+    @Override
+    public void diff(DiffSequences sequences, int previousStart, int previousEnd, int nextStart, int nextEnd,
+        EditScript script)
+    {
+        // The ranges are compared from left to right because the changes must be added in order to the edit script.
+        Deque<int[]> ranges = new ArrayDeque<>();
+        ranges.push(new int[] {previousStart, previousEnd, nextStart, nextEnd});
+        while (!ranges.isEmpty()) {
+            int[] range = ranges.pop();
+            int[] region = null;
+            if (range[0] < range[1] && range[2] < range[3]) {
+                region = findCommonRegion(sequences, range[0], range[1], range[2], range[3]);
+            }
+            if (region == null) {
+                script.addChange(range[0], range[1], range[2], range[3]);
+            } else if (region == FALLBACK) {
+                this.fallbackDiffEngine.diff(sequences, range[0], range[1], range[2], range[3], script);
+            } else {
+                ranges.push(new int[] {region[1], range[1], region[3], range[3]});
+                ranges.push(new int[] {range[0], region[0], range[2], region[2]});
+            }
+        }
+    }
+
+    /**
+     * @return the common region, as previous start, previous end, next start and next end, {@code null} if the ranges
+     *         have no common element or {@link #FALLBACK} if the common elements appear too many times
+     */
+    private int[] findCommonRegion(DiffSequences sequences, int previousStart, int previousEnd, int nextStart,
+        int nextEnd)
+    {
+        int size = previousEnd - previousStart;
+        int capacity = Integer.highestOneBit(size) << 2;
+        int mask = capacity - 1;
+        long[] keys = new long[capacity];
+        int[] counts = new int[capacity];
+        int[] heads = new int[capacity];
+        // The next occurrence of the element found at each previous position.
+        int[] chain = new int[size];
+
+        // Index the previous range, from the end so that the occurrences are chained in increasing order.
+        for (int i = previousEnd - 1; i >= previousStart; i--) {
+            long key = sequences.getPreviousKey(i);
+            int slot = getSlot(keys, counts, mask, key);
+            keys[slot] = key;
+            chain[i - previousStart] = counts[slot] == 0 ? -1 : heads[slot];
+            heads[slot] = i;
+            counts[slot]++;
+        }
+
+        int[] region = null;
+        int regionCount = MAX_CHAIN_LENGTH + 1;
+        int regionLength = 0;
+        boolean tooManyOccurrences = false;
+        for (int j = nextStart; j < nextEnd;) {
+            int slot = getSlot(keys, counts, mask, sequences.getNextKey(j));
+            int count = counts[slot];
+            int nextJ = j + 1;
+            if (count > MAX_CHAIN_LENGTH) {
+                tooManyOccurrences = true;
+            } else if (count > 0 && count <= regionCount) {
+                for (int i = heads[slot]; i >= 0; i = chain[i - previousStart]) {
+                    if (!sequences.equals(i, j)) {
+                        continue;
+                    }
+                    int regionStart = i;
+                    int regionNextStart = j;
+                    while (regionStart > previousStart && regionNextStart > nextStart
+                        && sequences.equals(regionStart - 1, regionNextStart - 1)) {
+                        regionStart--;
+                        regionNextStart--;
+                    }
+                    int regionEnd = i + 1;
+                    int regionNextEnd = j + 1;
+                    while (regionEnd < previousEnd && regionNextEnd < nextEnd
+                        && sequences.equals(regionEnd, regionNextEnd)) {
+                        regionEnd++;
+                        regionNextEnd++;
+                    }
+                    if (count < regionCount || regionEnd - regionStart > regionLength) {
+                        region = new int[] {regionStart, regionEnd, regionNextStart, regionNextEnd};
+                        regionCount = count;
+                        regionLength = regionEnd - regionStart;
+                    }
+                    nextJ = Math.max(nextJ, regionNextEnd);
+                }
+            }
+            j = nextJ;
+        }
+
+        return region == null && tooManyOccurrences ? FALLBACK : region;
+    }
+
+    private static int getSlot(long[] keys, int[] counts, int mask, long key)
+    {
+        int slot = (int) (key ^ (key >>> 32)) & mask;
+        while (counts[slot] > 0 && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.lang.management.ManagementFactory;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLifecycleException;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffMetrics;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffMetricsListener;
+
+/**
+ * Aggregates the diff metrics and exposes them through JMX. This listener is turned off by default because measuring
+ * the diff operations has a (small) cost; set the {@value #ENABLED_PROPERTY} system property to {@code true} to turn
+ * it on.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+@Component
+@Named("jmx")
+@Singleton
+public class JMXBlockDiffMetricsListener implements BlockDiffMetricsListener, Initializable, Disposable
+{
+    /**
+     * The name under which the statistics are registered.
+     */
+    static final String OBJECT_NAME = "org.xwiki.contrib.rendering:type=BlockDiffMetrics";
+
+    /**
+     * The system property that turns this listener on.
+     */
+    public static final String ENABLED_PROPERTY = "xwiki.contrib.rendering.diff.jmx";
+
+    private final BlockDiffStatistics statistics = new BlockDiffStatistics();
+
+    private boolean enabled;
+
+    private ObjectName objectName;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        this.enabled = Boolean.getBoolean(ENABLED_PROPERTY);
+        if (!this.enabled) {
+            return;
+        }
+
+        try {
+            this.objectName = new ObjectName(OBJECT_NAME);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(this.objectName)) {
+                // Left behind by a previous instance (e.g. a previous component manager).
+                server.unregisterMBean(this.objectName);
+            }
+            server.registerMBean(this.statistics, this.objectName);
+        } catch (JMException e) {
+            throw new InitializationException("Failed to register the diff metrics MBean.", e);
+        }
+    }
+
+    @Override
+    public void dispose() throws ComponentLifecycleException
+    {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (this.objectName != null && server.isRegistered(this.objectName)) {
+                server.unregisterMBean(this.objectName);
+            }
+        } catch (JMException e) {
+            throw new ComponentLifecycleException("Failed to unregister the diff metrics MBean.", e);
+        }
+    }
+
+    @Override
+    public boolean isEnabled()
+    {
+        return this.enabled;
+    }
+
+    @Override
+    public void onDiff(BlockDiffMetrics metrics)
+    {
+        this.statistics.add(metrics);
+    }
+
+    /**
+     * @return the aggregated statistics
+     */
+    public BlockDiffStatistics getStatistics()
+    {
+        return this.statistics;
+    }
+}
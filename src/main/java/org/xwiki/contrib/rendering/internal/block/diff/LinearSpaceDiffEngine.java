@@ -0,0 +1,153 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * The linear space refinement of the Myers algorithm, described in the same paper ("An O(ND) Difference Algorithm and
+ * Its Variations"): the middle snake of the shortest edit script is found by running the greedy algorithm from both
+ * ends at the same time, and the ranges before and after the middle snake are compared separately (divide and conquer,
+ * like in Hirschberg's algorithm). Only the furthest reaching paths of the current edit distance are kept, in two
+ * arrays allocated once, so the memory is O(N+M) whatever the number of differences, while the time stays O((N+M)D).
+ * <p>
+ * Small ranges are compared with the given diff engine, which is faster when its O(D^2) memory is not an issue.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+public class LinearSpaceDiffEngine implements DiffEngine
+{
+    /**
+     * The maximum total size of the compared ranges for which the small range diff engine is used. The Myers algorithm
+     * needs at most a few megabytes to compare ranges of this size.
+     */
+    private static final int THRESHOLD = 1024;
+
+    private final DiffEngine smallRangeDiffEngine;
+
+    /**
+     * Creates a new instance.
+     * 
+     * @param smallRangeDiffEngine the diff engine used to compare the small ranges
+     */
+    public LinearSpaceDiffEngine(DiffEngine smallRangeDiffEngine)
+    {
+        this.smallRangeDiffEngine = smallRangeDiffEngine;
+    }
+
+    @Override
+    public void diff(DiffSequences sequences, int previousStart, int previousEnd, int nextStart, int nextEnd,
+        EditScript script)
+    {
+        if (previousEnd - previousStart + nextEnd - nextStart <= THRESHOLD) {
+            this.smallRangeDiffEngine.diff(sequences, previousStart, previousEnd, nextStart, nextEnd, script);
+            return;
+        }
+
+        // The furthest reaching paths, forward and backward, indexed by diagonal, shared by all the subranges.
+        int maxDistance = (previousEnd - previousStart + nextEnd - nextStart + 1) / 2;
+        int[] forward = new int[2 * maxDistance + 3];
+        int[] backward = new int[forward.length];
+        int[] snake = new int[4];
+
+        // Use a stack of ranges instead of recursion. The range before the middle snake is compared first so that the
+        // changes are added to the edit script in the right order.
+        Deque<int[]> ranges = new ArrayDeque<>();
+        ranges.push(new int[] {previousStart, previousEnd, nextStart, nextEnd});
+        while (!ranges.isEmpty()) {
+            int[] range = ranges.pop();
+            int prefix = DiffRanges.getCommonPrefix(sequences, range[0], range[1], range[2], range[3]);
+            int suffix = DiffRanges.getCommonSuffix(sequences, range[0] + prefix, range[1], range[2] + prefix,
+                range[3]);
+            int ps = range[0] + prefix;
+            int pe = range[1] - suffix;
+            int ns = range[2] + prefix;
+            int ne = range[3] - suffix;
+            if (ps == pe || ns == ne) {
+                script.addChange(ps, pe, ns, ne);
+            } else if (pe - ps + ne - ns <= THRESHOLD) {
+                this.smallRangeDiffEngine.diff(sequences, ps, pe, ns, ne, script);
+            } else {
+                findMiddleSnake(sequences, ps, pe - ps, ns, ne - ns, forward, backward, maxDistance + 1, snake);
+                ranges.push(new int[] {ps + snake[2], pe, ns + snake[3], ne});
+                ranges.push(new int[] {ps, ps + snake[0], ns, ns + snake[1]});
+            }
+        }
+    }
+
+    /**
+     * Finds the middle snake of the shortest edit script between two non empty ranges that don't have a common prefix
+     * or suffix.
+     * 
+     * @param snake where to store the start (x, y) and the end (u, v) of the middle snake, relative to the start of the
+     *            ranges
+     */
+    private void findMiddleSnake(DiffSequences sequences, int previousStart, int n, int nextStart, int m,
+        int[] forward, int[] backward, int offset, int[] snake)
+    {
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        forward[offset + 1] = 0;
+        backward[offset + 1] = 0;
+        for (int d = 0; d <= (n + m + 1) / 2; d++) {
+            for (int k = -d; k <= d; k += 2) {
+                int x = (k == -d || (k != d && forward[offset + k - 1] < forward[offset + k + 1]))
+                    ? forward[offset + k + 1] : forward[offset + k - 1] + 1;
+                int y = x - k;
+                snake[0] = x;
+                snake[1] = y;
+                while (x < n && y < m && sequences.equals(previousStart + x, nextStart + y)) {
+                    x++;
+                    y++;
+                }
+                forward[offset + k] = x;
+                // The backward path on the same diagonal was computed in the previous round.
+                if (odd && k >= delta - (d - 1) && k <= delta + (d - 1) && x + backward[offset + delta - k] >= n) {
+                    snake[2] = x;
+                    snake[3] = y;
+                    return;
+                }
+            }
+            for (int k = -d; k <= d; k += 2) {
+                // Compare the ranges from their end.
+                int x = (k == -d || (k != d && backward[offset + k - 1] < backward[offset + k + 1]))
+                    ? backward[offset + k + 1] : backward[offset + k - 1] + 1;
+                int y = x - k;
+                int startX = x;
+                int startY = y;
+                while (x < n && y < m && sequences.equals(previousStart + n - 1 - x, nextStart + m - 1 - y)) {
+                    x++;
+                    y++;
+                }
+                backward[offset + k] = x;
+                // The forward path on the same diagonal was computed in this round.
+                if (!odd && k >= delta - d && k <= delta + d && x + forward[offset + delta - k] >= n) {
+                    snake[0] = n - x;
+                    snake[1] = m - y;
+                    snake[2] = n - startX;
+                    snake[3] = m - startY;
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,348 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
+
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.MacroMarkerBlock;
+
+/**
+ * Compares two lists of blocks without comparing the content generated by the macros (see
+ * {@link org.xwiki.contrib.rendering.block.diff.BlockDiffMacroMode}). The lists are condensed first: the macro markers
+ * are kept but the blocks they wrap are dropped, so a macro marker is compared only by its source (the macro
+ * identifier, parameters and content, which are the data of the {@link MacroMarkerBlock}). The changes between the
+ * condensed lists are then mapped back to the full lists:
+ * <ul>
+ * <li>the content generated by an unchanged macro is unchanged if it's identical on both sides (checked block by
+ * block, without any diff algorithm) and is replaced as a whole otherwise;</li>
+ * <li>the content generated by a changed macro is part of the change, and it is compared block by block only if
+ * requested (second pass), using the flat diff engine on the changed range.</li>
+ * </ul>
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+public class MacroSourceDiffer
+{
+    /**
+     * A list of blocks without the content generated by the macros.
+     */
+    private static final class CondensedList
+    {
+        private final FlatBlockList full;
+
+        private final FlatBlockList list;
+
+        /**
+         * The position, in the full list, of each position of the condensed list.
+         */
+        private final int[] positions;
+
+        CondensedList(FlatBlockList full)
+        {
+            this.full = full;
+            int size = 0;
+            for (int i = 0; i < full.size(); i = skip(full, i) + 1) {
+                // A macro marker is condensed into its start and its end.
+                size += skip(full, i) > i ? 2 : 1;
+            }
+            this.list = new FlatBlockList(size);
+            this.positions = new int[size];
+            int[] starts = new int[size];
+            int depth = 0;
+            for (int i = 0; i < full.size(); i = skip(full, i) + 1) {
+                this.positions[this.list.size()] = i;
+                if (full.isEnd(i)) {
+                    this.list.addEnd(starts[--depth]);
+                } else {
+                    int start = this.list.addStart(full.getBlock(i), full.getDepth(i));
+                    int end = skip(full, i);
+                    if (end > i) {
+                        // A macro marker: the generated content is dropped.
+                        this.positions[this.list.size()] = end;
+                        this.list.addEnd(start);
+                    } else {
+                        starts[depth++] = start;
+                    }
+                }
+            }
+        }
+
+        /**
+         * @return the position of the end of the macro marker that starts at the given position, or the given position
+         *         if it's not the start of a macro marker
+         */
+        private static int skip(FlatBlockList full, int index)
+        {
+            if (!full.isEnd(index) && full.getBlock(index) instanceof MacroMarkerBlock) {
+                return full.getMatch(index);
+            }
+            return index;
+        }
+
+        /**
+         * @param index a position in the condensed list, or its size
+         * @return the corresponding position in the full list
+         */
+        int getPosition(int index)
+        {
+            return index < this.positions.length ? this.positions[index] : this.full.size();
+        }
+
+        /**
+         * @param index a position in the condensed list
+         * @return {@code true} if the specified position is the start of a macro marker whose generated content was
+         *         dropped, {@code false} otherwise
+         */
+        boolean isCondensed(int index)
+        {
+            return !this.list.isEnd(index) && getPosition(index + 1) > this.positions[index] + 1;
+        }
+    }
+
+    /**
+     * Maps the changes between the condensed lists to the full lists.
+     */
+    private static final class Expansion
+    {
+        private final ShallowBlockComparator comparator;
+
+        private final CondensedList previous;
+
+        private final CondensedList next;
+
+        /**
+         * The full lists, compared only by the second pass; {@code null} if there's no second pass.
+         */
+        private final DiffSequences sequences;
+
+        private final DiffEngine flatDiffEngine;
+
+        private final DiffBudget budget;
+
+        private final EditScript script = new EditScript();
+
+        Expansion(ShallowBlockComparator comparator, CondensedList previous, CondensedList next,
+            DiffSequences sequences, DiffEngine flatDiffEngine, DiffBudget budget)
+        {
+            this.comparator = comparator;
+            this.previous = previous;
+            this.next = next;
+            this.sequences = sequences;
+            this.flatDiffEngine = flatDiffEngine;
+            this.budget = budget;
+        }
+
+        /**
+         * Maps a range of unchanged positions, which are at the same offset in both condensed lists.
+         */
+        void addUnchanged(int previousStart, int previousEnd, int nextStart)
+        {
+            for (int i = 0; previousStart + i < previousEnd; i++) {
+                if (this.previous.isCondensed(previousStart + i)) {
+                    addOutputChange(this.previous.getPosition(previousStart + i),
+                        this.next.getPosition(nextStart + i));
+                }
+            }
+        }
+
+        /**
+         * Maps a change. The content generated by the macros that start in the change is part of the change.
+         */
+        void addChange(int previousStart, int previousEnd, int nextStart, int nextEnd)
+        {
+            int fullPreviousStart = this.previous.getPosition(previousStart);
+            int fullPreviousEnd = this.previous.getPosition(previousEnd);
+            int fullNextStart = this.next.getPosition(nextStart);
+            int fullNextEnd = this.next.getPosition(nextEnd);
+            boolean hasOutput = fullPreviousEnd - fullPreviousStart > previousEnd - previousStart
+                || fullNextEnd - fullNextStart > nextEnd - nextStart;
+            if (this.sequences != null && hasOutput) {
+                diffOutput(fullPreviousStart, fullPreviousEnd, fullNextStart, fullNextEnd);
+            } else {
+                this.script.addChange(fullPreviousStart, fullPreviousEnd, fullNextStart, fullNextEnd);
+            }
+        }
+
+        /**
+         * Replaces the content generated by an unchanged macro if it's not identical on both sides.
+         */
+        private void addOutputChange(int previousStart, int nextStart)
+        {
+            int previousEnd = this.previous.full.getMatch(previousStart);
+            int nextEnd = this.next.full.getMatch(nextStart);
+            boolean identical = previousEnd - previousStart == nextEnd - nextStart;
+            for (int offset = 1; identical && previousStart + offset < previousEnd; offset++) {
+                identical = entryEquals(this.comparator, this.previous.full, previousStart + offset, this.next.full,
+                    nextStart + offset);
+            }
+            if (!identical) {
+                this.script.addChange(previousStart + 1, previousEnd, nextStart + 1, nextEnd);
+            }
+        }
+
+        /**
+         * The second pass: compares block by block a changed range that includes content generated by macros.
+         */
+        private void diffOutput(int previousStart, int previousEnd, int nextStart, int nextEnd)
+        {
+            if (this.budget == null) {
+                this.flatDiffEngine.diff(this.sequences, previousStart, previousEnd, nextStart, nextEnd, this.script);
+                return;
+            }
+
+            if (!this.budget.isExhausted()) {
+                // Collect the changes separately because they are dropped if the budget is exhausted in the middle.
+                EditScript budgetedScript = new EditScript();
+                try {
+                    DiffBudget.BudgetedSequences budgetedSequences = this.budget.wrap(this.sequences);
+                    this.flatDiffEngine.diff(budgetedSequences, previousStart, previousEnd, nextStart, nextEnd,
+                        budgetedScript);
+                    budgetedSequences.flush();
+                    this.script.addAll(budgetedScript);
+                    return;
+                } catch (DiffBudget.ExhaustedException e) {
+                    // Keep the change computed by the first pass.
+                }
+            }
+
+            this.script.addChange(previousStart, previousEnd, nextStart, nextEnd);
+            this.script.markDegraded();
+        }
+    }
+
+    /**
+     * The full lists of blocks, whose fingerprints are computed lazily because only the changed ranges are compared.
+     */
+    private static final class LazySequences implements DiffSequences
+    {
+        private final ShallowBlockComparator comparator;
+
+        private final FlatBlockList previous;
+
+        private final FlatBlockList next;
+
+        private final long[] previousKeys;
+
+        private final long[] nextKeys;
+
+        private final BitSet previousComputed;
+
+        private final BitSet nextComputed;
+
+        LazySequences(ShallowBlockComparator comparator, FlatBlockList previous, FlatBlockList next)
+        {
+            this.comparator = comparator;
+            this.previous = previous;
+            this.next = next;
+            this.previousKeys = new long[previous.size()];
+            this.nextKeys = new long[next.size()];
+            this.previousComputed = new BitSet(previous.size());
+            this.nextComputed = new BitSet(next.size());
+        }
+
+        @Override
+        public long getPreviousKey(int index)
+        {
+            return getKey(this.previous, this.previousKeys, this.previousComputed, index);
+        }
+
+        @Override
+        public long getNextKey(int index)
+        {
+            return getKey(this.next, this.nextKeys, this.nextComputed, index);
+        }
+
+        @Override
+        public boolean equals(int previousIndex, int nextIndex)
+        {
+            return getPreviousKey(previousIndex) == getNextKey(nextIndex)
+                && entryEquals(this.comparator, this.previous, previousIndex, this.next, nextIndex);
+        }
+
+        private long getKey(FlatBlockList list, long[] keys, BitSet computed, int index)
+        {
+            if (!computed.get(index)) {
+                Block block = list.getBlock(index);
+                keys[index] = list.isEnd(index) ? this.comparator.fingerprintEnd(block.getClass())
+                    : this.comparator.fingerprint(block);
+                computed.set(index);
+            }
+            return keys[index];
+        }
+    }
+
+    /**
+     * Computes the changes between two lists of blocks, comparing the macros by their source.
+     * 
+     * @param previous the list of blocks before the modification
+     * @param next the list of blocks after the modification
+     * @param compareChangedOutput whether to compare block by block the content generated by the macros whose source
+     *            changed
+     * @param diffEngine the diff engine used to compare the condensed lists
+     * @param pool the pool used to compare the modified subtrees in parallel, {@code null} to compare them in the
+     *            current thread
+     * @param budget limits the cost of the comparison, {@code null} for no limit
+     * @param comparator the component used to compare the blocks
+     * @return the changes between the given lists, as index ranges of the full lists
+     */
+    public EditScript diff(FlatBlockList previous, FlatBlockList next, boolean compareChangedOutput,
+        HierarchicalDiffEngine diffEngine, ForkJoinPool pool, DiffBudget budget, ShallowBlockComparator comparator)
+    {
+        CondensedList condensedPrevious = new CondensedList(previous);
+        CondensedList condensedNext = new CondensedList(next);
+        EditScript condensedScript = new EditScript();
+        diffEngine.diff(new BlockSequences(condensedPrevious.list, condensedNext.list, comparator, pool),
+            condensedScript, pool, budget);
+
+        Expansion expansion = new Expansion(comparator, condensedPrevious, condensedNext,
+            compareChangedOutput ? new LazySequences(comparator, previous, next) : null, diffEngine.getFlatDiffEngine(),
+            budget);
+        if (condensedScript.isDegraded()) {
+            expansion.script.markDegraded();
+        }
+        int previousIndex = 0;
+        int nextIndex = 0;
+        for (int i = 0; i < condensedScript.size(); i++) {
+            expansion.addUnchanged(previousIndex, condensedScript.getPreviousStart(i), nextIndex);
+            expansion.addChange(condensedScript.getPreviousStart(i), condensedScript.getPreviousEnd(i),
+                condensedScript.getNextStart(i), condensedScript.getNextEnd(i));
+            previousIndex = condensedScript.getPreviousEnd(i);
+            nextIndex = condensedScript.getNextEnd(i);
+        }
+        expansion.addUnchanged(previousIndex, condensedPrevious.list.size(), nextIndex);
+        return expansion.script;
+    }
+
+    private static boolean entryEquals(ShallowBlockComparator comparator, FlatBlockList previous, int previousIndex,
+        FlatBlockList next, int nextIndex)
+    {
+        boolean end = previous.isEnd(previousIndex);
+        if (end != next.isEnd(nextIndex)) {
+            return false;
+        }
+        Block previousBlock = previous.getBlock(previousIndex);
+        Block nextBlock = next.getBlock(nextIndex);
+        return end ? previousBlock.getClass() == nextBlock.getClass()
+            : comparator.equals(previousBlock, nextBlock);
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.util.Collections;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffNormalizer;
+import org.xwiki.rendering.block.AbstractBlock;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.MetaDataBlock;
+import org.xwiki.rendering.block.XDOM;
+
+/**
+ * Ignores the meta data (e.g. the source reference or the syntax) of the meta data blocks and of the root
+ * {@link XDOM}, which is not rendered.
+ * 
+ * @version $Id$
+ * @since 1.0
+ */
+@Component
+@Named("metaData")
+@Singleton
+public class MetaDataNormalizer implements BlockDiffNormalizer
+{
+    @Override
+    public Block normalize(Block block)
+    {
+        AbstractBlock normalized;
+        if (block.getClass() == MetaDataBlock.class) {
+            normalized = new MetaDataBlock(Collections.emptyList());
+        } else if (block.getClass() == XDOM.class) {
+            normalized = new XDOM(Collections.emptyList());
+        } else {
+            return block;
+        }
+        normalized.setParameters(block.getParameters());
+        return normalized;
+    }
+}
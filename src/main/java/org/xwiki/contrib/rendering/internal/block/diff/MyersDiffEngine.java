@@ -0,0 +1,119 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The greedy O((N+M)D) diff algorithm described by Eugene W. Myers in "An O(ND) Difference Algorithm and Its
+ * Variations". The furthest reaching paths are kept for each edit distance in order to backtrack the shortest edit
+ * script, which requires O(D^2) memory.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+public class MyersDiffEngine implements DiffEngine
+{
+    @Override
+    public void diff(DiffSequences sequences, int previousStart, int previousEnd, int nextStart, int nextEnd,
+        EditScript script)
+    {
+        int n = previousEnd - previousStart;
+        int m = nextEnd - nextStart;
+        if (n == 0 || m == 0) {
+            script.addChange(previousStart, previousEnd, nextStart, nextEnd);
+            return;
+        }
+
+        List<int[]> trace = findPath(sequences, previousStart, n, nextStart, m);
+
+        // Backtrack the path, from the end, collecting the edits.
+        int editCount = trace.size() - 1;
+        int[] editX = new int[editCount];
+        int[] editY = new int[editCount];
+        boolean[] insertion = new boolean[editCount];
+        int x = n;
+        int y = m;
+        for (int d = editCount; d > 0; d--) {
+            int[] v = trace.get(d - 1);
+            int k = x - y;
+            boolean down = k == -d || (k != d && v[k - 1 + d - 1] < v[k + 1 + d - 1]);
+            int previousK = down ? k + 1 : k - 1;
+            x = v[previousK + d - 1];
+            y = x - previousK;
+            editX[d - 1] = x;
+            editY[d - 1] = y;
+            insertion[d - 1] = down;
+        }
+
+        // Group the consecutive edits (not separated by a snake).
+        int i = 0;
+        while (i < editCount) {
+            int startX = editX[i];
+            int startY = editY[i];
+            int endX = startX;
+            int endY = startY;
+            while (i < editCount && editX[i] == endX && editY[i] == endY) {
+                if (insertion[i]) {
+                    endY++;
+                } else {
+                    endX++;
+                }
+                i++;
+            }
+            script.addChange(previousStart + startX, previousStart + endX, nextStart + startY, nextStart + endY);
+        }
+    }
+
+    /**
+     * @return for each edit distance d (from 0 to the shortest edit distance), the furthest reaching x for each
+     *         diagonal k in [-d, d], stored at index k + d
+     */
+    private List<int[]> findPath(DiffSequences sequences, int previousStart, int n, int nextStart, int m)
+    {
+        int max = n + m;
+        int offset = max + 1;
+        int[] v = new int[2 * max + 3];
+        List<int[]> trace = new ArrayList<>();
+        for (int d = 0; d <= max; d++) {
+            for (int k = -d; k <= d; k += 2) {
+                // Move down (insertion) or right (deletion), depending on which neighbour diagonal reached further.
+                int x = (k == -d || (k != d && v[offset + k - 1] < v[offset + k + 1])) ? v[offset + k + 1]
+                    : v[offset + k - 1] + 1;
+                int y = x - k;
+                // Follow the snake (the diagonal of equal elements).
+                while (x < n && y < m && sequences.equals(previousStart + x, nextStart + y)) {
+                    x++;
+                    y++;
+                }
+                v[offset + k] = x;
+                if (x >= n && y >= m) {
+                    trace.add(Arrays.copyOfRange(v, offset - d, offset + d + 1));
+                    return trace;
+                }
+            }
+            trace.add(Arrays.copyOfRange(v, offset - d, offset + d + 1));
+        }
+        // Should never happen because max edits are always enough.
+        return trace;
+    }
+}
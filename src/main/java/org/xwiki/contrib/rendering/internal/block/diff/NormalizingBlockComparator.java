@@ -0,0 +1,89 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.util.List;
+
+import org.xwiki.contrib.rendering.block.diff.BlockDiffNormalizer;
+import org.xwiki.contrib.rendering.block.diff.EndBlock;
+import org.xwiki.rendering.block.Block;
+
+/**
+ * Compares the blocks after normalizing them with the given {@link BlockDiffNormalizer}s. The fingerprints are
+ * computed from the normalized blocks, once per compared block (they are stored by {@link BlockSequences}), so the
+ * normalizers are called again only to check the equality of the blocks that have the same fingerprint.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+public class NormalizingBlockComparator extends ShallowBlockComparator
+{
+    private final List<BlockDiffNormalizer> normalizers;
+
+    /**
+     * Creates a new instance.
+     * 
+     * @param normalizers the normalizers to apply, in turn, to each compared block
+     */
+    public NormalizingBlockComparator(List<BlockDiffNormalizer> normalizers)
+    {
+        this.normalizers = normalizers;
+    }
+
+    /**
+     * @param normalizers the normalizers to apply to each compared block, {@code null} or empty if the blocks are
+     *            compared as they are
+     * @return the comparator to use
+     */
+    public static ShallowBlockComparator of(List<BlockDiffNormalizer> normalizers)
+    {
+        return normalizers == null || normalizers.isEmpty() ? new ShallowBlockComparator()
+            : new NormalizingBlockComparator(normalizers);
+    }
+
+    @Override
+    public boolean equals(Block alice, Block bob)
+    {
+        return alice == bob || super.equals(normalize(alice), normalize(bob));
+    }
+
+    @Override
+    public long fingerprint(Block block)
+    {
+        return super.fingerprint(normalize(block));
+    }
+
+    /**
+     * @param block the block to normalize
+     * @return the normalized block
+     */
+    public Block normalize(Block block)
+    {
+        if (block == null || block instanceof EndBlock) {
+            return block;
+        }
+
+        Block normalized = block;
+        for (BlockDiffNormalizer normalizer : this.normalizers) {
+            normalized = normalizer.normalize(normalized);
+        }
+        return normalized;
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reads a patch written by {@link PatchWriter}, directly from a (possibly memory-mapped) byte buffer.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+public class PatchReader
+{
+    private final ByteBuffer buffer;
+
+    private String[] strings;
+
+    private String[] types;
+
+    private Map<String, String>[] parameters;
+
+    /**
+     * Reads the header and the dictionaries of a patch.
+     * 
+     * @param buffer the buffer to read from, starting with its current position
+     * @throws IOException if the buffer doesn't contain a valid patch
+     */
+    public PatchReader(ByteBuffer buffer) throws IOException
+    {
+        this.buffer = buffer;
+        try {
+            if (buffer.getInt() != PatchWriter.MAGIC) {
+                throw new IOException("Unsupported patch format.");
+            }
+            readDictionaries();
+        } catch (BufferUnderflowException | NegativeArraySizeException e) {
+            throw new IOException("Truncated patch.", e);
+        }
+    }
+
+    /**
+     * @return the next non-negative integer written with a variable number of bytes
+     * @throws IOException if the patch is truncated or corrupted
+     */
+    public int readVarInt() throws IOException
+    {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte current = get();
+            value |= (current & 0x7F) << shift;
+            if ((current & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable length integer.");
+    }
+
+    /**
+     * @return the next long value
+     * @throws IOException if the patch is truncated
+     */
+    public long readLong() throws IOException
+    {
+        try {
+            return this.buffer.getLong();
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated patch.", e);
+        }
+    }
+
+    /**
+     * @return the next boolean value
+     * @throws IOException if the patch is truncated
+     */
+    public boolean readBoolean() throws IOException
+    {
+        return get() != 0;
+    }
+
+    /**
+     * @return the next string, possibly {@code null}
+     * @throws IOException if the patch is truncated or corrupted
+     */
+    public String readString() throws IOException
+    {
+        int index = readVarInt();
+        return index == 0 ? null : lookup(this.strings, index - 1);
+    }
+
+    /**
+     * @param index an index in the type dictionary
+     * @return the name of the block type found at the specified index
+     * @throws IOException if the index is not valid
+     */
+    public String getType(int index) throws IOException
+    {
+        return lookup(this.types, index);
+    }
+
+    /**
+     * @return the next block parameters; the returned map is shared and must not be modified
+     * @throws IOException if the patch is truncated or corrupted
+     */
+    public Map<String, String> readParameters() throws IOException
+    {
+        return lookup(this.parameters, readVarInt());
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readDictionaries() throws IOException
+    {
+        this.strings = new String[readVarInt()];
+        for (int i = 0; i < this.strings.length; i++) {
+            byte[] encoded = new byte[readVarInt()];
+            this.buffer.get(encoded);
+            this.strings[i] = new String(encoded, StandardCharsets.UTF_8);
+        }
+
+        this.types = new String[readVarInt()];
+        for (int i = 0; i < this.types.length; i++) {
+            this.types[i] = lookup(this.strings, readVarInt());
+        }
+
+        this.parameters = new Map[readVarInt()];
+        for (int i = 0; i < this.parameters.length; i++) {
+            int size = readVarInt();
+            Map<String, String> value = new LinkedHashMap<>(size * 2);
+            for (int j = 0; j < size; j++) {
+                String key = lookup(this.strings, readVarInt());
+                int valueIndex = readVarInt();
+                value.put(key, valueIndex == 0 ? null : lookup(this.strings, valueIndex - 1));
+            }
+            this.parameters[i] = Collections.unmodifiableMap(value);
+        }
+    }
+
+    private byte get() throws IOException
+    {
+        if (!this.buffer.hasRemaining()) {
+            throw new IOException("Truncated patch.");
+        }
+        return this.buffer.get();
+    }
+
+    private <T> T lookup(T[] dictionary, int index) throws IOException
+    {
+        if (index < 0 || index >= dictionary.length) {
+            throw new IOException(String.format("Invalid dictionary index [%s].", index));
+        }
+        return dictionary[index];
+    }
+}
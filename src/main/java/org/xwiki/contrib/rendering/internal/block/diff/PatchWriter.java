@@ -0,0 +1,196 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a patch in the compact binary format read by {@link PatchReader}. The strings, the block types and the block
+ * parameters are written only once, in dictionaries placed before the body of the patch, and referred to by their
+ * index in the body.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+public class PatchWriter
+{
+    /**
+     * Identifies the format: "XDP" followed by the format version.
+     */
+    static final int MAGIC = 0x58445001;
+
+    private final Map<String, Integer> strings = new HashMap<>();
+
+    private final List<String> stringList = new ArrayList<>();
+
+    private final Map<String, Integer> types = new HashMap<>();
+
+    private final List<String> typeList = new ArrayList<>();
+
+    private final Map<Map<String, String>, Integer> parameters = new HashMap<>();
+
+    private final List<Map<String, String>> parameterList = new ArrayList<>();
+
+    private final ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+
+    private final DataOutputStream body = new DataOutputStream(this.bodyBytes);
+
+    /**
+     * Writes a non-negative integer using a variable number of bytes (7 bits per byte).
+     * 
+     * @param value the value to write
+     * @throws IOException if writing fails
+     */
+    public void writeVarInt(int value) throws IOException
+    {
+        writeVarInt(this.body, value);
+    }
+
+    /**
+     * @param value the value to write
+     * @throws IOException if writing fails
+     */
+    public void writeLong(long value) throws IOException
+    {
+        this.body.writeLong(value);
+    }
+
+    /**
+     * @param value the value to write
+     * @throws IOException if writing fails
+     */
+    public void writeBoolean(boolean value) throws IOException
+    {
+        this.body.writeBoolean(value);
+    }
+
+    /**
+     * Writes the index of the given string in the string dictionary.
+     * 
+     * @param value the value to write, can be {@code null}
+     * @throws IOException if writing fails
+     */
+    public void writeString(String value) throws IOException
+    {
+        writeVarInt(value == null ? 0 : intern(value) + 1);
+    }
+
+    /**
+     * Adds the given block type to the type dictionary, if needed.
+     * 
+     * @param type a block type
+     * @return the index of the given type in the type dictionary
+     */
+    public int getTypeIndex(Class<?> type)
+    {
+        return this.types.computeIfAbsent(type.getName(), name -> {
+            intern(name);
+            this.typeList.add(name);
+            return this.typeList.size() - 1;
+        });
+    }
+
+    /**
+     * Writes the index of the given parameters in the parameter dictionary.
+     * 
+     * @param value the parameters to write
+     * @throws IOException if writing fails
+     */
+    public void writeParameters(Map<String, String> value) throws IOException
+    {
+        Integer index = this.parameters.get(value);
+        if (index == null) {
+            index = this.parameterList.size();
+            // Copy the parameters because the given map belongs to a block that might be modified later.
+            Map<String, String> copy = new HashMap<>(value);
+            this.parameters.put(copy, index);
+            this.parameterList.add(copy);
+            copy.forEach((key, parameterValue) -> {
+                intern(key);
+                if (parameterValue != null) {
+                    intern(parameterValue);
+                }
+            });
+        }
+        writeVarInt(index);
+    }
+
+    /**
+     * @return the encoded patch: the header, the dictionaries and the body
+     * @throws IOException if writing fails
+     */
+    public byte[] toByteArray() throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(this.bodyBytes.size() + 16 * this.stringList.size());
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeInt(MAGIC);
+
+        writeVarInt(output, this.stringList.size());
+        for (String value : this.stringList) {
+            byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(output, encoded.length);
+            output.write(encoded);
+        }
+
+        writeVarInt(output, this.typeList.size());
+        for (String type : this.typeList) {
+            writeVarInt(output, this.strings.get(type));
+        }
+
+        writeVarInt(output, this.parameterList.size());
+        for (Map<String, String> value : this.parameterList) {
+            writeVarInt(output, value.size());
+            for (Map.Entry<String, String> entry : value.entrySet()) {
+                writeVarInt(output, this.strings.get(entry.getKey()));
+                writeVarInt(output, entry.getValue() == null ? 0 : this.strings.get(entry.getValue()) + 1);
+            }
+        }
+
+        this.body.flush();
+        this.bodyBytes.writeTo(output);
+        output.flush();
+        return bytes.toByteArray();
+    }
+
+    private int intern(String value)
+    {
+        return this.strings.computeIfAbsent(value, key -> {
+            this.stringList.add(key);
+            return this.stringList.size() - 1;
+        });
+    }
+
+    private static void writeVarInt(DataOutputStream output, int value) throws IOException
+    {
+        int remaining = value;
+        while ((remaining & ~0x7F) != 0) {
+            output.writeByte((remaining & 0x7F) | 0x80);
+            remaining >>>= 7;
+        }
+        output.writeByte(remaining);
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * The patience diff algorithm: the elements that appear only once in both ranges are matched first (keeping the
+ * longest sequence of such elements that appear in the same order) and the ranges between them are compared
+ * recursively. The ranges that don't have unique elements are compared with the fallback diff engine.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+public class PatienceDiffEngine implements DiffEngine
+{
+    private final DiffEngine fallbackDiffEngine;
+
+    /**
+     * Creates a new instance.
+     * 
+     * @param fallbackDiffEngine the diff engine used to compare the ranges that don't have unique elements
+     */
+    public PatienceDiffEngine(DiffEngine fallbackDiffEngine)
+    {
+        this.fallbackDiffEngine = fallbackDiffEngine;
+    }
+
+    @Override
+    public void diff(DiffSequences sequences, int previousStart, int previousEnd, int nextStart, int nextEnd,
+        EditScript script)
+    {
+        // The ranges are compared from left to right because the changes must be added in order to the edit script.
+        Deque<int[]> ranges = new ArrayDeque<>();
+        ranges.push(new int[] {previousStart, previousEnd, nextStart, nextEnd});
+        while (!ranges.isEmpty()) {
+            int[] range = ranges.pop();
+            int prefix = DiffRanges.getCommonPrefix(sequences, range[0], range[1], range[2], range[3]);
+            int ps = range[0] + prefix;
+            int ns = range[2] + prefix;
+            int suffix = DiffRanges.getCommonSuffix(sequences, ps, range[1], ns, range[3]);
+            int pe = range[1] - suffix;
+            int ne = range[3] - suffix;
+            if (ps == pe || ns == ne) {
+                script.addChange(ps, pe, ns, ne);
+                continue;
+            }
+
+            int[] anchors = DiffRanges.getUniqueAnchors(sequences, ps, pe, ns, ne);
+            if (anchors.length == 0) {
+                this.fallbackDiffEngine.diff(sequences, ps, pe, ns, ne, script);
+            } else {
+                // Push the ranges between the anchors in reverse order.
+                int end = anchors.length - 2;
+                ranges.push(new int[] {anchors[end] + 1, pe, anchors[end + 1] + 1, ne});
+                for (int i = end; i > 0; i -= 2) {
+                    ranges.push(new int[] {anchors[i - 2] + 1, anchors[i], anchors[i - 1] + 1, anchors[i + 1]});
+                }
+                ranges.push(new int[] {ps, anchors[0], ns, anchors[1]});
+            }
+        }
+    }
+}
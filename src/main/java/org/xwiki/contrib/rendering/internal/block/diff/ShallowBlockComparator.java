@@ -0,0 +1,266 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.xwiki.contrib.rendering.block.diff.EndBlock;
+import org.xwiki.rendering.block.AbstractBlock;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.util.IdGenerator;
+
+/**
+ * Compares blocks without taking into account their child blocks, i.e. two blocks are considered equal if they have
+ * the same type, the same parameters and the same data (the custom fields, specific to each block type). This allows
+ * us to compare the list representation of two block trees without having to detach the child blocks (which would
+ * modify the trees).
+ * <p>
+ * The block data is read, using reflection, from the fields declared by the block classes that override
+ * {@link Object#equals(Object)}, which means we compare the same fields that {@link Block#equals(Object)} compares.
+ * <p>
+ * In order to speed up the comparison, each block can be reduced to a 64-bit fingerprint (see
+ * {@link #fingerprint(Block)}): blocks with different fingerprints are different, blocks with the same fingerprint are
+ * most probably equal. Fingerprints don't depend on the JVM (e.g. they don't use identity hash codes of classes or
+ * enumeration values) as long as the block data implements {@link Object#hashCode()} consistently.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+public class ShallowBlockComparator
+{
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * Used to distinguish the end of a block from its start.
+     */
+    private static final long END_SEED = 0x9e3779b97f4a7c15L;
+
+    private static final ClassValue<Field[]> DATA_FIELDS = new ClassValue<Field[]>()
+    {
+        @Override
+        protected Field[] computeValue(Class<?> type)
+        {
+            return getDataFields(type);
+        }
+    };
+
+    /**
+     * Compares two blocks ignoring their child blocks.
+     * 
+     * @param alice the first block to compare
+     * @param bob the second block to compare
+     * @return {@code true} if the given blocks have the same type, parameters and data, {@code false} otherwise
+     */
+    public boolean equals(Block alice, Block bob)
+    {
+        if (alice == bob) {
+            return true;
+        } else if (alice == null || bob == null || alice.getClass() != bob.getClass()) {
+            return false;
+        } else if (alice instanceof EndBlock) {
+            return ((EndBlock) alice).getType() == ((EndBlock) bob).getType();
+        }
+
+        if (!alice.getParameters().equals(bob.getParameters())) {
+            return false;
+        }
+
+        for (Field field : DATA_FIELDS.get(alice.getClass())) {
+            if (!Objects.deepEquals(getValue(field, alice), getValue(field, bob))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Computes the hash code of a block ignoring its child blocks. The returned value is consistent with
+     * {@link #equals(Block, Block)}.
+     * 
+     * @param block the block to compute the hash code for
+     * @return the hash code of the given block
+     */
+    public int hashCode(Block block)
+    {
+        return Long.hashCode(fingerprint(block));
+    }
+
+    /**
+     * Computes the 64-bit fingerprint of a block, ignoring its child blocks. Blocks that are equal, according to
+     * {@link #equals(Block, Block)}, have the same fingerprint.
+     * 
+     * @param block the block to compute the fingerprint for
+     * @return the fingerprint of the given block
+     */
+    public long fingerprint(Block block)
+    {
+        if (block == null) {
+            return 0;
+        } else if (block instanceof EndBlock) {
+            return fingerprintEnd(((EndBlock) block).getType());
+        }
+
+        long fingerprint = hash(block.getClass().getName());
+        fingerprint = combine(fingerprint, hashValue(block.getParameters()));
+        for (Field field : DATA_FIELDS.get(block.getClass())) {
+            fingerprint = combine(fingerprint, hashValue(getValue(field, block)));
+        }
+        return mix(fingerprint);
+    }
+
+    /**
+     * Computes the fingerprint of the end of a block, without having to create the {@link EndBlock}.
+     * 
+     * @param type the type of block that ends
+     * @return the fingerprint of the {@link EndBlock} that corresponds to the given block type
+     */
+    public long fingerprintEnd(Class<?> type)
+    {
+        return mix(hash(type.getName()) ^ END_SEED);
+    }
+
+    private static long hashValue(Object value)
+    {
+        if (value == null) {
+            return 0;
+        } else if (value instanceof CharSequence) {
+            return hash((CharSequence) value);
+        } else if (value instanceof Enum) {
+            return hash(((Enum<?>) value).name());
+        } else if (value instanceof Number || value instanceof Boolean || value instanceof Character) {
+            return hash(value.toString());
+        } else if (value instanceof Map) {
+            // The order of the entries doesn't matter.
+            long hash = 0;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                hash += combine(hashValue(entry.getKey()), hashValue(entry.getValue()));
+            }
+            return mix(hash);
+        } else if (value instanceof Set) {
+            // The order of the elements doesn't matter.
+            long hash = 0;
+            for (Object element : (Set<?>) value) {
+                hash += hashValue(element);
+            }
+            return mix(hash);
+        } else if (value instanceof Collection) {
+            return hashElements(((Collection<?>) value).toArray());
+        } else if (value instanceof Object[]) {
+            return hashElements((Object[]) value);
+        } else if (value.getClass().isArray()) {
+            return Arrays.deepHashCode(new Object[] {value});
+        } else {
+            return value.hashCode();
+        }
+    }
+
+    private static long hashElements(Object[] elements)
+    {
+        long hash = FNV_OFFSET_BASIS;
+        for (Object element : elements) {
+            hash = combine(hash, hashValue(element));
+        }
+        return mix(hash);
+    }
+
+    /**
+     * FNV-1a hash of a sequence of characters.
+     */
+    private static long hash(CharSequence value)
+    {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private static long combine(long hash, long value)
+    {
+        return (hash ^ mix(value)) * FNV_PRIME;
+    }
+
+    /**
+     * The finalizer of the SplitMix64 generator, used to spread the bits of a hash.
+     */
+    private static long mix(long value)
+    {
+        long hash = value;
+        hash = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+        return hash ^ (hash >>> 31);
+    }
+
+    private static Object getValue(Field field, Block block)
+    {
+        try {
+            return field.get(block);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(String.format("Failed to read the [%s] field of [%s].", field.getName(),
+                block.getClass().getName()), e);
+        }
+    }
+
+    private static Field[] getDataFields(Class<?> blockClass)
+    {
+        List<Field> fields = new ArrayList<>();
+        for (Class<?> type = blockClass; type != null && type != AbstractBlock.class
+            && type != Object.class; type = type.getSuperclass()) {
+            if (declaresEquals(type)) {
+                for (Field field : type.getDeclaredFields()) {
+                    if (isDataField(field)) {
+                        field.setAccessible(true);
+                        fields.add(field);
+                    }
+                }
+            }
+        }
+        return fields.toArray(new Field[fields.size()]);
+    }
+
+    private static boolean declaresEquals(Class<?> type)
+    {
+        try {
+            type.getDeclaredMethod("equals", Object.class);
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    private static boolean isDataField(Field field)
+    {
+        int modifiers = field.getModifiers();
+        // The id generator holds the state used to generate unique identifiers, it's not part of the content.
+        return !Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers) && !field.isSynthetic()
+            && !IdGenerator.class.isAssignableFrom(field.getType());
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.xwiki.rendering.block.AbstractBlock;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.BlockFilter;
+
+/**
+ * Copies a block without its child blocks, whatever the size of its subtree. {@link Block#clone(BlockFilter)} clones
+ * the child blocks before filtering them, so it can't be used for this. Instead we make a shallow copy of the block,
+ * like {@link Object#clone()} does (an instance of the same class with the same field values), replace its list of
+ * child blocks with an empty list and then clone the shallow copy, so that the data of the block (e.g. its parameters
+ * or its reference) is copied by the clone method of the block type.
+ * <p>
+ * The shallow copy is allocated without calling a constructor, which requires {@code sun.misc.Unsafe}. When it's not
+ * available the block is cloned with its descendants, which are then dropped.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+public class ShallowBlockCopier
+{
+    private static final BlockFilter REJECT_CHILDREN = block -> Collections.emptyList();
+
+    private static final ClassValue<Field[]> FIELDS = new ClassValue<Field[]>()
+    {
+        @Override
+        protected Field[] computeValue(Class<?> type)
+        {
+            return getFields(type);
+        }
+    };
+
+    private static final Object UNSAFE;
+
+    private static final Method ALLOCATE_INSTANCE;
+
+    static {
+        Object unsafe = null;
+        Method allocateInstance = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field unsafeField = unsafeClass.getDeclaredField("theUnsafe");
+            unsafeField.setAccessible(true);
+            unsafe = unsafeField.get(null);
+            allocateInstance = unsafeClass.getMethod("allocateInstance", Class.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Fall back on the filtered clone.
+        }
+        UNSAFE = unsafe;
+        ALLOCATE_INSTANCE = allocateInstance;
+    }
+
+    /**
+     * Copies a block without its child blocks.
+     * 
+     * @param block the block to copy
+     * @return a copy of the given block, without child blocks
+     */
+    public Block copy(Block block)
+    {
+        if (block instanceof AbstractBlock && ALLOCATE_INSTANCE != null) {
+            Field[] fields = FIELDS.get(block.getClass());
+            if (fields != null) {
+                try {
+                    return shallowCopy(block, fields).clone();
+                } catch (ReflectiveOperationException e) {
+                    // Fall back on the filtered clone.
+                }
+            }
+        }
+        Block copy = block.clone(REJECT_CHILDREN);
+        copy.getChildren().clear();
+        return copy;
+    }
+
+    private Block shallowCopy(Block block, Field[] fields) throws ReflectiveOperationException
+    {
+        Block shallowCopy = (Block) ALLOCATE_INSTANCE.invoke(UNSAFE, block.getClass());
+        List<Block> children = block.getChildren();
+        for (Field field : fields) {
+            Object value = field.get(block);
+            // The given block and its child blocks are not modified.
+            field.set(shallowCopy, value == children ? new ArrayList<Block>() : value);
+        }
+        return shallowCopy;
+    }
+
+    /**
+     * @return the instance fields of the given block type and of its super classes, or {@code null} if they can't be
+     *         accessed
+     */
+    private static Field[] getFields(Class<?> blockClass)
+    {
+        List<Field> fields = new ArrayList<>();
+        try {
+            for (Class<?> type = blockClass; type != Object.class; type = type.getSuperclass()) {
+                for (Field field : type.getDeclaredFields()) {
+                    if (!Modifier.isStatic(field.getModifiers())) {
+                        field.setAccessible(true);
+                        fields.add(field);
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            return null;
+        }
+        return fields.toArray(new Field[fields.size()]);
+    }
+}
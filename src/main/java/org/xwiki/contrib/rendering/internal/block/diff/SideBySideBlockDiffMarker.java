@@ -0,0 +1,383 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffBatchConfiguration;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffBatchResult;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffConfiguration;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffMarker;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffMarkerFilter;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffMetricsListener;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffNormalizer;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffPair;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffPhase;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffSession;
+import org.xwiki.contrib.rendering.block.diff.BlockModification;
+import org.xwiki.contrib.rendering.block.diff.BlockMove;
+import org.xwiki.contrib.rendering.block.diff.BlockPatch;
+import org.xwiki.diff.Delta;
+import org.xwiki.diff.DiffException;
+import org.xwiki.diff.Patch;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.GroupBlock;
+import org.xwiki.rendering.block.SectionBlock;
+import org.xwiki.rendering.block.XDOM;
+
+/**
+ * Marks the differences on both sides of the comparison, in a single pass over the changes: the deleted blocks are
+ * marked on the left side and the inserted blocks on the right side. The unmodified top level blocks (the children of
+ * the root and of the unmodified sections) get the same anchor on both sides so that the two sides can be aligned
+ * (e.g. to synchronize their scrolling) when they are displayed next to each other. The moved subtrees (see
+ * {@link BlockPatch#getMoves()}) are marked as a whole on both sides, with the same move identifier, and the blocks
+ * whose own attributes changed (see {@link BlockPatch#getModifications()}) are marked on both sides without their
+ * descendants.
+ *
+ * @version $Id$
+ * @since 1.0
+ */
+@Component
+@Named("sideBySide")
+@Singleton
+public class SideBySideBlockDiffMarker implements BlockDiffMarker
+{
+    /**
+     * The block parameter used to align the unmodified blocks of both sides. Its value is the same on both sides.
+     */
+    static final String ANCHOR_PARAMETER = "data-xdom-diff-anchor";
+
+    /**
+     * The parameter that identifies the side of the comparison in the diff tree.
+     */
+    static final String SIDE_PARAMETER = "data-xdom-diff-side";
+
+    @Inject
+    private List<BlockDiffMarkerFilter> diffMarkerFilters;
+
+    @Inject
+    private List<BlockDiffMetricsListener> metricsListeners;
+
+    @Inject
+    private List<BlockDiffNormalizer> normalizers;
+
+    private BlockListConverter blockListConverter = new BlockListConverter();
+
+    private BlockListDiffer blockListDiffer = new BlockListDiffer();
+
+    @Override
+    public boolean markDiff(Block left, Block right) throws DiffException
+    {
+        return markDiff(left, right, null);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Both sides are modified: the deleted blocks are marked on the left side, the inserted blocks on the right side
+     * and the unmodified top level blocks of both sides are anchored.
+     */
+    @Override
+    public boolean markDiff(Block left, Block right, BlockDiffConfiguration configuration) throws DiffException
+    {
+        DiffMetricsRecorder recorder = DiffMetricsRecorder.start("sideBySide.markDiff", this.metricsListeners);
+        DiffBudget budget = DiffBudget.of(configuration);
+        FlatBlockList leftList = this.blockListConverter.toList(left);
+        FlatBlockList rightList = this.blockListConverter.toList(right);
+        recorder.lap(BlockDiffPhase.FLATTEN);
+        Patch<Block> patch = diff(leftList, rightList, configuration, budget);
+        recorder.lap(BlockDiffPhase.DIFF);
+        recorder.recordSizes(leftList, rightList);
+        recorder.recordPatch(patch);
+        if (!patch.isEmpty()) {
+            mark(leftList, rightList, patch, recorder);
+        }
+        recorder.finish();
+        return !patch.isEmpty();
+    }
+
+    @Override
+    public Block getDiffTree(Block left, Block right) throws DiffException
+    {
+        return getDiffTree(left, right, null);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The diff tree has two groups, one for each side, identified by the {@value #SIDE_PARAMETER} parameter. Each
+     * group holds a marked copy of its side.
+     */
+    @Override
+    public Block getDiffTree(Block left, Block right, BlockDiffConfiguration configuration) throws DiffException
+    {
+        DiffMetricsRecorder recorder = DiffMetricsRecorder.start("sideBySide.getDiffTree", this.metricsListeners);
+        DiffBudget budget = DiffBudget.of(configuration);
+        FlatBlockList leftList = this.blockListConverter.toList(left);
+        FlatBlockList rightList = this.blockListConverter.toList(right);
+        recorder.lap(BlockDiffPhase.FLATTEN);
+        Patch<Block> patch = diff(leftList, rightList, configuration, budget);
+        recorder.lap(BlockDiffPhase.DIFF);
+        recorder.recordSizes(leftList, rightList);
+        recorder.recordPatch(patch);
+        Block diffTree = getDiffTree(left, right, patch, recorder);
+        recorder.finish();
+        return diffTree;
+    }
+
+    private Block getDiffTree(Block left, Block right, Patch<Block> patch, DiffMetricsRecorder recorder)
+        throws DiffException
+    {
+        if (patch.isEmpty()) {
+            return left;
+        }
+
+        // Mark the changes on copies. The copies have the same list representation as the compared blocks so we can
+        // use the same patch.
+        Block leftCopy = left.clone();
+        Block rightCopy = right.clone();
+        FlatBlockList leftList = this.blockListConverter.toList(leftCopy);
+        FlatBlockList rightList = this.blockListConverter.toList(rightCopy);
+        recorder.lap(BlockDiffPhase.FLATTEN);
+        recorder.recordMarkedBlocks(0, (leftList.size() + rightList.size()) / 2);
+        mark(leftList, rightList, patch, recorder);
+
+        GroupBlock leftGroup =
+            new GroupBlock(Collections.singletonList(leftCopy), Collections.singletonMap(SIDE_PARAMETER, "left"));
+        GroupBlock rightGroup =
+            new GroupBlock(Collections.singletonList(rightCopy), Collections.singletonMap(SIDE_PARAMETER, "right"));
+        XDOM diffTree = new XDOM(Arrays.asList(leftGroup, rightGroup));
+        if (leftCopy.getParameter(DefaultBlockDiffMarker.DEGRADED_PARAMETER) != null) {
+            diffTree.setParameter(DefaultBlockDiffMarker.DEGRADED_PARAMETER, Boolean.TRUE.toString());
+        }
+        return diffTree;
+    }
+
+    @Override
+    public <K> Stream<BlockDiffBatchResult<K, Boolean>> markDiffAll(Stream<BlockDiffPair<K>> pairs,
+        BlockDiffBatchConfiguration configuration)
+    {
+        return BlockDiffBatch.run(pairs, this::markDiff, configuration);
+    }
+
+    @Override
+    public <K> Stream<BlockDiffBatchResult<K, Block>> getDiffTreeAll(Stream<BlockDiffPair<K>> pairs,
+        BlockDiffBatchConfiguration configuration)
+    {
+        return BlockDiffBatch.run(pairs, this::getDiffTree, configuration);
+    }
+
+    @Override
+    public BlockDiffSession createSession(Block left, Block right, BlockDiffConfiguration configuration)
+        throws DiffException
+    {
+        return new DefaultBlockDiffSession(
+            (sessionLeft, sessionRight, patch) -> getDiffTree(sessionLeft, sessionRight, patch,
+                DiffMetricsRecorder.disabled()),
+            this.blockListDiffer, NormalizingBlockComparator.of(this.normalizers), left, right, configuration);
+    }
+
+    /**
+     * Computes the changes to mark, ignoring the changes that have no visual difference (see
+     * {@link BlockDiffNormalizer}).
+     */
+    private Patch<Block> diff(FlatBlockList leftList, FlatBlockList rightList, BlockDiffConfiguration configuration,
+        DiffBudget budget)
+    {
+        return this.blockListDiffer.diff(leftList, rightList, configuration,
+            NormalizingBlockComparator.of(this.normalizers), budget);
+    }
+
+    /**
+     * Marks the changes on both sides and then amends both trees.
+     * 
+     * @param leftList the list representation of the left side
+     * @param rightList the list representation of the right side
+     * @param patch the changes between the left side and the right side
+     * @param recorder used to measure the phases
+     */
+    private void mark(FlatBlockList leftList, FlatBlockList rightList, Patch<Block> patch,
+        DiffMetricsRecorder recorder)
+    {
+        List<Block> deletedBlocks = new ArrayList<>();
+        List<Block> insertedBlocks = new ArrayList<>();
+        // The moved subtrees are marked as a whole on both sides.
+        Map<Integer, String> sources = new HashMap<>();
+        Map<Integer, String> targets = new HashMap<>();
+        // The modified blocks are marked on both sides, without their descendants.
+        Set<Integer> leftModified = new HashSet<>();
+        Set<Integer> rightModified = new HashSet<>();
+        if (patch instanceof BlockPatch) {
+            List<BlockMove> moves = ((BlockPatch) patch).getMoves();
+            for (int i = 0; i < moves.size(); i++) {
+                sources.put(moves.get(i).getPreviousIndex(), String.valueOf(i + 1));
+                targets.put(moves.get(i).getNextIndex(), String.valueOf(i + 1));
+            }
+            for (BlockModification modification : ((BlockPatch) patch).getModifications()) {
+                leftModified.add(modification.getPreviousIndex());
+                rightModified.add(modification.getNextIndex());
+            }
+        }
+        int leftPosition = 0;
+        int rightPosition = 0;
+        int anchorCount = 0;
+        for (Delta<Block> delta : patch) {
+            int deletedStart = delta.getPrevious().getIndex();
+            int insertedStart = delta.getNext().getIndex();
+            // The blocks between the changes are not modified, so they are at the same offset on both sides.
+            anchorCount = anchor(leftList, rightList, leftPosition, rightPosition, deletedStart, anchorCount);
+            leftPosition = deletedStart + delta.getPrevious().getElements().size();
+            rightPosition = insertedStart + delta.getNext().getElements().size();
+            markRange(leftList, deletedStart, leftPosition, DefaultBlockDiffMarker.DELETED,
+                new RangeChanges(sources, DefaultBlockDiffMarker.MOVED_FROM, leftModified), deletedBlocks);
+            markRange(rightList, insertedStart, rightPosition, DefaultBlockDiffMarker.INSERTED,
+                new RangeChanges(targets, DefaultBlockDiffMarker.MOVED_TO, rightModified), insertedBlocks);
+        }
+        anchor(leftList, rightList, leftPosition, rightPosition, leftList.size(), anchorCount);
+        recorder.lap(BlockDiffPhase.MARK);
+
+        // One of the sides can be missing (e.g. a new page).
+        if (!leftList.isEmpty()) {
+            Block leftRoot = leftList.getBlock(0);
+            DefaultBlockDiffMarker.amend(leftRoot, deletedBlocks, this.diffMarkerFilters);
+            if (patch instanceof BlockPatch && ((BlockPatch) patch).isDegraded()) {
+                leftRoot.setParameter(DefaultBlockDiffMarker.DEGRADED_PARAMETER, Boolean.TRUE.toString());
+            }
+        }
+        if (!rightList.isEmpty()) {
+            DefaultBlockDiffMarker.amend(rightList.getBlock(0), insertedBlocks, this.diffMarkerFilters);
+        }
+        recorder.lap(BlockDiffPhase.FILTER);
+        recorder.recordMarkedBlocks(deletedBlocks.size() + insertedBlocks.size(), 0);
+    }
+
+    /**
+     * Anchors the unmodified top level blocks from a range of the left side and the matching range of the right side.
+     * 
+     * @param leftList the list representation of the left side
+     * @param rightList the list representation of the right side
+     * @param leftStart the start of the unmodified range on the left side
+     * @param rightStart the start of the unmodified range on the right side
+     * @param leftEnd the end of the unmodified range on the left side
+     * @param anchorCount the number of anchors created so far
+     * @return the number of anchors created, including the given ones
+     */
+    private int anchor(FlatBlockList leftList, FlatBlockList rightList, int leftStart, int rightStart, int leftEnd,
+        int anchorCount)
+    {
+        int count = anchorCount;
+        for (int index = leftStart; index < leftEnd; index++) {
+            if (!leftList.isEnd(index) && isTopLevel(leftList, index)) {
+                String anchor = String.valueOf(++count);
+                leftList.getBlock(index).setParameter(ANCHOR_PARAMETER, anchor);
+                rightList.getBlock(rightStart + index - leftStart).setParameter(ANCHOR_PARAMETER, anchor);
+            }
+        }
+        return count;
+    }
+
+    private boolean isTopLevel(FlatBlockList list, int index)
+    {
+        int depth = list.getDepth(index);
+        if (depth == 1) {
+            return true;
+        }
+        // The content of an anchored section is also top level content.
+        Block parent = list.getBlock(index).getParent();
+        return depth > 1 && parent instanceof SectionBlock && parent.getParameter(ANCHOR_PARAMETER) != null;
+    }
+
+    /**
+     * The moved subtrees and the modified blocks of one side of the comparison.
+     */
+    private static final class RangeChanges
+    {
+        private final Map<Integer, String> moves;
+
+        private final String moveMarker;
+
+        private final Set<Integer> modified;
+
+        RangeChanges(Map<Integer, String> moves, String moveMarker, Set<Integer> modified)
+        {
+            this.moves = moves;
+            this.moveMarker = moveMarker;
+            this.modified = modified;
+        }
+    }
+
+    /**
+     * Marks the first level blocks from a range of deleted or inserted blocks (the blocks below inherit the marker).
+     * 
+     * @param list the list that contains the range
+     * @param start the start of the range
+     * @param end the end of the range
+     * @param marker the marker to use
+     * @param changes the moved subtrees (with the identifier of the move) and the modified blocks of the list
+     * @param markedBlocks where to collect the marked blocks
+     */
+    private void markRange(FlatBlockList list, int start, int end, String marker, RangeChanges changes,
+        List<Block> markedBlocks)
+    {
+        int level = 0;
+        int index = start;
+        while (index < end) {
+            if (list.isEnd(index)) {
+                // The range can end blocks that start before it.
+                level = Math.max(0, level - 1);
+            } else {
+                Block block = list.getBlock(index);
+                String move = changes.moves.get(index);
+                if (move != null) {
+                    block.setParameter(DefaultBlockDiffMarker.DIFF_MARKER_PARAMETER, changes.moveMarker);
+                    block.setParameter(DefaultBlockDiffMarker.MOVE_PARAMETER, move);
+                    markedBlocks.add(block);
+                    // The moved subtree is not modified.
+                    index = list.getMatch(index);
+                } else if (changes.modified.contains(index)) {
+                    // The modified block ends after the range, so the following blocks are its children, on the same
+                    // level as the blocks before it.
+                    block.setParameter(DefaultBlockDiffMarker.DIFF_MARKER_PARAMETER, DefaultBlockDiffMarker.MODIFIED);
+                    markedBlocks.add(block);
+                } else {
+                    if (level == 0) {
+                        block.setParameter(DefaultBlockDiffMarker.DIFF_MARKER_PARAMETER, marker);
+                        markedBlocks.add(block);
+                    }
+                    level++;
+                }
+            }
+            index++;
+        }
+    }
+}
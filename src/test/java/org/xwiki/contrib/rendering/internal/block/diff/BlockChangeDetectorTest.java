@@ -0,0 +1,119 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.io.StringReader;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.xwiki.contrib.rendering.block.diff.BlockChangeStatistics;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffManager;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.XDOM;
+import org.xwiki.rendering.parser.Parser;
+import org.xwiki.test.annotation.AllComponents;
+import org.xwiki.test.junit5.mockito.ComponentTest;
+import org.xwiki.test.mockito.MockitoComponentManager;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Integration tests for {@link BlockChangeDetector}.
+ * 
+ * @version $Id$
+ * @since 1.0
+ */
+@ComponentTest
+@AllComponents
+class BlockChangeDetectorTest
+{
+    private static final String PREVIOUS = "= Title =\n\nAlpha beta gamma.\n\nSecond **paragraph**.";
+
+    private BlockDiffManager diffManager;
+
+    private Parser parser;
+
+    @BeforeEach
+    void configure(MockitoComponentManager componentManager) throws Exception
+    {
+        this.diffManager = componentManager.getInstance(BlockDiffManager.class);
+        this.parser = componentManager.getInstance(Parser.class, "xwiki/2.1");
+    }
+
+    @Test
+    void noChanges() throws Exception
+    {
+        XDOM previous = parse(PREVIOUS);
+        XDOM next = parse(PREVIOUS);
+        assertFalse(this.diffManager.hasChanges(previous, next));
+        assertFalse(this.diffManager.hasChanges(previous, previous));
+        assertFalse(this.diffManager.hasChanges(null, null));
+
+        BlockChangeStatistics statistics = this.diffManager.getChangeStatistics(previous, next);
+        assertFalse(statistics.hasChanges());
+        assertEquals(new BlockListConverter().countBlocks(previous), statistics.getPreviousBlockCount());
+        assertEquals(statistics.getPreviousBlockCount(), statistics.getNextBlockCount());
+        assertEquals(0, statistics.getChangeRatio());
+    }
+
+    @Test
+    void changes() throws Exception
+    {
+        XDOM previous = parse(PREVIOUS);
+        XDOM next = parse(PREVIOUS.replace("gamma", "delta"));
+        Block previousCopy = previous.clone();
+        assertTrue(this.diffManager.hasChanges(previous, next));
+        assertTrue(this.diffManager.hasChanges(previous, null));
+
+        // Only the modified word is counted.
+        BlockChangeStatistics statistics = this.diffManager.getChangeStatistics(previous, next);
+        assertTrue(statistics.hasChanges());
+        assertEquals(1, statistics.getDeletedBlockCount());
+        assertEquals(1, statistics.getInsertedBlockCount());
+        assertTrue(statistics.getChangeRatio() > 0 && statistics.getChangeRatio() < 0.1);
+
+        // The compared blocks are not modified.
+        assertEquals(previousCopy, previous);
+    }
+
+    @Test
+    void structuralChanges() throws Exception
+    {
+        XDOM previous = parse(PREVIOUS);
+        XDOM next = parse(PREVIOUS + "\n\nThird paragraph.");
+        assertTrue(this.diffManager.hasChanges(previous, next));
+
+        // The inserted paragraph has 5 blocks: the paragraph, 2 words, a space and a special symbol.
+        BlockChangeStatistics statistics = this.diffManager.getChangeStatistics(previous, next);
+        assertEquals(0, statistics.getDeletedBlockCount());
+        assertEquals(5, statistics.getInsertedBlockCount());
+        assertEquals(statistics.getPreviousBlockCount() + 5, statistics.getNextBlockCount());
+
+        // Same answer as the full diff.
+        assertEquals(!this.diffManager.diff(previous, next).isEmpty(), this.diffManager.hasChanges(previous, next));
+    }
+
+    private XDOM parse(String content) throws Exception
+    {
+        return this.parser.parse(new StringReader(content));
+    }
+}
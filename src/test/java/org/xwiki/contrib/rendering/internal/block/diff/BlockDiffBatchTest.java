@@ -0,0 +1,172 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.io.StringReader;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffBatchConfiguration;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffBatchResult;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffManager;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffMarker;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffPair;
+import org.xwiki.diff.Patch;
+import org.xwiki.rendering.block.AbstractBlock;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.XDOM;
+import org.xwiki.rendering.parser.Parser;
+import org.xwiki.test.annotation.AllComponents;
+import org.xwiki.test.junit5.mockito.ComponentTest;
+import org.xwiki.test.mockito.MockitoComponentManager;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Integration tests for {@link BlockDiffBatch}.
+ * 
+ * @version $Id$
+ * @since 1.0
+ */
+@ComponentTest
+@AllComponents
+class BlockDiffBatchTest
+{
+    private static final int PAIR_COUNT = 50;
+
+    private BlockDiffManager diffManager;
+
+    private BlockDiffMarker diffMarker;
+
+    private Parser parser;
+
+    @BeforeEach
+    void configure(MockitoComponentManager componentManager) throws Exception
+    {
+        this.diffManager = componentManager.getInstance(BlockDiffManager.class);
+        this.diffMarker = componentManager.getInstance(BlockDiffMarker.class);
+        this.parser = componentManager.getInstance(Parser.class, "xwiki/2.1");
+    }
+
+    @Test
+    void markDiffAll() throws Exception
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        BlockDiffBatchConfiguration configuration = new BlockDiffBatchConfiguration();
+        configuration.setExecutor(executor);
+        configuration.setMaximumPendingComparisons(3);
+
+        // Count the pairs read from the input to check that they are read as the results are consumed.
+        AtomicInteger readCount = new AtomicInteger();
+        AtomicInteger consumedCount = new AtomicInteger();
+        Stream<BlockDiffPair<Integer>> pairs = IntStream.range(0, PAIR_COUNT).mapToObj(this::createPair)
+            .peek(pair -> readCount.incrementAndGet());
+        Map<Integer, BlockDiffBatchResult<Integer, Boolean>> results;
+        try (Stream<BlockDiffBatchResult<Integer, Boolean>> stream = this.diffMarker.markDiffAll(pairs,
+            configuration)) {
+            results = stream.peek(result -> assertTrue(readCount.get() <= consumedCount.incrementAndGet() + 3))
+                .collect(Collectors.toMap(result -> result.getPair().getKey(), Function.identity()));
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(PAIR_COUNT, results.size());
+        for (int i = 0; i < PAIR_COUNT; i++) {
+            BlockDiffBatchResult<Integer, Boolean> result = results.get(i);
+            if (i == 7) {
+                // The failed pair doesn't stop the batch.
+                assertTrue(result.isFailed());
+                assertNull(result.getResult());
+            } else {
+                assertFalse(result.isFailed());
+                assertEquals(i % 2 == 1, result.getResult());
+            }
+        }
+    }
+
+    @Test
+    void diffAllWithDefaultExecutor() throws Exception
+    {
+        List<BlockDiffBatchResult<Integer, Patch<Block>>> results;
+        try (Stream<BlockDiffBatchResult<Integer, Patch<Block>>> stream = this.diffManager
+            .diffAll(IntStream.range(0, PAIR_COUNT).mapToObj(this::createPair), null)) {
+            results = stream.collect(Collectors.toList());
+        }
+
+        assertEquals(PAIR_COUNT, results.size());
+        assertEquals(1, results.stream().filter(BlockDiffBatchResult::isFailed).count());
+        assertEquals(PAIR_COUNT / 2,
+            results.stream().filter(result -> !result.isFailed() && result.getResult().isEmpty()).count());
+    }
+
+    @Test
+    void closeBeforeTheEnd() throws Exception
+    {
+        AtomicInteger readCount = new AtomicInteger();
+        Stream<BlockDiffPair<Integer>> pairs = IntStream.range(0, PAIR_COUNT).mapToObj(this::createPair)
+            .peek(pair -> readCount.incrementAndGet());
+        BlockDiffBatchConfiguration configuration = new BlockDiffBatchConfiguration();
+        configuration.setMaximumPendingComparisons(2);
+        try (Stream<BlockDiffBatchResult<Integer, Block>> stream = this.diffMarker.getDiffTreeAll(pairs,
+            configuration)) {
+            assertTrue(stream.findFirst().isPresent());
+        }
+        assertTrue(readCount.get() <= 3);
+    }
+
+    private BlockDiffPair<Integer> createPair(int index)
+    {
+        try {
+            XDOM left = parse("Page " + index + " has some content.");
+            // Odd pairs have changes. The left side of the pair 7 is broken so its comparison fails.
+            XDOM right = parse(index % 2 == 1 ? "Page " + index + " has other content." : "Page " + index
+                + " has some content.");
+            return new BlockDiffPair<>(index, index == 7 ? new BrokenBlock() : left, right);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private XDOM parse(String content) throws Exception
+    {
+        return this.parser.parse(new StringReader(content));
+    }
+
+    private static final class BrokenBlock extends AbstractBlock
+    {
+        @Override
+        public List<Block> getChildren()
+        {
+            throw new IllegalStateException("Broken block");
+        }
+    }
+}
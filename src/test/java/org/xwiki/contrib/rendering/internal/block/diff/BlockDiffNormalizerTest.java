@@ -0,0 +1,102 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffManager;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffMarker;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.HeaderBlock;
+import org.xwiki.rendering.block.MetaDataBlock;
+import org.xwiki.rendering.block.ParagraphBlock;
+import org.xwiki.rendering.block.SectionBlock;
+import org.xwiki.rendering.block.SpaceBlock;
+import org.xwiki.rendering.block.WordBlock;
+import org.xwiki.rendering.block.XDOM;
+import org.xwiki.rendering.listener.HeaderLevel;
+import org.xwiki.rendering.listener.MetaData;
+import org.xwiki.test.annotation.AllComponents;
+import org.xwiki.test.junit5.mockito.ComponentTest;
+import org.xwiki.test.mockito.MockitoComponentManager;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Integration tests for {@link HeaderIdNormalizer} and {@link MetaDataNormalizer}.
+ * 
+ * @version $Id$
+ * @since 1.0
+ */
+@ComponentTest
+@AllComponents
+class BlockDiffNormalizerTest
+{
+    private BlockDiffMarker diffMarker;
+
+    private BlockDiffMarker sideBySideDiffMarker;
+
+    private BlockDiffManager diffManager;
+
+    @BeforeEach
+    void configure(MockitoComponentManager componentManager) throws Exception
+    {
+        this.diffMarker = componentManager.getInstance(BlockDiffMarker.class);
+        this.sideBySideDiffMarker = componentManager.getInstance(BlockDiffMarker.class, "sideBySide");
+        this.diffManager = componentManager.getInstance(BlockDiffManager.class);
+    }
+
+    @Test
+    void ignoreHeaderIdAndSourceMetaData() throws Exception
+    {
+        assertFalse(this.diffMarker.markDiff(createXDOM("H1", "left.txt", "two"),
+            createXDOM("Hx", "right.txt", "two")));
+        assertFalse(this.sideBySideDiffMarker.markDiff(createXDOM("H1", "left.txt", "two"),
+            createXDOM("Hx", "right.txt", "two")));
+
+        // The patches remain exact.
+        assertFalse(this.diffManager.diff(createXDOM("H1", "left.txt", "two"),
+            createXDOM("Hx", "right.txt", "two")).isEmpty());
+    }
+
+    @Test
+    void markVisibleChanges() throws Exception
+    {
+        assertTrue(this.diffMarker.markDiff(createXDOM("H1", "left.txt", "two"),
+            createXDOM("Hx", "right.txt", "three")));
+    }
+
+    private XDOM createXDOM(String headerId, String source, String word)
+    {
+        List<Block> title = Arrays.asList(new WordBlock("Title"));
+        HeaderBlock header = new HeaderBlock(title, HeaderLevel.LEVEL1, Collections.emptyMap(), headerId);
+        ParagraphBlock paragraph =
+            new ParagraphBlock(Arrays.asList(new WordBlock("One"), new SpaceBlock(), new WordBlock(word)));
+        SectionBlock section = new SectionBlock(Arrays.asList(header, paragraph));
+        MetaDataBlock metaData =
+            new MetaDataBlock(Arrays.asList(section), new MetaData(Collections.singletonMap(MetaData.SOURCE, source)));
+        return new XDOM(Arrays.asList(metaData));
+    }
+}
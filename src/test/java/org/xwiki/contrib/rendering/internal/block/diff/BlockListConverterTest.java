@@ -0,0 +1,151 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.xwiki.contrib.rendering.block.diff.EndBlock;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.GroupBlock;
+import org.xwiki.rendering.block.ParagraphBlock;
+import org.xwiki.rendering.block.SpaceBlock;
+import org.xwiki.rendering.block.WordBlock;
+import org.xwiki.rendering.block.XDOM;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for {@link BlockListConverter}.
+ * 
+ * @version $Id$
+ * @since 1.0
+ */
+class BlockListConverterTest
+{
+    private BlockListConverter blockListConverter = new BlockListConverter();
+
+    @Test
+    void toListAndBack() throws Exception
+    {
+        WordBlock one = new WordBlock("one");
+        WordBlock two = new WordBlock("two");
+        ParagraphBlock paragraph = new ParagraphBlock(Arrays.asList(one, new SpaceBlock(), two));
+        XDOM xdom = new XDOM(Collections.singletonList(paragraph));
+        XDOM expected = xdom.clone();
+
+        FlatBlockList list = this.blockListConverter.toList(xdom);
+
+        assertEquals(10, list.size());
+        assertSame(xdom, list.get(0));
+        assertSame(paragraph, list.get(1));
+        assertSame(one, list.get(2));
+        assertTrue(list.get(3) instanceof EndBlock);
+        assertEquals(WordBlock.class, ((EndBlock) list.get(3)).getType());
+        assertEquals(9, list.getMatch(0));
+        assertEquals(0, list.getMatch(9));
+        assertEquals(8, list.getMatch(1));
+        assertEquals(2, list.getDepth(2));
+        assertEquals(2, list.getDepth(3));
+
+        Block actual = this.blockListConverter.fromList(list);
+        assertSame(xdom, actual);
+        assertEquals(expected.getChildren(), actual.getChildren());
+    }
+
+    @Test
+    void toListWithDeeplyNestedBlocks() throws Exception
+    {
+        int depth = 100000;
+        Block root = new GroupBlock(Collections.emptyList());
+        Block parent = root;
+        for (int i = 1; i < depth; i++) {
+            Block child = new GroupBlock(Collections.emptyList());
+            parent.addChild(child);
+            parent = child;
+        }
+
+        List<Block> list = this.blockListConverter.toList(root);
+
+        assertEquals(2 * depth, list.size());
+        assertEquals(depth - 1, ((FlatBlockList) list).getDepth(depth));
+        assertSame(root, this.blockListConverter.fromList(list));
+        Block leaf = root;
+        while (!leaf.getChildren().isEmpty()) {
+            leaf = leaf.getChildren().get(0);
+        }
+        assertSame(parent, leaf);
+    }
+
+    @Test
+    void copyFragment()
+    {
+        WordBlock one = new WordBlock("one");
+        WordBlock two = new WordBlock("two");
+        ParagraphBlock paragraph = new ParagraphBlock(Arrays.asList(one, new SpaceBlock(), two));
+        XDOM xdom = new XDOM(Collections.singletonList(paragraph));
+        FlatBlockList list = this.blockListConverter.toList(xdom);
+
+        // The paragraph is incomplete (its end is missing) but the first word is complete.
+        List<Block> copy = this.blockListConverter.copy(list.subList(1, 6));
+
+        assertEquals(5, copy.size());
+        assertTrue(copy.get(0) instanceof ParagraphBlock);
+        assertTrue(copy.get(0) != paragraph);
+        assertTrue(copy.get(0).getChildren().isEmpty());
+        assertEquals(one, copy.get(1));
+        assertTrue(copy.get(1) != one);
+        assertTrue(copy.get(2) instanceof EndBlock);
+        assertEquals(3, paragraph.getChildren().size());
+
+        // A subtree is complete only if its child blocks are found in the same order.
+        List<Block> reordered = Arrays.asList(paragraph, two, list.get(7), list.get(4), list.get(5), one, list.get(3),
+            list.get(8));
+        copy = this.blockListConverter.copy(reordered);
+
+        assertEquals(reordered.size(), copy.size());
+        assertTrue(copy.get(0).getChildren().isEmpty());
+        assertEquals(two, copy.get(1));
+    }
+
+    @Test
+    void copyWithoutChildren()
+    {
+        ParagraphBlock paragraph = new ParagraphBlock(Arrays.asList(new WordBlock("one"), new SpaceBlock()),
+            Collections.singletonMap("class", "note"));
+        XDOM xdom = new XDOM(Collections.singletonList(paragraph));
+
+        Block copy = this.blockListConverter.copyWithoutChildren(paragraph);
+
+        assertTrue(copy instanceof ParagraphBlock);
+        assertTrue(copy.getChildren().isEmpty());
+        assertEquals("note", copy.getParameter("class"));
+        // The copy doesn't share the parameters nor the child blocks of the copied block.
+        copy.setParameter("class", "warning");
+        copy.addChild(new WordBlock("two"));
+        assertEquals("note", paragraph.getParameter("class"));
+        assertEquals(2, paragraph.getChildren().size());
+        assertSame(xdom, paragraph.getParent());
+    }
+}
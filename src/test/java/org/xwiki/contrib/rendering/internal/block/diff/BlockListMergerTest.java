@@ -0,0 +1,115 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.io.StringReader;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffManager;
+import org.xwiki.contrib.rendering.block.diff.BlockMergeResult;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.XDOM;
+import org.xwiki.rendering.parser.Parser;
+import org.xwiki.rendering.renderer.BlockRenderer;
+import org.xwiki.rendering.renderer.printer.DefaultWikiPrinter;
+import org.xwiki.rendering.renderer.printer.WikiPrinter;
+import org.xwiki.test.annotation.AllComponents;
+import org.xwiki.test.junit5.mockito.ComponentTest;
+import org.xwiki.test.mockito.MockitoComponentManager;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Integration tests for {@link BlockListMerger}.
+ * 
+ * @version $Id$
+ * @since 1.0
+ */
+@ComponentTest
+@AllComponents
+class BlockListMergerTest
+{
+    private static final String COMMON = "= Title =\n\nOne two three.\n\nFour five six.\n\nSeven eight.";
+
+    private BlockDiffManager diffManager;
+
+    private Parser parser;
+
+    private BlockRenderer xhtmlRenderer;
+
+    @BeforeEach
+    void configure(MockitoComponentManager componentManager) throws Exception
+    {
+        this.diffManager = componentManager.getInstance(BlockDiffManager.class);
+        this.parser = componentManager.getInstance(Parser.class, "xwiki/2.1");
+        this.xhtmlRenderer = componentManager.getInstance(BlockRenderer.class, "xhtml/1.0");
+    }
+
+    @Test
+    void mergeWithoutConflicts() throws Exception
+    {
+        XDOM common = parse(COMMON);
+        String commonHTML = toHTML(common);
+        BlockMergeResult result = this.diffManager.merge(common,
+            parse("= Title =\n\nOne **two** three.\n\nFour five six.\n\nSeven eight."),
+            parse("= Title =\n\nOne two three.\n\nFour six.\n\nSeven eight.\n\nNine."));
+        assertFalse(result.hasConflicts());
+        assertEquals(toHTML(parse("= Title =\n\nOne **two** three.\n\nFour six.\n\nSeven eight.\n\nNine.")),
+            toHTML(result.getMerged()));
+        // The common ancestor is not modified.
+        assertEquals(commonHTML, toHTML(common));
+    }
+
+    @Test
+    void mergeSameChange() throws Exception
+    {
+        String changed = "= New Title =\n\nOne two three.\n\nFour five six.\n\nSeven eight.";
+        BlockMergeResult result = this.diffManager.merge(parse(COMMON), parse(changed), parse(changed));
+        assertFalse(result.hasConflicts());
+        assertEquals(toHTML(parse(changed)), toHTML(result.getMerged()));
+    }
+
+    @Test
+    void mergeWithConflicts() throws Exception
+    {
+        String previous = "= Title =\n\nOne deux three.\n\nFour five six.\n\nSeven eight.";
+        BlockMergeResult result = this.diffManager.merge(parse(COMMON), parse(previous),
+            parse("= Title =\n\nOne dos three.\n\nFour five six.\n\nSeven huit."));
+        assertTrue(result.hasConflicts());
+        assertEquals(1, result.getConflicts().size());
+        assertEquals(toHTML(parse("= Title =\n\nOne deux three.\n\nFour five six.\n\nSeven huit.")),
+            toHTML(result.getMerged()));
+    }
+
+    private XDOM parse(String source) throws Exception
+    {
+        return this.parser.parse(new StringReader(source));
+    }
+
+    private String toHTML(Block block)
+    {
+        WikiPrinter printer = new DefaultWikiPrinter();
+        this.xhtmlRenderer.render(block, printer);
+        return printer.toString();
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.io.StringReader;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffManager;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffMarker;
+import org.xwiki.contrib.rendering.block.diff.BlockModification;
+import org.xwiki.contrib.rendering.block.diff.BlockPatch;
+import org.xwiki.diff.Patch;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.TableBlock;
+import org.xwiki.rendering.block.XDOM;
+import org.xwiki.rendering.parser.Parser;
+import org.xwiki.rendering.renderer.BlockRenderer;
+import org.xwiki.rendering.renderer.printer.DefaultWikiPrinter;
+import org.xwiki.rendering.renderer.printer.WikiPrinter;
+import org.xwiki.test.annotation.AllComponents;
+import org.xwiki.test.junit5.mockito.ComponentTest;
+import org.xwiki.test.mockito.MockitoComponentManager;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Integration tests for {@link BlockModificationDetector}.
+ * 
+ * @version $Id$
+ * @since 1.0
+ */
+@ComponentTest
+@AllComponents
+class BlockModificationDetectorTest
+{
+    private static final String PREVIOUS = "(% class=\"old\" %)\n|=Name|=Value\n|first|1\n|second|2";
+
+    private static final String NEXT = "(% class=\"new\" %)\n|=Name|=Value\n|first|1\n|second|2";
+
+    private BlockDiffManager diffManager;
+
+    private BlockDiffMarker diffMarker;
+
+    private Parser parser;
+
+    private BlockRenderer xhtmlRenderer;
+
+    private MockitoComponentManager componentManager;
+
+    @BeforeEach
+    void configure(MockitoComponentManager componentManager) throws Exception
+    {
+        this.componentManager = componentManager;
+        this.diffManager = componentManager.getInstance(BlockDiffManager.class);
+        this.diffMarker = componentManager.getInstance(BlockDiffMarker.class);
+        this.parser = componentManager.getInstance(Parser.class, "xwiki/2.1");
+        this.xhtmlRenderer = componentManager.getInstance(BlockRenderer.class, "xhtml/1.0");
+    }
+
+    @Test
+    void diff() throws Exception
+    {
+        XDOM previous = parse(PREVIOUS);
+        XDOM next = parse(NEXT);
+        Patch<Block> patch = this.diffManager.diff(previous, next);
+
+        List<BlockModification> modifications = ((BlockPatch) patch).getModifications();
+        assertEquals(1, modifications.size());
+        // The table, right after the start of the document.
+        assertEquals(1, modifications.get(0).getPreviousIndex());
+        assertEquals(1, modifications.get(0).getNextIndex());
+        assertTrue(previous.getChildren().get(0) instanceof TableBlock);
+    }
+
+    @Test
+    void getDiffTree() throws Exception
+    {
+        XDOM previous = parse(PREVIOUS);
+        String html = toHTML(this.diffMarker.getDiffTree(previous, parse(NEXT)));
+
+        // The table is marked once, with the new class, and its content is not marked.
+        assertTrue(html.contains("data-xdom-diff=\"modified\""));
+        assertTrue(html.contains("data-xdom-diff-modified=\"class\""));
+        assertTrue(html.contains("class=\"new\""));
+        assertFalse(html.contains("class=\"old\""));
+        assertFalse(html.contains("data-xdom-diff=\"deleted\""));
+        assertFalse(html.contains("data-xdom-diff=\"inserted\""));
+        assertEquals(1, StringUtils.countMatches(html, "second"));
+
+        // The same with the side by side marker, which marks the table on both sides.
+        XDOM next = parse(NEXT);
+        BlockDiffMarker sideBySide = this.componentManager.getInstance(BlockDiffMarker.class, "sideBySide");
+        assertTrue(sideBySide.markDiff(previous, next));
+        assertEquals("modified",
+            previous.getChildren().get(0).getParameter(DefaultBlockDiffMarker.DIFF_MARKER_PARAMETER));
+        assertEquals("modified", next.getChildren().get(0).getParameter(DefaultBlockDiffMarker.DIFF_MARKER_PARAMETER));
+        assertFalse(toHTML(previous).contains("data-xdom-diff=\"deleted\""));
+    }
+
+    private XDOM parse(String content) throws Exception
+    {
+        return this.parser.parse(new StringReader(content));
+    }
+
+    private String toHTML(Block block)
+    {
+        WikiPrinter printer = new DefaultWikiPrinter();
+        this.xhtmlRenderer.render(block, printer);
+        return printer.toString();
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.io.StringReader;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffManager;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffMarker;
+import org.xwiki.contrib.rendering.block.diff.BlockMove;
+import org.xwiki.contrib.rendering.block.diff.BlockPatch;
+import org.xwiki.diff.Patch;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.XDOM;
+import org.xwiki.rendering.parser.Parser;
+import org.xwiki.rendering.renderer.BlockRenderer;
+import org.xwiki.rendering.renderer.printer.DefaultWikiPrinter;
+import org.xwiki.rendering.renderer.printer.WikiPrinter;
+import org.xwiki.test.annotation.AllComponents;
+import org.xwiki.test.junit5.mockito.ComponentTest;
+import org.xwiki.test.mockito.MockitoComponentManager;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Integration tests for {@link BlockMoveDetector}.
+ * 
+ * @version $Id$
+ * @since 1.0
+ */
+@ComponentTest
+@AllComponents
+class BlockMoveDetectorTest
+{
+    private static final String PREVIOUS = "Alpha beta gamma delta.\n\nSecond paragraph.\n\nThird paragraph.";
+
+    private static final String NEXT = "Second paragraph.\n\nThird paragraph.\n\nAlpha beta gamma delta.";
+
+    private BlockDiffManager diffManager;
+
+    private BlockDiffMarker diffMarker;
+
+    private Parser parser;
+
+    private BlockRenderer xhtmlRenderer;
+
+    @BeforeEach
+    void configure(MockitoComponentManager componentManager) throws Exception
+    {
+        this.diffManager = componentManager.getInstance(BlockDiffManager.class);
+        this.diffMarker = componentManager.getInstance(BlockDiffMarker.class);
+        this.parser = componentManager.getInstance(Parser.class, "xwiki/2.1");
+        this.xhtmlRenderer = componentManager.getInstance(BlockRenderer.class, "xhtml/1.0");
+    }
+
+    @Test
+    void diff() throws Exception
+    {
+        XDOM previous = parse(PREVIOUS);
+        XDOM next = parse(NEXT);
+        Patch<Block> patch = this.diffManager.diff(previous, next);
+
+        List<BlockMove> moves = ((BlockPatch) patch).getMoves();
+        assertEquals(1, moves.size());
+        // The first paragraph, right after the start of the document.
+        assertEquals(1, moves.get(0).getPreviousIndex());
+        assertEquals(2 * previous.getChildren().get(0).getChildren().size() + 2, moves.get(0).getSize());
+
+        // The moves don't change how the patch is applied.
+        assertEquals(toHTML(next), toHTML(this.diffManager.apply(previous, patch)));
+    }
+
+    @Test
+    void getDiffTree() throws Exception
+    {
+        String html = toHTML(this.diffMarker.getDiffTree(parse(PREVIOUS), parse(NEXT)));
+
+        // The moved paragraph is rendered once.
+        assertEquals(1, StringUtils.countMatches(html, "Alpha"));
+        assertTrue(html.contains("data-xdom-diff=\"moved-from\""));
+        assertTrue(html.contains("data-xdom-diff=\"moved-to\""));
+        assertEquals(2, StringUtils.countMatches(html, "data-xdom-diff-move=\"1\""));
+        assertTrue(html.indexOf("moved-to") > html.indexOf("Third"));
+    }
+
+    @Test
+    void smallSubtreesAreNotMoved() throws Exception
+    {
+        Patch<Block> patch = this.diffManager.diff(parse("One.\n\nTwo."), parse("Two.\n\nOne."));
+        assertTrue(((BlockPatch) patch).getMoves().isEmpty());
+    }
+
+    private XDOM parse(String content) throws Exception
+    {
+        return this.parser.parse(new StringReader(content));
+    }
+
+    private String toHTML(Block block)
+    {
+        WikiPrinter printer = new DefaultWikiPrinter();
+        this.xhtmlRenderer.render(block, printer);
+        return printer.toString();
+    }
+}
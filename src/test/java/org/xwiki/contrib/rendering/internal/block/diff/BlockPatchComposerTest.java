@@ -0,0 +1,139 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffManager;
+import org.xwiki.contrib.rendering.block.diff.BlockPatchCodec;
+import org.xwiki.diff.Patch;
+import org.xwiki.diff.PatchException;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.XDOM;
+import org.xwiki.rendering.parser.Parser;
+import org.xwiki.rendering.renderer.BlockRenderer;
+import org.xwiki.rendering.renderer.printer.DefaultWikiPrinter;
+import org.xwiki.rendering.renderer.printer.WikiPrinter;
+import org.xwiki.test.annotation.AllComponents;
+import org.xwiki.test.junit5.mockito.ComponentTest;
+import org.xwiki.test.mockito.MockitoComponentManager;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Integration tests for {@link BlockPatchComposer}.
+ * 
+ * @version $Id$
+ * @since 1.0
+ */
+@ComponentTest
+@AllComponents
+class BlockPatchComposerTest
+{
+    private static final String[] VERSIONS = {
+        "= Title =\n\nOne two three.\n\nFour five six.\n\nSeven eight.",
+        "= Title =\n\nOne **two** three.\n\nInserted paragraph.\n\nFour five six.\n\nSeven eight.",
+        "= New Title =\n\nOne **two** three.\n\nInserted //paragraph//.\n\nFour six.\n\nSeven eight.",
+        "= New Title =\n\nOne three.\n\nFour six.\n\nSeven eight nine.",
+        "= Title =\n\nOne two three.\n\nFour five six.\n\nSeven eight."
+    };
+
+    private BlockDiffManager diffManager;
+
+    private BlockPatchCodec codec;
+
+    private Parser parser;
+
+    private BlockRenderer xhtmlRenderer;
+
+    private BlockPatchComposer composer = new BlockPatchComposer();
+
+    @BeforeEach
+    void configure(MockitoComponentManager componentManager) throws Exception
+    {
+        this.diffManager = componentManager.getInstance(BlockDiffManager.class);
+        this.codec = componentManager.getInstance(BlockPatchCodec.class);
+        this.parser = componentManager.getInstance(Parser.class, "xwiki/2.1");
+        this.xhtmlRenderer = componentManager.getInstance(BlockRenderer.class, "xhtml/1.0");
+    }
+
+    @Test
+    void compose() throws Exception
+    {
+        List<Patch<Block>> patches = new ArrayList<>();
+        for (int i = 1; i < VERSIONS.length; i++) {
+            patches.add(this.diffManager.diff(parse(VERSIONS[i - 1]), parse(VERSIONS[i])));
+        }
+        for (int start = 0; start < patches.size(); start++) {
+            for (int end = start + 1; end <= patches.size(); end++) {
+                Patch<Block> patch = this.composer.compose(patches.subList(start, end));
+                Block next = this.diffManager.apply(parse(VERSIONS[start]), patch);
+                assertEquals(toHTML(parse(VERSIONS[end])), toHTML(next), start + " -> " + end);
+                Block previous = this.diffManager.restore(parse(VERSIONS[end]), patch);
+                assertEquals(toHTML(parse(VERSIONS[start])), toHTML(previous), start + " <- " + end);
+            }
+        }
+        assertTrue(this.composer.compose(Collections.emptyList()).isEmpty());
+    }
+
+    @Test
+    void composeForwardOnlyPatches() throws Exception
+    {
+        List<Patch<Block>> patches = new ArrayList<>();
+        for (int i = 1; i < VERSIONS.length - 1; i++) {
+            Patch<Block> patch = this.diffManager.diff(parse(VERSIONS[i - 1]), parse(VERSIONS[i]));
+            patches.add(this.codec.decode(ByteBuffer.wrap(this.codec.encode(patch, false))));
+        }
+        Patch<Block> patch = this.composer.compose(patches);
+        Block next = this.diffManager.apply(parse(VERSIONS[0]), patch);
+        assertEquals(toHTML(parse(VERSIONS[patches.size()])), toHTML(next));
+        assertThrows(PatchException.class, () -> this.composer.invert(patch));
+    }
+
+    @Test
+    void invert() throws Exception
+    {
+        for (int i = 1; i < VERSIONS.length; i++) {
+            Patch<Block> inverse =
+                this.composer.invert(this.diffManager.diff(parse(VERSIONS[i - 1]), parse(VERSIONS[i])));
+            assertEquals(toHTML(parse(VERSIONS[i - 1])), toHTML(this.diffManager.apply(parse(VERSIONS[i]), inverse)));
+        }
+    }
+
+    private XDOM parse(String source) throws Exception
+    {
+        return this.parser.parse(new StringReader(source));
+    }
+
+    private String toHTML(Block block)
+    {
+        WikiPrinter printer = new DefaultWikiPrinter();
+        this.xhtmlRenderer.render(block, printer);
+        return printer.toString();
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.util.Collections;
+import java.util.Objects;
+
+import org.junit.jupiter.api.Test;
+import org.xwiki.rendering.block.AbstractBlock;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.ParagraphBlock;
+import org.xwiki.rendering.block.XDOM;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for {@link BlockSequences}.
+ * 
+ * @version $Id$
+ * @since 1.0
+ */
+class BlockSequencesTest
+{
+    /**
+     * Block data that is hashed with {@link Object#hashCode()}.
+     */
+    private static final class Data
+    {
+        private final int value;
+
+        Data(int value)
+        {
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            return obj instanceof Data && ((Data) obj).value == this.value;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            // All the values collide.
+            return 0;
+        }
+    }
+
+    private static final class DataBlock extends AbstractBlock
+    {
+        private final Data data;
+
+        DataBlock(Data data)
+        {
+            this.data = data;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            return obj instanceof DataBlock && super.equals(obj) && Objects.equals(((DataBlock) obj).data, this.data);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return super.hashCode();
+        }
+    }
+
+    private final BlockListConverter blockListConverter = new BlockListConverter();
+
+    @Test
+    void subtreeEqualsWithHashCollision()
+    {
+        FlatBlockList previous = this.blockListConverter.toList(createTree(1));
+        FlatBlockList next = this.blockListConverter.toList(createTree(2));
+        BlockSequences sequences = new BlockSequences(previous, next, new ShallowBlockComparator());
+
+        // The subtree hashes collide but the subtrees are different.
+        assertEquals(sequences.getPreviousSubtreeHash(0), sequences.getNextSubtreeHash(0));
+        assertFalse(sequences.subtreeEquals(0, 0));
+        assertFalse(sequences.subtreeEquals(1, 1));
+        assertFalse(new BlockListDiffer().diff(previous, next).isEmpty());
+
+        FlatBlockList same = this.blockListConverter.toList(createTree(1));
+        sequences = new BlockSequences(previous, same, new ShallowBlockComparator());
+        assertTrue(sequences.subtreeEquals(0, 0));
+        // The verified match is remembered.
+        assertTrue(sequences.subtreeEquals(0, 0));
+        assertTrue(new BlockListDiffer().diff(previous, same).isEmpty());
+    }
+
+    private Block createTree(int value)
+    {
+        return new XDOM(Collections.singletonList(
+            new ParagraphBlock(Collections.singletonList(new DataBlock(new Data(value))))));
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffCache;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffConfiguration;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffManager;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffMarker;
+import org.xwiki.diff.Delta;
+import org.xwiki.diff.Patch;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.XDOM;
+import org.xwiki.rendering.parser.Parser;
+import org.xwiki.test.annotation.AllComponents;
+import org.xwiki.test.junit5.mockito.ComponentTest;
+import org.xwiki.test.mockito.MockitoComponentManager;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Integration tests for {@link CachedBlockDiffManager} and {@link CachedBlockDiffMarker}.
+ * 
+ * @version $Id$
+ * @since 1.0
+ */
+@ComponentTest
+@AllComponents
+class CachedBlockDiffManagerTest
+{
+    private BlockDiffManager diffManager;
+
+    private BlockDiffMarker diffMarker;
+
+    private Parser parser;
+
+    @BeforeEach
+    void configure(MockitoComponentManager componentManager) throws Exception
+    {
+        this.diffManager = componentManager.getInstance(BlockDiffManager.class, "cached");
+        this.diffMarker = componentManager.getInstance(BlockDiffMarker.class, "cached");
+        this.parser = componentManager.getInstance(Parser.class, "xwiki/2.1");
+        ((BlockDiffCache) this.diffManager).clear();
+        ((BlockDiffCache) this.diffMarker).clear();
+    }
+
+    @Test
+    void diffWithKeys() throws Exception
+    {
+        BlockDiffConfiguration configuration = new BlockDiffConfiguration();
+        configuration.setKeys("Main.WebHome@1.1", "Main.WebHome@2.1");
+        Patch<Block> patch = this.diffManager.diff(parse("one two"), parse("one three"), configuration);
+        assertEquals(1, patch.size());
+
+        // The keys identify the content so the blocks are not compared nor hashed.
+        assertSame(patch, this.diffManager.diff(parse("other"), parse("content"), configuration));
+        assertEquals(1, ((BlockDiffCache) this.diffManager).getStatistics().getHitCount());
+
+        // Without the keys the content is hashed.
+        Patch<Block> hashedPatch = this.diffManager.diff(parse("one two"), parse("one three"));
+        assertNotSame(patch, hashedPatch);
+        assertSame(hashedPatch, this.diffManager.diff(parse("one two"), parse("one three")));
+    }
+
+    @Test
+    void cachedPatchDoesNotReferenceTheComparedBlocks() throws Exception
+    {
+        XDOM previous = parse("= Title =\n\none **two** three\n\nfour");
+        XDOM next = parse("= Title =\n\none **five** six three\n\nfour\n\nseven");
+        Patch<Block> patch = this.diffManager.diff(previous, next);
+        assertFalse(patch.isEmpty());
+
+        Set<Block> compared = Collections.newSetFromMap(new IdentityHashMap<>());
+        compared.addAll(new BlockListConverter().toList(previous));
+        compared.addAll(new BlockListConverter().toList(next));
+
+        // Walk everything that is reachable from the blocks of the cached patch.
+        Set<Block> reachable = Collections.newSetFromMap(new IdentityHashMap<>());
+        // The parent and the siblings can be null.
+        Deque<Block> stack = new LinkedList<>();
+        for (Delta<Block> delta : patch) {
+            delta.getPrevious().getElements().forEach(stack::push);
+            delta.getNext().getElements().forEach(stack::push);
+        }
+        while (!stack.isEmpty()) {
+            Block block = stack.pop();
+            if (block != null && reachable.add(block)) {
+                assertFalse(compared.contains(block), "The cached patch references a compared block");
+                stack.push(block.getParent());
+                stack.push(block.getPreviousSibling());
+                stack.push(block.getNextSibling());
+                block.getChildren().forEach(stack::push);
+            }
+        }
+    }
+
+    @Test
+    void getDiffTreeIsShared() throws Exception
+    {
+        BlockDiffConfiguration configuration = new BlockDiffConfiguration();
+        configuration.setKeys("Main.WebHome@1.1", "Main.WebHome@2.1");
+        Block diffTree = this.diffMarker.getDiffTree(parse("one two"), parse("one three"), configuration);
+
+        // The cached diff tree is returned without copying it.
+        assertSame(diffTree, this.diffMarker.getDiffTree(parse("one two"), parse("one three"), configuration));
+        assertEquals(1, ((BlockDiffCache) this.diffMarker).getStatistics().getHitCount());
+    }
+
+    private XDOM parse(String content) throws Exception
+    {
+        return this.parser.parse(new StringReader(content));
+    }
+}
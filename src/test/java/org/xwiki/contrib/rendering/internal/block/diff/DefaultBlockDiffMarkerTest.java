@@ -25,16 +25,25 @@ import java.io.StringReader;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Stream;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffAlgorithm;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffConfiguration;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffSession;
+import org.xwiki.contrib.rendering.block.diff.BlockPatch;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.WordBlock;
 import org.xwiki.rendering.block.XDOM;
 import org.xwiki.rendering.parser.Parser;
 import org.xwiki.rendering.renderer.BlockRenderer;
+import org.xwiki.rendering.renderer.PrintRendererFactory;
 import org.xwiki.rendering.renderer.printer.DefaultWikiPrinter;
 import org.xwiki.rendering.renderer.printer.WikiPrinter;
 import org.xwiki.test.annotation.AllComponents;
@@ -43,6 +52,8 @@ import org.xwiki.test.junit5.mockito.InjectMockComponents;
 import org.xwiki.test.mockito.MockitoComponentManager;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * Integration tests for {@link DefaultBlockDiffMarker}.
@@ -61,11 +72,14 @@ class DefaultBlockDiffMarkerTest
 
     private BlockRenderer xhtmlRenderer;
 
+    private PrintRendererFactory xhtmlRendererFactory;
+
     @BeforeEach
     void configure(MockitoComponentManager componentManager) throws Exception
     {
         this.parser = componentManager.getInstance(Parser.class, "xwiki/2.1");
         this.xhtmlRenderer = componentManager.getInstance(BlockRenderer.class, "xhtml/1.0");
+        this.xhtmlRendererFactory = componentManager.getInstance(PrintRendererFactory.class, "xhtml/1.0");
     }
 
     @ParameterizedTest
@@ -85,7 +99,143 @@ class DefaultBlockDiffMarkerTest
         }
     }
 
-    String toHTML(XDOM xdom)
+    @ParameterizedTest
+    @MethodSource("getTestFiles")
+    void getDiffTree(File testFile) throws Exception
+    {
+        Map<String, String> testData = getTestData(testFile);
+        if (testData.containsKey("expected-marker")) {
+            XDOM left = this.parser.parse(new StringReader(testData.get("left")));
+            XDOM right = this.parser.parse(new StringReader(testData.get("right")));
+            String leftHTML = toHTML(left);
+            String rightHTML = toHTML(right);
+            Block diffTree = this.diffMarker.getDiffTree(left, right);
+            assertEquals(testData.get("expected-marker"), toHTML(diffTree));
+            // The compared trees are not modified.
+            assertEquals(leftHTML, toHTML(left));
+            assertEquals(rightHTML, toHTML(right));
+
+            for (BlockDiffAlgorithm algorithm : BlockDiffAlgorithm.values()) {
+                BlockDiffConfiguration configuration = new BlockDiffConfiguration();
+                configuration.setAlgorithm(algorithm);
+                assertEquals(testData.get("expected-marker"),
+                    toHTML(this.diffMarker.getDiffTree(left, right, configuration)), algorithm.name());
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("getTestFiles")
+    void streamDiff(File testFile) throws Exception
+    {
+        Map<String, String> testData = getTestData(testFile);
+        if (testData.containsKey("expected-marker")) {
+            XDOM left = this.parser.parse(new StringReader(testData.get("left")));
+            XDOM right = this.parser.parse(new StringReader(testData.get("right")));
+            String leftHTML = toHTML(left);
+            WikiPrinter printer = new DefaultWikiPrinter();
+            this.diffMarker.streamDiff(left, right, this.xhtmlRendererFactory.createRenderer(printer), null);
+            assertEquals(testData.get("expected-marker"), printer.toString());
+            // The compared trees are not modified.
+            assertEquals(leftHTML, toHTML(left));
+        }
+    }
+
+    @Test
+    void getDiffTreeInParallel() throws Exception
+    {
+        StringBuilder leftSource = new StringBuilder();
+        StringBuilder rightSource = new StringBuilder();
+        for (int section = 0; section < 50; section++) {
+            leftSource.append("= Section ").append(section).append(" =\n\n");
+            rightSource.append("= Section ").append(section).append(" =\n\n");
+            for (int paragraph = 0; paragraph < 20; paragraph++) {
+                String text = "Paragraph " + paragraph + " of section " + section + " with some more words.\n\n";
+                leftSource.append(text);
+                rightSource.append(section % 7 == 0 && paragraph == 3 ? text.replace("more", "other") : text);
+            }
+        }
+        XDOM left = this.parser.parse(new StringReader(leftSource.toString()));
+        XDOM right = this.parser.parse(new StringReader(rightSource.toString()));
+
+        BlockDiffConfiguration configuration = new BlockDiffConfiguration();
+        configuration.setForkJoinPool(new ForkJoinPool(4));
+        try {
+            assertEquals(toHTML(this.diffMarker.getDiffTree(left, right)),
+                toHTML(this.diffMarker.getDiffTree(left, right, configuration)));
+        } finally {
+            configuration.getForkJoinPool().shutdown();
+        }
+    }
+
+    @Test
+    void getDiffTreeWithinBudget() throws Exception
+    {
+        StringBuilder leftSource = new StringBuilder();
+        StringBuilder rightSource = new StringBuilder();
+        for (int paragraph = 0; paragraph < 100; paragraph++) {
+            leftSource.append("Paragraph ").append(paragraph).append(" with some words.\n\n");
+            rightSource.append("Rewritten ").append(paragraph % 3 == 0 ? "paragraph" : paragraph).append(".\n\n");
+        }
+        XDOM left = this.parser.parse(new StringReader(leftSource.toString()));
+        XDOM right = this.parser.parse(new StringReader(rightSource.toString()));
+
+        BlockDiffConfiguration configuration = new BlockDiffConfiguration();
+        configuration.setMaximumComparisons(1);
+        DefaultBlockDiffManager diffManager = new DefaultBlockDiffManager();
+        BlockPatch patch = (BlockPatch) diffManager.diff(left, right, configuration);
+        assertTrue(patch.isDegraded());
+        // The coarse patch is still valid.
+        assertEquals(toHTML(right), toHTML(diffManager.apply(left, patch)));
+        assertFalse(((BlockPatch) diffManager.diff(left, right)).isDegraded());
+
+        Block diffTree = this.diffMarker.getDiffTree(left, right, configuration);
+        assertEquals(Boolean.TRUE.toString(), diffTree.getParameter(DefaultBlockDiffMarker.DEGRADED_PARAMETER));
+    }
+
+    @Test
+    void session() throws Exception
+    {
+        StringBuilder source = new StringBuilder();
+        for (int paragraph = 0; paragraph < 20; paragraph++) {
+            source.append("Paragraph ").append(paragraph).append(" with some words.\n\n");
+        }
+        XDOM left = this.parser.parse(new StringReader(source.toString()));
+        XDOM right = this.parser.parse(new StringReader(source.toString().replace("Paragraph 5", "Paragraph five")));
+        String rightHTML = toHTML(right);
+
+        BlockDiffSession session = this.diffMarker.createSession(left, right, null);
+        assertEquals(toHTML(this.diffMarker.getDiffTree(left, right)), toHTML(session.getDiffTree()));
+
+        // Replace a paragraph, then a word from the same paragraph, then a paragraph that was not modified. The session
+        // must give the same result as a full comparison.
+        session.replace(new int[] {5}, parseParagraph("Paragraph 5 with more words."));
+        assertSessionDiffTree(left, session);
+        session.replace(new int[] {5, 6}, new WordBlock("less"));
+        assertSessionDiffTree(left, session);
+        session.replace(new int[] {12}, parseParagraph("New paragraph."));
+        assertSessionDiffTree(left, session);
+        // The right side given when the session was created is not modified.
+        assertEquals(rightHTML, toHTML(right));
+
+        String expectedHTML = toHTML(this.parser.parse(new StringReader(source.toString()
+            .replace("Paragraph 5 with some", "Paragraph 5 with less").replace("Paragraph 12 with some words.",
+                "New paragraph."))));
+        assertEquals(expectedHTML, toHTML(session.getRight()));
+        assertEquals(expectedHTML, toHTML(new DefaultBlockDiffManager().apply(left, session.getPatch())));
+    }
+
+    private void assertSessionDiffTree(Block left, BlockDiffSession session) throws Exception
+    {
+        assertEquals(toHTML(this.diffMarker.getDiffTree(left, session.getRight())), toHTML(session.getDiffTree()));
+    }
+
+    private Block parseParagraph(String source) throws Exception
+    {
+        return this.parser.parse(new StringReader(source)).getChildren().get(0);
+    }
+
+    String toHTML(Block xdom)
     {
         WikiPrinter printer = new DefaultWikiPrinter();
         this.xhtmlRenderer.render(xdom, printer);
@@ -119,6 +269,9 @@ class DefaultBlockDiffMarkerTest
                     line = StringUtils.stripStart(line, null);
                     // Remove line ending (in order to ignore formatting).
                     line = StringUtils.chomp(line);
+                } else if (data.length() > 0) {
+                    // Keep the line breaks of the input (e.g. between paragraphs).
+                    data.append('\n');
                 }
                 data.append(line);
             }
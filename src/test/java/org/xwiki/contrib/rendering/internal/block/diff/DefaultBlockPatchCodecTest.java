@@ -0,0 +1,172 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.io.StringReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffManager;
+import org.xwiki.contrib.rendering.block.diff.BlockPatchCodec;
+import org.xwiki.contrib.rendering.block.diff.BlockPatchStore;
+import org.xwiki.contrib.rendering.block.diff.BlockPatchStoreFactory;
+import org.xwiki.diff.Patch;
+import org.xwiki.diff.PatchException;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.XDOM;
+import org.xwiki.rendering.parser.Parser;
+import org.xwiki.rendering.renderer.BlockRenderer;
+import org.xwiki.rendering.renderer.printer.DefaultWikiPrinter;
+import org.xwiki.rendering.renderer.printer.WikiPrinter;
+import org.xwiki.test.annotation.AllComponents;
+import org.xwiki.test.junit5.mockito.ComponentTest;
+import org.xwiki.test.mockito.MockitoComponentManager;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Integration tests for {@link DefaultBlockPatchCodec} and {@link DefaultBlockPatchStoreFactory}.
+ * 
+ * @version $Id$
+ * @since 1.0
+ */
+@ComponentTest
+@AllComponents
+class DefaultBlockPatchCodecTest
+{
+    private static final String[] VERSIONS = {
+        "= Title =\n\nOne **two** three.\n\n* [[link>>Space.Page]]\n* image:photo.png",
+        "= New Title =\n\nOne //two// three four.\n\n* [[label>>https://www.xwiki.org]]\n* image:photo.png",
+        "{{info}}\nMacro //content//.\n{{/info}}\n\n|=A|=B\n|one|two\n\nOne //two// three four.",
+        "{{{verbatim}}}\n\n----\n\nOne //two// four.\n\n{{info}}\nMacro content.\n{{/info}}"
+    };
+
+    private BlockPatchCodec codec;
+
+    private BlockPatchStoreFactory storeFactory;
+
+    private BlockDiffManager diffManager;
+
+    private Parser parser;
+
+    private BlockRenderer xhtmlRenderer;
+
+    @BeforeEach
+    void configure(MockitoComponentManager componentManager) throws Exception
+    {
+        this.codec = componentManager.getInstance(BlockPatchCodec.class);
+        this.storeFactory = componentManager.getInstance(BlockPatchStoreFactory.class);
+        this.diffManager = componentManager.getInstance(BlockDiffManager.class);
+        this.parser = componentManager.getInstance(Parser.class, "xwiki/2.1");
+        this.xhtmlRenderer = componentManager.getInstance(BlockRenderer.class, "xhtml/1.0");
+    }
+
+    @Test
+    void encodeAndDecode() throws Exception
+    {
+        for (int i = 1; i < VERSIONS.length; i++) {
+            XDOM previous = parse(VERSIONS[i - 1]);
+            XDOM next = parse(VERSIONS[i]);
+            Patch<Block> patch = this.diffManager.diff(previous, next);
+
+            Patch<Block> reversible = this.codec.decode(ByteBuffer.wrap(this.codec.encode(patch, true)));
+            assertEquals(toHTML(next), toHTML(this.diffManager.apply(parse(VERSIONS[i - 1]), reversible)));
+            assertEquals(toHTML(previous), toHTML(this.diffManager.restore(next, reversible)));
+
+            Patch<Block> forward = this.codec.decode(ByteBuffer.wrap(this.codec.encode(patch, false)));
+            assertEquals(toHTML(next), toHTML(this.diffManager.apply(parse(VERSIONS[i - 1]), forward)));
+            XDOM nextCopy = parse(VERSIONS[i]);
+            assertThrows(PatchException.class, () -> this.diffManager.restore(nextCopy, forward));
+
+            // The forward patch can also be applied and verified through the Patch interface.
+            BlockListConverter converter = new BlockListConverter();
+            List<Block> previousList = converter.toList(parse(VERSIONS[i - 1]));
+            for (int j = 0; j < forward.size(); j++) {
+                forward.get(j).verify(previousList);
+            }
+            assertEquals(toHTML(next), toHTML(converter.fromList(forward.apply(previousList))));
+            List<Block> nextList = converter.toList(parse(VERSIONS[i]));
+            assertThrows(PatchException.class, () -> forward.restore(nextList));
+        }
+    }
+
+    @Test
+    void store(@TempDir Path tempDir) throws Exception
+    {
+        Path file = tempDir.resolve("patches");
+        try (BlockPatchStore store = this.storeFactory.open(file, false)) {
+            for (int i = 1; i < VERSIONS.length; i++) {
+                assertEquals(i - 1, store.add(this.diffManager.diff(parse(VERSIONS[i - 1]), parse(VERSIONS[i]))));
+            }
+        }
+
+        try (BlockPatchStore store = this.storeFactory.open(file, false)) {
+            assertEquals(VERSIONS.length - 1, store.size());
+            Block version = parse(VERSIONS[0]);
+            for (int i = 0; i < store.size(); i++) {
+                version = this.diffManager.apply(version, store.get(i));
+            }
+            assertEquals(toHTML(parse(VERSIONS[VERSIONS.length - 1])), toHTML(version));
+        }
+    }
+
+    @Test
+    void storeWithIncompletePatch(@TempDir Path tempDir) throws Exception
+    {
+        Path file = tempDir.resolve("patches");
+        try (BlockPatchStore store = this.storeFactory.open(file, true)) {
+            store.add(this.diffManager.diff(parse(VERSIONS[0]), parse(VERSIONS[1])));
+        }
+        long size = Files.size(file);
+        // Simulate a patch that was not completely written.
+        Files.write(file, new byte[] {0, 0, 1, 0, 42}, StandardOpenOption.APPEND);
+
+        // The file is not modified when it's opened.
+        assertThrows(IOException.class, () -> this.storeFactory.open(file, true));
+        assertEquals(size + 5, Files.size(file));
+
+        assertEquals(5, this.storeFactory.recover(file));
+        try (BlockPatchStore store = this.storeFactory.open(file, true)) {
+            assertEquals(1, store.size());
+            assertEquals(toHTML(parse(VERSIONS[0])), toHTML(this.diffManager.restore(parse(VERSIONS[1]),
+                store.get(0))));
+        }
+    }
+
+    private XDOM parse(String source) throws Exception
+    {
+        return this.parser.parse(new StringReader(source));
+    }
+
+    private String toHTML(Block block)
+    {
+        WikiPrinter printer = new DefaultWikiPrinter();
+        this.xhtmlRenderer.render(block, printer);
+        return printer.toString();
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import org.junit.jupiter.api.Test;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffCacheStatistics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Unit tests for {@link DiffResultCache}.
+ * 
+ * @version $Id$
+ * @since 1.0
+ */
+class DiffResultCacheTest
+{
+    @Test
+    void evictLeastRecentlyUsed()
+    {
+        DiffResultCache<String, String> cache = new DiffResultCache<>();
+        cache.setMaximumWeight(100);
+        cache.put("a", "alice", 40);
+        cache.put("b", "bob", 40);
+        assertEquals("alice", cache.get("a"));
+
+        // Evicts "b" because "a" has been used more recently.
+        cache.put("c", "carol", 40);
+        assertNull(cache.get("b"));
+        assertEquals("alice", cache.get("a"));
+        assertEquals("carol", cache.get("c"));
+
+        // Results larger than the cache are not cached.
+        cache.put("d", "dave", 101);
+        assertNull(cache.get("d"));
+
+        BlockDiffCacheStatistics statistics = cache.getStatistics();
+        assertEquals(3, statistics.getHitCount());
+        assertEquals(2, statistics.getMissCount());
+        assertEquals(1, statistics.getEvictionCount());
+        assertEquals(2, statistics.getSize());
+        assertEquals(80, statistics.getWeight());
+
+        cache.setMaximumWeight(50);
+        assertEquals(1, cache.getStatistics().getSize());
+        assertEquals("carol", cache.get("c"));
+
+        cache.clear();
+        assertEquals(0, cache.getStatistics().getWeight());
+        assertNull(cache.get("c"));
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffManager;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffMarker;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffMetrics;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffMetricsListener;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffPhase;
+import org.xwiki.rendering.block.XDOM;
+import org.xwiki.rendering.parser.Parser;
+import org.xwiki.test.annotation.AllComponents;
+import org.xwiki.test.junit5.mockito.ComponentTest;
+import org.xwiki.test.mockito.MockitoComponentManager;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for {@link JMXBlockDiffMetricsListener}.
+ * 
+ * @version $Id$
+ * @since 1.0
+ */
+@ComponentTest
+@AllComponents
+class JMXBlockDiffMetricsListenerTest
+{
+    private JMXBlockDiffMetricsListener listener;
+
+    private List<BlockDiffMetrics> metrics = new ArrayList<>();
+
+    private BlockDiffManager diffManager;
+
+    private BlockDiffMarker diffMarker;
+
+    private Parser parser;
+
+    @BeforeEach
+    void configure(MockitoComponentManager componentManager) throws Exception
+    {
+        // The listener has to be turned on before it is created.
+        System.setProperty(JMXBlockDiffMetricsListener.ENABLED_PROPERTY, "true");
+        this.listener = componentManager.getInstance(BlockDiffMetricsListener.class, "jmx");
+        // The listeners have to be registered before the diff components are created.
+        BlockDiffMetricsListener collector = this.metrics::add;
+        componentManager.registerComponent(BlockDiffMetricsListener.class, "test", collector);
+        this.diffManager = componentManager.getInstance(BlockDiffManager.class);
+        this.diffMarker = componentManager.getInstance(BlockDiffMarker.class);
+        this.parser = componentManager.getInstance(Parser.class, "xwiki/2.1");
+    }
+
+    @AfterEach
+    void tearDown() throws Exception
+    {
+        System.clearProperty(JMXBlockDiffMetricsListener.ENABLED_PROPERTY);
+        this.listener.dispose();
+    }
+
+    @Test
+    void onDiff() throws Exception
+    {
+        XDOM previous = parse("One two three.\n\nFour five.");
+        XDOM next = parse("One three.\n\nFour five six.");
+
+        assertFalse(this.diffManager.diff(previous, next).isEmpty());
+        assertTrue(this.diffMarker.markDiff(previous, next));
+
+        BlockDiffStatistics statistics = this.listener.getStatistics();
+        assertEquals(2, statistics.getOperationCount());
+        assertTrue(statistics.getDeltaCount() > 0);
+        assertEquals(0, statistics.getDegradedOperationCount());
+        assertTrue(statistics.getMarkedBlockCount() > 0);
+        assertTrue(statistics.getEstimatedAllocation() > 0);
+        assertEquals(BlockDiffPhase.values().length, statistics.getPhaseTimes().size());
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = new ObjectName(JMXBlockDiffMetricsListener.OBJECT_NAME);
+        assertEquals(2L, server.getAttribute(objectName, "OperationCount"));
+
+        server.invoke(objectName, "reset", null, null);
+        assertEquals(0, statistics.getOperationCount());
+
+        this.listener.dispose();
+        assertFalse(server.isRegistered(objectName));
+    }
+
+    @Test
+    void onMerge() throws Exception
+    {
+        XDOM common = parse("One two three.");
+        XDOM previous = parse("One three.");
+        XDOM next = parse("One two three four.");
+
+        assertFalse(this.diffManager.merge(common, previous, next).hasConflicts());
+
+        assertEquals(1, this.metrics.size());
+        BlockDiffMetrics mergeMetrics = this.metrics.get(0);
+        assertEquals("merge", mergeMetrics.getOperation());
+        assertTrue(mergeMetrics.getDuration(BlockDiffPhase.MERGE) > 0);
+        assertEquals(0, mergeMetrics.getDuration(BlockDiffPhase.MARK));
+        assertEquals(1, this.listener.getStatistics().getOperationCount());
+    }
+
+    @Test
+    void disabledByDefault() throws Exception
+    {
+        this.listener.dispose();
+        System.clearProperty(JMXBlockDiffMetricsListener.ENABLED_PROPERTY);
+
+        JMXBlockDiffMetricsListener defaultListener = new JMXBlockDiffMetricsListener();
+        defaultListener.initialize();
+        assertFalse(defaultListener.isEnabled());
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        assertFalse(server.isRegistered(new ObjectName(JMXBlockDiffMetricsListener.OBJECT_NAME)));
+
+        // Disabled listeners are not notified and don't turn the measurements on.
+        DiffMetricsRecorder recorder =
+            DiffMetricsRecorder.start("diff", Collections.<BlockDiffMetricsListener>singletonList(defaultListener));
+        assertSame(DiffMetricsRecorder.disabled(), recorder);
+        defaultListener.dispose();
+    }
+
+    private XDOM parse(String content) throws Exception
+    {
+        return this.parser.parse(new StringReader(content));
+    }
+}
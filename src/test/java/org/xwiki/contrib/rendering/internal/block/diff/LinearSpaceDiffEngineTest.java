@@ -0,0 +1,178 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for {@link LinearSpaceDiffEngine}.
+ * 
+ * @version $Id$
+ * @since 1.0
+ */
+class LinearSpaceDiffEngineTest
+{
+    private static final class KeySequences implements DiffSequences
+    {
+        private final long[] previous;
+
+        private final long[] next;
+
+        KeySequences(long[] previous, long[] next)
+        {
+            this.previous = previous;
+            this.next = next;
+        }
+
+        @Override
+        public long getPreviousKey(int index)
+        {
+            return this.previous[index];
+        }
+
+        @Override
+        public long getNextKey(int index)
+        {
+            return this.next[index];
+        }
+
+        @Override
+        public boolean equals(int previousIndex, int nextIndex)
+        {
+            return this.previous[previousIndex] == this.next[nextIndex];
+        }
+    }
+
+    private final MyersDiffEngine myersDiffEngine = new MyersDiffEngine();
+
+    private final LinearSpaceDiffEngine linearSpaceDiffEngine = new LinearSpaceDiffEngine(this.myersDiffEngine);
+
+    @Test
+    void sameEditDistanceAsMyers()
+    {
+        Random random = new Random(42);
+        for (int i = 0; i < 50; i++) {
+            int alphabetSize = i % 3 == 0 ? 3 : 50;
+            long[] previous = random(random, 1000 + random.nextInt(1000), alphabetSize);
+            long[] next = i % 5 == 0 ? random(random, random.nextInt(2000), alphabetSize)
+                : edit(random, previous, alphabetSize);
+            KeySequences sequences = new KeySequences(previous, next);
+
+            EditScript expected = new EditScript();
+            this.myersDiffEngine.diff(sequences, 0, previous.length, 0, next.length, expected);
+            EditScript actual = new EditScript();
+            this.linearSpaceDiffEngine.diff(sequences, 0, previous.length, 0, next.length, actual);
+
+            assertEquals(getEditDistance(expected), getEditDistance(actual));
+            assertTrue(transforms(actual, previous, next));
+        }
+    }
+
+    @Test
+    void largeEditDistance()
+    {
+        // The Myers algorithm would need hundreds of millions of integers to backtrack this edit script.
+        Random random = new Random(42);
+        long[] previous = random(random, 10000, 1000);
+        long[] next = random(random, 10000, 1000);
+
+        EditScript script = new EditScript();
+        this.linearSpaceDiffEngine.diff(new KeySequences(previous, next), 0, previous.length, 0, next.length, script);
+
+        assertTrue(transforms(script, previous, next));
+    }
+
+    private long[] random(Random random, int size, int alphabetSize)
+    {
+        long[] keys = new long[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = random.nextInt(alphabetSize);
+        }
+        return keys;
+    }
+
+    /**
+     * Deletes, inserts and keeps random elements.
+     */
+    private long[] edit(Random random, long[] keys, int alphabetSize)
+    {
+        List<Long> edited = new ArrayList<>();
+        for (long key : keys) {
+            int operation = random.nextInt(10);
+            if (operation == 1) {
+                edited.add((long) random.nextInt(alphabetSize));
+            }
+            if (operation != 0) {
+                edited.add(key);
+            }
+        }
+        return edited.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private int getEditDistance(EditScript script)
+    {
+        int distance = 0;
+        for (int i = 0; i < script.size(); i++) {
+            distance += script.getPreviousEnd(i) - script.getPreviousStart(i) + script.getNextEnd(i)
+                - script.getNextStart(i);
+        }
+        return distance;
+    }
+
+    /**
+     * @return {@code true} if applying the given edit script to the previous sequence produces the next sequence
+     */
+    private boolean transforms(EditScript script, long[] previous, long[] next)
+    {
+        List<Long> result = new ArrayList<>();
+        int position = 0;
+        for (int i = 0; i < script.size(); i++) {
+            if (script.getPreviousStart(i) < position) {
+                return false;
+            }
+            for (; position < script.getPreviousStart(i); position++) {
+                result.add(previous[position]);
+            }
+            for (int j = script.getNextStart(i); j < script.getNextEnd(i); j++) {
+                result.add(next[j]);
+            }
+            position = script.getPreviousEnd(i);
+        }
+        for (; position < previous.length; position++) {
+            result.add(previous[position]);
+        }
+        if (result.size() != next.length) {
+            return false;
+        }
+        for (int i = 0; i < next.length; i++) {
+            if (result.get(i) != next[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
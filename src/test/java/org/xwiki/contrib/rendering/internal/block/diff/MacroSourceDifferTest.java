@@ -0,0 +1,153 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffConfiguration;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffMacroMode;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffManager;
+import org.xwiki.diff.Delta;
+import org.xwiki.diff.Patch;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.MacroMarkerBlock;
+import org.xwiki.rendering.block.ParagraphBlock;
+import org.xwiki.rendering.block.WordBlock;
+import org.xwiki.rendering.block.XDOM;
+import org.xwiki.test.annotation.AllComponents;
+import org.xwiki.test.junit5.mockito.ComponentTest;
+import org.xwiki.test.mockito.MockitoComponentManager;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Integration tests for {@link MacroSourceDiffer}.
+ * 
+ * @version $Id$
+ * @since 1.0
+ */
+@ComponentTest
+@AllComponents
+class MacroSourceDifferTest
+{
+    private BlockDiffManager diffManager;
+
+    @BeforeEach
+    void configure(MockitoComponentManager componentManager) throws Exception
+    {
+        this.diffManager = componentManager.getInstance(BlockDiffManager.class);
+    }
+
+    @Test
+    void unchangedMacroIsNotCompared() throws Exception
+    {
+        XDOM previous = document("Intro", "1", "Alpha beta", "Outro");
+        XDOM next = document("Introduction", "1", "Alpha beta", "Outro");
+
+        Patch<Block> patch = diff(previous, next, BlockDiffMacroMode.SOURCE);
+        assertEquals(1, patch.size());
+        // The first paragraph is modified, before the start of the macro marker.
+        assertTrue(patch.get(0).getPrevious().getIndex() < 5);
+        assertEquals(next, this.diffManager.apply(previous, patch));
+    }
+
+    @Test
+    void generatedContentOfUnchangedMacroIsReplacedAsAWhole() throws Exception
+    {
+        XDOM previous = document("Intro", "1", "Alpha beta gamma", "Outro");
+        XDOM next = document("Intro", "1", "Alpha beta delta", "Outro");
+
+        Patch<Block> patch = diff(previous, next, BlockDiffMacroMode.SOURCE);
+        assertEquals(1, patch.size());
+        // The paragraph generated by the macro, with its 3 words, on both sides.
+        assertEquals(16, getChangedSize(patch));
+        assertEquals(next, this.diffManager.apply(previous, patch));
+    }
+
+    @Test
+    void changedMacroIsReplacedAsAWhole() throws Exception
+    {
+        XDOM previous = document("Intro", "1", "Alpha beta gamma", "Outro");
+        XDOM next = document("Intro", "2", "Alpha beta delta", "Outro");
+
+        Patch<Block> patch = diff(previous, next, BlockDiffMacroMode.SOURCE);
+        assertEquals(1, patch.size());
+        // The start of the macro marker and the paragraph it wraps, on both sides.
+        assertEquals(18, getChangedSize(patch));
+        assertEquals(next, this.diffManager.apply(previous, patch));
+    }
+
+    @Test
+    void changedMacroOutputIsComparedInSecondPass() throws Exception
+    {
+        XDOM previous = document("Intro", "1", "Alpha beta gamma", "Outro");
+        XDOM next = document("Intro", "2", "Alpha beta delta", "Outro");
+
+        Patch<Block> patch = diff(previous, next, BlockDiffMacroMode.SOURCE_THEN_CHANGED_OUTPUT);
+        // The start of the macro marker and the start of the last word, on both sides.
+        assertEquals(4, getChangedSize(patch));
+        assertTrue(patch.size() >= 2);
+        assertEquals(next, this.diffManager.apply(previous, patch));
+
+        // Same as when the generated content is compared like any other content.
+        assertEquals(getChangedSize(patch), getChangedSize(diff(previous, next, BlockDiffMacroMode.OUTPUT)));
+    }
+
+    private Patch<Block> diff(XDOM previous, XDOM next, BlockDiffMacroMode macroMode) throws Exception
+    {
+        BlockDiffConfiguration configuration = new BlockDiffConfiguration();
+        configuration.setMacroMode(macroMode);
+        return this.diffManager.diff(previous, next, configuration);
+    }
+
+    /**
+     * @return the number of deleted and inserted positions
+     */
+    private int getChangedSize(Patch<Block> patch)
+    {
+        int size = 0;
+        for (Delta<Block> delta : patch) {
+            size += delta.getPrevious().getElements().size() + delta.getNext().getElements().size();
+        }
+        return size;
+    }
+
+    private XDOM document(String intro, String macroContent, String output, String outro)
+    {
+        Block macro = new MacroMarkerBlock("test", Collections.emptyMap(), macroContent,
+            Collections.singletonList(paragraph(output)), false);
+        return new XDOM(Arrays.asList(paragraph(intro), macro, paragraph(outro)));
+    }
+
+    private Block paragraph(String text)
+    {
+        List<Block> words = new ArrayList<>();
+        for (String word : text.split(" ")) {
+            words.add(new WordBlock(word));
+        }
+        return new ParagraphBlock(words);
+    }
+}
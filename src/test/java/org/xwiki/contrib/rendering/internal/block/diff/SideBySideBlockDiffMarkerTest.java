@@ -0,0 +1,139 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.contrib.rendering.internal.block.diff;
+
+import java.io.StringReader;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.xwiki.contrib.rendering.block.diff.BlockDiffMarker;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.XDOM;
+import org.xwiki.rendering.parser.Parser;
+import org.xwiki.rendering.renderer.BlockRenderer;
+import org.xwiki.rendering.renderer.printer.DefaultWikiPrinter;
+import org.xwiki.rendering.renderer.printer.WikiPrinter;
+import org.xwiki.test.annotation.AllComponents;
+import org.xwiki.test.junit5.mockito.ComponentTest;
+import org.xwiki.test.mockito.MockitoComponentManager;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Integration tests for {@link SideBySideBlockDiffMarker}.
+ * 
+ * @version $Id$
+ * @since 1.0
+ */
+@ComponentTest
+@AllComponents
+class SideBySideBlockDiffMarkerTest
+{
+    private static final String LEFT = "= Title =\n\nOne two three.\n\nFour five.";
+
+    private static final String RIGHT = "= Title =\n\nOne three four.\n\nFour five.";
+
+    private BlockDiffMarker diffMarker;
+
+    private Parser parser;
+
+    private BlockRenderer xhtmlRenderer;
+
+    @BeforeEach
+    void configure(MockitoComponentManager componentManager) throws Exception
+    {
+        this.diffMarker = componentManager.getInstance(BlockDiffMarker.class, "sideBySide");
+        this.parser = componentManager.getInstance(Parser.class, "xwiki/2.1");
+        this.xhtmlRenderer = componentManager.getInstance(BlockRenderer.class, "xhtml/1.0");
+    }
+
+    @Test
+    void markDiff() throws Exception
+    {
+        XDOM left = parse(LEFT);
+        XDOM right = parse(RIGHT);
+        assertTrue(this.diffMarker.markDiff(left, right));
+
+        // The deletions are marked on the left side and the insertions on the right side.
+        String leftHTML = toHTML(left);
+        String rightHTML = toHTML(right);
+        assertTrue(leftHTML.contains("data-xdom-diff=\"deleted\""));
+        assertFalse(leftHTML.contains("data-xdom-diff=\"inserted\""));
+        assertTrue(rightHTML.contains("data-xdom-diff=\"inserted\""));
+        assertFalse(rightHTML.contains("data-xdom-diff=\"deleted\""));
+
+        // The unmodified blocks have the same anchor on both sides.
+        Block lastLeftParagraph = getLastChild(left);
+        Block lastRightParagraph = getLastChild(right);
+        String anchor = lastLeftParagraph.getParameter(SideBySideBlockDiffMarker.ANCHOR_PARAMETER);
+        assertNotNull(anchor);
+        assertEquals(anchor, lastRightParagraph.getParameter(SideBySideBlockDiffMarker.ANCHOR_PARAMETER));
+    }
+
+    @Test
+    void getDiffTree() throws Exception
+    {
+        XDOM left = parse(LEFT);
+        XDOM right = parse(RIGHT);
+        String leftHTML = toHTML(left);
+        String rightHTML = toHTML(right);
+
+        Block diffTree = this.diffMarker.getDiffTree(left, right);
+        assertEquals(2, diffTree.getChildren().size());
+        assertEquals("left", diffTree.getChildren().get(0).getParameter(SideBySideBlockDiffMarker.SIDE_PARAMETER));
+        assertEquals("right", diffTree.getChildren().get(1).getParameter(SideBySideBlockDiffMarker.SIDE_PARAMETER));
+
+        // The compared trees are not modified.
+        assertEquals(leftHTML, toHTML(left));
+        assertEquals(rightHTML, toHTML(right));
+
+        // Same diff tree from a session.
+        assertEquals(toHTML(diffTree), toHTML(this.diffMarker.createSession(left, right, null).getDiffTree()));
+
+        // No differences.
+        assertSame(left, this.diffMarker.getDiffTree(left, parse(LEFT)));
+    }
+
+    private Block getLastChild(XDOM xdom)
+    {
+        Block block = xdom;
+        // The paragraphs are inside the section.
+        while (block.getChildren().size() == 1) {
+            block = block.getChildren().get(0);
+        }
+        return block.getChildren().get(block.getChildren().size() - 1);
+    }
+
+    private XDOM parse(String content) throws Exception
+    {
+        return this.parser.parse(new StringReader(content));
+    }
+
+    private String toHTML(Block block)
+    {
+        WikiPrinter printer = new DefaultWikiPrinter();
+        this.xhtmlRenderer.render(block, printer);
+        return printer.toString();
+    }
+}